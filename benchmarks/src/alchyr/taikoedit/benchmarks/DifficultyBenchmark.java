@@ -0,0 +1,33 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.diffcalc.live.taiko.TaikoDifficultyCalculator;
+import alchyr.diffcalc.live.DifficultyAttributes;
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DifficultyBenchmark {
+    @Param({"5000", "20000"})
+    public int objectCount;
+
+    private EditorBeatmap map;
+
+    @Setup
+    public void setup() throws IOException {
+        map = TaikoMapGenerator.load(new TaikoMapGenerator(4, objectCount).write("Difficulty " + objectCount));
+    }
+
+    @Benchmark
+    public DifficultyAttributes calculate() {
+        return TaikoDifficultyCalculator.calculateDifficulty(map, new HashMap<>());
+    }
+}
@@ -0,0 +1,39 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EditorBeatmapBenchmark {
+    @Param({"5000", "20000"})
+    public int objectCount;
+
+    private File mapFile;
+    private EditorBeatmap loaded;
+
+    @Setup
+    public void setup() throws IOException {
+        mapFile = new TaikoMapGenerator(3, objectCount).write("Parse " + objectCount);
+        loaded = TaikoMapGenerator.load(mapFile);
+    }
+
+    @Benchmark
+    public EditorBeatmap parse() {
+        return TaikoMapGenerator.load(mapFile);
+    }
+
+    //Saving renames the existing file to a backup and writes a new one with the same name
+    @Benchmark
+    public String save() {
+        return loaded.save();
+    }
+}
@@ -0,0 +1,98 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
+import alchyr.taikoedit.util.structures.MapObjectArrayMap;
+import alchyr.taikoedit.util.structures.MapObjectMap;
+import alchyr.taikoedit.util.structures.MapObjectTreeMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapObjectTreeMapBenchmark {
+    @Param({"5000", "20000"})
+    public int objectCount;
+
+    @Param({"tree", "array"})
+    public String implementation;
+
+    private Hit[] hits;
+    private long[] viewStarts;
+    private MapObjectMap<HitObject> filled;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(1);
+        hits = new Hit[objectCount];
+        long pos = 1000;
+        for (int i = 0; i < objectCount; ++i) {
+            pos += 83 * (1 + rand.nextInt(3));
+            hits[i] = new Hit(pos, rand.nextBoolean());
+        }
+
+        viewStarts = new long[256];
+        for (int i = 0; i < viewStarts.length; ++i)
+            viewStarts[i] = 1000 + (long) (rand.nextDouble() * (pos - 1000));
+
+        filled = create();
+        for (Hit h : hits)
+            filled.add(h);
+    }
+
+    private MapObjectMap<HitObject> create() {
+        return "array".equals(implementation) ? new MapObjectArrayMap<>() : new MapObjectTreeMap<>();
+    }
+
+    @Benchmark
+    public MapObjectMap<HitObject> addKey() {
+        MapObjectMap<HitObject> map = create();
+        for (Hit h : hits)
+            map.addKey(h.getPos(), h);
+        return map;
+    }
+
+    //Equivalent of the visible section of a view, about 2 seconds wide
+    @Benchmark
+    public void subMapIteration(Blackhole bh) {
+        long start = viewStarts[next++ & 255];
+        for (Map.Entry<Long, ArrayList<HitObject>> stack : filled.subMap(start, true, start + 2000, true).entrySet()) {
+            for (HitObject o : stack.getValue())
+                bh.consume(o);
+        }
+    }
+
+    @Benchmark
+    public void floorAndCeiling(Blackhole bh) {
+        long pos = viewStarts[next++ & 255];
+        bh.consume(filled.floorKey(pos));
+        bh.consume(filled.ceilingKey(pos));
+    }
+
+    @Benchmark
+    public void singleValuesIterator(Blackhole bh) {
+        Iterator<HitObject> objects = filled.singleValuesIterator();
+        while (objects.hasNext())
+            bh.consume(objects.next());
+    }
+
+    @Benchmark
+    public MapObjectMap<HitObject> removeAndReadd() {
+        for (int i = 0; i < hits.length; i += 16)
+            filled.removeObject(hits[i]);
+        for (int i = 0; i < hits.length; i += 16)
+            filled.add(hits[i]);
+        return filled;
+    }
+}
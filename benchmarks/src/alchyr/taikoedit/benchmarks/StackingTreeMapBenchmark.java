@@ -0,0 +1,66 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.util.structures.StackingTreeMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Timeline rebuilds its marker positions this way whenever timing changes.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StackingTreeMapBenchmark {
+    private static class Mark implements StackingTreeMap.StackableComparable<Integer> {
+        final int pos;
+
+        Mark(int pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public Integer getKey() {
+            return pos;
+        }
+    }
+
+    @Param({"500", "5000"})
+    public int pointCount;
+
+    private Mark[] marks;
+    private StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> filled;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(2);
+        marks = new Mark[pointCount];
+        for (int i = 0; i < pointCount; ++i)
+            marks[i] = new Mark(rand.nextInt(1600)); //Screen width worth of positions, so many stack
+
+        filled = new StackingTreeMap.ExtendedStackingTreeMap<>();
+        for (Mark m : marks)
+            filled.add(m);
+    }
+
+    @Benchmark
+    public StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> add() {
+        StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> map = new StackingTreeMap.ExtendedStackingTreeMap<>();
+        for (Mark m : marks)
+            map.add(m);
+        return map;
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        for (Map.Entry<Integer, ArrayList<Mark>> stack : filled.entrySet()) {
+            for (Mark m : stack.getValue())
+                bh.consume(m);
+        }
+    }
+}
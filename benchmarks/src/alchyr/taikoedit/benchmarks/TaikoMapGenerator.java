@@ -0,0 +1,186 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.MapInfo;
+import alchyr.taikoedit.editor.maps.Mapset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+//Generates taiko maps with a realistic mix of streams, gaps, bpm changes, sv changes and kiai sections.
+//Maps are seeded, so every run of a benchmark works on the same data.
+public class TaikoMapGenerator {
+    public static final String SONG_FILE = "audio.mp3";
+
+    private final Random rand;
+    private final int objectCount;
+
+    public TaikoMapGenerator(long seed, int objectCount) {
+        this.rand = new Random(seed);
+        this.objectCount = objectCount;
+    }
+
+    /**
+     * Writes a generated .osu file into a new temporary directory.
+     */
+    public File write(String diffName) throws IOException {
+        File dir = Files.createTempDirectory("taikobench").toFile();
+        dir.deleteOnExit();
+        File mapFile = new File(dir, "Bench - Generated (TaikoEditor) [" + diffName + "].osu");
+        mapFile.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(mapFile.toPath(), StandardCharsets.UTF_8))) {
+            writer.println("osu file format v14");
+            writer.println();
+            writer.println("[General]");
+            writer.println("AudioFilename: " + SONG_FILE);
+            writer.println("AudioLeadIn: 0");
+            writer.println("PreviewTime: -1");
+            writer.println("Countdown: 0");
+            writer.println("SampleSet: Normal");
+            writer.println("StackLeniency: 0.7");
+            writer.println("Mode: 1");
+            writer.println("LetterboxInBreaks: 0");
+            writer.println("WidescreenStoryboard: 0");
+            writer.println();
+            writer.println("[Editor]");
+            writer.println("DistanceSpacing: 0.8");
+            writer.println("BeatDivisor: 4");
+            writer.println("GridSize: 32");
+            writer.println("TimelineZoom: 1");
+            writer.println();
+            writer.println("[Metadata]");
+            writer.println("Title:Generated");
+            writer.println("TitleUnicode:Generated");
+            writer.println("Artist:Bench");
+            writer.println("ArtistUnicode:Bench");
+            writer.println("Creator:TaikoEditor");
+            writer.println("Version:" + diffName);
+            writer.println("Source:");
+            writer.println("Tags:");
+            writer.println("BeatmapID:0");
+            writer.println("BeatmapSetID:-1");
+            writer.println();
+            writer.println("[Difficulty]");
+            writer.println("HPDrainRate:6");
+            writer.println("CircleSize:5");
+            writer.println("OverallDifficulty:6");
+            writer.println("ApproachRate:10");
+            writer.println("SliderMultiplier:1.4");
+            writer.println("SliderTickRate:4");
+            writer.println();
+            writer.println("[Events]");
+            writer.println("//Background and Video events");
+            writer.println("//Break Periods");
+            writer.println("//Storyboard Layer 0 (Background)");
+            writer.println("//Storyboard Layer 1 (Fail)");
+            writer.println("//Storyboard Layer 2 (Pass)");
+            writer.println("//Storyboard Layer 3 (Foreground)");
+            writer.println("//Storyboard Layer 4 (Overlay)");
+            writer.println("//Storyboard Sound Samples");
+            writer.println();
+
+            ArrayList<String> points = new ArrayList<>();
+            ArrayList<String> objects = new ArrayList<>();
+            generate(points, objects);
+
+            writer.println("[TimingPoints]");
+            for (String point : points)
+                writer.println(point);
+            writer.println();
+            writer.println();
+            writer.println("[HitObjects]");
+            for (String object : objects)
+                writer.println(object);
+        }
+        return mapFile;
+    }
+
+    public static EditorBeatmap load(File mapFile) {
+        File dir = mapFile.getParentFile();
+        MapInfo info = new MapInfo(mapFile, SONG_FILE, "", mapFile.getName());
+        Mapset set = new Mapset(dir, new ArrayList<>(Collections.singletonList(info)), true, SONG_FILE, "TaikoEditor", "Generated", "Bench", "");
+        return new EditorBeatmap(set, info);
+    }
+
+    private void generate(ArrayList<String> points, ArrayList<String> objects) {
+        double time = 1000;
+        double bpm = 180;
+        double beatLength = 60000 / bpm;
+        boolean kiai = false;
+
+        points.add(redLine(time, beatLength));
+
+        int generated = 0;
+        int measure = 0;
+        while (generated < objectCount) {
+            if (measure > 0 && measure % 32 == 0 && rand.nextInt(3) == 0) {
+                //Bpm change
+                bpm = 150 + rand.nextInt(90);
+                beatLength = 60000 / bpm;
+                points.add(redLine(time, beatLength));
+            }
+            if (measure % 2 == 0 && rand.nextInt(4) != 0) {
+                //Sv change, and kiai sections that always end off
+                boolean nextKiai = (measure % 64) >= 40 && (measure % 64) < 56;
+                double sv = 0.75 + rand.nextInt(11) * 0.05;
+                points.add(greenLine(time, sv, 60 + rand.nextInt(4) * 10, nextKiai));
+                kiai = nextKiai;
+            }
+
+            double snap = beatLength / 4;
+            int roll = rand.nextInt(20);
+            if (roll == 0) {
+                //Drumroll
+                long start = Math.round(time);
+                int length = 140 * (2 + rand.nextInt(4));
+                objects.add("256,192," + start + ",2,0,L|" + (256 + length) + ":192,1," + length);
+                ++generated;
+            }
+            else if (roll == 1) {
+                //Spinner
+                long start = Math.round(time);
+                long end = Math.round(time + beatLength * 3);
+                objects.add("256,192," + start + ",12,0," + end + ",0:0:0:0:");
+                ++generated;
+            }
+            else {
+                //One measure of notes, a mix of streams, regular patterns and gaps
+                boolean stream = rand.nextInt(3) == 0;
+                for (int i = 0; i < 16 && generated < objectCount; ++i) {
+                    if (stream || (i % 2 == 0 && rand.nextInt(5) != 0)) {
+                        objects.add(note(Math.round(time + snap * i), i == 0));
+                        ++generated;
+                    }
+                }
+            }
+
+            time += beatLength * 4;
+            ++measure;
+        }
+
+        if (kiai)
+            points.add(greenLine(time, 1, 60, false));
+    }
+
+    private String note(long pos, boolean newCombo) {
+        int hitsound = rand.nextInt(2) == 0 ? 0 : (rand.nextBoolean() ? 2 : 8);
+        if (rand.nextInt(16) == 0)
+            hitsound |= 4;
+        return "256,192," + pos + "," + (newCombo ? 5 : 1) + "," + hitsound + ",0:0:0:0:";
+    }
+
+    private static String redLine(double time, double beatLength) {
+        return Math.round(time) + "," + beatLength + ",4,1,0,60,1,0";
+    }
+
+    private static String greenLine(double time, double sv, int volume, boolean kiai) {
+        return Math.round(time) + "," + (-100 / sv) + ",4,1,0," + volume + ",0," + (kiai ? 1 : 0);
+    }
+}
@@ -0,0 +1,87 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.audio.Waveform;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Synthetic 44.1khz 16 bit stereo pcm in chunks the size of a decoded mp3 frame.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaveformBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHUNK_SIZE = 4608;
+
+    @Param({"180"})
+    public int seconds;
+
+    private List<byte[]> chunks;
+    private Waveform waveform;
+    private final float[] range = new float[2];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(5);
+        chunks = new ArrayList<>();
+
+        int samples = SAMPLE_RATE * seconds;
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int index = 0;
+        for (int i = 0; i < samples; ++i) {
+            double t = i / (double) SAMPLE_RATE;
+            double envelope = 0.5 + 0.5 * Math.sin(t * Math.PI * 4);
+            short value = (short) (envelope * (Math.sin(t * 2 * Math.PI * 220) * 12000 + rand.nextGaussian() * 2000));
+            for (int channel = 0; channel < 2; ++channel) {
+                chunk[index++] = (byte) value;
+                chunk[index++] = (byte) (value >> 8);
+                if (index == CHUNK_SIZE) {
+                    chunks.add(chunk);
+                    chunk = new byte[CHUNK_SIZE];
+                    index = 0;
+                }
+            }
+        }
+        if (index > 0) {
+            byte[] last = new byte[index];
+            System.arraycopy(chunk, 0, last, 0, index);
+            chunks.add(last);
+        }
+
+        waveform = generate();
+    }
+
+    @Benchmark
+    public Waveform generate() {
+        return new Waveform(chunks.iterator(), SAMPLE_RATE / 1000.0, 2);
+    }
+
+    //One step per pixel across a 1920 pixel wide view, at 1 and 25 ms per pixel
+    @Benchmark
+    public float renderSteps() {
+        return steps(1);
+    }
+
+    @Benchmark
+    public float renderStepsZoomedOut() {
+        return steps(25);
+    }
+
+    private float steps(int msPerStep) {
+        int level = Waveform.levelFor(msPerStep);
+        int start = (next++ * 997) % (seconds * 1000 - 1920 * msPerStep);
+        float total = 0;
+        for (int i = 0; i < 1920; ++i, start += msPerStep) {
+            waveform.getRange(level, start, start + msPerStep, range);
+            total += range[1] - range[0];
+        }
+        return total;
+    }
+}
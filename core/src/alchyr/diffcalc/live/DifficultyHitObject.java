@@ -13,6 +13,12 @@ public abstract class DifficultyHitObject {
     public double endTime;
 
     public DifficultyHitObject(HitObject base, HitObject last, double clockRate, List<DifficultyHitObject> objects, int index)
+    {
+        this(base, last, base.getPos(), base.getEndPos(), last.getEndPos(), clockRate, objects, index);
+    }
+
+    //For calculation off the main thread, where positions are read from a snapshot rather than the (mutable) objects.
+    public DifficultyHitObject(HitObject base, HitObject last, long pos, long endPos, long lastEndPos, double clockRate, List<DifficultyHitObject> objects, int index)
     {
         difficultyHitObjects = objects;
         this.index = index;
@@ -20,9 +26,9 @@ public abstract class DifficultyHitObject {
         baseObject = base;
         lastObject = last;
 
-        deltaTime = (baseObject.getPos() - lastObject.getEndPos()) / clockRate;
-        startTime = baseObject.getPos() / clockRate;
-        endTime = baseObject.getEndPos() / clockRate;
+        deltaTime = (pos - lastEndPos) / clockRate;
+        startTime = pos / clockRate;
+        endTime = endPos / clockRate;
     }
 
     public DifficultyHitObject previous(int backwardsIndex)
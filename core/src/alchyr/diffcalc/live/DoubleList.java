@@ -0,0 +1,100 @@
+package alchyr.diffcalc.live;
+
+import java.util.Arrays;
+
+//Growable primitive buffer for strain values, avoiding boxing in skills that are recalculated often.
+public class DoubleList {
+    private double[] items;
+    private int size = 0;
+
+    public DoubleList() {
+        this(64);
+    }
+    public DoubleList(int capacity) {
+        items = new double[Math.max(capacity, 1)];
+    }
+
+    public void add(double value) {
+        if (size == items.length)
+            items = Arrays.copyOf(items, items.length * 2);
+        items[size++] = value;
+    }
+
+    public void addAll(DoubleList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.items, 0, items, size, other.size);
+        size += other.size;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > items.length)
+            items = Arrays.copyOf(items, Math.max(capacity, items.length * 2));
+    }
+
+    public double get(int index) {
+        return items[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sorts the contents in ascending order.
+     */
+    public void sort() {
+        Arrays.sort(items, 0, size);
+    }
+
+    /**
+     * Calculates the sum of the values sorted from highest to lowest, with each successive value's weight multiplied by decayWeight.
+     * Values are taken from a max-heap one at a time, stopping once a term no longer changes the sum.
+     * Terms never increase (values are taken in descending order and weights do not grow), so every later term is too small
+     * to change the sum as well. The result is identical to summing the fully sorted list.
+     *
+     * The contents of the list are reordered. decayWeight must be at most 1.
+     */
+    public double weightedDescendingSum(double decayWeight) {
+        for (int i = (size >>> 1) - 1; i >= 0; --i)
+            siftDown(items, i, size);
+
+        double sum = 0, next, weight = 1, top;
+        int remaining = size;
+        while (remaining > 0) {
+            top = items[0];
+            items[0] = items[--remaining];
+            items[remaining] = top;
+            siftDown(items, 0, remaining);
+
+            next = sum + top * weight;
+            if (next == sum)
+                break;
+            sum = next;
+            weight *= decayWeight;
+        }
+
+        return sum;
+    }
+
+    private static void siftDown(double[] heap, int index, int size) {
+        double value = heap[index];
+        int child;
+        while ((child = (index << 1) + 1) < size) {
+            if (child + 1 < size && heap[child + 1] > heap[child])
+                ++child;
+            if (value >= heap[child])
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
@@ -3,6 +3,7 @@ package alchyr.diffcalc.live.taiko;
 import alchyr.diffcalc.live.DifficultyAttributes;
 import alchyr.diffcalc.live.DifficultyCalculationUtils;
 import alchyr.diffcalc.live.DifficultyHitObject;
+import alchyr.diffcalc.live.DoubleList;
 import alchyr.diffcalc.live.taiko.difficulty.preprocessing.TaikoDifficultyHitObject;
 import alchyr.diffcalc.live.taiko.difficulty.preprocessing.colour.TaikoColourDifficultyPreprocessor;
 import alchyr.diffcalc.live.taiko.difficulty.preprocessing.rhythm.TaikoRhythmDifficultyPreprocessor;
@@ -11,7 +12,9 @@ import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 
 public class TaikoDifficultyCalculator {
@@ -32,6 +35,25 @@ public class TaikoDifficultyCalculator {
         return c.calculate(1);
     }
 
+    /**
+     * Calculates difficulty from difficulty objects that have already been constructed and preprocessed.
+     * Used by TaikoDifficultyWorker, which maintains its own list of difficulty objects.
+     */
+    public static DifficultyAttributes calculateDifficulty(List<DifficultyHitObject> difficultyHitObjects, boolean hasObjects, double od, int maxCombo)
+    {
+        TaikoDifficultyCalculator c = new TaikoDifficultyCalculator(od, hasObjects);
+        c.maxCombo = maxCombo;
+
+        Skill[] skills = c.CreateSkills(1);
+
+        if (!hasObjects)
+            return c.CreateDifficultyAttributes(skills);
+
+        c.processSkills(skills, difficultyHitObjects);
+
+        return c.CreateDifficultyAttributes(skills);
+    }
+
     private Map<HitObject, TaikoDifficultyHitObject> calculationInfo;
 
     private double strainLengthBonus;
@@ -41,22 +63,32 @@ public class TaikoDifficultyCalculator {
     private boolean isConvert;
 
     private EditorBeatmap beatmap;
+    private final double od;
+    private final boolean hasObjects;
     private int maxCombo = 0;
 
     private TaikoDifficultyCalculator(EditorBeatmap map, Map<HitObject, TaikoDifficultyHitObject> calculationInfo)
     {
         this.beatmap = map;
+        this.od = map.getFullMapInfo().od;
+        this.hasObjects = !map.objects.isEmpty();
         this.calculationInfo = calculationInfo;
         calculationInfo.clear();
     }
 
+    private TaikoDifficultyCalculator(double od, boolean hasObjects)
+    {
+        this.od = od;
+        this.hasObjects = hasObjects;
+    }
+
     private Skill[] CreateSkills(double clockRate) {
         isConvert = false;
         isRelax = false;
 
         return new Skill[]
         {
-                new Rhythm((Math.floor(difficultyRange(beatmap.getFullMapInfo().od, 50, 35, 20)) - 0.5) / clockRate),
+                new Rhythm((Math.floor(difficultyRange(od, 50, 35, 20)) - 0.5) / clockRate),
                 new Reading(),
                 new Colour(),
                 new Stamina(false, isConvert),
@@ -68,18 +100,23 @@ public class TaikoDifficultyCalculator {
     {
         Skill[] skills = CreateSkills(clockRate);
 
-        if (beatmap.objects.isEmpty())
+        if (!hasObjects)
             return CreateDifficultyAttributes(skills);
 
         List<DifficultyHitObject> difficultyHitObjects = CreateDifficultyHitObjects(clockRate);
 
+        processSkills(skills, difficultyHitObjects);
+
+        return CreateDifficultyAttributes(skills);
+    }
+
+    private void processSkills(Skill[] skills, List<DifficultyHitObject> difficultyHitObjects)
+    {
         for (DifficultyHitObject hitObject : difficultyHitObjects) {
             for (Skill skill : skills) {
                 skill.Process(hitObject);
             }
         }
-
-        return CreateDifficultyAttributes(skills);
     }
 
     private List<DifficultyHitObject> CreateDifficultyHitObjects(double clockRate)
@@ -132,7 +169,7 @@ public class TaikoDifficultyCalculator {
 
     private DifficultyAttributes CreateDifficultyAttributes(Skill[] skills)
     {
-        if (beatmap.objects.isEmpty())
+        if (!hasObjects)
             return new TaikoDifficultyAttributes();
 
         Rhythm rhythm = (Rhythm) skills[0];
@@ -162,23 +199,25 @@ public class TaikoDifficultyCalculator {
             consistencyFactor = 0;
         }
         else {
-            List<Double> hitObjectStrainPeaks = getHitObjectStrainPeaks(rhythm, reading, colour, stamina);
+            DoubleList hitObjectStrainPeaks = getHitObjectStrainPeaks(rhythm, reading, colour, stamina);
 
             if (hitObjectStrainPeaks.isEmpty()) {
                 consistencyFactor = 0;
                 combinedRating = 0;
             }
             else {
-                hitObjectStrainPeaks.sort(Comparator.<Double>naturalOrder().reversed());
+                //Sorted ascending, so iterate from the end to sum in descending order.
+                hitObjectStrainPeaks.sort();
+                int last = hitObjectStrainPeaks.size() - 1;
                 int count = 1 + hitObjectStrainPeaks.size() / 20;
                 double topAverageHitObjectStrain = 0;
                 for (int i = 0; i < count; ++i) {
-                    topAverageHitObjectStrain += hitObjectStrainPeaks.get(i);
+                    topAverageHitObjectStrain += hitObjectStrainPeaks.get(last - i);
                 }
                 topAverageHitObjectStrain /= count;
 
                 double sum = 0;
-                for (int i = 0; i < hitObjectStrainPeaks.size(); ++i) {
+                for (int i = last; i >= 0; --i) {
                     sum += hitObjectStrainPeaks.get(i);
                 }
 
@@ -216,7 +255,7 @@ public class TaikoDifficultyCalculator {
     }
 
     private double combinedDifficultyValue(Rhythm rhythm, Reading reading, Colour colour, Stamina stamina) {
-        List<Double> peaks = combinePeaks(
+        DoubleList peaks = combinePeaks(
                 rhythm.GetCurrentStrainPeaks(),
                 reading.GetCurrentStrainPeaks(),
                 colour.GetCurrentStrainPeaks(),
@@ -226,19 +265,10 @@ public class TaikoDifficultyCalculator {
             return 0;
         }
 
-        double difficulty = 0;
-        double weight = 1;
-
-        peaks.sort(Comparator.<Double>naturalOrder().reversed());
-        for (double strain : peaks) {
-            difficulty += strain * weight;
-            weight *= 0.9;
-        }
-
-        return difficulty;
+        return peaks.weightedDescendingSum(0.9);
     }
 
-    private List<Double> getHitObjectStrainPeaks(Rhythm rhythm, Reading reading, Colour colour, Stamina stamina) {
+    private DoubleList getHitObjectStrainPeaks(Rhythm rhythm, Reading reading, Colour colour, Stamina stamina) {
         return combinePeaks(
                 rhythm.GetObjectStrains(),
                 reading.GetObjectStrains(),
@@ -246,20 +276,15 @@ public class TaikoDifficultyCalculator {
                 stamina.GetObjectStrains());
     }
 
-    private List<Double> combinePeaks(Iterable<Double> rhythmPeaks, Iterable<Double> readingPeaks, Iterable<Double> colourPeaks, Iterable<Double> staminaPeaks)
+    private DoubleList combinePeaks(DoubleList rhythmPeaks, DoubleList readingPeaks, DoubleList colourPeaks, DoubleList staminaPeaks)
     {
-        List<Double> combinedPeaks = new ArrayList<>();
-
-        Iterator<Double> rhythm = rhythmPeaks.iterator();
-        Iterator<Double> reading = readingPeaks.iterator();
-        Iterator<Double> colour = colourPeaks.iterator();
-        Iterator<Double> stamina = staminaPeaks.iterator();
-
-        while (rhythm.hasNext()) {
-            double rhythmPeak = rhythm.next() * rhythm_skill_multiplier * patternMultiplier;
-            double readingPeak = reading.next() * reading_skill_multiplier;
-            double colourPeak = isRelax ? 0 : colour.next() * colour_skill_multiplier; // There is no colour difficulty in relax.
-            double staminaPeak = stamina.next() * stamina_skill_multiplier * strainLengthBonus;
+        DoubleList combinedPeaks = new DoubleList(rhythmPeaks.size());
+
+        for (int i = 0; i < rhythmPeaks.size(); ++i) {
+            double rhythmPeak = rhythmPeaks.get(i) * rhythm_skill_multiplier * patternMultiplier;
+            double readingPeak = readingPeaks.get(i) * reading_skill_multiplier;
+            double colourPeak = isRelax ? 0 : colourPeaks.get(i) * colour_skill_multiplier; // There is no colour difficulty in relax.
+            double staminaPeak = staminaPeaks.get(i) * stamina_skill_multiplier * strainLengthBonus;
             staminaPeak /= isConvert || isRelax ? 1.5 : 1.0; // Available finger count is increased by 150%, thus we adjust accordingly.
 
             double peak = DifficultyCalculationUtils.Norm(2, DifficultyCalculationUtils.Norm(1.5, colourPeak, staminaPeak), rhythmPeak, readingPeak);
@@ -0,0 +1,279 @@
+package alchyr.diffcalc.live.taiko;
+
+import alchyr.diffcalc.live.DifficultyHitObject;
+import alchyr.diffcalc.live.taiko.difficulty.preprocessing.TaikoDifficultyHitObject;
+import alchyr.diffcalc.live.taiko.difficulty.preprocessing.colour.TaikoColourDifficultyPreprocessor;
+import alchyr.diffcalc.live.taiko.difficulty.preprocessing.rhythm.TaikoRhythmDifficultyPreprocessor;
+import alchyr.taikoedit.TaikoEditor;
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
+
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+/**
+ * Calculates difficulty for a single map on a background thread.
+ *
+ * Changes are debounced. Once they settle, a snapshot of the map is taken on the main thread (where the map is safe to read),
+ * and the worker rebuilds only the difficulty objects whose inputs differ from the previous snapshot.
+ * Colour/rhythm groupings chain across the whole map, so those are re-run over the spliced list of objects.
+ *
+ * Finished results are immutable and are handed to the listener as a whole.
+ */
+public class TaikoDifficultyWorker {
+    private static final long DEBOUNCE_MS = 150;
+    //A difficulty object depends on the end of the previous object (deltaTime) and on the previous difficulty object's deltaTime (rhythm ratio).
+    private static final int LOOKBACK = 2;
+
+    public static final class Result {
+        public final TaikoDifficultyAttributes attributes;
+        public final Map<HitObject, double[]> debugData;
+
+        public Result(TaikoDifficultyAttributes attributes, Map<HitObject, double[]> debugData) {
+            this.attributes = attributes;
+            this.debugData = debugData;
+        }
+    }
+
+    private static final class Snapshot {
+        final int size;
+        final HitObject[] objects;
+        final long[] pos, endPos;
+        final byte[] hitType;
+        final double[] baseBpm;
+        final double od;
+
+        Snapshot(EditorBeatmap map) {
+            size = map.objects.count();
+            objects = new HitObject[size];
+            pos = new long[size];
+            endPos = new long[size];
+            hitType = new byte[size];
+            baseBpm = new double[size];
+            od = map.getFullMapInfo().od;
+
+            int i = 0;
+            for (ArrayList<HitObject> stack : map.objects.values()) {
+                for (HitObject o : stack) {
+                    objects[i] = o;
+                    pos[i] = o.getPos();
+                    endPos[i] = o.getEndPos();
+                    hitType[i] = (byte) (o instanceof Hit ? (((Hit) o).isRim() ? 2 : 1) : 0);
+                    baseBpm[i] = TaikoDifficultyHitObject.baseBpm(map, pos[i]);
+                    ++i;
+                }
+            }
+        }
+
+        boolean matches(int index, Snapshot other, int otherIndex) {
+            return objects[index] == other.objects[otherIndex] &&
+                    pos[index] == other.pos[otherIndex] &&
+                    endPos[index] == other.endPos[otherIndex] &&
+                    hitType[index] == other.hitType[otherIndex] &&
+                    baseBpm[index] == other.baseBpm[otherIndex];
+        }
+    }
+
+    private final EditorBeatmap map;
+    private final Consumer<Result> listener;
+    private final ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?> pending = null;
+    private volatile boolean disposed = false;
+
+    //Only accessed on the worker thread
+    private Snapshot last = null;
+    private final List<DifficultyHitObject> difficultyHitObjects = new ArrayList<>();
+    private final List<TaikoDifficultyHitObject> centreObjects = new ArrayList<>();
+    private final List<TaikoDifficultyHitObject> rimObjects = new ArrayList<>();
+    private final List<TaikoDifficultyHitObject> noteObjects = new ArrayList<>();
+
+    /**
+     * @param listener Receives each finished result. Called on the worker thread.
+     */
+    public TaikoDifficultyWorker(EditorBeatmap map, Consumer<Result> listener) {
+        this.map = map;
+        this.listener = listener;
+
+        executor = new ScheduledThreadPoolExecutor(1, (r)->{
+            Thread t = new Thread(r);
+            t.setName("Difficulty Calculation");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Requests a recalculation. Repeated calls within the debounce window are merged into one calculation.
+     */
+    public synchronized void invalidate() {
+        schedule(DEBOUNCE_MS);
+    }
+
+    public synchronized void invalidateNow() {
+        schedule(0);
+    }
+
+    private void schedule(long delay) {
+        if (disposed) return;
+
+        if (pending != null)
+            pending.cancel(false);
+
+        pending = executor.schedule(()->TaikoEditor.onMain(this::capture), delay, TimeUnit.MILLISECONDS);
+    }
+
+    //Main thread
+    private void capture() {
+        if (disposed) return;
+
+        Snapshot snapshot = new Snapshot(map);
+        executor.execute(()->calculate(snapshot));
+    }
+
+    //Worker thread
+    private void calculate(Snapshot next) {
+        if (disposed) return;
+
+        try {
+            int maxCombo = rebuild(next);
+
+            TaikoColourDifficultyPreprocessor.processAndAssign(difficultyHitObjects);
+            TaikoRhythmDifficultyPreprocessor.processAndAssign(noteObjects);
+
+            TaikoDifficultyAttributes attributes = (TaikoDifficultyAttributes) TaikoDifficultyCalculator.calculateDifficulty(difficultyHitObjects, next.size > 0, next.od, maxCombo);
+
+            Map<HitObject, double[]> debugData = new HashMap<>();
+            for (DifficultyHitObject o : difficultyHitObjects) {
+                debugData.put(o.baseObject, ((TaikoDifficultyHitObject) o).debugData.clone());
+            }
+
+            if (!disposed)
+                listener.accept(new Result(attributes, Collections.unmodifiableMap(debugData)));
+        }
+        catch (Exception e) {
+            //Objects may be modified on the main thread mid-calculation; a later calculation will replace this one.
+            editorLogger.error("Difficulty calculation failed", e);
+            last = null;
+            difficultyHitObjects.clear();
+            centreObjects.clear();
+            rimObjects.clear();
+            noteObjects.clear();
+        }
+    }
+
+    /**
+     * Updates the list of difficulty objects to match the given snapshot, keeping the unchanged start and end of the previous list.
+     * @return The max combo of the map.
+     */
+    private int rebuild(Snapshot next) {
+        Snapshot prev = last;
+        last = next;
+
+        int prefix = 0, suffix = 0;
+        if (prev != null) {
+            int limit = Math.min(prev.size, next.size);
+            while (prefix < limit && next.matches(prefix, prev, prefix))
+                ++prefix;
+            while (suffix < limit - prefix && next.matches(next.size - 1 - suffix, prev, prev.size - 1 - suffix))
+                ++suffix;
+        }
+
+        //Difficulty objects are created for objects from index 2 onwards, and difficulty object i belongs to object i + 2.
+        //Objects before prefix are unchanged and only depend on earlier objects; objects in the suffix are only reusable once they are past the lookback.
+        int rebuildStart = Math.max(prefix, 2);
+        int rebuildEnd = Math.min(next.size, next.size - suffix + LOOKBACK);
+        if (prev == null) {
+            rebuildEnd = next.size;
+        }
+        int keptSuffix = next.size - Math.max(rebuildEnd, rebuildStart);
+
+        List<DifficultyHitObject> reused = keptSuffix > 0 ?
+                new ArrayList<>(difficultyHitObjects.subList(difficultyHitObjects.size() - keptSuffix, difficultyHitObjects.size())) :
+                Collections.emptyList();
+
+        int keptPrefix = Math.max(0, rebuildStart - 2);
+        truncate(difficultyHitObjects, keptPrefix);
+        truncateByIndex(centreObjects, keptPrefix);
+        truncateByIndex(rimObjects, keptPrefix);
+        truncateByIndex(noteObjects, keptPrefix);
+
+        for (int i = rebuildStart; i < rebuildEnd; ++i) {
+            difficultyHitObjects.add(new TaikoDifficultyHitObject(
+                    next.objects[i],
+                    next.objects[i - 1],
+                    next.pos[i],
+                    next.endPos[i],
+                    next.endPos[i - 1],
+                    next.hitType[i],
+                    next.baseBpm[i],
+                    1,
+                    difficultyHitObjects,
+                    centreObjects,
+                    rimObjects,
+                    noteObjects,
+                    difficultyHitObjects.size()
+            ));
+        }
+
+        int offset = next.size - keptSuffix;
+        for (int i = 0; i < reused.size(); ++i) {
+            TaikoDifficultyHitObject o = (TaikoDifficultyHitObject) reused.get(i);
+            o.index = difficultyHitObjects.size();
+            difficultyHitObjects.add(o);
+
+            switch (next.hitType[offset + i]) {
+                case 1:
+                    o.monoIndex = centreObjects.size();
+                    centreObjects.add(o);
+                    o.noteIndex = noteObjects.size();
+                    noteObjects.add(o);
+                    break;
+                case 2:
+                    o.monoIndex = rimObjects.size();
+                    rimObjects.add(o);
+                    o.noteIndex = noteObjects.size();
+                    noteObjects.add(o);
+                    break;
+            }
+        }
+
+        int maxCombo = noteObjects.size();
+        for (int i = 0; i < Math.min(2, next.size); ++i) {
+            if (next.hitType[i] != 0)
+                ++maxCombo;
+        }
+        return maxCombo;
+    }
+
+    private static void truncate(List<?> list, int size) {
+        if (list.size() > size)
+            list.subList(size, list.size()).clear();
+    }
+
+    //Removes all objects with an index of at least the given index. Lists are ordered by index.
+    private static void truncateByIndex(List<TaikoDifficultyHitObject> list, int index) {
+        int low = 0, high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).index < index)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        truncate(list, low);
+    }
+
+    public synchronized void dispose() {
+        disposed = true;
+        if (pending != null)
+            pending.cancel(false);
+        executor.shutdownNow();
+    }
+}
@@ -16,25 +16,37 @@ import java.util.Map;
 
 public class TaikoDifficultyHitObject extends DifficultyHitObject implements HasInterval {
     private final List<TaikoDifficultyHitObject> monoDificultyHitObjects;
-    public final int monoIndex;
+    public int monoIndex;
     private final List<TaikoDifficultyHitObject> noteDifficultyHitObjects;
-    public final int noteIndex;
+    public int noteIndex;
     public final TaikoColourData colourData;
     public final TaikoRhythmData rhythmData;
     public double effectiveBpm;
+    public final int hitType; //0 for non-notes, 1 for centre, 2 for rim, as of when this was created
 
     public double[] debugData = new double[3];
 
     public TaikoDifficultyHitObject(HitObject base, HitObject previous, double clockRate, List<DifficultyHitObject> difficultyHitObjects, List<TaikoDifficultyHitObject> centreObjects, List<TaikoDifficultyHitObject> rimObjects, List<TaikoDifficultyHitObject> noteObjects, int index, EditorBeatmap beatmap) {
-        super(base, previous, clockRate, difficultyHitObjects, index);
+        this(base, previous, base.getPos(), base.getEndPos(), previous.getEndPos(), base instanceof Hit ? (((Hit) base).isRim() ? 2 : 1) : 0,
+                baseBpm(beatmap, base.getPos()), clockRate, difficultyHitObjects, centreObjects, rimObjects, noteObjects, index);
+    }
+
+    /**
+     * Constructs a difficulty object from snapshotted values, without reading the beatmap or the mutable state of the base objects.
+     * @param hitType 0 for non-notes, 1 for centre, 2 for rim; matching MonoStreak.HitType
+     * @param baseBpm The effective bpm at the object's position, before clock rate is applied.
+     */
+    public TaikoDifficultyHitObject(HitObject base, HitObject previous, long pos, long endPos, long previousEndPos, int hitType, double baseBpm, double clockRate, List<DifficultyHitObject> difficultyHitObjects, List<TaikoDifficultyHitObject> centreObjects, List<TaikoDifficultyHitObject> rimObjects, List<TaikoDifficultyHitObject> noteObjects, int index) {
+        super(base, previous, pos, endPos, previousEndPos, clockRate, difficultyHitObjects, index);
 
         noteDifficultyHitObjects = noteObjects;
+        this.hitType = hitType;
 
         colourData = new TaikoColourData();
         rhythmData = new TaikoRhythmData(this);
 
-        if (base instanceof Hit) {
-            if (((Hit) base).isRim()) {
+        if (hitType != 0) {
+            if (hitType == 2) {
                 monoIndex = rimObjects.size();
                 rimObjects.add(this);
                 monoDificultyHitObjects = rimObjects;
@@ -54,11 +66,15 @@ public class TaikoDifficultyHitObject extends DifficultyHitObject implements Has
             noteIndex = 0;
         }
 
-        Map.Entry<Long, ArrayList<TimingPoint>> timing = beatmap.timingPoints.floorEntry(base.getPos());
-        Map.Entry<Long, ArrayList<TimingPoint>> sv = beatmap.effectPoints.floorEntry(base.getPos());
+        effectiveBpm = baseBpm * clockRate;
+    }
+
+    public static double baseBpm(EditorBeatmap beatmap, long pos) {
+        Map.Entry<Long, ArrayList<TimingPoint>> timing = beatmap.timingPoints.floorEntry(pos);
+        Map.Entry<Long, ArrayList<TimingPoint>> sv = beatmap.effectPoints.floorEntry(pos);
         double bpm = timing == null ? 120 : GeneralUtils.listLast(timing.getValue()).getBPM();
         double rate = beatmap.getBaseSV() * (sv == null ? 1 : GeneralUtils.listLast(sv.getValue()).value);
-        effectiveBpm = bpm * clockRate * rate;
+        return bpm * rate;
     }
 
     @Override
@@ -5,7 +5,6 @@ import alchyr.diffcalc.live.taiko.difficulty.preprocessing.TaikoDifficultyHitObj
 import alchyr.diffcalc.live.taiko.difficulty.preprocessing.colour.data.AlternatingMonoPattern;
 import alchyr.diffcalc.live.taiko.difficulty.preprocessing.colour.data.MonoStreak;
 import alchyr.diffcalc.live.taiko.difficulty.preprocessing.colour.data.RepeatingHitPatterns;
-import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -77,7 +76,7 @@ public class TaikoColourDifficultyPreprocessor
             TaikoDifficultyHitObject previousObject = taikoObject.previousNote(0);
 
             // If this is the first object in the list or the colour changed, create a new mono streak
-            if (currentMonoStreak == null || previousObject == null || !(taikoObject.baseObject instanceof Hit) || (((Hit) taikoObject.baseObject).isRim() != ((Hit) previousObject.baseObject).isRim()))
+            if (currentMonoStreak == null || previousObject == null || taikoObject.hitType == 0 || taikoObject.hitType != previousObject.hitType)
             {
                 currentMonoStreak = new MonoStreak();
                 monoStreaks.add(currentMonoStreak);
@@ -1,8 +1,6 @@
 package alchyr.diffcalc.live.taiko.difficulty.preprocessing.colour.data;
 
 import alchyr.diffcalc.live.taiko.difficulty.preprocessing.TaikoDifficultyHitObject;
-import alchyr.taikoedit.editor.maps.components.HitObject;
-import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,11 +16,7 @@ public class MonoStreak {
         return hitObjects.get(hitObjects.size() - 1);
     }
     public int HitType() {
-        HitObject obj = firstObject().baseObject;
-        if (obj instanceof Hit) {
-            return ((Hit) obj).isRim() ? 2 : 1;
-        }
-        return 0;
+        return firstObject().hitType;
     }
     public int runLength() {
         return hitObjects.size();
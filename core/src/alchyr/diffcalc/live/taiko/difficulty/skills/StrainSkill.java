@@ -1,10 +1,7 @@
 package alchyr.diffcalc.live.taiko.difficulty.skills;
 
 import alchyr.diffcalc.live.DifficultyHitObject;
-
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import alchyr.diffcalc.live.DoubleList;
 
 public abstract class StrainSkill extends Skill {
     protected double DecayWeight() {
@@ -17,8 +14,8 @@ public abstract class StrainSkill extends Skill {
 
     private double currentSectionPeak, currentSectionEnd;
 
-    private final List<Double> strainPeaks = new ArrayList<>();
-    protected final List<Double> ObjectStrains = new ArrayList<>();
+    private final DoubleList strainPeaks = new DoubleList();
+    protected final DoubleList ObjectStrains = new DoubleList(1024);
 
     protected StrainSkill() { //normally would have mods
         super();
@@ -53,8 +50,8 @@ public abstract class StrainSkill extends Skill {
             return ObjectStrains.size();
 
         double sum = 0;
-        for (double d : ObjectStrains) {
-            sum += 1.1 / (1 + Math.exp(-10 * (d / consistentTopStrain - 0.88)));
+        for (int i = 0; i < ObjectStrains.size(); ++i) {
+            sum += 1.1 / (1 + Math.exp(-10 * (ObjectStrains.get(i) / consistentTopStrain - 0.88)));
         }
         return sum;
     }
@@ -71,34 +68,32 @@ public abstract class StrainSkill extends Skill {
 
     protected abstract double CalculateInitialStrain(double time, DifficultyHitObject current);
 
-    public Iterable<Double> GetCurrentStrainPeaks() {
-        List<Double> temp = new ArrayList<>(strainPeaks); //mimic behavior of .append creating a new enumerable instance rather than modifying original
-        temp.add(currentSectionPeak);
-        return temp;
+    private final DoubleList currentPeaks = new DoubleList();
+    /**
+     * @return The saved peaks followed by the current section's peak.
+     * The returned list is overwritten by the next call; callers must not keep it or modify it.
+     */
+    public DoubleList GetCurrentStrainPeaks() {
+        currentPeaks.clear();
+        currentPeaks.addAll(strainPeaks); //Copied so the saved peaks aren't modified by adding the current peak
+        currentPeaks.add(currentSectionPeak);
+        return currentPeaks;
     }
 
-    public Iterable<Double> GetObjectStrains() {
+    public DoubleList GetObjectStrains() {
         return ObjectStrains;
     }
 
-    private final List<Double> temp = new ArrayList<>();
+    private final DoubleList temp = new DoubleList();
     @Override
     public double DifficultyValue() {
-        double difficulty = 0;
-        double weight = 1;
-
         temp.clear();
-        GetCurrentStrainPeaks().forEach((peak)->{
-            if (peak > 0) temp.add(peak);
-        });
-
-        temp.sort((Comparator.<Double>naturalOrder()).reversed());
-
-        for (double strain : temp) {
-            difficulty += strain * weight;
-            weight *= DecayWeight();
+        temp.ensureCapacity(strainPeaks.size() + 1);
+        for (int i = 0; i < strainPeaks.size(); ++i) {
+            if (strainPeaks.get(i) > 0) temp.add(strainPeaks.get(i));
         }
+        if (currentSectionPeak > 0) temp.add(currentSectionPeak);
 
-        return difficulty;
+        return temp.weightedDescendingSum(DecayWeight());
     }
 }
@@ -12,15 +12,21 @@ import org.apache.logging.log4j.Logger;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static alchyr.networking.standard.Message.FILE;
+import static alchyr.networking.standard.Message.FILE_ACCEPT;
+import static alchyr.networking.standard.Message.FILE_CHUNK;
 import static alchyr.networking.standard.Message.UTF;
 
 public class ConnectionClient implements AutoCloseable {
@@ -31,9 +37,42 @@ public class ConnectionClient implements AutoCloseable {
 
     public final List<String> connectionList = new ArrayList<>();
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_REUSED_FRAME = FileTransfer.CHUNK_SIZE * 2;
+    private static final long PASS_TIMEOUT = 45 * 1000;
+    private static final long FILE_ACCEPT_TIMEOUT = 60 * 1000;
+    private static final long FILE_ACCEPT_POLL = 100; //How often the sender thread sends answers to offers while waiting for its own
+    private static final int HANDSHAKE_TIMEOUT = 10 * 1000;
+
+    //Sent by both sides when connecting, before any messages. Change the version whenever the message format changes.
+    private static final int PROTOCOL_MAGIC = 0x54454E43; //TENC
+    private static final int PROTOCOL_VERSION = 2;
+    private static final int HANDSHAKE_SIZE = 8;
+
     private final Socket socket;
     private final DataInputStream in;
     private final DataOutputStream out;
+    private byte[] frameBuffer = new byte[1024]; //Reused for received frames up to MAX_REUSED_FRAME
+
+    //Clients accepted by a ConnectionServer are served by its selector rather than their own threads.
+    private final SocketChannel channel;
+    private final ConnectionSelector selector;
+    private SelectionKey selectionKey;
+    private ByteBuffer readBuffer, writeBuffer;
+    private ByteBuffer pendingFrame = null; //Part of an encoded message that didn't fit in writeBuffer
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    private final FrameEncoder encoder = new FrameEncoder(); //Used only by the sender thread or the selector
+
+    private final FileTransfer transfers = new FileTransfer(this);
+    private volatile FileTransfer.Offer outgoing = null; //File being sent; nothing queued after it is sent until it's done
+    private boolean handshaken = false; //Whether the other side's protocol version has been checked
+
+    //Password check of a client served by a selector
+    private String expectedPass = null;
+    private ConcurrentLinkedQueue<ConnectionClient> validatedClients;
+    private int passTries = 0;
+    private long validationDeadline = 0;
 
     public String failure = null;
 
@@ -43,19 +82,29 @@ public class ConnectionClient implements AutoCloseable {
     private final Thread senderThread;
     private Thread receiverThread;
 
-    public final ConcurrentLinkedQueue<Message> receivedMessages = new ConcurrentLinkedQueue<>(); //Messages received by the "standard" receiverThread are stored here
-    public final ConcurrentLinkedQueue<MessageSender> messageSendQueue = new ConcurrentLinkedQueue<>(); //Messages received by the "standard" receiverThread are stored here
+    public final ConcurrentLinkedQueue<Message> receivedMessages = new ConcurrentLinkedQueue<>(); //Messages received by the "standard" receiver are stored here
+    private final BlockingQueue<MessageSender> messageSendQueue = new LinkedBlockingQueue<>(); //Messages waiting to be encoded and sent
+
+    //A message that can still be added to, such as a batch of changes. Queued when flushed, or before any other message.
+    private final Object heldLock = new Object();
+    private MessageSender held = null;
+    private int heldType = 0;
 
     //Message format:
     /*
+        Each side first sends int PROTOCOL_MAGIC and int PROTOCOL_VERSION, once. The connection is dropped if they don't match.
+
+        int length of the rest of the message, so it can be read without blocking
         a byte signifier of message type
-        message (probably starting with size of message)
+        message
 
         message type bytes in Message class
 
         message formats:
         UTF - just writeUTF and readUTF
-        File - 4 char identifier, file length (long), file name (UTF), file contents (byte data)
+        File (offer) - pass (UTF), transfer id (int), file length (long, -1 if there is no file), file name (UTF), modified time (long)
+        File accept - transfer id (int), offset to send from (long, -1 to decline)
+        File chunk - transfer id (int), offset (long), length (int), CRC32 (int), file contents (byte data)
      */
 
     private static final Map<Integer, Function<Object[], MessageSender>> messageBuilders = new HashMap<>();
@@ -72,130 +121,10 @@ public class ConnectionClient implements AutoCloseable {
             }
         }, (in)->new Message(UTF, in.readUTF()));
 
-        registerMessageType(FILE, (params)->new MessageSender(params) {
-            @Override
-            public void send(DataOutputStream out, Object[] params) throws IOException {
-                out.write(FILE);
-                out.writeUTF(params[0].toString()); //pass
-
-                FileHandle handle = (FileHandle) params[1];
-                if (!handle.exists()) {
-                    out.writeLong(-1L); //file not found, -1 length
-                    out.flush();
-                    return;
-                }
-
-                File file = handle.file();
-                logger.info("Sending file: \"" + file.getName() + "\"");
-
-                long sent = 0, length = file.length();
-
-                if (length > 25000000) { //~25mb limit
-                    out.writeLong(-2L); //file too Big
-                    out.flush();
-                    return;
-                }
-
-                byte[] buffer = new byte[4 * 1024];
-
-                try {
-                    MessageDigest md = MessageDigest.getInstance("MD5");
-
-                    try (FileInputStream fileReader = new FileInputStream(file)) {
-                        DigestInputStream mdFileReader = new DigestInputStream(fileReader, md);
-                        out.writeLong(length);
-                        out.writeUTF(file.getName());
-                        out.flush();
-
-                        int bytes;
-
-                        while ((bytes = mdFileReader.read(buffer)) != -1) {
-                            out.write(buffer, 0, bytes);
-                            sent += bytes;
-                        }
-
-                        logger.info("Finished sending file; sending hash");
-
-                        byte[] digest = md.digest();
-                        out.writeInt(digest.length);
-                        out.write(digest);
-
-                        out.flush();
-                    }
-                    catch (Exception e) {
-                        logger.error("Exception occurred sending file, sending empty data to compensate", e);
-                        Arrays.fill(buffer, (byte) 0);
-                        int amt;
-                        while (sent < length) {
-                            amt = (int) Math.min(length - sent, buffer.length);
-                            out.write(buffer, 0, amt);
-                            sent += amt;
-                        }
-                    }
-                }
-                catch (NoSuchAlgorithmException e) {
-                    throw new RuntimeException("Failed to find algorithm", e);
-                }
-            }
-        }, (in)->{
-            String pass = in.readUTF(); //pass
-            long fileLength = in.readLong();
-
-            if (fileLength == -1) {
-                return new Message(FILE, pass, "No file received", null);
-            }
-            else if (fileLength == -2) {
-                return new Message(FILE, pass, "File too large", null);
-            }
-
-            String filename = in.readUTF();
-
-            try {
-                MessageDigest md = MessageDigest.getInstance("MD5");
-                DigestInputStream mdInputReader = new DigestInputStream(in, md);
-
-                int bytes;
-                List<byte[]> fileData = new ArrayList<>();
-
-                while (fileLength > 0) {
-                    byte[] buffer = new byte[4 * 1024];
-                    bytes = mdInputReader.read(buffer, 0, (int)Math.min(buffer.length, fileLength));
-                    if (bytes == -1) {
-                        break;
-                    }
-
-                    if (bytes < buffer.length) {
-                        byte[] temp = new byte[bytes];
-                        System.arraycopy(buffer, 0, temp, 0, bytes);
-                        //nextBuffer = buffer;
-                        buffer = temp;
-                    }
-
-                    fileData.add(buffer);
-                    fileLength -= bytes;
-                }
-
-                logger.info("Finished receiving file. Checking hash.");
-                byte[] digest = md.digest();
-                int len = in.readInt();
-                byte[] receivedHash = new byte[len];
-                int read = in.read(receivedHash);
-                if (read != len) {
-                    return new Message(FILE, pass, "Failed to verify received file.", null);
-                }
-
-                if (!Arrays.equals(digest, receivedHash)) {
-                    return new Message(FILE, pass, "Hash of received file does not match.", null);
-                }
-
-                logger.info("Verified file successfully.");
+        registerMessageType(FILE, FileTransfer.Offer::new, FileTransfer::readOffer);
 
-                return new Message(FILE, pass, filename, fileData);
-            }
-            catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException("Failed to find algorithm", e);
-            }
-        });
+        registerMessageType(FILE_ACCEPT, FileTransfer.Accept::new, (in)->new Message(FILE_ACCEPT, in.readInt(), in.readLong()));
+        //File chunks are written directly from the file and read directly into one, see FileTransfer
     }
 
     public static void registerMessageType(int identifier, Function<Object[], MessageSender> messageBuilder, MessageReceiver messageReceiver) {
@@ -206,31 +135,43 @@ public class ConnectionClient implements AutoCloseable {
     public ConnectionClient(String name, Socket socket) throws IOException {
         this.name = name;
         this.socket = socket;
+        this.channel = null;
+        this.selector = null;
 
-        in = new DataInputStream(socket.getInputStream());
-        out = new DataOutputStream(socket.getOutputStream());
+        socket.setTcpNoDelay(true); //Queued messages are already written together
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        out.writeInt(PROTOCOL_MAGIC);
+        out.writeInt(PROTOCOL_VERSION);
+        out.flush();
 
-        ConnectionClient o = this;
         senderThread = new Thread(()->{
             try {
-                while (socket.isConnected() && !socket.isClosed()) {
-                    synchronized (o.senderThread) {
-                        o.senderThread.wait(500);
-                    }
-
-                    while (!messageSendQueue.isEmpty()) {
-                        MessageSender msg = messageSendQueue.poll();
+                while (!socket.isClosed()) {
+                    MessageSender msg = messageSendQueue.take();
 
+                    //Write everything that's queued before flushing
+                    do {
+                        ByteBuffer frame;
                         try {
-                            msg.send(out);
+                            frame = encoder.encode(msg);
                         } catch (IOException e) {
-                            logger.error("Exception occurred sending message", e);
+                            logger.error("Exception occurred encoding message", e);
+                            continue;
                         }
-                    }
+                        out.write(frame.array(), frame.position(), frame.remaining());
+
+                        if (msg instanceof FileTransfer.Offer && ((FileTransfer.Offer) msg).isOpen()) {
+                            sendFile((FileTransfer.Offer) msg);
+                        }
+                    } while ((msg = messageSendQueue.poll()) != null);
+                    out.flush();
                 }
                 logger.info("Socket closed, client message sender thread terminating");
             } catch (InterruptedException e) {
                 logger.info("Client message sender thread interrupted");
+            } catch (SocketException e) {
+                logger.info("Socket closed, client message sender thread terminating");
             } catch (Exception e) {
                 logger.error("Exception occurred in client message sender thread", e);
             }
@@ -240,55 +181,226 @@ public class ConnectionClient implements AutoCloseable {
         senderThread.start();
     }
 
+    //A connection accepted by a server, which is read and written by the server's selector.
+    ConnectionClient(String name, SocketChannel channel, ConnectionSelector selector) {
+        this.name = name;
+        this.socket = channel.socket();
+        this.channel = channel;
+        this.selector = selector;
+
+        in = null;
+        out = null;
+        senderThread = null;
+
+        readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        writeBuffer.putInt(PROTOCOL_MAGIC).putInt(PROTOCOL_VERSION); //Written before anything else
+    }
+
     public void send(String msg) {
-        messageSendQueue.add(messageBuilders.get(UTF).apply(new Object[] { msg }));
-        synchronized (senderThread) {
-            senderThread.notify();
-        }
+        send(UTF, msg);
     }
 
     public void send(int identifier, Object... params) {
-        messageSendQueue.add(messageBuilders.get(identifier).apply(params));
-        synchronized (senderThread) {
-            senderThread.notify();
+        MessageSender msg = messageBuilders.get(identifier).apply(params);
+        synchronized (heldLock) {
+            queueHeld();
+            queue(msg);
+        }
+    }
+
+    /**
+     * Adds to a held message instead of sending a new one. The held message is sent when flushHeld is called,
+     * or before any other message is sent, so message order is kept.
+     * @param identifier Type of the message. If a held message of another type exists, it is sent first,
+     *                   and a new one is built with no parameters.
+     * @param addition Adds to the held message.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends MessageSender> void hold(int identifier, Consumer<T> addition) {
+        synchronized (heldLock) {
+            if (held != null && heldType != identifier) {
+                queueHeld();
+            }
+            if (held == null) {
+                held = messageBuilders.get(identifier).apply(new Object[0]);
+                heldType = identifier;
+            }
+            addition.accept((T) held);
+        }
+    }
+
+    public void flushHeld() {
+        synchronized (heldLock) {
+            queueHeld();
+        }
+    }
+
+    private void queueHeld() {
+        if (held != null) {
+            queue(held);
+            held = null;
+        }
+    }
+
+    private void queue(MessageSender msg) {
+        messageSendQueue.add(msg);
+        if (selector != null && writeRequested.compareAndSet(false, true)) {
+            selector.requestWrite(this);
         }
     }
 
+    /**
+     * Sends a file in chunks. Once received, it is a FILE message of pass, file name, and the received File.
+     */
     public void sendFile(String pass, FileHandle file) {
         send(FILE, pass, file);
     }
 
+    //Sender thread side of sending a file, once its offer is written.
+    private void sendFile(FileTransfer.Offer offer) throws IOException, InterruptedException {
+        outgoing = offer;
+        try {
+            out.flush();
+            long deadline = System.currentTimeMillis() + FILE_ACCEPT_TIMEOUT;
+            while (!offer.awaitAccept(FILE_ACCEPT_POLL)) {
+                MessageSender answer;
+                boolean answered = false;
+                while ((answer = pollAnswer()) != null) {
+                    ByteBuffer frame = encoder.encode(answer);
+                    out.write(frame.array(), frame.position(), frame.remaining());
+                    answered = true;
+                }
+                if (answered)
+                    out.flush();
+
+                if (System.currentTimeMillis() > deadline) {
+                    logger.warn("File \"" + offer + "\" was not accepted in time.");
+                    return;
+                }
+            }
+
+            while (!offer.isComplete()) {
+                ByteBuffer header = offer.nextChunkHeader();
+                out.write(header.array(), 0, header.limit());
+                offer.writeChunk(out);
+            }
+            logger.info("Finished sending file \"" + offer + "\".");
+        }
+        finally {
+            outgoing = null;
+            offer.close();
+        }
+    }
+
+    /**
+     * Removes the first queued answer to an offer from the other side, so it can be sent ahead of this side's own offer.
+     * Only called by whatever sends the queue.
+     */
+    private MessageSender pollAnswer() {
+        Iterator<MessageSender> queued = messageSendQueue.iterator();
+        while (queued.hasNext()) {
+            MessageSender msg = queued.next();
+            if (msg instanceof FileTransfer.Accept) {
+                queued.remove();
+                return msg;
+            }
+        }
+        return null;
+    }
+
+    private void acceptTransfer(int id, long offset) {
+        FileTransfer.Offer offer = outgoing;
+        if (offer == null || offer.id != id) {
+            logger.warn("Received acceptance of unknown file transfer.");
+            return;
+        }
+
+        offer.accept(offset);
+        if (selector != null && writeRequested.compareAndSet(false, true)) {
+            selector.requestWrite(this);
+        }
+    }
+
     public Message receiveMessage() throws IOException {
-        int identifier;
-        do {
-            identifier = in.read();
-        } while (identifier == 0);
+        if (in == null)
+            throw new IllegalStateException("Messages of a client served by a selector are received by the selector");
 
-        if (identifier == -1) {
+        Message msg;
+        do {
+            int length;
             try {
-                logger.info("Socket closed while waiting for identifier.");
-                close();
+                length = in.readInt();
             }
-            catch (Exception e) {
-                logger.error("Exception occurred while closing", e);
+            catch (EOFException e) {
+                try {
+                    logger.info("Socket closed while waiting for message.");
+                    close();
+                }
+                catch (Exception ex) {
+                    logger.error("Exception occurred while closing", ex);
+                }
+                return null;
             }
+
+            if (length <= 0 || length > MAX_FRAME_SIZE)
+                throw new IOException("Received invalid message length: " + length);
+
+            byte[] frame = frameBuffer.length >= length ? frameBuffer : new byte[length];
+            if (length <= MAX_REUSED_FRAME)
+                frameBuffer = frame;
+            in.readFully(frame, 0, length);
+            msg = decodeMessage(ByteBuffer.wrap(frame, 0, length));
+        } while (msg == null); //File chunks are handled while decoding
+
+        return msg;
+    }
+
+    /**
+     * @return The decoded message, or null if it was a file chunk, which is written to its file instead.
+     */
+    private Message decodeMessage(ByteBuffer frame) throws IOException {
+        int identifier = frame.get() & 0xFF;
+        if (identifier == FILE_CHUNK) {
+            transfers.receiveChunk(frame);
             return null;
         }
 
         MessageReceiver receiver = messageReceivers.get(identifier);
-
         if (receiver == null) {
             logger.warn("Received unknown message type identifier: 0x" + Integer.toString(identifier, 16));
             return new Message(UTF, "");
         }
 
-        return receiver.receiveMessage(in);
+        byte[] data;
+        int offset = 0, length = frame.remaining();
+        if (frame.hasArray()) {
+            data = frame.array();
+            offset = frame.arrayOffset() + frame.position();
+        }
+        else {
+            data = new byte[length];
+            frame.get(data);
+        }
+        return receiver.receiveMessage(new DataInputStream(new ByteArrayInputStream(data, offset, length)));
     }
 
     public void checkClient(String pass, ConcurrentLinkedQueue<ConnectionClient> incomingClients) {
+        if (selector != null) {
+            logger.info("Waiting for password from client.");
+            expectedPass = pass;
+            validatedClients = incomingClients;
+            passTries = 3;
+            validationDeadline = System.currentTimeMillis() + PASS_TIMEOUT;
+            return;
+        }
+
         if (receiverThread == null || !receiverThread.isAlive()) {
             receiverThread = new Thread(()->{
                 try {
+                    if (!readHandshake())
+                        return;
+
                     logger.info("Waiting for password from client.");
                     String testPass = "";
                     for (int tries = 3; tries > 0; --tries) {
@@ -334,7 +446,7 @@ public class ConnectionClient implements AutoCloseable {
 
             Thread passwordTimeout = new Thread(()->{
                 try {
-                    Thread.sleep(45 * 1000);
+                    Thread.sleep(PASS_TIMEOUT);
                 } catch (InterruptedException e) {
                     logger.error("Exception occurred in password timeout thread", e);
                 }
@@ -357,6 +469,9 @@ public class ConnectionClient implements AutoCloseable {
 
     public boolean waitValidation(String pass) {
         try {
+            if (!readHandshake())
+                return false;
+
             send("$" + name);
             send(pass);
             Message message = receiveMessage();
@@ -375,6 +490,85 @@ public class ConnectionClient implements AutoCloseable {
         return false;
     }
 
+    //Checks the protocol version sent by the other side. Versions too old to send one time out.
+    private boolean readHandshake() throws IOException {
+        if (handshaken)
+            return true;
+
+        int magic, version;
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            magic = in.readInt();
+            version = in.readInt();
+        }
+        catch (SocketTimeoutException | EOFException e) {
+            fail("Incompatible version; no protocol version was received.");
+            return false;
+        }
+        finally {
+            if (!socket.isClosed())
+                socket.setSoTimeout(0);
+        }
+
+        if (!checkHandshake(magic, version))
+            return false;
+        handshaken = true;
+        return true;
+    }
+
+    private boolean checkHandshake(int magic, int version) {
+        if (magic != PROTOCOL_MAGIC) {
+            logger.info("Connection did not start with a protocol version; incompatible version.");
+            fail("Incompatible version.");
+            return false;
+        }
+        if (version != PROTOCOL_VERSION) {
+            logger.info("Incompatible protocol version " + version + ", expected " + PROTOCOL_VERSION);
+            fail("Incompatible version " + version + "; this editor uses version " + PROTOCOL_VERSION + ".");
+            return false;
+        }
+        return true;
+    }
+
+    //Same steps as the password listener thread, for messages received by a selector
+    private void checkPass(Message msg) {
+        if (msg.identifier == UTF) {
+            String text = msg.contents[0].toString();
+            if (text.startsWith("$")) {
+                logger.info("Received client name.");
+                name = text.substring(1);
+                return;
+            }
+
+            if (expectedPass.equals(text)) {
+                logger.info("Client successfully validated.");
+                expectedPass = null;
+                validated = true;
+                validatedClients.add(this);
+                return;
+            }
+            passTries = 0;
+        }
+
+        if (--passTries <= 0) {
+            logger.info("Incorrect password.");
+            fail("Incorrect password.");
+        }
+    }
+
+    void checkTimeouts(long time) {
+        if (!validated && expectedPass != null && time > validationDeadline) {
+            logger.info("Password wait timed out and client not validated, closing");
+            fail("Password wait timed out.");
+            return;
+        }
+
+        FileTransfer.Offer offer = outgoing;
+        if (offer != null && offer.acceptExpired(time, FILE_ACCEPT_TIMEOUT) && writeRequested.compareAndSet(false, true)) {
+            selector.requestWrite(this); //Drops the offer so the rest of the queue is sent
+        }
+    }
+
     private Consumer<ConnectionClient> onDeath = null;
     private void onDeath() {
         Consumer<ConnectionClient> temp = onDeath;
@@ -384,6 +578,10 @@ public class ConnectionClient implements AutoCloseable {
         }
     }
     public void startStandardReceiver() {
+        if (selector != null) {
+            return; //Validated clients of a selector already receive messages normally
+        }
+
         if (receiverThread == null || !receiverThread.isAlive()) {
             receiverThread = new Thread(() -> {
                 try {
@@ -394,16 +592,7 @@ public class ConnectionClient implements AutoCloseable {
                             break;
                         }
 
-                        if (msg.identifier == UTF) {
-                            String text = msg.contents[0].toString();
-                            if (text.startsWith(ConnectionServer.SERVER_MSG)) {
-                                if (processServerMessage(text.substring(5))) {
-                                    continue;
-                                }
-                            }
-                        }
-
-                        receivedMessages.add(msg);
+                        received(msg);
                     }
                 }
                 catch (SocketException | NullPointerException e) {
@@ -425,6 +614,28 @@ public class ConnectionClient implements AutoCloseable {
         }
     }
 
+    private void received(Message msg) {
+        switch (msg.identifier) {
+            case FILE:
+                transfers.receiveOffer(msg);
+                return;
+            case FILE_ACCEPT:
+                acceptTransfer((int) msg.contents[0], (long) msg.contents[1]);
+                return;
+        }
+
+        if (msg.identifier == UTF) {
+            String text = msg.contents[0].toString();
+            if (text.startsWith(ConnectionServer.SERVER_MSG)) {
+                if (processServerMessage(text.substring(5))) {
+                    return;
+                }
+            }
+        }
+
+        receivedMessages.add(msg);
+    }
+
     private boolean processServerMessage(String msg) {
         logger.info("Received server message: " + msg);
         switch (msg.substring(0, 6)) {
@@ -460,20 +671,32 @@ public class ConnectionClient implements AutoCloseable {
     public void close() throws Exception {
         socket.close();
 
+        FileTransfer.Offer offer = outgoing;
+        if (offer != null && selector != null) {
+            outgoing = null;
+            offer.close(); //The sender thread closes its own
+        }
+        transfers.close();
+
         try {
             if (receiverThread != null && receiverThread.isAlive()) {
                 receiverThread.interrupt();
                 receiverThread = null;
             }
+            if (senderThread != null && senderThread.isAlive()) {
+                senderThread.interrupt();
+            }
         }
         catch (Exception ignored) { }
 
         try {
-            out.close();
+            if (out != null)
+                out.close();
         }
         catch (Exception ignored) { }
         try {
-            in.close();
+            if (in != null)
+                in.close();
         }
         catch (Exception ignored) { }
         try {
@@ -484,6 +707,201 @@ public class ConnectionClient implements AutoCloseable {
         }
     }
 
+
+    /* Selector side. These are only called on the selector's thread. */
+
+    void register(SelectionKey key) {
+        selectionKey = key;
+    }
+
+    SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+
+    /**
+     * Reads available data and handles any complete messages.
+     * @return false if the connection was closed by the other side.
+     */
+    boolean readAvailable() throws IOException {
+        if (channel.read(readBuffer) < 0)
+            return false;
+
+        readBuffer.flip();
+        if (!handshaken) {
+            if (readBuffer.remaining() < HANDSHAKE_SIZE) {
+                readBuffer.compact();
+                return true;
+            }
+            if (!checkHandshake(readBuffer.getInt(), readBuffer.getInt())) {
+                readBuffer.clear();
+                return true; //Already closed
+            }
+            handshaken = true;
+        }
+
+        int needed = 0;
+        while (readBuffer.remaining() >= 4 && channel.isOpen()) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length <= 0 || length > MAX_FRAME_SIZE)
+                throw new IOException("Received invalid message length: " + length);
+
+            if (readBuffer.remaining() - 4 < length) {
+                needed = length + 4;
+                break;
+            }
+
+            readBuffer.position(readBuffer.position() + 4);
+            ByteBuffer frame = readBuffer.slice();
+            frame.limit(length);
+            readBuffer.position(readBuffer.position() + length);
+
+            Message msg = decodeMessage(frame);
+            if (msg == null)
+                continue;
+            if (validated) {
+                received(msg);
+            }
+            else if (expectedPass != null) {
+                checkPass(msg);
+            }
+        }
+        readBuffer.compact();
+
+        if (needed > readBuffer.capacity()) {
+            //Message larger than the buffer
+            readBuffer = resize(readBuffer, needed);
+        }
+        else if (needed == 0 && readBuffer.capacity() > BUFFER_SIZE && readBuffer.position() <= BUFFER_SIZE) {
+            readBuffer = resize(readBuffer, BUFFER_SIZE);
+        }
+        return true;
+    }
+
+    private static ByteBuffer resize(ByteBuffer buffer, int capacity) {
+        ByteBuffer resized = ByteBuffer.allocateDirect(capacity);
+        buffer.flip();
+        resized.put(buffer);
+        return resized;
+    }
+
+    /**
+     * Writes queued messages, as many as fit into the buffer at a time, until the channel stops accepting data.
+     * @return true if everything was written.
+     */
+    boolean writeQueued() throws IOException {
+        writeRequested.set(false);
+
+        while (true) {
+            boolean fileData = false;
+            while (writeBuffer.hasRemaining()) {
+                if (pendingFrame == null || !pendingFrame.hasRemaining()) {
+                    FileTransfer.Offer offer = outgoing;
+                    if (offer != null) {
+                        if (!offer.isAccepted()) {
+                            MessageSender answer = pollAnswer();
+                            if (answer != null) {
+                                pendingFrame = encode(answer);
+                                continue;
+                            }
+                            if (offer.acceptExpired(System.currentTimeMillis(), FILE_ACCEPT_TIMEOUT)) {
+                                logger.warn("File \"" + offer + "\" was not accepted in time.");
+                                outgoing = null;
+                                offer.close();
+                                continue;
+                            }
+                            break; //Everything else waits for the file
+                        }
+                        if (offer.isSendingChunk()) {
+                            fileData = true; //Header is written; the data goes after it
+                            break;
+                        }
+                        if (offer.isComplete()) {
+                            logger.info("Finished sending file \"" + offer + "\".");
+                            outgoing = null;
+                            offer.close();
+                            continue;
+                        }
+                        pendingFrame = offer.nextChunkHeader();
+                    }
+                    else {
+                        MessageSender msg = messageSendQueue.poll();
+                        if (msg == null)
+                            break;
+
+                        pendingFrame = encode(msg);
+                        if (pendingFrame == null)
+                            continue;
+                        if (msg instanceof FileTransfer.Offer && ((FileTransfer.Offer) msg).isOpen()) {
+                            outgoing = (FileTransfer.Offer) msg;
+                        }
+                    }
+                }
+
+                int count = Math.min(writeBuffer.remaining(), pendingFrame.remaining());
+                ByteBuffer part = pendingFrame.duplicate();
+                part.limit(part.position() + count);
+                writeBuffer.put(part);
+                pendingFrame.position(pendingFrame.position() + count);
+            }
+
+            writeBuffer.flip();
+            if (!writeBuffer.hasRemaining()) {
+                writeBuffer.clear();
+                if (fileData) {
+                    //Straight from the file to the socket
+                    if (!outgoing.transferChunk(channel))
+                        return false;
+                    continue;
+                }
+                return true;
+            }
+
+            channel.write(writeBuffer);
+            boolean blocked = writeBuffer.hasRemaining();
+            writeBuffer.compact();
+            if (blocked)
+                return false;
+        }
+    }
+
+    //Returns null if the message couldn't be encoded, which is skipped.
+    private ByteBuffer encode(MessageSender msg) {
+        try {
+            return encoder.encode(msg);
+        }
+        catch (IOException e) {
+            logger.error("Exception occurred encoding message", e);
+            return null;
+        }
+    }
+
+    //Encodes messages with their length in front. The returned buffer is only valid until the next message is encoded.
+    private static final class FrameEncoder extends ByteArrayOutputStream {
+        private final DataOutputStream data = new DataOutputStream(this);
+
+        FrameEncoder() {
+            super(1024);
+        }
+
+        ByteBuffer encode(MessageSender msg) throws IOException {
+            if (buf.length > BUFFER_SIZE * 4) {
+                buf = new byte[1024]; //Don't hold on to the space used by a large message
+            }
+            reset();
+
+            data.writeInt(0); //Replaced by the length
+            msg.send(data);
+            data.flush();
+
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
     public boolean isConnected() {
         return socket.isConnected();
     }
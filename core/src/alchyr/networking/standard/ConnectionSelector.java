@@ -0,0 +1,153 @@
+package alchyr.networking.standard;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+//Serves every connection accepted by a server from a single thread, using non-blocking channels.
+class ConnectionSelector implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger("connection selector");
+    private static final long SELECT_TIMEOUT = 1000; //Also the interval of password and file offer timeout checks
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Predicate<ConnectionClient> acceptor; //Returns false to reject a new client
+
+    private final ConcurrentLinkedQueue<ConnectionClient> writeRequests = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    ConnectionSelector(ServerSocketChannel serverChannel, Predicate<ConnectionClient> acceptor) throws IOException {
+        this.serverChannel = serverChannel;
+        this.acceptor = acceptor;
+
+        selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(this::run);
+        thread.setName("Connection Selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //Called from any thread when messages are queued for a client. Writing is done on the selector's thread.
+    void requestWrite(ConnectionClient client) {
+        writeRequests.add(client);
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT);
+
+                ConnectionClient client;
+                while ((client = writeRequests.poll()) != null) {
+                    write(client);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    client = (ConnectionClient) key.attachment();
+                    try {
+                        if (key.isReadable() && !client.readAvailable()) {
+                            logger.info("Connection closed by client: " + client);
+                            disconnect(client);
+                            continue;
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(client);
+                        }
+                    }
+                    catch (Exception e) {
+                        logger.error("Exception occurred serving client " + client + ", disconnecting", e);
+                        disconnect(client);
+                    }
+                }
+
+                long time = System.currentTimeMillis();
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && key.attachment() instanceof ConnectionClient) {
+                        ((ConnectionClient) key.attachment()).checkTimeouts(time);
+                    }
+                }
+            }
+        }
+        catch (ClosedSelectorException e) {
+            logger.info("Selector closed.");
+        }
+        catch (IOException e) {
+            logger.error("Exception occurred in connection selector", e);
+        }
+        logger.info("Connection selector stopped.");
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            logger.info("Received connection attempt.");
+
+            ConnectionClient client = new ConnectionClient("???", channel, this);
+            if (!acceptor.test(client)) {
+                channel.close();
+                continue;
+            }
+
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true); //Queued messages are already written together
+            client.register(channel.register(selector, SelectionKey.OP_READ, client));
+            write(client); //Protocol version
+        }
+    }
+
+    private void write(ConnectionClient client) {
+        SelectionKey key = client.getSelectionKey();
+        if (key == null || !key.isValid())
+            return;
+
+        try {
+            if (client.writeQueued()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            else {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE); //Continue once the channel can take more
+            }
+        }
+        catch (Exception e) {
+            logger.error("Exception occurred sending to client " + client + ", disconnecting", e);
+            disconnect(client);
+        }
+    }
+
+    private void disconnect(ConnectionClient client) {
+        try {
+            client.close();
+        }
+        catch (Exception e) {
+            logger.error("Exception occurred while closing client", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.close();
+    }
+}
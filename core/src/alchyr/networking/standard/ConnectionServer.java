@@ -11,14 +11,14 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import static alchyr.networking.NetworkUtil.getPublicIP;
@@ -31,7 +31,8 @@ public class ConnectionServer implements AutoCloseable {
     public String name;
     private final Color nameRenderingColor = Color.WHITE.cpy();
 
-    private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverChannel;
+    private final ConnectionSelector connectionSelector; //Accepts clients and handles all of their communication
     private final int clientLimit;
 
     private final String hostAddress;
@@ -41,6 +42,7 @@ public class ConnectionServer implements AutoCloseable {
     private final ConcurrentLinkedQueue<ConnectionClient> incomingClients = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<ConnectionClient> deadClients = new ConcurrentLinkedQueue<>();
     private final List<ConnectionClient> clients;
+    private final AtomicInteger clientCount = new AtomicInteger(0); //Size of clients, which is only changed on the main thread, for the selector thread
     private int lowestUnusedID() {
         //clients should always be in sorted order.
         for (int i = 0; i < clients.size(); ++i) {
@@ -51,8 +53,6 @@ public class ConnectionServer implements AutoCloseable {
         return clients.size();
     }
 
-    private Thread clientReceiver;
-
     private ServerMessageHandler messageHandler = null;
     private final Map<String, List<Function<Object[], Boolean>>> eventTriggers = new HashMap<>();
 
@@ -78,52 +78,22 @@ public class ConnectionServer implements AutoCloseable {
         //Temp for local non-port-forwarding test
         //hostAddress = InetAddress.getLocalHost().getHostAddress();
 
-        serverSocket = new ServerSocket(port, 20);
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 20);
         clients = new ArrayList<>();
 
-        clientReceiver = null;
-        tryStartClientReceiver();
+        connectionSelector = new ConnectionSelector(serverChannel, this::acceptClient);
     }
 
-    //Called on initialization and when a client disconnects
-    private void tryStartClientReceiver() {
-        if (clients.size() < clientLimit && (clientReceiver == null || !clientReceiver.isAlive())) {
-            clientReceiver = new Thread(()->{
-                boolean live = true;
-                while (live) {
-                    try {
-                        if (clients.size() + incomingClients.size() >= clientLimit) {
-                            live = false;
-                            return;
-                        }
-
-                        logger.info("Waiting for connection attempt...");
-                        Socket clientSocket = serverSocket.accept();
-
-                        logger.info("Received connection attempt.");
-
-                        if (clients.size() + incomingClients.size() >= clientLimit) {
-                            logger.info("Client limit reached, ignored.");
-                            clientSocket.close();
-                            live = false;
-                            return;
-                        }
-
-                        ConnectionClient tempClient = new ConnectionClient("???", clientSocket);
-                        tempClient.checkClient(pass, incomingClients);
-                    }
-                    catch (SocketException e) {
-                        live = false;
-                        logger.info("Server closed, clientReceiver interrupted");
-                    }
-                    catch (IOException e) {
-                        logger.error("Exception occurred in clientReceiver thread", e);
-                    }
-                }
-            });
-            clientReceiver.setDaemon(true);
-            clientReceiver.start();
+    //Called on the selector's thread when a connection is accepted
+    private boolean acceptClient(ConnectionClient client) {
+        if (clientCount.get() + incomingClients.size() >= clientLimit) {
+            logger.info("Client limit reached, ignored.");
+            return false;
         }
+
+        client.checkClient(pass, incomingClients);
+        return true;
     }
 
     public List<ConnectionClient> getClients() {
@@ -137,6 +107,7 @@ public class ConnectionServer implements AutoCloseable {
                 logger.info("Added client: " + client);
                 client.ID = lowestUnusedID();
                 GeneralUtils.insertSorted(clients, client, (c)->c.ID);
+                clientCount.set(clients.size());
 
                 client.onDeath(deadClients::add);
                 client.startStandardReceiver();
@@ -163,6 +134,7 @@ public class ConnectionServer implements AutoCloseable {
                 dead.add(client.toString());
                 logger.info("Client disconnected, removing: " + client);
                 clients.remove(client);
+                clientCount.set(clients.size());
                 try {
                     client.close();
                 } catch (Exception e) {
@@ -217,9 +189,8 @@ public class ConnectionServer implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
-        if (serverSocket != null) {
-            serverSocket.close();
-        }
+        connectionSelector.close();
+        serverChannel.close();
         try {
             for (ConnectionClient client : clients) {
                 client.close();
@@ -229,7 +200,7 @@ public class ConnectionServer implements AutoCloseable {
     }
 
     public String getConnectionText() {
-        return String.format("%s|%d|%s", hostAddress, serverSocket.getLocalPort(), pass);
+        return String.format("%s|%d|%s", hostAddress, serverChannel.socket().getLocalPort(), pass);
     }
 
     public void setMessageHandler(ServerMessageHandler messageHandler) {
@@ -254,7 +225,7 @@ public class ConnectionServer implements AutoCloseable {
     }
 
     public boolean isAlive() {
-        return !serverSocket.isClosed();
+        return serverChannel.isOpen();
     }
 
     public void renderConnectedNames(TextRenderer textRenderer, SpriteBatch sb, Texture connectedTex, BitmapFont font, float rightX, float opacity) {
@@ -0,0 +1,406 @@
+package alchyr.networking.standard;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static alchyr.networking.standard.Message.FILE;
+import static alchyr.networking.standard.Message.FILE_ACCEPT;
+import static alchyr.networking.standard.Message.FILE_CHUNK;
+
+/**
+ * Files are sent in checksummed chunks.
+ *
+ * The sender first sends an offer with the file's name, length and modified time. The receiver answers with the offset
+ * it wants the file from, which is past any chunks it already has from an earlier, interrupted transfer of the same file.
+ * Nothing else queued after the offer is sent until the file has been sent, so messages stay in order. The exception is
+ * answers to the other side's offers, which are sent while waiting, so two sides offering files at once don't wait on each other.
+ * An offer that isn't answered in time is dropped.
+ *
+ * Received chunks are written directly to a partial file in the transfer directory. Once complete, a FILE message of
+ * pass, file name and the partial file is added to the received messages; the file should be moved to wherever it belongs.
+ * If the transfer fails, the message is pass, reason and null instead.
+ * Partial files that haven't been resumed for a while are deleted.
+ */
+class FileTransfer {
+    private static final Logger logger = LogManager.getLogger("file transfer");
+
+    static File transferDirectory = new File("transfers");
+
+    static final int CHUNK_SIZE = 256 * 1024;
+    //Length, type, transfer id, offset, chunk length, checksum
+    private static final int CHUNK_HEADER_SIZE = 4 + 1 + 4 + 8 + 4 + 4;
+    private static final String PART_EXTENSION = ".part";
+    private static final long STALE_PART_AGE = 24 * 60 * 60 * 1000; //Partial files untouched this long are deleted
+
+    private static final AtomicInteger transferIDs = new AtomicInteger(0);
+    private static final Set<File> activeFiles = new HashSet<>(); //Partial files currently being written
+    private static boolean cleaned = false;
+
+    private final ConnectionClient client;
+    private final Map<Integer, Incoming> incoming = new HashMap<>(); //Only used by the receiving thread
+
+    FileTransfer(ConnectionClient client) {
+        this.client = client;
+    }
+
+    /* Sending */
+
+    //The offer of a file, queued like any other message. Once accepted, the file is read and sent by the same thread.
+    static final class Offer extends MessageSender {
+        final int id = transferIDs.incrementAndGet();
+        private final String pass;
+        private final File file;
+
+        private FileChannel channel = null;
+        private ByteBuffer chunk = null; //Data of the current chunk. Read rather than mapped, so the file isn't held open after the transfer.
+        private long length = 0;
+
+        private long position = -1; //-1 until accepted
+        private long offeredAt = 0;
+        private long chunkEnd = 0; //End of the data of the chunk whose header was last sent
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+        private byte[] copyBuffer = null;
+
+        Offer(Object[] params) {
+            super(params);
+            pass = params[0].toString();
+            file = params[1] instanceof File ? (File) params[1] : ((FileHandle) params[1]).file();
+        }
+
+        @Override
+        public void send(DataOutputStream out, Object[] params) throws IOException {
+            out.write(FILE);
+            out.writeUTF(pass);
+            out.writeInt(id);
+            offeredAt = System.currentTimeMillis();
+
+            if (file.isFile()) {
+                try {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    length = channel.size();
+                }
+                catch (IOException e) {
+                    logger.error("Failed to open file to send: " + file, e);
+                    close();
+                }
+            }
+
+            if (channel == null) {
+                out.writeLong(-1L); //file not found, -1 length
+                return;
+            }
+
+            logger.info("Offering file: \"" + file.getName() + "\"");
+            out.writeLong(length);
+            out.writeUTF(file.getName());
+            out.writeLong(file.lastModified());
+        }
+
+        //Whether the file was opened, and the receiver will answer the offer.
+        boolean isOpen() {
+            return channel != null;
+        }
+
+        synchronized void accept(long offset) {
+            position = offset < 0 ? length : Math.min(offset - offset % CHUNK_SIZE, length);
+            chunkEnd = position;
+            if (offset > 0 && position < length)
+                logger.info("Resuming transfer of \"" + file.getName() + "\" from " + position + " bytes.");
+            notifyAll();
+        }
+
+        synchronized boolean awaitAccept(long timeout) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeout;
+            while (position < 0) {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                wait(remaining);
+            }
+            return true;
+        }
+
+        synchronized boolean isAccepted() {
+            return position >= 0;
+        }
+
+        synchronized boolean acceptExpired(long time, long timeout) {
+            return position < 0 && time - offeredAt > timeout;
+        }
+
+        boolean isSendingChunk() {
+            return position < chunkEnd;
+        }
+
+        boolean isComplete() {
+            return position >= length;
+        }
+
+        /**
+         * Starts the next chunk.
+         * @return The header of the chunk, including its frame length. The chunk's data should be sent immediately after.
+         */
+        ByteBuffer nextChunkHeader() throws IOException {
+            int count = (int) Math.min(CHUNK_SIZE, length - position);
+
+            readChunk(position, count);
+            crc.reset();
+            crc.update(chunk.duplicate());
+
+            header.clear();
+            header.putInt(CHUNK_HEADER_SIZE - 4 + count);
+            header.put((byte) FILE_CHUNK);
+            header.putInt(id);
+            header.putLong(position);
+            header.putInt(count);
+            header.putInt((int) crc.getValue());
+            header.flip();
+
+            chunkEnd = position + count;
+            return header;
+        }
+
+        private void readChunk(long start, int count) throws IOException {
+            if (chunk == null)
+                chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            ((Buffer) chunk).clear();
+            ((Buffer) chunk).limit(count);
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, start + chunk.position()) < 0)
+                    throw new EOFException("File ended early: " + file.getName());
+            }
+            ((Buffer) chunk).flip();
+        }
+
+        /**
+         * Sends the data of the current chunk directly from the file to the target.
+         * @return false if the target couldn't take all of it.
+         */
+        boolean transferChunk(WritableByteChannel target) throws IOException {
+            while (position < chunkEnd) {
+                long sent = channel.transferTo(position, chunkEnd - position, target);
+                if (sent <= 0)
+                    return false;
+                position += sent;
+            }
+            return true;
+        }
+
+        //For streams, which can't be written to directly.
+        void writeChunk(OutputStream out) throws IOException {
+            int count = (int) (chunkEnd - position);
+            if (copyBuffer == null)
+                copyBuffer = new byte[CHUNK_SIZE];
+            chunk.duplicate().get(copyBuffer, 0, count);
+            out.write(copyBuffer, 0, count);
+            position = chunkEnd;
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                }
+                catch (IOException ignored) { }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file.getName();
+        }
+    }
+
+    //The answer to an offer; the offset to send from, or -1 to decline.
+    static final class Accept extends MessageSender {
+        Accept(Object[] params) {
+            super(params);
+        }
+
+        @Override
+        public void send(DataOutputStream out, Object[] params) throws IOException {
+            out.write(FILE_ACCEPT);
+            out.writeInt((int) params[0]);
+            out.writeLong((long) params[1]);
+        }
+    }
+
+    /* Receiving */
+
+    private static final class Incoming {
+        final String pass, name;
+        final long length;
+        final File file;
+        final FileChannel channel;
+        long position;
+
+        Incoming(int id, String pass, String name, long length, long modified) throws IOException {
+            this.pass = pass;
+            this.name = name;
+            this.length = length;
+
+            //The same file from the same sender gets the same partial file, so an interrupted transfer can be resumed.
+            if (!transferDirectory.isDirectory() && !transferDirectory.mkdirs())
+                throw new IOException("Failed to create transfer directory");
+            String base = String.format("%08x-%d", (name + '|' + modified).hashCode(), length);
+            synchronized (activeFiles) {
+                if (!cleaned) {
+                    cleaned = true;
+                    deleteStaleParts();
+                }
+
+                File part = new File(transferDirectory, base + PART_EXTENSION);
+                if (activeFiles.contains(part)) //Same file received by another connection at the same time
+                    part = new File(transferDirectory, base + "-" + id + PART_EXTENSION);
+                activeFiles.add(part);
+                file = part;
+            }
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            catch (IOException e) {
+                release();
+                throw e;
+            }
+
+            //Chunks are only written once verified, so everything up to the last whole chunk is good.
+            position = Math.min(length, channel.size() - channel.size() % CHUNK_SIZE);
+            channel.truncate(position);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            }
+            catch (IOException ignored) { }
+            release();
+        }
+
+        private void release() {
+            synchronized (activeFiles) {
+                activeFiles.remove(file);
+            }
+        }
+    }
+
+    //Removes partial files of transfers that were never resumed. Only called while holding activeFiles.
+    private static void deleteStaleParts() {
+        File[] parts = transferDirectory.listFiles((dir, name)->name.endsWith(PART_EXTENSION));
+        if (parts == null)
+            return;
+
+        long time = System.currentTimeMillis();
+        for (File part : parts) {
+            if (!activeFiles.contains(part) && time - part.lastModified() > STALE_PART_AGE) {
+                if (part.delete())
+                    logger.info("Deleted stale partial file " + part.getName());
+            }
+        }
+    }
+
+    //Answers an offer received from the other side.
+    void receiveOffer(Message offer) {
+        String pass = offer.contents[0].toString();
+        int id = (int) offer.contents[1];
+        long length = (long) offer.contents[2];
+
+        if (length < 0) {
+            client.receivedMessages.add(new Message(FILE, pass, "No file received", null));
+            return;
+        }
+
+        String name = offer.contents[3].toString();
+        Incoming transfer;
+        try {
+            transfer = new Incoming(id, pass, name, length, (long) offer.contents[4]);
+        }
+        catch (IOException e) {
+            logger.error("Failed to prepare to receive file", e);
+            client.send(FILE_ACCEPT, id, -1L);
+            client.receivedMessages.add(new Message(FILE, pass, "Failed to write received file.", null));
+            return;
+        }
+
+        if (transfer.position > 0)
+            logger.info("Resuming transfer of \"" + name + "\" from " + transfer.position + " bytes.");
+        client.send(FILE_ACCEPT, id, transfer.position);
+
+        if (transfer.position >= length) {
+            complete(transfer);
+            return;
+        }
+        incoming.put(id, transfer);
+    }
+
+    /**
+     * Verifies and writes a chunk.
+     * @param frame The chunk message, after its type.
+     */
+    void receiveChunk(ByteBuffer frame) throws IOException {
+        int id = frame.getInt();
+        long offset = frame.getLong();
+        int count = frame.getInt();
+        int checksum = frame.getInt();
+
+        Incoming transfer = incoming.get(id);
+        if (transfer == null)
+            return; //Transfer failed or unknown; remaining chunks are ignored
+
+        CRC32 crc = new CRC32();
+        crc.update(frame.duplicate());
+        if (count != frame.remaining() || offset != transfer.position || (int) crc.getValue() != checksum) {
+            logger.warn("Chunk of \"" + transfer.name + "\" at " + offset + " failed verification.");
+            incoming.remove(id);
+            transfer.close(); //Verified chunks are kept for another attempt
+            client.receivedMessages.add(new Message(FILE, transfer.pass, "Received file failed verification.", null));
+            return;
+        }
+
+        while (frame.hasRemaining()) {
+            transfer.position += transfer.channel.write(frame, transfer.position);
+        }
+
+        if (transfer.position >= transfer.length) {
+            incoming.remove(id);
+            complete(transfer);
+        }
+    }
+
+    private void complete(Incoming transfer) {
+        transfer.close();
+        logger.info("Finished receiving file \"" + transfer.name + "\".");
+        client.receivedMessages.add(new Message(FILE, transfer.pass, transfer.name, transfer.file));
+    }
+
+    static Message readOffer(DataInputStream in) throws IOException {
+        String pass = in.readUTF();
+        int id = in.readInt();
+        long length = in.readLong();
+        if (length < 0) {
+            return new Message(FILE, pass, id, length);
+        }
+        return new Message(FILE, pass, id, length, in.readUTF(), in.readLong());
+    }
+
+    void close() {
+        for (Incoming transfer : incoming.values()) {
+            transfer.close();
+        }
+        incoming.clear();
+    }
+}
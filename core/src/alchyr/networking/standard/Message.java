@@ -3,6 +3,8 @@ package alchyr.networking.standard;
 public class Message {
     public static final int UTF = 0x01;
     public static final int FILE = 0x02;
+    public static final int FILE_ACCEPT = 0x03;
+    public static final int FILE_CHUNK = 0x04;
 
     public static Message EMPTY = new Message(UTF, "");
 
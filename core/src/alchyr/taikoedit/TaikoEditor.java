@@ -9,6 +9,7 @@ import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.layers.EditorLoadingLayer;
 import alchyr.taikoedit.core.layers.LoadingLayer;
 import alchyr.taikoedit.core.layers.MenuLayer;
+import alchyr.taikoedit.core.input.WakingInputMultiplexer;
 import alchyr.taikoedit.core.layers.sub.SvFunctionLayer;
 import alchyr.taikoedit.core.ui.CursorHoverText;
 import alchyr.taikoedit.editor.changes.MapChange;
@@ -17,13 +18,16 @@ import alchyr.taikoedit.editor.maps.Mapset;
 import alchyr.taikoedit.management.*;
 import alchyr.taikoedit.management.assets.skins.Skins;
 import alchyr.taikoedit.util.EventWindowListener;
+import alchyr.taikoedit.util.Profiler;
 import alchyr.taikoedit.util.RunningAverage;
 import alchyr.taikoedit.util.Sync;
 import alchyr.taikoedit.util.TextRenderer;
+import alchyr.taikoedit.util.UpdateScheduler;
 import alchyr.taikoedit.util.interfaces.functional.VoidMethod;
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.Input;
 import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.backends.lwjgl3.audio.DeviceSwapping;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
@@ -100,12 +104,16 @@ public class TaikoEditor extends ApplicationAdapter implements EventWindowListen
     private int updateCount = 0;
 
     private static final ReentrantLock layerLock = new ReentrantLock();
+    private final ArrayList<ProgramLayer> renderingLayers = new ArrayList<>(); //Layers can change while rendering without the lock
 
     int renderLayer = 0;
 
     private final boolean useFastMenu;
 
     private static final Sync sync = new Sync();
+    private static final UpdateScheduler scheduler = new UpdateScheduler();
+    private static final float INPUT_ACTIVE_TIME = 1.0f; //Updates stay at full rate this long after input, for anything it starts
+    private static final long IDLE_WAIT = 1000 / 24; //Longest time between updates while idle
 
     public TaikoEditor(int width, int height, int targetFps, boolean borderless, boolean fastMenu, String directOpen) {
         if (targetFps > 0) {
@@ -150,7 +158,7 @@ public class TaikoEditor extends ApplicationAdapter implements EventWindowListen
         textRenderer = new TextRenderer();
 
         //set up input
-        input = new InputMultiplexer();
+        input = new WakingInputMultiplexer(()->scheduler.wake(INPUT_ACTIVE_TIME));
         Gdx.input.setInputProcessor(input);
 
         //A U D I O
@@ -231,16 +239,26 @@ public class TaikoEditor extends ApplicationAdapter implements EventWindowListen
 
                 double time;
                 float elapsed;
+                boolean active = true;
                 while (!end) {
-                    sync.sync(paused ? 24 : 480, paused ? 25 : 2);
+                    if (paused)
+                        sync.sync(24, 25);
+                    else if (active || scheduler.isActive())
+                        sync.sync(480, 2);
+                    else
+                        scheduler.idle(IDLE_WAIT); //Until input or other work arrives
 
                     layerLock.lock();
 
+                    long start = Profiler.start();
                     time = getTime();
                     elapsed = (float)(time - lastTime);
                     music.update(time - lastTime);
                     updateLayers();
                     renderLayer = gameUpdate(elapsed);
+                    Profiler.update.end(start);
+                    //Music and held input need constant updates; the held check also catches drags and holds that don't send events
+                    active = music.isPlaying() || Gdx.input.isTouched() || Gdx.input.isKeyPressed(Input.Keys.ANY_KEY);
                     layerLock.unlock();
 
                     DeviceSwapping.updateActiveDevice(elapsed);
@@ -268,7 +286,7 @@ public class TaikoEditor extends ApplicationAdapter implements EventWindowListen
                         if (EditorLayer.activeEditor != null) {
                             crashlog.append("\n\nActive editor detected.\n");
                             try {
-                                if (EditorLayer.activeEditor.saveAll(false)) {
+                                if (EditorLayer.activeEditor.saveAllNow(false)) {
                                     crashlog.append("Saved map successfully.\n");
                                 }
                                 else {
@@ -354,27 +372,37 @@ public class TaikoEditor extends ApplicationAdapter implements EventWindowListen
         }*/
 
         layerLock.lock();
+        long frameStart = Profiler.start();
         updateCount = 0;
 
+        long start = Profiler.start();
         VoidMethod m;
         while (!actionQueue.isEmpty()) {
             m = actionQueue.poll();
             if (m != null)
                 m.run();
         }
+        Profiler.mainQueue.end(start);
 
         TextRenderer.swapLayouts();
         //assetMaster must be updated on main thread.
         //Give it more time to load if none/only loadinglayers are rendered.
-        if (gameRender(renderLayer)) {
+        start = Profiler.start();
+        boolean onlyLoading = gameRender(renderLayer);
+        Profiler.render.end(start);
+
+        start = Profiler.start();
+        if (onlyLoading) {
             assetMaster.longUpdate(paused ? 168 : 84); //has to be updated on the main thread
         }
         else {
             assetMaster.fastUpdate(); //has to be updated on the main thread
         }
+        Profiler.assets.end(start);
         disposeLayers();
         TextRenderer.swapLayouts();
 
+        Profiler.frame.end(frameStart);
         layerLock.unlock();
     }
 
@@ -429,14 +457,17 @@ public class TaikoEditor extends ApplicationAdapter implements EventWindowListen
         {
             sb.begin();
 
-            for (; renderIndex < layers.size(); ++renderIndex)
+            renderingLayers.clear();
+            renderingLayers.addAll(layers.subList(Math.min(renderIndex, layers.size()), layers.size()));
+            for (ProgramLayer layer : renderingLayers)
             {
-                if (!(layers.get(renderIndex) instanceof LoadingLayer))
+                if (!(layer instanceof LoadingLayer))
                     onlyLoading = false;
-                layers.get(renderIndex).render(sb, sr); //, elapsed);
+                layer.render(sb, sr); //, elapsed);
             }
 
             hoverText.render(sb, sr);
+            Profiler.render(sb);
 
             /*if (textRenderer.hasFont())
                 textRenderer.renderText(sb, String.valueOf(1 / fpsLimitTracker.avg()), 30, 30, Color.WHITE);*/
@@ -518,6 +549,33 @@ public class TaikoEditor extends ApplicationAdapter implements EventWindowListen
 
     public static void onMain(VoidMethod later) {
         actionQueue.add(later);
+        scheduler.wake(0); //Whatever queued this likely has results for the update thread
+    }
+
+    /**
+     * Keeps the update thread running at its full rate for at least the given time, for animations.
+     * The update thread otherwise only updates at a low rate unless there is input or music is playing.
+     */
+    public static void keepUpdating(float seconds) {
+        scheduler.keepActive(seconds);
+    }
+
+    /**
+     * Releases the layer lock while rendering something that doesn't depend on it, allowing the update thread to continue.
+     * Should only be called while rendering, and only for rendering from state the update thread won't change, like published snapshots.
+     */
+    public static void renderUnlocked(VoidMethod render) {
+        int holdCount = layerLock.getHoldCount();
+        for (int i = 0; i < holdCount; ++i)
+            layerLock.unlock();
+
+        try {
+            render.run();
+        }
+        finally {
+            for (int i = 0; i < holdCount; ++i)
+                layerLock.lock();
+        }
     }
 
     //Should only be called from contexts that have already acquired the layer lock
@@ -0,0 +1,332 @@
+package alchyr.taikoedit.audio;
+
+import alchyr.taikoedit.management.SettingsMaster;
+import com.badlogic.gdx.Gdx;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+/**
+ * Disk cache of decoded audio. Each entry holds the pcm data, frame index and waveform of one audio file.
+ * Entries are read whole into a direct buffer through a FileChannel, so no file is left open or mapped once loaded.
+ *
+ * Entries are named by a hash of the audio file's size, modified time and the start of its contents, which is quick to
+ * compute even for long songs. An index of path, size and modified time to hash avoids reading files that haven't
+ * changed since they were last seen.
+ * The total size of the cache is limited by SettingsMaster.audioCacheSize; the least recently used entries are removed first.
+ */
+public class AudioCache {
+    private static final int MAGIC = 0x54454143; //TEAC
+    private static final int VERSION = 1;
+    private static final int HASHED_BYTES = 1 << 20; //Only the start of a file's contents is hashed
+    private static final String EXTENSION = ".pcm";
+    private static final String INDEX_FILE = "index.txt";
+
+    public static final class Entry {
+        public final int channels, sampleRate;
+        public final PcmStore pcm;
+        public final Waveform waveform; //May be null
+
+        Entry(int channels, int sampleRate, PcmStore pcm, Waveform waveform) {
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.pcm = pcm;
+            this.waveform = waveform;
+        }
+    }
+
+    private static final class IndexEntry {
+        final long size, modified;
+        final String hash;
+
+        IndexEntry(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    private static Map<String, IndexEntry> index = null;
+
+    private static File directory() {
+        return Gdx.files.local("cache/audio").file();
+    }
+
+    private static boolean enabled() {
+        return SettingsMaster.audioCacheSize > 0;
+    }
+
+    /**
+     * @return The cached audio for the given file, or null if there is none.
+     */
+    public static Entry load(File source) {
+        if (!enabled() || !source.isFile())
+            return null;
+
+        try {
+            String hash = hash(source);
+            File entryFile = new File(directory(), hash + EXTENSION);
+            if (!entryFile.isFile())
+                return null;
+
+            Entry entry = read(entryFile, source.length());
+            if (entry != null) {
+                entryFile.setLastModified(System.currentTimeMillis()); //Most recently used
+                editorLogger.info("Loaded cached audio for " + source.getName());
+            }
+            return entry;
+        }
+        catch (Exception e) {
+            editorLogger.error("Failed to load cached audio for " + source.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes an entry for the given file on a separate thread. The pcm store and waveform should not be modified afterwards.
+     * @param waveform Only stored if complete. May be null.
+     */
+    public static void save(File source, int channels, int sampleRate, PcmStore pcm, Waveform waveform) {
+        if (!enabled() || !source.isFile())
+            return;
+
+        ByteBuffer contents = pcm.contents();
+        if (contents.remaining() > SettingsMaster.audioCacheSize * 1024L * 1024L)
+            return;
+
+        Thread writer = new Thread(()->{
+            try {
+                String hash = hash(source);
+                File dir = directory();
+                if (!dir.isDirectory() && !dir.mkdirs())
+                    return;
+
+                File entryFile = new File(dir, hash + EXTENSION);
+                if (entryFile.isFile())
+                    return;
+
+                File temp = new File(dir, hash + ".tmp");
+                write(temp, source.length(), channels, sampleRate, pcm, contents, waveform != null && waveform.isComplete() ? waveform : null);
+                Files.move(temp.toPath(), entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                evict();
+            }
+            catch (Exception e) {
+                editorLogger.error("Failed to cache audio for " + source.getName(), e);
+            }
+        });
+        writer.setName("Audio Cache Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    /* Entry format (big endian)
+     * int magic, int version, long source size, int channels, int sample rate
+     * int frame count, int[frame count + 1] frame offsets, float[frame count + 1] frame times
+     * int waveform length (0 if there is no waveform), int peak, then for each level, its packed min/max values
+     * int pcm size, pcm data
+     */
+    private static void write(File file, long sourceSize, int channels, int sampleRate, PcmStore pcm, ByteBuffer contents, Waveform waveform) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceSize);
+            out.writeInt(channels);
+            out.writeInt(sampleRate);
+
+            int frameCount = pcm.getFrameCount();
+            int[] offsets = pcm.getFrameOffsets();
+            float[] times = pcm.getFrameTimes();
+            out.writeInt(frameCount);
+            for (int i = 0; i <= frameCount; ++i)
+                out.writeInt(offsets[i]);
+            for (int i = 0; i <= frameCount; ++i)
+                out.writeFloat(times[i]);
+
+            if (waveform == null) {
+                out.writeInt(0);
+                out.writeInt(1);
+            }
+            else {
+                int length = waveform.getLength();
+                out.writeInt(length);
+                out.writeInt(waveform.getPeak());
+                for (int level = 0; level < Waveform.BUCKET_SIZES.length; ++level) {
+                    short[] values = waveform.getLevel(level);
+                    int count = Waveform.levelLength(length, level) * 2;
+                    for (int i = 0; i < count; ++i)
+                        out.writeShort(values[i]);
+                }
+            }
+
+            out.writeInt(contents.remaining());
+            byte[] buffer = new byte[1 << 16];
+            while (contents.hasRemaining()) {
+                int count = Math.min(buffer.length, contents.remaining());
+                contents.get(buffer, 0, count);
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    private static Entry read(File file, long sourceSize) throws IOException {
+        ByteBuffer contents;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE)
+                return null;
+
+            contents = ByteBuffer.allocateDirect((int) length); //Big endian, like the file
+            while (contents.hasRemaining()) {
+                if (channel.read(contents) < 0)
+                    return null;
+            }
+            contents.flip();
+        }
+
+        if (contents.getInt() != MAGIC || contents.getInt() != VERSION || contents.getLong() != sourceSize)
+            return null;
+        int channels = contents.getInt();
+        int sampleRate = contents.getInt();
+
+        int frameCount = contents.getInt();
+        int[] offsets = new int[frameCount + 1];
+        float[] times = new float[frameCount + 1];
+        contents.asIntBuffer().get(offsets);
+        contents.position(contents.position() + offsets.length * 4);
+        contents.asFloatBuffer().get(times);
+        contents.position(contents.position() + times.length * 4);
+
+        Waveform waveform = null;
+        int length = contents.getInt();
+        int peak = contents.getInt();
+        if (length > 0) {
+            short[][] levels = new short[Waveform.BUCKET_SIZES.length][];
+            for (int level = 0; level < levels.length; ++level) {
+                levels[level] = new short[Waveform.levelLength(length, level) * 2];
+                contents.asShortBuffer().get(levels[level]);
+                contents.position(contents.position() + levels[level].length * 2);
+            }
+            waveform = new Waveform(levels, length, peak);
+        }
+
+        int size = contents.getInt();
+        ByteBuffer data = contents.slice().order(ByteOrder.nativeOrder());
+        data.limit(size);
+
+        return new Entry(channels, sampleRate, new PcmStore(channels, sampleRate, data, offsets, times), waveform);
+    }
+
+    //Removes the least recently used entries until the cache is within its size limit.
+    private static synchronized void evict() {
+        File[] entries = directory().listFiles((dir, name)->name.endsWith(EXTENSION));
+        if (entries == null)
+            return;
+
+        long limit = SettingsMaster.audioCacheSize * 1024L * 1024L;
+        long total = 0;
+        for (File entry : entries)
+            total += entry.length();
+        if (total <= limit)
+            return;
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (total <= limit)
+                break;
+            long size = entry.length();
+            if (entry.delete())
+                total -= size;
+        }
+
+        File dir = directory();
+        if (index().values().removeIf((known)->!new File(dir, known.hash + EXTENSION).isFile()))
+            saveIndex();
+    }
+
+
+    /**
+     * @return The hash identifying the file, from the index if the file hasn't changed.
+     */
+    private static String hash(File source) throws Exception {
+        String path = source.getCanonicalPath();
+        long size = source.length(), modified = source.lastModified();
+
+        synchronized (AudioCache.class) {
+            IndexEntry known = index().get(path);
+            if (known != null && known.size == size && known.modified == modified)
+                return known.hash;
+        }
+
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update((size + "\t" + modified + "\t").getBytes(StandardCharsets.UTF_8));
+        try (InputStream in = new FileInputStream(source)) {
+            byte[] buffer = new byte[1 << 16];
+            int remaining = HASHED_BYTES, count;
+            while (remaining > 0 && (count = in.read(buffer, 0, Math.min(buffer.length, remaining))) > 0) {
+                md.update(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : md.digest())
+            hash.append(String.format("%02x", b));
+
+        synchronized (AudioCache.class) {
+            index().put(path, new IndexEntry(size, modified, hash.toString()));
+            saveIndex();
+        }
+        return hash.toString();
+    }
+
+    //Index lines are hash, size, modified time and path, separated by tabs.
+    private static Map<String, IndexEntry> index() {
+        if (index == null) {
+            index = new HashMap<>();
+            File file = new File(directory(), INDEX_FILE);
+            if (file.isFile()) {
+                try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] parts = line.split("\t", 4);
+                        if (parts.length == 4)
+                            index.put(parts[3], new IndexEntry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+                    }
+                }
+                catch (Exception e) {
+                    editorLogger.error("Failed to read audio cache index", e);
+                    index.clear();
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void saveIndex() {
+        File dir = directory();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            return;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(new File(dir, INDEX_FILE).toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                IndexEntry value = entry.getValue();
+                writer.write(value.hash + "\t" + value.size + "\t" + value.modified + "\t" + entry.getKey());
+                writer.newLine();
+            }
+        }
+        catch (IOException e) {
+            editorLogger.error("Failed to save audio cache index", e);
+        }
+    }
+}
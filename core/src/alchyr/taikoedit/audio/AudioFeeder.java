@@ -0,0 +1,64 @@
+package alchyr.taikoedit.audio;
+
+import alchyr.taikoedit.util.Profiler;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+/**
+ * Refills the OpenAL buffers of music on its own high priority thread, so a long update or render tick can't starve playback.
+ * Music is only fed while it is playing; with nothing playing, the thread waits without waking.
+ */
+public class AudioFeeder {
+    private static final long FEED_INTERVAL = 5000000L; //ns. Far shorter than the audio in each buffer.
+
+    private static final CopyOnWriteArrayList<CustomAudio> tracks = new CopyOnWriteArrayList<>();
+    private static Thread feeder = null;
+
+    public static synchronized void add(CustomAudio track) {
+        tracks.addIfAbsent(track);
+
+        if (feeder == null) {
+            feeder = new Thread(AudioFeeder::run);
+            feeder.setName("Audio Feeder");
+            feeder.setDaemon(true);
+            feeder.setPriority(Thread.MAX_PRIORITY);
+            feeder.start();
+        }
+        else {
+            LockSupport.unpark(feeder);
+        }
+    }
+
+    public static void remove(CustomAudio track) {
+        tracks.remove(track);
+    }
+
+    public static boolean isFeederThread() {
+        return feeder != null && Thread.currentThread() == feeder;
+    }
+
+    private static void run() {
+        while (true) {
+            if (tracks.isEmpty()) {
+                LockSupport.park(AudioFeeder.class);
+                continue;
+            }
+
+            long start = Profiler.start();
+            for (CustomAudio track : tracks) {
+                try {
+                    track.feed();
+                }
+                catch (Exception e) {
+                    editorLogger.error("Error while feeding audio.", e);
+                }
+            }
+            Profiler.audio.end(start);
+
+            LockSupport.parkNanos(AudioFeeder.class, FEED_INTERVAL);
+        }
+    }
+}
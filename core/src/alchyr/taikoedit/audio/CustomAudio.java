@@ -18,9 +18,12 @@ import java.lang.reflect.Method;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 import static org.lwjgl.openal.AL10.*;
@@ -58,8 +61,8 @@ public abstract class CustomAudio extends OpenALMusic {
     protected static final int bufferSize = 4096 * 4;
     protected static final int bufferCount = 4;
     protected static final int bytesPerSample = 2;
-    protected static final byte[] tempBytes = new byte[bufferSize];
-    protected static final ByteBuffer tempBuffer = BufferUtils.createByteBuffer(bufferSize);
+    protected final byte[] tempBytes = new byte[bufferSize];
+    protected final ByteBuffer tempBuffer = BufferUtils.createByteBuffer(bufferSize);
 
     //For access
     protected OpenALLwjgl3Audio audio;
@@ -71,7 +74,7 @@ public abstract class CustomAudio extends OpenALMusic {
     protected IntBuffer buffers;
     protected int sourceID = -1;
     protected int format, sampleRate;
-    protected boolean isPlaying;
+    protected volatile boolean isPlaying;
     protected float volume = SettingsMaster.getMusicVolume();
     protected float pan = 0;
     protected float renderedSeconds, maxSecondsPerBuffer;
@@ -79,6 +82,19 @@ public abstract class CustomAudio extends OpenALMusic {
     protected boolean stoppedAtEnd = false; //For restarting from beginning if playing from end
 
     protected Music.OnCompletionListener onCompletionListener;
+    protected HitsoundMixer hitsounds = null;
+    protected TimeStretcher stretcher = null; //Keeps pitch when tempo isn't 1. Only exists while it isn't
+    private boolean canStretch = false; //Only 16 bit audio can be stretched
+
+    //Buffers are refilled by the AudioFeeder. Held while feeding, and by anything else that touches the source or buffers.
+    private final ReentrantLock feedLock = new ReentrantLock();
+    //Position as of the last feed without snapOffset, when it was read, and whether it was advancing.
+    //Only written under feedLock. The sequence is odd while writing; readers retry if it was odd or changed.
+    private volatile int positionSequence = 0;
+    private volatile double playedPosition = 0;
+    private volatile long playedAt = 0;
+    private volatile boolean playedAdvancing = false;
+    private static final double MAX_EXTRAPOLATION = 0.25; //Seconds; more than this since the last feed means the feeder is stuck
 
 
     public boolean hasNoDevice;
@@ -102,25 +118,75 @@ public abstract class CustomAudio extends OpenALMusic {
 
     public abstract void preload();
 
+    public void setHitsoundMixer(HitsoundMixer hitsounds) {
+        this.hitsounds = hitsounds;
+    }
+
+    /**
+     * @return Whether hitsounds can be mixed into this audio as it plays.
+     */
+    public boolean canMixHitsounds() {
+        return hitsounds != null && sourceID != -1 && (format == AL_FORMAT_MONO16 || format == AL_FORMAT_STEREO16);
+    }
+
+    /**
+     * @return The amount of the song queued ahead of the current position when all buffers are full, in seconds.
+     */
+    public float getBufferedSeconds() {
+        return bufferCount * maxSecondsPerBuffer * (isStretched() ? tempo : 1);
+    }
+
+    /**
+     * @return Whether this only streams part of the audio, rather than having all of it loaded.
+     */
+    public boolean isPreview() {
+        return false;
+    }
+
+    /**
+     * @return The position playback starts from when initialized, which is where reset returns to.
+     */
+    protected float startPosition() {
+        return 0;
+    }
+
     public void stop() {
         if (hasNoDevice) return;
-        if (sourceID == -1) return;
+        feedLock.lock();
         try {
+            if (sourceID == -1) return;
             freeSource.invoke(audio, sourceID);
             TaikoEditor.audioMaster.removeMusic(this);
-            reset();
+            AudioFeeder.remove(this);
+            if (stretcher != null) {
+                stretcher.stop(this::reset);
+            }
+            else {
+                reset();
+            }
             sourceID = -1;
             isPlaying = false;
+            publishPosition();
         } catch (IllegalAccessException | InvocationTargetException e) {
             e.printStackTrace();
+        } finally {
+            feedLock.unlock();
         }
     }
 
     public void pause() {
         if (hasNoDevice) return;
-        if (sourceID != -1) alSourcePause(sourceID);
-        isPlaying = false;
-        snapOffset = 0;
+        feedLock.lock();
+        try {
+            if (sourceID != -1) alSourcePause(sourceID);
+            AudioFeeder.remove(this); //Nothing to refill while paused
+            isPlaying = false;
+            snapOffset = 0;
+            publishPosition();
+        }
+        finally {
+            feedLock.unlock();
+        }
     }
 
     public boolean isPlaying() {
@@ -157,79 +223,89 @@ public abstract class CustomAudio extends OpenALMusic {
 
     public void setPosition(float position, boolean continuePlay) {
         if (hasNoDevice) return;
-        if (sourceID == -1) return;
-
-        boolean wasPlaying = isPlaying && continuePlay;
-        isPlaying = false;
-        stoppedAtEnd = false;
-
-        //update = false;
-
-        alSourceStop(sourceID);
-        alSourcei(sourceID, AL_BUFFER, 0); //Detach all buffers
-
-        renderedSecondsQueue.clear();
-        ((Buffer) buffers).clear();
-        buffers.put(bufferIDs); //Ensure buffer IDs are always the same 4
-        buffers.rewind();
+        feedLock.lock();
+        try {
+            if (sourceID == -1) return;
 
-        /*
-        Original method: move forward until the target position is within the next buffer to be read
-        while (renderedSeconds < (position - maxSecondsPerBuffer)) {
-            int length = read(tempBytes);
-            if (length <= 0) {
-                break;
-            }
-            renderedSeconds += maxSecondsPerBuffer * (float)length / (float)bufferSize; //Calculate the number of seconds this buffer has IGNORING tempo
-        }*/
+            boolean wasPlaying = isPlaying && continuePlay;
+            isPlaying = false;
+            if (!wasPlaying)
+                AudioFeeder.remove(this);
+            stoppedAtEnd = false;
+
+            //update = false;
+
+            alSourceStop(sourceID);
+            alSourcei(sourceID, AL_BUFFER, 0); //Detach all buffers
+
+            renderedSecondsQueue.clear();
+            if (hitsounds != null) hitsounds.reset();
+            ((Buffer) buffers).clear();
+            buffers.put(bufferIDs); //Ensure buffer IDs are always the same 4
+            buffers.rewind();
+
+            /*
+            Original method: move forward until the target position is within the next buffer to be read
+            while (renderedSeconds < (position - maxSecondsPerBuffer)) {
+                int length = read(tempBytes);
+                if (length <= 0) {
+                    break;
+                }
+                renderedSeconds += maxSecondsPerBuffer * (float)length / (float)bufferSize; //Calculate the number of seconds this buffer has IGNORING tempo
+            }*/
 
-        //New method: Move to the closest frame with custom method
-        renderedSeconds = seekTime(position);
-        renderedSecondsQueue.add(renderedSeconds);
+            //New method: Move to the closest frame with custom method
+            renderedSeconds = stretcher == null ? seekTime(position) : (float) stretcher.seek(()->seekTime(position));
+            renderedSecondsQueue.add(renderedSeconds);
 
 
-        boolean filled = false;
+            boolean filled = false;
 
-        activeBuffers.clear();
+            activeBuffers.clear();
 
-        int i = 0;
-        for (; i < bufferCount; i++) {
-            int bufferID = buffers.get(i);
-            if (!fill(bufferID)) break;
-            filled = true;
-            alSourceQueueBuffers(sourceID, bufferID); //Queue buffers as far as possible
-        }
-        for (; i < bufferCount; i++) {
-            int bufferID = buffers.get(i);
-            empty(bufferID);
-            alSourceQueueBuffers(sourceID, bufferID);
-        }
+            int i = 0;
+            for (; i < bufferCount; i++) {
+                int bufferID = buffers.get(i);
+                if (!fill(bufferID)) break;
+                filled = true;
+                alSourceQueueBuffers(sourceID, bufferID); //Queue buffers as far as possible
+            }
+            for (; i < bufferCount; i++) {
+                int bufferID = buffers.get(i);
+                empty(bufferID);
+                alSourceQueueBuffers(sourceID, bufferID);
+            }
 
 
-        if (!filled) { //if NO buffers were filled. This is fine.
-            snapOffset = position - renderedSeconds;
-            if (renderedSeconds + snapOffset > getLength() + maxSecondsPerBuffer)
-            {
-                snapOffset = getLength() + maxSecondsPerBuffer - renderedSeconds;
+            if (!filled) { //if NO buffers were filled. This is fine.
+                snapOffset = position - renderedSeconds;
+                if (renderedSeconds + snapOffset > getLength() + maxSecondsPerBuffer)
+                {
+                    snapOffset = getLength() + maxSecondsPerBuffer - renderedSeconds;
+                }
+                stoppedAtEnd = true;
+                if (onCompletionListener != null) onCompletionListener.onCompletion(this);
             }
-            stoppedAtEnd = true;
-            if (onCompletionListener != null) onCompletionListener.onCompletion(this);
-        }
-        else
-        {
-            snapOffset = position - renderedSeconds;
+            else
+            {
+                snapOffset = position - renderedSeconds;
 
-            renderedSecondsQueue.pop();
+                renderedSecondsQueue.pop();
 
-            alSourcef(sourceID, AL11.AL_SEC_OFFSET, snapOffset);
+                alSourcef(sourceID, AL11.AL_SEC_OFFSET, snapOffset / tempo); //Offset is in time played, rather than time in the song
 
-            if (wasPlaying) {
-                alSourcePlay(sourceID);
-                isPlaying = true;
-                snapOffset = 0;
+                if (wasPlaying) {
+                    alSourcePlay(sourceID);
+                    isPlaying = true;
+                    snapOffset = 0;
 
-                //update = true;
+                    //update = true;
+                }
             }
+            publishPosition();
+        }
+        finally {
+            feedLock.unlock();
         }
     }
 
@@ -270,88 +346,127 @@ public abstract class CustomAudio extends OpenALMusic {
 
         this.sampleRate = sampleRate;
         this.maxSecondsPerBuffer = (float)bufferSize / ((bitDepth >> 3) * channels * sampleRate);
+
+        canStretch = bitDepth == 16;
+        updateStretcher();
+    }
+
+    //Creates the stretcher when tempo isn't 1, and stops it when it is, so unchanged audio doesn't keep a worker thread.
+    private void updateStretcher() {
+        boolean stretch = canStretch && tempo != 1;
+        if (stretcher != null && !stretch) {
+            stretcher.stop(()->{}); //Waits for the worker to stop reading the source
+            stretcher.dispose();
+            stretcher = null;
+        }
+        else if (stretcher == null && stretch) {
+            stretcher = new TimeStretcher(this::read, getChannels(), sampleRate);
+        }
+
+        if (stretcher != null)
+            stretcher.setTempo(tempo);
     }
 
     @Override
     public void play() {
         if (hasNoDevice) return;
-        if (sourceID == -1) {
-            if (!initialize(0))
-                return;
-        }
+        feedLock.lock();
+        try {
+            if (sourceID == -1) {
+                if (!initialize(0))
+                    return;
+            }
 
-        if (!isPlaying) {
-            if (stoppedAtEnd)
-            {
-                setPosition(0, false);
+            if (!isPlaying) {
+                if (stoppedAtEnd)
+                {
+                    setPosition(0, false);
+                }
+                alSourcePlay(sourceID);
+                isPlaying = true;
+                AudioFeeder.add(this);
+                //update = true;
+                snapOffset = 0;
             }
-            alSourcePlay(sourceID);
-            isPlaying = true;
-            //update = true;
-            snapOffset = 0;
+            publishPosition();
+        }
+        finally {
+            feedLock.unlock();
         }
     }
 
     public boolean initialize(float offset)
     {
-        if (sourceID == -1) {
-            try
-            {
-                if (buffers == null) {
-                    int errorCode = alGetError(); //Clear any existing errors
-                    buffers = BufferUtils.createIntBuffer(bufferCount);
-                    alGenBuffers(buffers);
-                    errorCode = alGetError();
-                    if (errorCode != AL_NO_ERROR)
-                    {
-                        buffers = null;
-                        throw new GdxRuntimeException("Unable to allocate audio buffers. AL Error: " + errorCode);
-                    }
-
-                    //Track buffers
-                    for (int i = 0; i < bufferCount; ++i)
-                    {
-                        bufferIDs[i] = buffers.get(i);
+        feedLock.lock();
+        try {
+            if (sourceID == -1) {
+                try
+                {
+                    if (buffers == null) {
+                        int errorCode = alGetError(); //Clear any existing errors
+                        buffers = BufferUtils.createIntBuffer(bufferCount);
+                        alGenBuffers(buffers);
+                        errorCode = alGetError();
+                        if (errorCode != AL_NO_ERROR)
+                        {
+                            buffers = null;
+                            throw new GdxRuntimeException("Unable to allocate audio buffers. AL Error: " + errorCode);
+                        }
+
+                        //Track buffers
+                        for (int i = 0; i < bufferCount; ++i)
+                        {
+                            bufferIDs[i] = buffers.get(i);
+                        }
+                        ((Buffer) buffers).clear(); //helps if gradle is using wrong jdk... but you really shouldn't. Just use 8.
+                        buffers.put(bufferIDs);
+                        buffers.rewind();
                     }
-                    ((Buffer) buffers).clear(); //helps if gradle is using wrong jdk... but you really shouldn't. Just use 8.
-                    buffers.put(bufferIDs);
-                    buffers.rewind();
-                }
 
-                sourceID = (int) obtainSource.invoke(audio, true);
-                if (sourceID == -1) return false;
+                    sourceID = (int) obtainSource.invoke(audio, true);
+                    if (sourceID == -1) return false;
 
-                alSourcei(sourceID, AL_DIRECT_CHANNELS_SOFT, AL_TRUE);
-                alSourcei(sourceID, AL_LOOPING, AL_FALSE);
-                setPan(pan, volume);
+                    alSourcei(sourceID, AL_DIRECT_CHANNELS_SOFT, AL_TRUE);
+                    alSourcei(sourceID, AL_LOOPING, AL_FALSE);
+                    setPan(pan, volume);
 
-                boolean filled = false; // Check if there's anything to actually play.
+                    boolean filled = false; // Check if there's anything to actually play.
 
-                activeBuffers.clear();
+                    activeBuffers.clear();
+                    renderedSecondsQueue.clear();
+                    if (hitsounds != null) hitsounds.reset();
+                    renderedSeconds = stretcher == null ? startPosition() : (float) stretcher.seek(this::startPosition);
+                    renderedSecondsQueue.add(renderedSeconds);
+
+                    for (int i = 0; i < bufferCount; i++) { //Fill and queue buffers until there is nothing left to queue or no more buffers
+                        int bufferID = buffers.get(i);
+                        if (!fill(bufferID)) break;
+                        filled = true;
+                        alSourceQueueBuffers(sourceID, bufferID);
+                    }
+                    renderedSecondsQueue.pop(); //Buffer times are now relative to the start position
+                    if (!filled && onCompletionListener != null) onCompletionListener.onCompletion(this);
 
-                for (int i = 0; i < bufferCount; i++) { //Fill and queue buffers until there is nothing left to queue or no more buffers
-                    int bufferID = buffers.get(i);
-                    if (!fill(bufferID)) break;
-                    filled = true;
-                    alSourceQueueBuffers(sourceID, bufferID);
+                    if (alGetError() != AL_NO_ERROR) {
+                        stop();
+                        return false;
+                    }
                 }
-                if (!filled && onCompletionListener != null) onCompletionListener.onCompletion(this);
-
-                if (alGetError() != AL_NO_ERROR) {
-                    stop();
+                catch (IllegalAccessException | InvocationTargetException e) {
+                    e.printStackTrace();
                     return false;
                 }
-            }
-            catch (IllegalAccessException | InvocationTargetException e) {
-                e.printStackTrace();
-                return false;
-            }
 
-            //Successfully initialized
-            TaikoEditor.audioMaster.addMusic(this);
-            snapOffset = -offset; //Ensure starting position is at 0 to compensate for offset
+                //Successfully initialized
+                TaikoEditor.audioMaster.addMusic(this);
+                snapOffset = -offset; //Ensure starting position is at 0 to compensate for offset
+                publishPosition();
+            }
+            return true;
+        }
+        finally {
+            feedLock.unlock();
         }
-        return true;
     }
 
 
@@ -362,9 +477,16 @@ public abstract class CustomAudio extends OpenALMusic {
 
     public void changeTempo(float newTempo, float position)
     {
-        tempo = newTempo;
+        feedLock.lock();
+        try {
+            tempo = newTempo;
+            updateStretcher();
 
-        setPosition(position);
+            setPosition(position);
+        }
+        finally {
+            feedLock.unlock();
+        }
     }
 
     public void stopAtEnd () {
@@ -374,6 +496,34 @@ public abstract class CustomAudio extends OpenALMusic {
 
     @Override
     public void update () {
+        //Buffers are refilled by the AudioFeeder instead, so they don't depend on the render thread keeping up.
+    }
+
+    //Called on the AudioFeeder thread. Skipped if the source is being changed, as it'll be filled by whatever is changing it.
+    void feed() {
+        if (!feedLock.tryLock()) return;
+        try {
+            updateBuffers();
+            publishPosition();
+        }
+        finally {
+            feedLock.unlock();
+        }
+    }
+
+    private void publishPosition() {
+        double position = 0;
+        if (!hasNoDevice && sourceID != -1)
+            position = renderedSeconds + alGetSourcef(sourceID, AL11.AL_SEC_OFFSET) * (double) tempo;
+        int sequence = positionSequence;
+        positionSequence = sequence + 1;
+        playedPosition = position;
+        playedAt = System.nanoTime();
+        playedAdvancing = isPlaying && sourceID != -1;
+        positionSequence = sequence + 2;
+    }
+
+    private void updateBuffers() {
         if (hasNoDevice) return;
         if (sourceID == -1) return;
         //if (!update) return;
@@ -446,48 +596,103 @@ public abstract class CustomAudio extends OpenALMusic {
 
     private boolean fill (int bufferID) {
         tempBuffer.clear();
-        int length = read(tempBytes);
+        boolean stretched = isStretched();
+        int length = stretched ? stretcher.read(tempBuffer) : read(tempBuffer);
         if (length <= 0) {
             return false;
         }
         float previousLoadedSeconds = renderedSecondsQueue.size > 0 ? renderedSecondsQueue.first() : 0;
         float currentBufferSeconds = maxSecondsPerBuffer * (float)length / (float)bufferSize; //Calculate the number of seconds this buffer has IGNORING tempo
+        if (stretched)
+            currentBufferSeconds *= tempo; //Stretched audio covers more or less of the song than its length
         renderedSecondsQueue.insert(0, previousLoadedSeconds + currentBufferSeconds); //When this buffer is removed in update, time will be updated to the new calculated value.
 
-        if (length > tempBuffer.remaining()) {
-            TaikoEditor.editorLogger.error("temp audio buffer not enough space. Needed: " + length + " Remaining: " + tempBuffer.remaining());
-        }
-        else {
-            tempBuffer.put(tempBytes, 0, length).flip();
-            alBufferData(bufferID, format, tempBuffer, (int) (sampleRate * tempo));
+        if (canMixHitsounds() && volume > 0) {
+            int playbackRate = getPlaybackRate();
+            hitsounds.mix(tempBuffer, length, getChannels(), playbackRate, (double) tempo / playbackRate, previousLoadedSeconds,
+                    SettingsMaster.effectVolume / volume); //Source gain also applies to the hitsounds
         }
 
+        ((Buffer) tempBuffer).flip();
+        alBufferData(bufferID, format, tempBuffer, getPlaybackRate());
+
         return true;
     }
+
+    //Whether audio passes through the time stretcher, rather than being played faster or slower.
+    private boolean isStretched() {
+        return stretcher != null;
+    }
+
+    //Sample rate buffers are played at.
+    private int getPlaybackRate() {
+        return isStretched() ? sampleRate : (int) (sampleRate * tempo);
+    }
+
+    /**
+     * Reads audio data directly into the buffer, up to its remaining space.
+     * By default, goes through read(byte[]); audio kept in a PcmStore copies into the buffer without the extra copy.
+     * @return The number of bytes read.
+     */
+    protected int read(ByteBuffer buffer) {
+        int length = read(tempBytes);
+        if (length <= 0)
+            return length;
+
+        if (length > buffer.remaining()) {
+            TaikoEditor.editorLogger.error("temp audio buffer not enough space. Needed: " + length + " Remaining: " + buffer.remaining());
+            length = buffer.remaining();
+        }
+        buffer.put(tempBytes, 0, length);
+        return length;
+    }
     private void empty (int bufferID) {
         tempBuffer.clear();
-        alBufferData(bufferID, format, tempBuffer, (int) (sampleRate * tempo));
+        alBufferData(bufferID, format, tempBuffer, getPlaybackRate());
     }
 
     public void dispose () {
-        stop();
-        if (hasNoDevice) return;
-        if (buffers == null) return;
-        alDeleteBuffers(buffers);
-        buffers = null;
-        onCompletionListener = null;
+        feedLock.lock();
+        try {
+            stop();
+            if (stretcher != null) {
+                stretcher.dispose();
+                stretcher = null;
+            }
+            if (hasNoDevice) return;
+            if (buffers == null) return;
+            alDeleteBuffers(buffers);
+            buffers = null;
+            onCompletionListener = null;
+        }
+        finally {
+            feedLock.unlock();
+        }
     }
 
     @Override
     public float getPosition () {
-        if (hasNoDevice) return 0;
-        if (sourceID == -1) return 0;
-        return (renderedSeconds + snapOffset + alGetSourcef(sourceID, AL11.AL_SEC_OFFSET) * tempo);
+        return (float) getPrecisePosition();
     }
+    //Position published by the last feed, moved forward by the time since while playing, so it can be read without waiting for the feeder.
     public double getPrecisePosition() {
         if (hasNoDevice) return 0;
         if (sourceID == -1) return 0;
-        return ((double) renderedSeconds + snapOffset + alGetSourcef(sourceID, AL11.AL_SEC_OFFSET) * (double) tempo);
+
+        double position;
+        long at;
+        boolean advancing;
+        int sequence;
+        do {
+            sequence = positionSequence;
+            position = playedPosition;
+            at = playedAt;
+            advancing = playedAdvancing;
+        } while ((sequence & 1) != 0 || sequence != positionSequence);
+
+        if (advancing)
+            position += Math.min((System.nanoTime() - at) / 1e9, MAX_EXTRAPOLATION) * tempo;
+        return position + snapOffset;
     }
 
     public int getChannels () {
@@ -512,9 +717,82 @@ public abstract class CustomAudio extends OpenALMusic {
     protected abstract Iterator<byte[]> audioData();
 
     private boolean generatingWaveform = false;
-    private Waveform waveform = null;
+    private volatile Waveform waveform = null;
+    private boolean streamingWaveform = false;
+    private final List<Consumer<Waveform>> waveformReceivers = new ArrayList<>();
+    private final List<Consumer<Throwable>> waveformFailureReceivers = new ArrayList<>();
+
+    /**
+     * Called before preloading by audio that builds its waveform while decoding (see streamWaveform).
+     * Waveform requests made before the waveform is created wait for it instead of decoding the audio a second time.
+     */
+    protected synchronized void startWaveformStream() {
+        if (waveform == null)
+            streamingWaveform = true;
+    }
+
+    /**
+     * Creates the waveform that will be filled as audio data is decoded, and passes it to any waiting requests.
+     * Receivers get the waveform before it is complete; it can be drawn while it is filled.
+     */
+    protected Waveform streamWaveform(int channels, int sampleRate) {
+        Waveform waveform = new Waveform(sampleRate / 1000.0, channels, 0);
+        provideWaveform(waveform);
+        return waveform;
+    }
+
+    /**
+     * Sets the waveform of this audio and passes it to any waiting requests.
+     */
+    protected void provideWaveform(Waveform waveform) {
+        List<Consumer<Waveform>> receivers;
+        synchronized (this) {
+            this.waveform = waveform;
+            streamingWaveform = false;
+            receivers = new ArrayList<>(waveformReceivers);
+            waveformReceivers.clear();
+            waveformFailureReceivers.clear();
+        }
+        for (Consumer<Waveform> receiver : receivers)
+            receiver.accept(waveform);
+    }
+
+    /**
+     * @return The waveform, if it has been created. It may not be complete.
+     */
+    protected Waveform getLoadedWaveform() {
+        return waveform;
+    }
+
+    /**
+     * Called once preloading is done. If the waveform was never created, waiting requests fall back to generating it separately.
+     */
+    protected void endWaveformStream() {
+        List<Consumer<Waveform>> receivers;
+        List<Consumer<Throwable>> failureReceivers;
+        synchronized (this) {
+            if (!streamingWaveform)
+                return;
+            streamingWaveform = false;
+            receivers = new ArrayList<>(waveformReceivers);
+            failureReceivers = new ArrayList<>(waveformFailureReceivers);
+            waveformReceivers.clear();
+            waveformFailureReceivers.clear();
+        }
+        for (int i = 0; i < receivers.size(); ++i)
+            getWaveform(receivers.get(i), failureReceivers.get(i));
+    }
+
     public void getWaveform(Consumer<Waveform> receiver, Consumer<Throwable> failureReceiver)
     {
+        synchronized (this) {
+            if (streamingWaveform) {
+                waveformReceivers.add(receiver);
+                waveformFailureReceivers.add(failureReceiver);
+                return;
+            }
+        }
+
         if (waveform != null) {
             receiver.accept(waveform);
             return;
@@ -0,0 +1,239 @@
+package alchyr.taikoedit.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mixes hitsounds into music as its buffers are filled, so each one starts on the exact sample of its object instead of
+ * whenever the update thread passes it.
+ *
+ * Hitsounds are scheduled ahead of time by music position, and started when the buffer containing that position is filled.
+ * Everything used while mixing is allocated up front; scheduling and mixing allocate nothing.
+ * All methods are synchronized, as hitsounds are scheduled on the update thread while buffers can be filled on another.
+ */
+public class HitsoundMixer {
+    private static final int MAX_PENDING = 256;
+    private static final int MAX_VOICES = 32;
+    private static final double LATE_LIMIT = 0.05; //Seconds a hitsound can be scheduled too late and still be played, immediately
+    private static final float FADE_RECOVERY = 50; //Matches AudioMaster's fade for sounds played in quick succession
+    private static final float FADE_MULTIPLIER = 0.6f;
+
+    //Pending hitsounds
+    private final Sample[] pendingSamples = new Sample[MAX_PENDING];
+    private final double[] pendingTimes = new double[MAX_PENDING];
+    private final float[] pendingVolumes = new float[MAX_PENDING];
+    private int pendingCount = 0;
+
+    //Hitsounds being played
+    private final Sample[] voiceSamples = new Sample[MAX_VOICES];
+    private final double[] voicePositions = new double[MAX_VOICES]; //In frames of the sample
+    private final float[] voiceGains = new float[MAX_VOICES];
+    private final int[] voiceDelays = new int[MAX_VOICES]; //Frames into the current buffer before the voice starts
+    private int voiceCount = 0;
+
+    private double lastStart = Double.NEGATIVE_INFINITY;
+    private float fade = 1;
+
+    private double mixedUntil = Double.NEGATIVE_INFINITY; //Music position buffers have been mixed up to
+    private double clearedUntil = Double.NEGATIVE_INFINITY; //Where mixing had reached when pending hitsounds were last cleared
+
+    private volatile int generation = 0;
+
+    /**
+     * Schedules a hitsound to start at the given position of the music.
+     * @param time Music position in seconds.
+     * @return Whether it was scheduled. Fails if too many are waiting to be played.
+     */
+    public synchronized boolean schedule(Sample sample, float volume, double time) {
+        if (time < clearedUntil)
+            return true; //Already mixed in before the pending hitsounds were cleared
+        if (pendingCount == MAX_PENDING)
+            return false;
+
+        pendingSamples[pendingCount] = sample;
+        pendingTimes[pendingCount] = time;
+        pendingVolumes[pendingCount] = volume;
+        ++pendingCount;
+        return true;
+    }
+
+    /**
+     * Drops all scheduled and playing hitsounds. Called when the music's position changes.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < pendingCount; ++i)
+            pendingSamples[i] = null;
+        for (int i = 0; i < voiceCount; ++i)
+            voiceSamples[i] = null;
+        pendingCount = 0;
+        voiceCount = 0;
+        lastStart = Double.NEGATIVE_INFINITY;
+        fade = 1;
+        mixedUntil = clearedUntil = Double.NEGATIVE_INFINITY;
+        ++generation;
+    }
+
+    /**
+     * Drops scheduled hitsounds that haven't been mixed in yet, leaving those already playing. Called when the map is edited.
+     * Hitsounds scheduled again for audio that was already mixed are ignored, so they don't play twice.
+     */
+    public synchronized void clearPending() {
+        for (int i = 0; i < pendingCount; ++i)
+            pendingSamples[i] = null;
+        pendingCount = 0;
+        clearedUntil = mixedUntil;
+        ++generation;
+    }
+
+    /**
+     * Changes whenever scheduled hitsounds are dropped, so they can be scheduled again.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Mixes hitsounds into a buffer of 16 bit audio.
+     * @param buffer Buffer with audio from index 0.
+     * @param bytes Length of the audio in the buffer.
+     * @param playbackRate Sample rate the buffer is played at. Hitsounds are resampled to it to keep their original pitch.
+     * @param frameTime Music time covered by each frame of the buffer in seconds.
+     * @param startTime Music position of the start of the buffer in seconds.
+     * @param gain Multiplier for hitsound volume.
+     */
+    public synchronized void mix(ByteBuffer buffer, int bytes, int channels, int playbackRate, double frameTime, double startTime, float gain) {
+        int frames = bytes / (2 * channels);
+        if (frames <= 0)
+            return;
+
+        double endTime = startTime + frames * frameTime;
+        mixedUntil = endTime;
+        for (int i = 0; i < pendingCount; ) {
+            double time = pendingTimes[i];
+            if (time >= endTime) {
+                ++i;
+                continue;
+            }
+
+            if (time >= startTime - LATE_LIMIT)
+                start(pendingSamples[i], pendingVolumes[i] * gain, time, Math.max(0, (int) Math.round((time - startTime) / frameTime)));
+
+            //Remove, replacing with the last
+            --pendingCount;
+            pendingSamples[i] = pendingSamples[pendingCount];
+            pendingTimes[i] = pendingTimes[pendingCount];
+            pendingVolumes[i] = pendingVolumes[pendingCount];
+            pendingSamples[pendingCount] = null;
+        }
+
+        for (int v = 0; v < voiceCount; ) {
+            if (mixVoice(v, buffer, frames, channels, playbackRate)) {
+                ++v;
+            }
+            else {
+                //Finished, replace with the last
+                --voiceCount;
+                voiceSamples[v] = voiceSamples[voiceCount];
+                voicePositions[v] = voicePositions[voiceCount];
+                voiceGains[v] = voiceGains[voiceCount];
+                voiceDelays[v] = voiceDelays[voiceCount];
+                voiceSamples[voiceCount] = null;
+            }
+        }
+    }
+
+    private void start(Sample sample, float volume, double time, int delay) {
+        //Successive sounds close together are quieter
+        fade = Math.min(1, fade + (float) (time - lastStart) * FADE_RECOVERY);
+        lastStart = time;
+        volume *= fade;
+        fade *= FADE_MULTIPLIER;
+        if (volume <= 0)
+            return;
+
+        int v = voiceCount;
+        if (v == MAX_VOICES) {
+            //Replace the voice closest to finishing
+            v = 0;
+            for (int i = 1; i < voiceCount; ++i) {
+                if (voicePositions[i] / voiceSamples[i].frames > voicePositions[v] / voiceSamples[v].frames)
+                    v = i;
+            }
+        }
+        else {
+            ++voiceCount;
+        }
+
+        voiceSamples[v] = sample;
+        voicePositions[v] = 0;
+        voiceGains[v] = volume;
+        voiceDelays[v] = delay;
+    }
+
+    //Returns false once the voice has finished.
+    private boolean mixVoice(int v, ByteBuffer buffer, int frames, int channels, int playbackRate) {
+        Sample sample = voiceSamples[v];
+        short[] data = sample.data;
+        int sampleChannels = sample.channels;
+        double step = (double) sample.sampleRate / playbackRate;
+        double position = voicePositions[v];
+        float gain = voiceGains[v];
+
+        int frame = voiceDelays[v];
+        voiceDelays[v] = 0;
+        if (frame >= frames) {
+            voiceDelays[v] = frame - frames;
+            return true;
+        }
+
+        for (; frame < frames; ++frame) {
+            int index = (int) position;
+            if (index >= sample.frames)
+                break;
+
+            float t = (float) (position - index);
+            int next = Math.min(index + 1, sample.frames - 1);
+
+            int byteIndex = frame * channels * 2;
+            for (int c = 0; c < channels; ++c) {
+                float value;
+                if (channels == 1 && sampleChannels > 1) { //Stereo hitsound into mono music
+                    value = 0;
+                    for (int sc = 0; sc < sampleChannels; ++sc)
+                        value += lerp(data[index * sampleChannels + sc], data[next * sampleChannels + sc], t);
+                    value /= sampleChannels;
+                }
+                else { //A mono hitsound goes into every channel
+                    int sc = Math.min(c, sampleChannels - 1);
+                    value = lerp(data[index * sampleChannels + sc], data[next * sampleChannels + sc], t);
+                }
+
+                int mixed = Math.round(buffer.getShort(byteIndex) + value * gain);
+                buffer.putShort(byteIndex, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mixed)));
+                byteIndex += 2;
+            }
+            position += step;
+        }
+
+        voicePositions[v] = position;
+        return (int) position < sample.frames;
+    }
+
+    private static float lerp(short a, short b, float t) {
+        return a + (b - a) * t;
+    }
+
+    /**
+     * Decoded 16 bit audio of a hitsound, interleaved by channel.
+     */
+    public static class Sample {
+        public final short[] data;
+        public final int channels, sampleRate, frames;
+
+        public Sample(short[] data, int channels, int sampleRate) {
+            this.data = data;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.frames = data.length / channels;
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package alchyr.taikoedit.audio;
 
 import alchyr.taikoedit.audio.mp3.PreloadedMp3;
+import alchyr.taikoedit.audio.mp3.PreviewMp3;
 import alchyr.taikoedit.audio.ogg.PreloadOgg;
+import alchyr.taikoedit.management.SettingsMaster;
+import alchyr.taikoedit.management.assets.skins.SkinProvider;
+import alchyr.taikoedit.management.assets.skins.Skins;
 import alchyr.taikoedit.util.RunningAverage;
 import alchyr.taikoedit.util.TrackedThread;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import static alchyr.taikoedit.TaikoEditor.audioMaster;
 import static alchyr.taikoedit.TaikoEditor.editorLogger;
 
 public class MusicWrapper implements Music.OnCompletionListener {
@@ -52,10 +60,15 @@ public class MusicWrapper implements Music.OnCompletionListener {
 
     private double totalElapsed = 0, baseElapsed = 0;
 
-    private boolean playing = false;
+    private volatile boolean playing = false; //Set on completion, which can happen on the audio feeder thread
 
     private Object lockKey = null;
 
+    //Hitsounds are mixed into the music ahead of time when possible
+    private static final float HITSOUND_LEAD_MARGIN = 0.1f; //Seconds scheduled beyond what is buffered, to cover the time between updates
+    private static final float MAX_HITSOUND_GAIN = 2; //Beyond this, music is too quiet to mix hitsounds into without clipping them
+    private final HitsoundMixer hitsounds = new HitsoundMixer();
+
     public MusicWrapper()
     {
         music = null;
@@ -80,27 +93,48 @@ public class MusicWrapper implements Music.OnCompletionListener {
         return false;
     }
 
-    private final LinkedList<AudioLoadThread> loadingThreads = new LinkedList<>();
+    private final List<AudioLoadThread> loadingThreads = new CopyOnWriteArrayList<>(); //Checked by loading layers on other threads
     public AudioLoadThread loadAsync(String songFile) {
         return loadAsync(songFile, null);
     }
     public AudioLoadThread loadAsync(String songFile, Consumer<TrackedThread> followup) {
+        return startLoad(songFile, null, followup);
+    }
+    /**
+     * Loads only what is needed to play the song from the given time, for previewing it.
+     * An mp3 is decoded as it plays; other formats are fully loaded, then moved to the start time.
+     * A preview has to be fully loaded with loadAsync before it can be edited.
+     *
+     * @param startTime Start time in seconds. Called on the loading thread.
+     */
+    public AudioLoadThread loadPreviewAsync(String songFile, Supplier<Float> startTime, Consumer<TrackedThread> followup) {
+        return startLoad(songFile, startTime, followup);
+    }
+    private AudioLoadThread startLoad(String songFile, Supplier<Float> previewTime, Consumer<TrackedThread> followup) {
         loadingThreads.removeIf((t)->!t.isAlive());
 
         List<AudioLoadThread> old = Collections.emptyList();
         if (!loadingThreads.isEmpty()) {
             for (AudioLoadThread thread : loadingThreads) {
                 thread.cancelled = true;
+                if (thread.preview)
+                    thread.thread.interrupt(); //Previews only skip through the file, so they can stop immediately
             }
             old = new ArrayList<>(loadingThreads);
         }
 
-        AudioLoadThread loadingThread = new AudioLoadThread(this, songFile, old);
+        AudioLoadThread loadingThread = new AudioLoadThread(this, songFile, previewTime, old);
         loadingThread.setFollowup(followup, true);
         loadingThreads.add(loadingThread);
 
         return loadingThread;
     }
+    public boolean isLoading() {
+        for (AudioLoadThread t : loadingThreads)
+            if (t.isAlive())
+                return true;
+        return false;
+    }
     public void cancelAsyncFollowup() {
         for (AudioLoadThread t : loadingThreads)
             t.setFollowup(null, false);
@@ -109,11 +143,13 @@ public class MusicWrapper implements Music.OnCompletionListener {
     public static class AudioLoadThread {
         public boolean cancelled;
         public boolean canIgnore;
+        private final boolean preview;
 
         public final TrackedThread thread;
-        private AudioLoadThread(MusicWrapper music, String songFile, List<AudioLoadThread> old) {
+        private AudioLoadThread(MusicWrapper music, String songFile, Supplier<Float> previewTime, List<AudioLoadThread> old) {
             cancelled = false;
             canIgnore = false;
+            preview = previewTime != null;
             thread = new TrackedThread(()->{
                 FileHandle file = Gdx.files.absolute(songFile);
 
@@ -142,7 +178,8 @@ public class MusicWrapper implements Music.OnCompletionListener {
                     }
 
                     if (file.exists()) {
-                        music.prep();
+                        float startTime = previewTime == null ? 0 : Math.max(0, previewTime.get());
+                        music.prep(preview, startTime);
                         canIgnore = true;
 
                         if (cancelled) {
@@ -163,6 +200,9 @@ public class MusicWrapper implements Music.OnCompletionListener {
                             if (file.equals(music.musicFile))
                                 music.dispose();
                         }
+                        else if (preview && !music.isPreview()) {
+                            music.seekSecond(startTime, false); //No streaming support, so it was fully loaded
+                        }
                     }
                     else {
                         if (file.equals(music.musicFile))
@@ -202,8 +242,12 @@ public class MusicWrapper implements Music.OnCompletionListener {
     public boolean hasMusic() {
         return hasMusic;
     }
+    //Only true if the song is fully loaded, not just a preview.
     public boolean hasMusic(String songFile) {
-        return hasMusic && music != null && music.getFile().equals(Gdx.files.absolute(songFile));
+        return hasMusic && music != null && !music.isPreview() && music.getFile().equals(Gdx.files.absolute(songFile));
+    }
+    public boolean isPreview() {
+        return music != null && music.isPreview();
     }
     public void setMusic(FileHandle handle)
     {
@@ -220,6 +264,10 @@ public class MusicWrapper implements Music.OnCompletionListener {
     }
 
     public void prep()
+    {
+        prep(false, 0);
+    }
+    public void prep(boolean preview, float previewTime)
     {
         if (musicFile != null)
         {
@@ -228,7 +276,10 @@ public class MusicWrapper implements Music.OnCompletionListener {
             {
                 switch (musicFile.extension().toLowerCase(Locale.ROOT)) {
                     case "mp3":
-                        this.music = (PreloadedMp3) Gdx.audio.newMusic(musicFile);
+                        if (preview)
+                            this.music = new PreviewMp3((OpenALLwjgl3Audio) Gdx.audio, musicFile, previewTime);
+                        else
+                            this.music = (PreloadedMp3) Gdx.audio.newMusic(musicFile);
                         music.setOnCompletionListener(this);
                         break;
                     case "ogg":
@@ -247,6 +298,7 @@ public class MusicWrapper implements Music.OnCompletionListener {
                 }
                 else {
                     activeOffset = getBaseOffset(music);
+                    music.setHitsoundMixer(hitsounds);
                 }
             }
             catch (Throwable e)
@@ -310,6 +362,53 @@ public class MusicWrapper implements Music.OnCompletionListener {
         return false;
     }
 
+    /**
+     * @return How far ahead of the current time objects should be passed to playHitsound, in milliseconds.
+     * 0 if hitsounds can't be mixed into the music, in which case they should be played as they are reached.
+     */
+    public long getHitsoundLead() {
+        if (!canMixHitsounds())
+            return 0;
+        return (long) Math.ceil((music.getBufferedSeconds() + HITSOUND_LEAD_MARGIN * Math.max(1, music.tempo)) * 1000);
+    }
+
+    /**
+     * @return A value that changes whenever hitsounds passed to playHitsound ahead of time are dropped, such as when seeking.
+     */
+    public int getHitsoundGeneration() {
+        return hitsounds.getGeneration();
+    }
+
+    /**
+     * Drops hitsounds passed to playHitsound ahead of time that haven't been mixed in yet, so they can be scheduled again
+     * after the map is edited. Changes the hitsound generation.
+     */
+    public void clearScheduledHitsounds() {
+        hitsounds.clearPending();
+    }
+
+    /**
+     * Plays the hitsound of an object. If hitsounds can be mixed into the music, it is mixed in at the object's position.
+     * Otherwise, it is played immediately.
+     *
+     * @param pos Position of the object in milliseconds.
+     */
+    public void playHitsound(String key, float volume, long pos) {
+        HitsoundMixer.Sample sample = audioMaster.getSample(key);
+        if (sample == null || !canMixHitsounds() || !hitsounds.schedule(sample, volume, pos / 1000.0 - activeOffset))
+            audioMaster.playSfx(key, volume, true);
+    }
+
+    //All of the current skin's hitsounds have to be mixable, as they're all scheduled the same distance ahead.
+    private boolean canMixHitsounds() {
+        if (music == null || !music.canMixHitsounds() || SettingsMaster.effectVolume > music.getVolume() * MAX_HITSOUND_GAIN)
+            return false;
+
+        SkinProvider skin = Skins.currentSkin;
+        return skin != null && audioMaster.getSample(skin.sfxDon) != null && audioMaster.getSample(skin.sfxKat) != null
+                && audioMaster.getSample(skin.sfxDonFinish) != null && audioMaster.getSample(skin.sfxKatFinish) != null;
+    }
+
     public boolean isPlaying()
     {
         return playing = music != null && music.isPlaying();
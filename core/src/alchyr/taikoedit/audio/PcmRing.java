@@ -0,0 +1,75 @@
+package alchyr.taikoedit.audio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size ring buffer of 16 bit samples, for passing audio from one producing thread to one consuming thread without locking.
+ * clear may only be called while neither side is in use.
+ */
+public class PcmRing {
+    private final short[] data;
+    private final int mask;
+
+    //Total samples written and read. Only the producer changes writeCount, and only the consumer changes readCount.
+    private final AtomicLong writeCount = new AtomicLong(), readCount = new AtomicLong();
+
+    /**
+     * @param minCapacity Minimum number of samples; rounded up to a power of 2.
+     */
+    public PcmRing(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        data = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public int available() {
+        return (int) (writeCount.get() - readCount.get());
+    }
+
+    public int space() {
+        return data.length - available();
+    }
+
+    /**
+     * Producer. Writes as many samples as there is space for.
+     * @return The number of samples written.
+     */
+    public int write(short[] source, int offset, int length) {
+        long write = writeCount.get();
+        length = Math.min(length, data.length - (int) (write - readCount.get()));
+
+        int start = (int) (write & mask);
+        int first = Math.min(length, data.length - start);
+        System.arraycopy(source, offset, data, start, first);
+        System.arraycopy(source, offset + first, data, 0, length - first);
+
+        writeCount.lazySet(write + length); //Publishes the samples
+        return length;
+    }
+
+    /**
+     * Consumer. Reads up to the given number of samples into the buffer at its position, in the buffer's byte order.
+     * @return The number of samples read.
+     */
+    public int read(ByteBuffer target, int length) {
+        long read = readCount.get();
+        length = Math.min(length, (int) (writeCount.get() - read));
+        length = Math.min(length, target.remaining() / 2);
+
+        for (int i = 0; i < length; ++i)
+            target.putShort(data[(int) ((read + i) & mask)]);
+
+        readCount.lazySet(read + length); //Frees the space
+        return length;
+    }
+
+    public void clear() {
+        readCount.set(0);
+        writeCount.set(0);
+    }
+}
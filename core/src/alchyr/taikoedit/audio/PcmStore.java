@@ -0,0 +1,235 @@
+package alchyr.taikoedit.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+//Decoded 16 bit pcm audio, kept in a single direct buffer outside of the heap.
+//Audio is added one frame (however much the decoder produces at once) at a time, and the start time of each frame is kept for seeking.
+//Filled by the loading thread, then read by the thread playing the audio.
+public class PcmStore {
+    private static final int MIN_CAPACITY = 1 << 20;
+
+    private final double bytesPerSecond;
+
+    private ByteBuffer data;
+    private int size = 0;
+
+    //Frame i covers bytes frameOffsets[i] to frameOffsets[i + 1] and starts at frameTimes[i]. The final entries are the end of the audio.
+    private int[] frameOffsets = new int[1024];
+    private float[] frameTimes = new float[1024];
+    private int frameCount = 0;
+
+    private int position = 0;
+
+    /**
+     * @param expectedBytes Estimated size of the decoded audio, used as the initial capacity. Can be 0.
+     */
+    public PcmStore(int channels, int sampleRate, long expectedBytes) {
+        bytesPerSecond = 2.0 * channels * sampleRate;
+        data = ByteBuffer.allocateDirect((int) Math.max(MIN_CAPACITY, Math.min(expectedBytes, Integer.MAX_VALUE - 8))).order(ByteOrder.nativeOrder());
+    }
+
+    //A complete store of existing data, such as a loaded cache file.
+    PcmStore(int channels, int sampleRate, ByteBuffer data, int[] frameOffsets, float[] frameTimes) {
+        bytesPerSecond = 2.0 * channels * sampleRate;
+        this.data = data;
+        this.size = data.limit();
+        this.frameOffsets = frameOffsets;
+        this.frameTimes = frameTimes;
+        this.frameCount = frameOffsets.length - 1;
+    }
+
+    /**
+     * Adds a frame of audio to the end of the store.
+     */
+    public void add(byte[] frame, int offset, int length) {
+        ensureCapacity(size + length);
+        if (frameCount + 2 > frameOffsets.length) {
+            frameOffsets = Arrays.copyOf(frameOffsets, frameOffsets.length * 2);
+            frameTimes = Arrays.copyOf(frameTimes, frameTimes.length * 2);
+        }
+
+        frameOffsets[frameCount] = size;
+        frameTimes[frameCount] = timeOf(size);
+        ++frameCount;
+
+        data.position(size);
+        data.put(frame, offset, length);
+        size += length;
+
+        frameOffsets[frameCount] = size;
+        frameTimes[frameCount] = timeOf(size);
+    }
+
+    /**
+     * Called once all audio has been added. Releases unused space if the initial estimate was too large.
+     */
+    public void finish() {
+        if (data.capacity() - size > Math.max(MIN_CAPACITY, size >> 3)) {
+            ByteBuffer trimmed = ByteBuffer.allocateDirect(Math.max(size, 1)).order(ByteOrder.nativeOrder());
+            copyInto(trimmed, 0, size);
+            data = trimmed;
+        }
+        frameOffsets = Arrays.copyOf(frameOffsets, frameCount + 1);
+        frameTimes = Arrays.copyOf(frameTimes, frameCount + 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0)
+            throw new IllegalStateException("Decoded audio is too large");
+
+        if (capacity > data.capacity()) {
+            int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity, data.capacity() + (long) (data.capacity() >> 1)));
+            ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity).order(ByteOrder.nativeOrder());
+            copyInto(grown, 0, size);
+            data = grown;
+        }
+    }
+
+    private void copyInto(ByteBuffer target, int start, int length) {
+        ByteBuffer source = data.duplicate();
+        source.limit(start + length).position(start);
+        target.put(source);
+    }
+
+    private float timeOf(int offset) {
+        return (float) (offset / bytesPerSecond);
+    }
+
+
+    /**
+     * Copies audio from the current position into the target buffer, as much as fits.
+     * @return The number of bytes copied. 0 at the end of the audio.
+     */
+    public int read(ByteBuffer target) {
+        int length = Math.min(target.remaining(), size - position);
+        length -= length & 1; //Whole 16 bit values only
+        if (length <= 0)
+            return 0;
+
+        copyInto(target, position, length);
+        position += length;
+        return length;
+    }
+
+    public int read(byte[] target) {
+        return read(target, 0, target.length);
+    }
+
+    public int read(byte[] target, int offset, int length) {
+        length = Math.min(length, size - position);
+        if (length <= 0)
+            return 0;
+
+        ByteBuffer source = data.duplicate();
+        source.position(position);
+        source.get(target, offset, length);
+        position += length;
+        return length;
+    }
+
+    /**
+     * Moves to the start of the frame containing the given time.
+     * @return The start time of that frame, or the length of the audio if the time is past the end.
+     */
+    public float seekTime(float time) {
+        if (frameCount == 0 || time >= frameTimes[frameCount]) {
+            position = size;
+            return getLength();
+        }
+
+        int index = Arrays.binarySearch(frameTimes, 0, frameCount, time);
+        if (index < 0) {
+            index = Math.max(0, -index - 2); //Frame before the insertion point
+        }
+        while (index > 0 && frameTimes[index - 1] == frameTimes[index]) //Empty frames
+            --index;
+
+        position = frameOffsets[index];
+        return frameTimes[index];
+    }
+
+    public void restart() {
+        position = 0;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = Math.max(0, Math.min(size, position));
+    }
+
+    public boolean atEnd() {
+        return position >= size;
+    }
+
+    public float getLength() {
+        return frameCount == 0 ? 0 : frameTimes[frameCount];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    int getFrameCount() {
+        return frameCount;
+    }
+
+    int[] getFrameOffsets() {
+        return frameOffsets;
+    }
+
+    float[] getFrameTimes() {
+        return frameTimes;
+    }
+
+    //Read-only view of the stored audio.
+    ByteBuffer contents() {
+        ByteBuffer contents = data.asReadOnlyBuffer();
+        contents.limit(size).position(0);
+        return contents;
+    }
+
+    /**
+     * Iterates over the stored audio in chunks of at most the given size. Each chunk is a new array.
+     * Independent of the playback position.
+     */
+    public Iterator<byte[]> chunks(int chunkSize) {
+        return new Iterator<byte[]>() {
+            private int offset = 0;
+
+            @Override
+            public boolean hasNext() {
+                return offset < size;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                byte[] chunk = new byte[Math.min(chunkSize, size - offset)];
+                ByteBuffer source = data.duplicate();
+                source.position(offset);
+                source.get(chunk);
+                offset += chunk.length;
+                return chunk;
+            }
+        };
+    }
+
+    /**
+     * Releases the stored audio. The store is empty afterwards.
+     */
+    public void clear() {
+        data = ByteBuffer.allocateDirect(0);
+        size = 0;
+        frameCount = 0;
+        position = 0;
+    }
+}
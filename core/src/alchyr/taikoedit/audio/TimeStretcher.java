@@ -0,0 +1,358 @@
+package alchyr.taikoedit.audio;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Changes the speed of 16 bit audio without changing its pitch, using WSOLA (waveform similarity overlap-add).
+ *
+ * Audio is cut into overlapping windowed segments, which are taken from the source further apart or closer together
+ * than they are placed in the output. Each segment is shifted slightly to where it best lines up with the previous one,
+ * so the overlap doesn't cancel itself out.
+ * Segment centers are placed exactly, so output frame n always corresponds to source frame n * tempo.
+ * At a tempo of 1 the source is passed through unchanged.
+ *
+ * A worker thread keeps a ring of audio filled ahead of playback while the source is in use, from the first seek until stop.
+ * It waits without waking while inactive or once the ring is full, until a seek, read or dispose.
+ * If the ring runs out, the reader stretches the audio itself rather than waiting. Everything is allocated when created.
+ */
+public class TimeStretcher {
+    private static final float SEGMENT_SECONDS = 0.04f; //Length of each overlapped segment
+    private static final float SEEK_SECONDS = 0.012f; //How far a segment can be shifted to line up with the previous one
+    private static final int SEARCH_STEP = 2; //Only every nth shift and sample are compared when lining up segments
+    private static final int READ_FRAMES = 2048; //Frames read from the source at once
+    private static final float RING_SECONDS = 1.0f;
+
+    public interface PcmSource {
+        /**
+         * @return The number of bytes read into the buffer, up to its remaining space. 0 or less at the end.
+         */
+        int read(ByteBuffer buffer);
+    }
+
+    private final PcmSource source;
+    private final int channels;
+    private final int segmentLength, hop, seekRange; //In frames. Segments overlap by half.
+
+    private final float[] window;
+
+    //Source audio around the current segment, and a mono mix of it for lining up segments.
+    private final float[] input, mono;
+    private final int inputCapacity; //Frames
+    private long inputStart; //Source frame of input[0]
+    private int inputFrames;
+    private boolean sourceEnded;
+    private long sourceLength; //Frames, once the source has ended
+    private final ByteBuffer readBuffer;
+
+    private final float[] overlap; //Output being overlapped, one segment long
+    private final short[] output; //One hop of finished output
+    private final PcmRing ring;
+
+    private final ReentrantLock lock = new ReentrantLock(); //Held while stretching, and while the source is moved
+    private float tempo = 1;
+    private double analysisPosition; //Source frame where the next segment would start before shifting
+    private long previousPosition; //Source frame where the previous segment started
+    private boolean firstSegment;
+    private boolean passThrough; //Tempo was 1 when stretching last restarted
+    private int skipOutput; //Leading output frames that come from before the start
+    private volatile boolean ended;
+
+    private volatile boolean active = false, running = true;
+    private final Thread worker;
+
+    public TimeStretcher(PcmSource source, int channels, int sampleRate) {
+        this.source = source;
+        this.channels = channels;
+
+        hop = Math.max(16, Math.round(sampleRate * SEGMENT_SECONDS / 2));
+        segmentLength = hop * 2;
+        seekRange = Math.round(sampleRate * SEEK_SECONDS);
+
+        window = new float[segmentLength];
+        for (int i = 0; i < segmentLength; ++i)
+            window[i] = 0.5f - 0.5f * (float) Math.cos(2 * Math.PI * i / segmentLength); //Periodic Hann, sums to 1 at half overlap
+
+        inputCapacity = 3 * segmentLength + 2 * seekRange + READ_FRAMES;
+        input = new float[inputCapacity * channels];
+        mono = new float[inputCapacity];
+        readBuffer = BufferUtils.createByteBuffer(READ_FRAMES * channels * 2);
+
+        overlap = new float[segmentLength * channels];
+        output = new short[hop * channels];
+        ring = new PcmRing((int) (sampleRate * RING_SECONDS) * channels);
+
+        clear();
+
+        worker = new Thread(this::work);
+        worker.setName("Time Stretch");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MAX_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Sets the speed. Stretched audio that was already made is kept; the source should be moved with seek after this.
+     */
+    public void setTempo(float tempo) {
+        lock.lock();
+        try {
+            this.tempo = tempo;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the source while the worker isn't reading it, and restarts stretching from its new position.
+     * @return The result of the seek.
+     */
+    public double seek(DoubleSupplier seek) {
+        lock.lock();
+        try {
+            double result = seek.getAsDouble();
+            clear();
+            active = true;
+            return result;
+        }
+        finally {
+            lock.unlock();
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Stops the worker from reading the source until the next seek, then resets the source.
+     */
+    public void stop(Runnable reset) {
+        lock.lock();
+        try {
+            active = false;
+            reset.run();
+            clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads stretched audio into the buffer, up to its remaining space.
+     * @return The number of bytes read. 0 at the end.
+     */
+    public int read(ByteBuffer buffer) {
+        int wanted = buffer.remaining() / (2 * channels) * channels;
+
+        while (ring.available() < wanted && !ended) {
+            lock.lock();
+            try {
+                if (!stretch())
+                    break;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        int read = ring.read(buffer, wanted);
+        LockSupport.unpark(worker);
+        return read * 2;
+    }
+
+    public void dispose() {
+        running = false;
+        active = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void work() {
+        while (running) {
+            boolean stretched = false;
+            if (active && !ended && ring.space() >= output.length) {
+                lock.lock();
+                try {
+                    stretched = active && stretch();
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+            if (!stretched)
+                LockSupport.park(this);
+        }
+    }
+
+    private void clear() {
+        ring.clear();
+        sourceEnded = false;
+        sourceLength = Long.MAX_VALUE;
+        ended = false;
+
+        //Silence before the start, so the first segments can be shifted and overlapped like the rest.
+        inputFrames = hop + seekRange;
+        inputStart = -inputFrames;
+        for (int i = 0; i < inputFrames * channels; ++i)
+            input[i] = 0;
+        for (int i = 0; i < inputFrames; ++i)
+            mono[i] = 0;
+
+        for (int i = 0; i < overlap.length; ++i)
+            overlap[i] = 0;
+
+        //Segment centers line up with the source when the first half segment of output is dropped
+        analysisPosition = -hop;
+        previousPosition = -hop;
+        firstSegment = true;
+        skipOutput = hop;
+        passThrough = tempo == 1;
+    }
+
+
+    /* Stretching; only while holding the lock */
+
+    //Adds one segment and passes on one hop of output. Returns false if there is no space for it or the end was reached.
+    private boolean stretch() {
+        if (ended || ring.space() < output.length)
+            return false;
+        if (passThrough)
+            return copy();
+
+        long nominal = (long) Math.floor(analysisPosition);
+        if (nominal + hop >= sourceLength) { //Segment center is past the end
+            ended = true;
+            return false;
+        }
+
+        long keepFrom = nominal - seekRange;
+        if (!firstSegment)
+            keepFrom = Math.min(keepFrom, previousPosition + hop);
+        discardBefore(keepFrom);
+        fillInput(Math.max(nominal + seekRange, previousPosition + hop) + segmentLength);
+
+        long position = firstSegment ? nominal : align(nominal);
+
+        int base = (int) (position - inputStart) * channels;
+        for (int i = 0, o = 0; i < segmentLength; ++i) {
+            float w = window[i];
+            for (int c = 0; c < channels; ++c, ++o)
+                overlap[o] += w * input[base + o];
+        }
+
+        //The first hop of the overlap is complete
+        int skip = Math.min(skipOutput, hop);
+        skipOutput -= skip;
+        for (int i = skip * channels; i < output.length; ++i) {
+            float value = overlap[i];
+            output[i] = (short) (value > Short.MAX_VALUE ? Short.MAX_VALUE : (value < Short.MIN_VALUE ? Short.MIN_VALUE : Math.round(value)));
+        }
+        ring.write(output, skip * channels, output.length - skip * channels);
+
+        System.arraycopy(overlap, output.length, overlap, 0, overlap.length - output.length);
+        for (int i = overlap.length - output.length; i < overlap.length; ++i)
+            overlap[i] = 0;
+
+        previousPosition = position;
+        firstSegment = false;
+        analysisPosition += hop * tempo;
+        return true;
+    }
+
+    //Passes up to one hop of the source on unchanged.
+    private boolean copy() {
+        readBuffer.clear();
+        readBuffer.limit(Math.min(hop, READ_FRAMES) * channels * 2);
+        int samples = source.read(readBuffer) / 2;
+        samples -= samples % channels;
+        if (samples <= 0) {
+            ended = true;
+            return false;
+        }
+
+        for (int i = 0; i < samples; ++i)
+            output[i] = readBuffer.getShort(i * 2);
+        ring.write(output, 0, samples);
+        return true;
+    }
+
+    //Finds the shift of the segment that best continues the previous one, by normalized cross-correlation.
+    private long align(long nominal) {
+        int natural = (int) (previousPosition + hop - inputStart);
+
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int shift = -seekRange; shift <= seekRange; shift += SEARCH_STEP) {
+            int candidate = (int) (nominal + shift - inputStart);
+            if (candidate < 0 || candidate + segmentLength > inputFrames)
+                continue;
+
+            float correlation = 0, energy = 0;
+            for (int i = 0; i < hop; i += SEARCH_STEP) {
+                float value = mono[candidate + i];
+                correlation += mono[natural + i] * value;
+                energy += value * value;
+            }
+            float score = correlation / (float) Math.sqrt(energy + 1);
+            if (score > bestScore) {
+                bestScore = score;
+                best = shift;
+            }
+        }
+        return nominal + best;
+    }
+
+    private void discardBefore(long frame) {
+        int discard = (int) Math.min(inputFrames, frame - inputStart);
+        if (discard <= 0)
+            return;
+
+        inputFrames -= discard;
+        System.arraycopy(input, discard * channels, input, 0, inputFrames * channels);
+        System.arraycopy(mono, discard, mono, 0, inputFrames);
+        inputStart += discard;
+    }
+
+    //Reads from the source until the input reaches the given frame. Past the end of the source is silence.
+    private void fillInput(long endFrame) {
+        while (inputStart + inputFrames < endFrame) {
+            int space = Math.min(inputCapacity - inputFrames, READ_FRAMES);
+            if (space <= 0)
+                return;
+
+            if (sourceEnded) {
+                int frames = (int) Math.min(space, endFrame - (inputStart + inputFrames));
+                for (int i = inputFrames * channels; i < (inputFrames + frames) * channels; ++i)
+                    input[i] = 0;
+                for (int i = inputFrames; i < inputFrames + frames; ++i)
+                    mono[i] = 0;
+                inputFrames += frames;
+                continue;
+            }
+
+            readBuffer.clear();
+            readBuffer.limit(space * channels * 2);
+            int bytes = source.read(readBuffer);
+            int frames = bytes / (2 * channels);
+            if (frames <= 0) {
+                sourceEnded = true;
+                sourceLength = inputStart + inputFrames;
+                continue;
+            }
+
+            for (int f = 0; f < frames; ++f) {
+                float sum = 0;
+                for (int c = 0; c < channels; ++c) {
+                    float value = readBuffer.getShort((f * channels + c) * 2);
+                    input[(inputFrames + f) * channels + c] = value;
+                    sum += value;
+                }
+                mono[inputFrames + f] = sum / channels;
+            }
+            inputFrames += frames;
+        }
+    }
+}
@@ -1,113 +1,215 @@
 package alchyr.taikoedit.audio;
 
-import alchyr.taikoedit.util.structures.Pair;
-
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+//Filled by a single thread, and can be read from other threads while it is being filled.
+//Bucket data is written before length is increased, so readers only see completed buckets.
 public class Waveform {
-    //Given time x, where x is milliseconds, the floor entry in changePoints is the values at that point.
-    private final TreeMap<Integer, Pair<Float, Float>> values; //min, max
+    //Milliseconds covered by each bucket of each level. Every level is 4 times coarser than the one before it.
+    public static final int[] BUCKET_SIZES = { 1, 4, 16, 64 };
+    private static final int LEVEL_SHIFT = 2;
+
+    //Packed min/max pairs of raw 16 bit sample values for each level. Bucket i is at [2i] (min) and [2i + 1] (max).
+    private final short[][] levels = new short[BUCKET_SIZES.length][];
+    private volatile int length = 0; //Number of completed 1ms buckets
+    private volatile int peak = 1; //Largest absolute value, used to scale values to -1 to 1
+    private volatile boolean complete = false;
+
+    //Accumulation of incoming pcm data
+    private final double samplesPerChunk;
+    private final int channels;
+    private double chunkCounter = 0;
+    private int channelCounter = 0;
+    private int sample = 0;
+    private int lowByte = -1; //Low byte of a point split between two chunks of data
+    private short currentMin = 0, currentMax = 0;
 
     public Waveform(Iterator<byte[]> data, double samplesPerChunk, int channels) {
-        values = new TreeMap<>();
+        this(samplesPerChunk, channels, 0);
 
-        Pair<Float, Float> lastChunk = new Pair<>(0f, 0f), currentChunk = new Pair<>(0f, 0f);
-        values.put(-1, lastChunk);
+        while (data.hasNext()) {
+            add(data.next());
+        }
+        finish();
+    }
 
-        //2 bytes per point
-        //one point per channel per sample (2 channels = 2 points for 1 sample)
-        //sampleRate = number of samples in one second
-        int time = 0; //ms position of current chunk
+    /**
+     * Creates an empty waveform to be filled by add.
+     * @param samplesPerChunk The number of samples in 1 ms of audio.
+     * @param expectedLength Length of the audio in ms, if known. Used to size the buckets; can be 0.
+     */
+    public Waveform(double samplesPerChunk, int channels, int expectedLength) {
+        this.samplesPerChunk = samplesPerChunk;
+        this.channels = channels;
+
+        int capacity = Math.max(expectedLength + 1, 1024);
+        for (int i = 0; i < levels.length; ++i) {
+            levels[i] = new short[levelLength(capacity, i) * 2];
+        }
+    }
 
-        double chunkCounter = 0;
-        float sample = 0;
-        int channelCounter = 0;
-        float overallMax = 0;
-        short point = 0;
+    //A complete waveform with existing data.
+    Waveform(short[][] levels, int length, int peak) {
+        this.samplesPerChunk = 1;
+        this.channels = 1;
+        System.arraycopy(levels, 0, this.levels, 0, this.levels.length);
+        this.length = length;
+        this.peak = Math.max(peak, 1);
+        this.complete = true;
+    }
 
-        boolean pos = true;
-        while (data.hasNext()) {
-            byte[] chunk = data.next();
-
-            for (byte b : chunk) {
-                if (pos) {
-                    point = 0;
-                    point |= b;
-                }
-                else {
-                    point |= b << 8;
-
-                    sample += point;
-                    ++channelCounter;
-
-                    if (channelCounter >= channels) {
-                        channelCounter = 0;
-
-                        sample /= channels;
-                        if (sample > 0) {
-                            currentChunk.b = Math.max(currentChunk.b, sample);
-                        }
-                        else {
-                            currentChunk.a = Math.min(currentChunk.a, sample);
-                        }
-                        sample = 0;
-                        ++chunkCounter;
-
-                        if (chunkCounter >= samplesPerChunk) { //Done with chunk.
-                            if (currentChunk.a != lastChunk.a || currentChunk.b != lastChunk.b) {
-                                values.put(time, currentChunk);
-
-                                overallMax = Math.max(overallMax, currentChunk.b);
-                                overallMax = Math.max(overallMax, Math.abs(currentChunk.a));
-
-                                lastChunk = currentChunk;
-                                currentChunk = new Pair<>(0f, 0f);
-                            }
-                            else {
-                                currentChunk.a = 0f;
-                                currentChunk.b = 0f;
-                            }
-
-                            chunkCounter -= samplesPerChunk;
-                            ++time;
-                        }
-                    }
-                }
-                pos = !pos;
-            }
+    public void add(byte[] data) {
+        add(data, 0, data.length);
+    }
+
+    //16 bit little endian pcm, interleaved channels.
+    public void add(byte[] data, int offset, int count) {
+        int end = offset + count;
+        if (lowByte >= 0 && offset < end) {
+            addPoint((short) (lowByte | (data[offset++] << 8)));
+            lowByte = -1;
         }
+        for (; offset + 1 < end; offset += 2) {
+            addPoint((short) ((data[offset] & 0xFF) | (data[offset + 1] << 8)));
+        }
+        if (offset < end) {
+            lowByte = data[offset] & 0xFF;
+        }
+    }
+
+    private void addPoint(short point) {
+        sample += point;
+        if (++channelCounter < channels)
+            return;
+
+        //One point per channel per sample; the average of all channels is used.
+        channelCounter = 0;
+        int value = sample / channels;
+        sample = 0;
 
-        if (chunkCounter > 0) { //Leftover data
-            values.put(time, currentChunk);
-            overallMax = Math.max(overallMax, currentChunk.b);
-            overallMax = Math.max(overallMax, Math.abs(currentChunk.a));
+        if (value > 0) {
+            if (value > currentMax)
+                currentMax = (short) value;
+        }
+        else if (value < currentMin) {
+            currentMin = (short) value;
         }
 
-        for (Pair<Float, Float> maxMin : values.values()) { //Limit to a 0-1 scale
-            maxMin.a /= overallMax;
-            maxMin.b /= overallMax;
+        ++chunkCounter;
+        if (chunkCounter >= samplesPerChunk) { //Done with chunk.
+            completeBucket();
+            chunkCounter -= samplesPerChunk;
         }
     }
 
-    //start and end time in ms
-    private int lastStart = -1, lastEnd = -1;
-    private SortedMap<Integer, Pair<Float, Float>> currentView = null;
-    public SortedMap<Integer, Pair<Float, Float>> getSection(int start, int end) {
-        Integer floor = values.floorKey(start);
-        if (floor != null) start = floor;
+    /**
+     * Adds any partial bucket of leftover data.
+     */
+    public void finish() {
+        if (chunkCounter > 0) {
+            completeBucket();
+            chunkCounter = 0;
+        }
+        complete = true;
+    }
 
-        if (start != lastStart || end != lastEnd)
-        {
-            lastStart = start;
-            lastEnd = end;
-            currentView = values.subMap(start, true, end, true);
+    private void completeBucket() {
+        int length = this.length;
+        if ((length + 1) * 2 > levels[0].length) {
+            int capacity = Math.max(length + 1, length + (length >> 1));
+            for (int i = 0; i < levels.length; ++i) {
+                levels[i] = Arrays.copyOf(levels[i], levelLength(capacity, i) * 2);
+            }
         }
-        return currentView;
+
+        int peak = Math.max(currentMax, -currentMin);
+        if (peak > this.peak)
+            this.peak = peak;
+
+        levels[0][length * 2] = currentMin;
+        levels[0][length * 2 + 1] = currentMax;
+        for (int i = 1; i < levels.length; ++i) {
+            short[] level = levels[i];
+            int shift = LEVEL_SHIFT * i;
+            int index = length >> shift;
+            if ((length & ((1 << shift) - 1)) == 0) { //First bucket within this coarser bucket
+                level[index * 2] = currentMin;
+                level[index * 2 + 1] = currentMax;
+            }
+            else {
+                if (currentMin < level[index * 2])
+                    level[index * 2] = currentMin;
+                if (currentMax > level[index * 2 + 1])
+                    level[index * 2 + 1] = currentMax;
+            }
+        }
+
+        this.length = length + 1;
+        currentMin = 0;
+        currentMax = 0;
+    }
+
+    //Number of buckets in a level for the given length in ms
+    static int levelLength(int length, int level) {
+        int shift = LEVEL_SHIFT * level;
+        return (length + (1 << shift) - 1) >> shift;
+    }
+
+    /**
+     * @return The coarsest level with buckets no larger than the given number of milliseconds.
+     */
+    public static int levelFor(double msPerStep) {
+        int level = 0;
+        while (level + 1 < BUCKET_SIZES.length && BUCKET_SIZES[level + 1] <= msPerStep)
+            ++level;
+        return level;
+    }
+
+    /**
+     * Finds the min and max (scaled to -1 to 1) of the buckets of a level that cover the time range from start to end.
+     * @param start start time in ms, inclusive
+     * @param end end time in ms, exclusive
+     * @param out min is stored at [0], max at [1]
+     */
+    public void getRange(int level, int start, int end, float[] out) {
+        int shift = LEVEL_SHIFT * level;
+        int first = Math.max(0, start) >> shift;
+        int last = Math.min(levelLength(length, level), ((end - 1) >> shift) + 1);
+
+        //Read after length; an array replaced by growth already contains every bucket up to length.
+        short[] values = levels[level];
+        int min = 0, max = 0;
+        for (int i = first; i < last; ++i) {
+            if (values[i * 2] < min)
+                min = values[i * 2];
+            if (values[i * 2 + 1] > max)
+                max = values[i * 2 + 1];
+        }
+
+        out[0] = min / (float) peak;
+        out[1] = max / (float) peak;
+    }
+
+    //Length in ms
+    public int getLength() {
+        return length;
     }
 
     public boolean isEmpty() {
-        return values == null || values.isEmpty();
+        return length == 0;
+    }
+
+    short[] getLevel(int level) {
+        return levels[level];
+    }
+
+    int getPeak() {
+        return peak;
+    }
+
+    //Whether all audio data has been added. Until then, the waveform may grow.
+    public boolean isComplete() {
+        return complete;
     }
 }
@@ -77,6 +77,15 @@ public final class Header {
         return buffer.toString();
     }
 
+    /**
+     * Copies the state determined by the first frame of a stream, for reading a stream from a later frame.
+     */
+    void copySync (Header other) {
+        syncmode = other.syncmode;
+        h_version = other.h_version;
+        h_sample_frequency = other.h_sample_frequency;
+    }
+
     /**
      * Read a 32-bit header from the bitstream.
      */
@@ -1,14 +1,21 @@
 package alchyr.taikoedit.audio.mp3;
 
 
+import alchyr.taikoedit.audio.PcmStore;
+import alchyr.taikoedit.audio.Waveform;
 import alchyr.taikoedit.audio.mp3.decoders.LayerIDecoder;
 import alchyr.taikoedit.audio.mp3.decoders.LayerIIDecoder;
 import alchyr.taikoedit.audio.mp3.decoders.LayerIIIDecoder;
 import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
 import javazoom.jl.decoder.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 public class PreloadMp3Bitstream {
     /* * * Track Data * * */
@@ -40,10 +47,7 @@ public class PreloadMp3Bitstream {
     /* * * Bitstream fields * * */
     private static final int CHANNELSIZE = 2 * 1152; // max. 2 * 1152 samples per frame
 
-    public final List<byte[]> frames = new ArrayList<>();
-    public final List<Float> frameTimes = new ArrayList<>();
-
-    private int currentFrame;
+    public PcmStore pcm;
 
     private float maxSecondsPerFrame;
     public float length;
@@ -153,7 +157,36 @@ public class PreloadMp3Bitstream {
     private final long approximateBytes;
     private boolean initialized;
 
-    public static float progress = 0; //load progress
+    private final BiFunction<Integer, Integer, Waveform> waveformSupplier;
+
+    /* * * Parallel decoding * * */
+    //Segments are at least this many frames long. Shorter files are decoded as a single segment.
+    private static final int MIN_SEGMENT_FRAMES = 256;
+    //Layer III main data can start up to 511 bytes before its frame, in the data of previous frames.
+    private static final int RESERVOIR_BYTES = 512;
+    //Frame bytes that are not main data, at most: 4 byte header, 2 byte crc and 32 bytes of side info.
+    private static final int MAX_SIDE_BYTES = 38;
+    //Synthesis filter code depends on the position within its 16 sample ring buffer. Segments start at a multiple of this
+    //many frames so that the filter is in the same position as it would be when decoding from the start.
+    private static final int FRAME_ALIGNMENT = 16;
+
+    private byte[] fileData = null;
+    private int streamStart = 0;
+    private int[] frameEnds; //Position in fileData after each frame
+    private volatile boolean cancelled = false;
+    private final AtomicInteger decodedFrames = new AtomicInteger();
+    private float totalWork = 1;
+
+    public static volatile float progress = 0; //load progress. Written by decoding workers, read by the loading screen
+
+    /* * * Streaming * * */
+    //Frames decoded before the first frame of a stream, so the bit reservoir and overlap are filled. Their output is discarded.
+    private static final int STREAM_WARMUP_FRAMES = 10;
+
+    private OutputBuffer streamOutput;
+    private boolean streamEnded = false;
+    private float frameSeconds;
+    public float startSeconds; //Time of the first frame of a stream
 
     /**
      * Construct a IBitstream that reads data from a given InputStream.
@@ -161,9 +194,48 @@ public class PreloadMp3Bitstream {
      * @param in The InputStream to read from.
      */
     public PreloadMp3Bitstream(InputStream in, long bytes) {
+        this(in, bytes, null);
+    }
+
+    /**
+     * Construct a IBitstream that reads data from a given InputStream.
+     *
+     * @param in The InputStream to read from.
+     * @param waveformSupplier Called with the channels and sample rate once they are known.
+     *                         The returned waveform (if any) is filled as frames are decoded. May be null.
+     */
+    public PreloadMp3Bitstream(InputStream in, long bytes, BiFunction<Integer, Integer, Waveform> waveformSupplier) {
+        this(in, bytes, waveformSupplier, false);
+    }
+
+    /**
+     * Construct a IBitstream that reads data from a given InputStream.
+     *
+     * @param in The InputStream to read from.
+     * @param waveformSupplier Called with the channels and sample rate once they are known.
+     *                         The returned waveform (if any) is filled as frames are decoded. May be null.
+     * @param parallel Whether to decode segments of the file on multiple threads. The result is the same as decoding on one thread.
+     */
+    public PreloadMp3Bitstream(InputStream in, long bytes, BiFunction<Integer, Integer, Waveform> waveformSupplier, boolean parallel) {
         approximateBytes = bytes;
+        this.waveformSupplier = waveformSupplier;
         if (in == null) throw new NullPointerException("in");
-        in = new BufferedInputStream(in);
+        if (parallel) {
+            //The whole file is kept in memory so that segments can be read from any frame
+            try {
+                fileData = StreamUtils.copyStreamToByteArray(in, (int) Math.min(bytes, Integer.MAX_VALUE - 8));
+            }
+            catch (IOException e) {
+                throw new GdxRuntimeException("Failed to read mp3", e);
+            }
+            finally {
+                StreamUtils.closeQuietly(in);
+            }
+            in = new ByteArrayInputStream(fileData);
+        }
+        else {
+            in = new BufferedInputStream(in);
+        }
         loadID3v2(in); //After loading ID3v2, position will be at first music frame
         firstframe = true;
         // source = new PushbackInputStream(in, 1024);
@@ -173,7 +245,14 @@ public class PreloadMp3Bitstream {
         closeFrame();
         // current_frame_number = -1;
         // last_frame_number = -1;
-        preload();
+        if (parallel) {
+            streamStart = position();
+            preloadParallel();
+            fileData = null;
+        }
+        else {
+            preload();
+        }
 
         try
         {
@@ -186,6 +265,120 @@ public class PreloadMp3Bitstream {
     }
 
 
+    /**
+     * Opens a stream that decodes one frame at a time, starting at the frame containing the given time.
+     * Frames before it are skipped by reading only their headers, other than a few decoded right before it.
+     *
+     * @param bytes Size of the file, used to estimate the length.
+     */
+    public static PreloadMp3Bitstream stream(InputStream in, long bytes, float startTime) throws InterruptedException {
+        PreloadMp3Bitstream stream = new PreloadMp3Bitstream(bytes, in);
+        try {
+            stream.skipTo(startTime);
+        }
+        catch (BitstreamException | DecoderException e) {
+            stream.closeStream();
+            throw new GdxRuntimeException("Failed to read mp3", e);
+        }
+        catch (InterruptedException | RuntimeException e) {
+            stream.closeStream();
+            throw e;
+        }
+        return stream;
+    }
+
+    //For streaming; the file is not decoded on creation.
+    private PreloadMp3Bitstream(long bytes, InputStream in) {
+        approximateBytes = bytes;
+        waveformSupplier = null;
+        if (in == null) throw new NullPointerException("in");
+        in = new BufferedInputStream(in);
+        loadID3v2(in);
+        firstframe = true;
+        source = new PushbackInputStream(in, BUFFER_INT_SIZE * 4);
+        closeFrame();
+    }
+
+    private void skipTo(float startTime) throws BitstreamException, DecoderException, InterruptedException {
+        if (readFrame() == null)
+        {
+            throw new GdxRuntimeException("Empty MP3");
+        }
+        channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+        sampleRate = header.getSampleRate();
+        length = header.total_ms((int) Math.min(approximateBytes, Integer.MAX_VALUE)) / 1000.0f;
+
+        int samplesPerFrame = header.layer() == 1 ? 384 : (header.layer() == 3 && header.version() != Header.MPEG1 ? 576 : 1152);
+        frameSeconds = (float) samplesPerFrame / sampleRate;
+
+        streamOutput = new OutputBuffer(channels, false);
+        setOutputBuffer(streamOutput);
+
+        int target = Math.max(0, (int) (startTime / frameSeconds));
+        int warmStart = target - STREAM_WARMUP_FRAMES;
+        int frame = 0;
+        while (frame < target) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            if (frame >= warmStart) {
+                decodeFrame();
+                streamOutput.reset();
+            }
+            closeFrame();
+            if (readFrame() == null) {
+                streamEnded = true;
+                break;
+            }
+            ++frame;
+        }
+        startSeconds = frame * frameSeconds;
+    }
+
+    /**
+     * Decodes the next frame of a stream.
+     * @return The number of bytes written to the target, which must have space for a full frame. -1 at the end of the stream.
+     */
+    public int decodeNext(byte[] target) {
+        if (streamEnded)
+            return -1;
+
+        try {
+            if (readFrame() == null) {
+                streamEnded = true;
+                return -1;
+            }
+            decodeFrame();
+            int size = streamOutput.reset();
+            System.arraycopy(streamOutput.getBuffer(), 0, target, 0, size);
+            closeFrame();
+            return size;
+        }
+        catch (BitstreamException | DecoderException e) {
+            e.printStackTrace();
+            streamEnded = true;
+            return -1;
+        }
+    }
+
+    public float getFrameSeconds() {
+        return frameSeconds;
+    }
+
+    public static int maxFrameBytes(int channels) {
+        return CHANNELSIZE * channels;
+    }
+
+    public void closeStream() {
+        try {
+            close();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+
     /* * * * * * * * * * * * PRELOADED * * * * * * * * * * * */
 
     private void preload()
@@ -210,7 +403,9 @@ public class PreloadMp3Bitstream {
             OutputBuffer outputBuffer = new OutputBuffer(channels, false);
             setOutputBuffer(outputBuffer);
 
-            frameTimes.add(0.0f); //The first frame STARTS at 0.
+            Waveform waveform = waveformSupplier == null ? null : waveformSupplier.apply(channels, sampleRate);
+
+            pcm = new PcmStore(channels, sampleRate, (long) (approximateBytes * 7.5f));
 
             Header h = header;
             while (h != null)
@@ -224,68 +419,250 @@ public class PreloadMp3Bitstream {
 
                 int length = outputBuffer.reset();
                 totalBytes += length;
-                progress = totalBytes / (approximateBytes * 7.5f);
-                byte[] buffer = new byte[bufferSize];
-                System.arraycopy(outputBuffer.getBuffer(), 0, buffer, 0, length);
+                progress = Math.min(1, totalBytes / (approximateBytes * 7.5f)); //Size is only an estimate
 
-                frames.add(buffer);
-                frameTimes.add(maxSecondsPerFrame * (float)totalBytes / bufferSize); //This is the start time of the NEXT frame. (the end time of the current frame)
+                pcm.add(outputBuffer.getBuffer(), 0, length);
+
+                if (waveform != null)
+                    waveform.add(outputBuffer.getBuffer(), 0, length);
 
                 closeFrame(); //Close frame to prepare to read next frame
             }
+
+            if (waveform != null)
+                waveform.finish();
         } catch (BitstreamException | DecoderException e) {
             e.printStackTrace();
         }
 
+        if (pcm == null)
+            pcm = new PcmStore(Math.max(channels, 1), Math.max(sampleRate, 1), 0);
+        pcm.finish();
+
         //Calculate total length using total number of bytes
         length = maxSecondsPerFrame * (float)totalBytes / bufferSize;
     }
 
-    public byte[] getNextFrame()
-    {
-        if (currentFrame < frames.size())
-            return frames.get(currentFrame++);
-        return null;
+    /**
+     * Creates a decoder for a segment of a file being decoded in parallel, starting at the given frame.
+     * The bitstream is set up as it would be after reading the previous frames.
+     */
+    private PreloadMp3Bitstream(PreloadMp3Bitstream parent, int frame) {
+        approximateBytes = parent.approximateBytes;
+        waveformSupplier = null;
+
+        int offset = frame == 0 ? parent.streamStart : parent.frameEnds[frame - 1];
+        source = new PushbackInputStream(new ByteArrayInputStream(parent.fileData, offset, parent.fileData.length - offset), BUFFER_INT_SIZE * 4);
+        firstframe = frame == 0;
+        channels = parent.channels;
+        sampleRate = parent.sampleRate;
+        if (frame > 0) {
+            header.copySync(parent.header);
+            syncword = parent.syncword;
+            single_ch_mode = parent.single_ch_mode;
+        }
+
+        closeFrame();
     }
-    public boolean hasNextFrame()
-    {
-        return currentFrame < frames.size();
+
+    private int position() {
+        try {
+            return fileData.length - source.available();
+        }
+        catch (IOException e) {
+            throw new GdxRuntimeException(e);
+        }
     }
 
-    public void setFrame(int frame)
-    {
-        if (frame > frames.size())
-            frame = frames.size();
-        currentFrame = frame;
+    //Decoded output of frames start (inclusive) to end (exclusive), decoded starting from the earlier frame warmStart.
+    private static final class Segment {
+        final int warmStart, start, end;
+
+        byte[] data = new byte[0];
+        int size = 0;
+        int[] frameLengths;
+        int frameCount = 0;
+
+        Exception error = null;
+        int errorFrame = -1;
+
+        Segment(int warmStart, int start, int end) {
+            this.warmStart = warmStart;
+            this.start = start;
+            this.end = end;
+            frameLengths = new int[end - start];
+        }
+
+        void add(byte[] frame, int length) {
+            if (size + length > data.length)
+                data = Arrays.copyOf(data, Math.max(size + length, data.length * 2));
+            System.arraycopy(frame, 0, data, size, length);
+            size += length;
+            frameLengths[frameCount++] = length;
+        }
     }
 
-    public float seekTime(float time)
+    /**
+     * Scans the frames of the file without decoding them, then decodes segments of frames on the common fork-join pool.
+     * Segments are added to the pcm store in order as they finish.
+     *
+     * Decoding a frame depends on earlier frames: Layer III main data can be in the bit reservoir (previous frames' data),
+     * the second half of each granule's inverse mdct overlaps the next granule, and the synthesis filter works on the last 16 samples.
+     * Each segment is started early enough for all of these to be the same as in a sequential decode when its first frame is reached,
+     * and output from the extra frames is discarded.
+     */
+    private void preloadParallel()
     {
-        int index = Collections.binarySearch(frameTimes, time);
+        progress = 0;
 
-        if (index >= 0)
+        int frameCount = 0;
+        int totalBytes = 0;
+        int bufferSize = 1;
+        try
         {
-            currentFrame = index; //Precise match (Rare)
+            if (readFrame() == null)
+            {
+                throw new GdxRuntimeException("Empty MP3");
+            }
+            channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+            sampleRate = header.getSampleRate();
+            bufferSize = CHANNELSIZE * channels;
+
+            maxSecondsPerFrame = (float)bufferSize / (2 * channels * sampleRate);
+
+            frameEnds = new int[1024];
+            Header h = header;
+            while (h != null) {
+                if (frameCount == frameEnds.length)
+                    frameEnds = Arrays.copyOf(frameEnds, frameCount * 2);
+                frameEnds[frameCount++] = position();
+                closeFrame();
+                h = readFrame();
+            }
+        } catch (BitstreamException e) {
+            //A sequential decode would stop at the same frame.
+            e.printStackTrace();
         }
-        else
-        {
-            currentFrame = -index - 1; //No precise match (expected result)
+
+        pcm = new PcmStore(channels, sampleRate, (long) (approximateBytes * 7.5f));
+        Waveform waveform = waveformSupplier == null ? null : waveformSupplier.apply(channels, sampleRate);
+
+        //Shared tables of the synthesis filter are loaded on creation of the first one; make sure that doesn't happen on multiple threads at once.
+        new SynthesisFilter(0, 32700.0f, null);
+
+        List<Segment> segments = new ArrayList<>();
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int segmentFrames = Math.max(MIN_SEGMENT_FRAMES, frameCount / (parallelism * 8) + 1);
+        if (frameCount < segmentFrames * 2)
+            segmentFrames = frameCount;
+        totalWork = 0;
+        for (int start = 0; start < frameCount; start += segmentFrames) {
+            Segment segment = new Segment(warmStart(start), start, Math.min(frameCount, start + segmentFrames));
+            totalWork += segment.end - segment.warmStart;
+            segments.add(segment);
         }
 
-        if (currentFrame < frameTimes.size()) //move back to correct frame
-        {
-            while (currentFrame > 0 && frameTimes.get(currentFrame) > time)
-            {
-                --currentFrame;
+        //Only a limited number of segments are decoded ahead of the one being added, to limit memory use.
+        int window = Math.max(2, parallelism * 2);
+        ArrayDeque<ForkJoinTask<Segment>> pending = new ArrayDeque<>();
+        int submitted = 0;
+        try {
+            for (int i = 0; i < segments.size(); ++i) {
+                while (submitted < segments.size() && submitted < i + window) {
+                    Segment segment = segments.get(submitted++);
+                    pending.add(ForkJoinPool.commonPool().submit(()->decode(segment, segment.warmStart)));
+                }
+
+                Segment segment = pending.poll().join();
+                if (segment.error != null && segment.errorFrame < segment.start) {
+                    //Failed on a frame that was decoded successfully by the previous segment, so the failure depends on decoder state.
+                    //Decode from the start of the file instead for the same result as a sequential decode.
+                    segment = decode(new Segment(0, segment.start, segment.end), 0);
+                }
+
+                int offset = 0;
+                for (int frame = 0; frame < segment.frameCount; ++frame) {
+                    int length = segment.frameLengths[frame];
+                    totalBytes += length;
+                    pcm.add(segment.data, offset, length);
+                    if (waveform != null)
+                        waveform.add(segment.data, offset, length);
+                    offset += length;
+                }
+
+                if (segment.error != null) {
+                    if (segment.error instanceof RuntimeException)
+                        throw (RuntimeException) segment.error;
+                    segment.error.printStackTrace();
+                    break;
+                }
+            }
+        }
+        finally {
+            cancelled = true;
+            for (ForkJoinTask<Segment> task : pending)
+                task.cancel(false);
+        }
+
+        if (waveform != null)
+            waveform.finish();
+        pcm.finish();
+
+        length = maxSecondsPerFrame * (float)totalBytes / bufferSize;
+    }
+
+    /**
+     * @return The frame to start decoding at for all state to be correct when the given frame is reached.
+     */
+    private int warmStart(int frame) {
+        //Frame - 2 has all of its main data in the bit reservoir. Its output is still affected by earlier frames,
+        //but it leaves correct data for the overlap of frame - 1, which leaves correct data for the overlap and synthesis filter of frame.
+        int clean = frame - 2;
+        if (clean <= 0)
+            return 0;
+
+        int reservoir = 0;
+        int warmStart = clean;
+        while (warmStart > 0 && reservoir < RESERVOIR_BYTES) {
+            --warmStart;
+            int frameBytes = frameEnds[warmStart] - (warmStart == 0 ? streamStart : frameEnds[warmStart - 1]);
+            reservoir += Math.max(0, frameBytes - MAX_SIDE_BYTES);
+        }
+        return warmStart - warmStart % FRAME_ALIGNMENT;
+    }
+
+    //Runs on a pool thread, or on the loading thread as a fallback.
+    private Segment decode(Segment segment, int from) {
+        PreloadMp3Bitstream decoder = new PreloadMp3Bitstream(this, from);
+        OutputBuffer outputBuffer = new OutputBuffer(channels, false);
+        decoder.setOutputBuffer(outputBuffer);
+
+        int frame = from;
+        try {
+            for (; frame < segment.end && !cancelled; ++frame) {
+                if (decoder.readFrame() == null)
+                    break;
+                decoder.decodeFrame();
+
+                int length = outputBuffer.reset();
+                if (frame >= segment.start)
+                    segment.add(outputBuffer.getBuffer(), length);
+
+                decoder.closeFrame();
+                progress = Math.min(1, decodedFrames.incrementAndGet() / totalWork); //Retried segments are counted twice
             }
-            return frameTimes.get(currentFrame);
         }
-        return length; //seeked past end of song, return end of song
+        catch (Exception e) {
+            segment.error = e;
+            segment.errorFrame = frame;
+        }
+        return segment;
     }
 
     public void clear()
     {
-        frames.clear();
+        if (pcm != null)
+            pcm.clear();
     }
 
     /* * * * * * Decoder * * * * * */
@@ -381,7 +758,7 @@ public class PreloadMp3Bitstream {
 
         int mode = header.mode();
         header.layer();
-        int channels = mode == javazoom.jl.decoder.Header.SINGLE_CHANNEL ? 1 : 2;
+        int channels = this.channels > 0 ? this.channels : (mode == javazoom.jl.decoder.Header.SINGLE_CHANNEL ? 1 : 2);
 
         // set up output buffer if not set up by client.
         if (output == null) throw new RuntimeException("Output buffer was not set.");
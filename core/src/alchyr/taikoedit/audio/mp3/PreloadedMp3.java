@@ -1,11 +1,14 @@
 package alchyr.taikoedit.audio.mp3;
 
+import alchyr.taikoedit.audio.AudioCache;
 import alchyr.taikoedit.audio.CustomAudio;
+import alchyr.taikoedit.audio.PcmStore;
+import alchyr.taikoedit.management.SettingsMaster;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import javazoom.jl.decoder.OutputBuffer;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 
@@ -16,7 +19,7 @@ import java.util.Iterator;
 //Make a fancier ByteStream (used in read method) to support seek operations? done
 
 public class PreloadedMp3 extends CustomAudio {
-    private PreloadMp3Bitstream bitstream;
+    private PcmStore pcm;
 
     public PreloadedMp3 (OpenALLwjgl3Audio audio, FileHandle file) {
         super(audio, file);
@@ -39,13 +42,28 @@ public class PreloadedMp3 extends CustomAudio {
 
     @Override
     public void preload() {
+        startWaveformStream();
         try
         {
-            bitstream = new PreloadMp3Bitstream(file.read(), file.length());
+            AudioCache.Entry cached = AudioCache.load(file.file());
+            if (cached != null) {
+                pcm = cached.pcm;
+                if (cached.waveform != null)
+                    provideWaveform(cached.waveform);
+                setup(cached.channels, 16, cached.sampleRate);
+                PreloadMp3Bitstream.progress = 1;
+                return;
+            }
+
+            PreloadMp3Bitstream bitstream = new PreloadMp3Bitstream(file.read(), file.length(), this::streamWaveform, SettingsMaster.parallelDecode);
+            pcm = bitstream.pcm;
             setup(bitstream.channels, 16, bitstream.sampleRate);
+            AudioCache.save(file.file(), bitstream.channels, bitstream.sampleRate, pcm, getLoadedWaveform());
         } catch (Exception e) {
             this.audio = null;
             throw new GdxRuntimeException("error while preloading mp3", e);
+        } finally {
+            endWaveformStream();
         }
     }
 
@@ -56,52 +74,39 @@ public class PreloadedMp3 extends CustomAudio {
 
     @Override
     public float getLength() {
-        return bitstream == null ? 0 : bitstream.length;
+        return pcm == null ? 0 : pcm.getLength();
     }
 
     @Override
     protected float seekTime(float pos) {
-        return bitstream.seekTime(pos);
+        return pcm.seekTime(pos);
     }
 
     @Override
     public int read(byte[] buffer) {
-        try {
-            int totalLength = 0;
-            int minRequiredLength = buffer.length - OutputBuffer.BUFFERSIZE * 2;
-            while (totalLength <= minRequiredLength) {
-                byte[] frame = bitstream.getNextFrame();
-                if (frame == null) break;
-
-                System.arraycopy(frame, 0, buffer, totalLength, frame.length);
-                totalLength += frame.length;
-            }
-            /*if (totalLength == 0)
-            {
-                editorLogger.info("Reached 0 length buffer.");
-            }*/
-            return totalLength;
-        } catch (Throwable ex) {
-            reset();
-            throw new GdxRuntimeException("Error reading audio data.", ex);
-        }
+        return pcm.read(buffer);
+    }
+
+    @Override
+    protected int read(ByteBuffer buffer) {
+        return pcm.read(buffer);
     }
 
     @Override
     public void reset () {
-        if (bitstream == null) return;
+        if (pcm == null) return;
 
-        bitstream.setFrame(0);
+        pcm.restart();
     }
 
     public void dispose () {
         super.dispose();
-        if (bitstream != null)
-            bitstream.clear();
+        if (pcm != null)
+            pcm.clear();
     }
 
     @Override
     protected Iterator<byte[]> audioData() {
-        return bitstream.frames.iterator();
+        return pcm.chunks(bufferSize);
     }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+package alchyr.taikoedit.audio.mp3;
+
+import alchyr.taikoedit.audio.AudioFeeder;
+import alchyr.taikoedit.audio.CustomAudio;
+import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+/**
+ * Mp3 that is decoded while it plays, for song previews.
+ * Playback starts from the preview time; frames before it are skipped by their headers without being decoded.
+ * A decoder thread stays a few seconds ahead of playback. Seeking reopens the file and skips to the new position on the decoder thread,
+ * so only the audio feeder waits for long on a decoder that is behind.
+ *
+ * Has no waveform, and the length is estimated from the first frame.
+ */
+public class PreviewMp3 extends CustomAudio {
+    private static final float DECODE_AHEAD = 3.0f; //Seconds decoded ahead of playback
+    private static final long UNDERRUN_WAIT = 1000; //ms the audio feeder waits for the decoder before treating it as the end
+    private static final long START_WAIT = 250; //ms other threads wait, when starting playback or seeking
+
+    private final float previewStart;
+    private float streamStart = 0;
+    private float length = 0;
+    private float frameSeconds = 0;
+    private boolean loaded = false;
+
+    private Decoder decoder = null;
+    private byte[] current = null;
+    private int currentOffset = 0;
+
+    public PreviewMp3(OpenALLwjgl3Audio audio, FileHandle file, float previewStart) {
+        super(audio, file);
+        this.previewStart = Math.max(0, previewStart);
+
+        try
+        {
+            hasNoDevice = (boolean) noDevice.get(audio);
+        } catch (Exception e) {
+            this.audio = null;
+            throw new GdxRuntimeException("error while opening mp3 preview", e);
+        }
+    }
+
+    @Override
+    public String getAudioType() {
+        return "mp3";
+    }
+
+    @Override
+    public void preload() {
+        try {
+            open(previewStart);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //Load was cancelled
+        }
+        catch (Exception e) {
+            this.audio = null;
+            throw new GdxRuntimeException("error while opening mp3 preview", e);
+        }
+    }
+
+    @Override
+    public boolean isPreview() {
+        return true;
+    }
+
+    @Override
+    protected float startPosition() {
+        return streamStart;
+    }
+
+    @Override
+    public float loadProgress() {
+        return loaded ? 1 : 0;
+    }
+
+    @Override
+    public float getLength() {
+        return length;
+    }
+
+    @Override
+    protected float seekTime(float pos) {
+        start(pos);
+        return streamStart;
+    }
+
+    @Override
+    public int read(byte[] buffer) {
+        return read(ByteBuffer.wrap(buffer));
+    }
+
+    @Override
+    protected int read(ByteBuffer buffer) {
+        if (decoder == null)
+            return 0;
+
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            if (current == null || currentOffset >= current.length) {
+                current = decoder.next(total == 0);
+                currentOffset = 0;
+                if (current == null)
+                    break;
+            }
+            int count = Math.min(buffer.remaining(), current.length - currentOffset);
+            buffer.put(current, currentOffset, count);
+            currentOffset += count;
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public void reset() {
+        //Starts decoding from the preview time again right away, so playing again doesn't wait on it.
+        closeDecoder();
+        if (loaded)
+            start(previewStart);
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        closeDecoder();
+    }
+
+    @Override
+    protected Iterator<byte[]> audioData() {
+        return Collections.emptyIterator();
+    }
+
+    //Called on the loading thread, to find the format of the file.
+    private void open(float time) throws InterruptedException {
+        closeDecoder();
+
+        PreloadMp3Bitstream stream = PreloadMp3Bitstream.stream(file.read(), file.length(), time);
+        setup(stream.channels, 16, stream.sampleRate);
+        length = stream.length;
+        frameSeconds = stream.getFrameSeconds();
+        loaded = true;
+
+        streamStart = stream.startSeconds;
+        decoder = new Decoder(stream, null, time, capacity(), file.name());
+    }
+
+    //The file is scanned for the time on the decoder thread, and the decoded audio is trimmed to start exactly at it.
+    private void start(float time) {
+        closeDecoder();
+
+        streamStart = Math.max(0, time);
+        decoder = new Decoder(null, file, streamStart, capacity(), file.name());
+    }
+
+    private int capacity() {
+        return Math.max(2, (int) Math.ceil(DECODE_AHEAD / frameSeconds));
+    }
+
+    private void closeDecoder() {
+        if (decoder != null) {
+            decoder.stop();
+            decoder = null;
+        }
+        current = null;
+        currentOffset = 0;
+    }
+
+    /**
+     * Decodes frames of a stream on its own thread, until it is a set amount of time ahead of what has been read.
+     */
+    private static final class Decoder implements Runnable {
+        private PreloadMp3Bitstream stream; //Opened on the decoder thread if not given
+        private final FileHandle file;
+        private final float time;
+        private final BlockingQueue<byte[]> frames;
+        private final Thread thread;
+        private volatile boolean ended = false;
+
+        Decoder(PreloadMp3Bitstream stream, FileHandle file, float time, int capacity, String name) {
+            this.stream = stream;
+            this.file = file;
+            this.time = time;
+            frames = new ArrayBlockingQueue<>(capacity);
+
+            thread = new Thread(this);
+            thread.setName("Preview Decoder " + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                long skip = 0; //Bytes decoded before the time
+                if (stream == null) {
+                    stream = PreloadMp3Bitstream.stream(file.read(), file.length(), time);
+                    skip = Math.max(0, Math.round((time - stream.startSeconds) * stream.sampleRate)) * stream.channels * 2L;
+                }
+
+                byte[] buffer = new byte[PreloadMp3Bitstream.maxFrameBytes(stream.channels)];
+                int length;
+                while ((length = stream.decodeNext(buffer)) >= 0) {
+                    if (skip >= length) {
+                        skip -= length;
+                    }
+                    else {
+                        frames.put(Arrays.copyOfRange(buffer, (int) skip, length));
+                        skip = 0;
+                    }
+                }
+            }
+            catch (InterruptedException ignored) {
+
+            }
+            catch (Exception e) {
+                editorLogger.error("Failed to decode mp3 preview.", e);
+            }
+            finally {
+                ended = true;
+                if (stream != null)
+                    stream.closeStream();
+            }
+        }
+
+        /**
+         * @param wait Whether to wait for the decoder if no frame is ready.
+         * @return The next decoded frame, or null if there are none ready or the stream has ended.
+         */
+        byte[] next(boolean wait) {
+            byte[] frame = frames.poll();
+            if (frame != null || !wait)
+                return frame;
+
+            long deadline = System.currentTimeMillis() + (AudioFeeder.isFeederThread() ? UNDERRUN_WAIT : START_WAIT);
+            try {
+                while (!ended && System.currentTimeMillis() < deadline) {
+                    frame = frames.poll(10, TimeUnit.MILLISECONDS);
+                    if (frame != null)
+                        return frame;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            return frames.poll(); //The last frames may have been added just before the decoder ended
+        }
+
+        void stop() {
+            thread.interrupt();
+        }
+    }
+}
@@ -120,10 +120,13 @@ public final class LayerIIIDecoder implements FrameDecoder {
         sfBandIndex[8] = new SBI(l8, s8);
         // END OF L3TABLE INIT
 
-        if (reorder_table == null) { // SZD: generate LUT
-            reorder_table = new int[9][];
-            for (int i = 0; i < 9; i++)
-                reorder_table[i] = reorder(sfBandIndex[i].s);
+        synchronized (LayerIIIDecoder.class) { //Decoders can be created on multiple threads at once
+            if (reorder_table == null) { // SZD: generate LUT
+                int[][] table = new int[9][];
+                for (int i = 0; i < 9; i++)
+                    table[i] = reorder(sfBandIndex[i].s);
+                reorder_table = table;
+            }
         }
 
         // Sftable
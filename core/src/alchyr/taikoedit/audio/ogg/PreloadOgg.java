@@ -2,16 +2,18 @@ package alchyr.taikoedit.audio.ogg;
 
 //Ogg Vorbis.
 
+import alchyr.taikoedit.audio.AudioCache;
 import alchyr.taikoedit.audio.CustomAudio;
+import alchyr.taikoedit.audio.PcmStore;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 public class PreloadOgg extends CustomAudio {
-    private PreloadOggStream data;
-    private PreloadOggStream previousInput;
+    private PcmStore pcm;
 
     public PreloadOgg(OpenALLwjgl3Audio audio, FileHandle file) {
         super(audio, file);
@@ -33,23 +35,48 @@ public class PreloadOgg extends CustomAudio {
 
     @Override
     public void preload() {
+        startWaveformStream();
         try
         {
-            data = new PreloadOggStream(file.read());
+            AudioCache.Entry cached = AudioCache.load(file.file());
+            if (cached != null) {
+                pcm = cached.pcm;
+                if (cached.waveform != null)
+                    provideWaveform(cached.waveform);
+                setup(cached.channels, 16, cached.sampleRate);
+                PreloadOggStream.progress = 1;
+                return;
+            }
+
+            PreloadOggStream data = new PreloadOggStream(file.read(), null, this::streamWaveform);
+            pcm = data.pcm;
             setup(data.getChannels(), 16, data.getSampleRate());
+            AudioCache.save(file.file(), data.getChannels(), data.getSampleRate(), pcm, getLoadedWaveform());
         } catch (Exception e) {
             throw new GdxRuntimeException("error while preloading ogg", e);
+        } finally {
+            endWaveformStream();
         }
     }
 
+    //Decodes the file if it wasn't preloaded.
+    private PcmStore pcm() {
+        if (pcm == null) {
+            PreloadOggStream data = new PreloadOggStream(file.read());
+            setup(data.getChannels(), 16, data.getSampleRate());
+            pcm = data.pcm;
+        }
+        return pcm;
+    }
+
     @Override
     public float getLength() {
-        return data.getLength();
+        return pcm == null ? 0 : pcm.getLength();
     }
 
     @Override
     protected float seekTime(float pos) {
-        return data.seekTime(pos);
+        return pcm().seekTime(pos);
     }
 
     @Override
@@ -58,25 +85,27 @@ public class PreloadOgg extends CustomAudio {
     }
 
     public int read(byte[] buffer) {
-        if (data == null) {
-            data = new PreloadOggStream(file.read(), previousInput);
-            setup(data.getChannels(), 16, data.getSampleRate());
-            previousInput = null; // release this reference
-        }
-        return data.read(buffer);
+        int read = pcm().read(buffer);
+        return read == 0 && buffer.length > 0 ? -1 : read;
+    }
+
+    @Override
+    protected int read(ByteBuffer buffer) {
+        return pcm().read(buffer);
     }
 
     @Override
     protected Iterator<byte[]> audioData() {
-        if (data == null) {
-            data = new PreloadOggStream(file.read(), previousInput);
-            setup(data.getChannels(), 16, data.getSampleRate());
-            previousInput = null; // release this reference
-        }
-        return data.segmentedData.iterator();
+        return pcm().chunks(bufferSize);
     }
 
     public void reset() {
-        data.restart();
+        pcm().restart();
+    }
+
+    public void dispose () {
+        super.dispose();
+        if (pcm != null)
+            pcm.clear();
     }
 }
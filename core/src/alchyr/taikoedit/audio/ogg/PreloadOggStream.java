@@ -1,5 +1,7 @@
 package alchyr.taikoedit.audio.ogg;
 
+import alchyr.taikoedit.audio.PcmStore;
+import alchyr.taikoedit.audio.Waveform;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.StreamUtils;
@@ -17,8 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.BiFunction;
 
 public class PreloadOggStream extends InputStream {
     private final static int BUFFER_SIZE = 512;
@@ -73,12 +74,9 @@ public class PreloadOggStream extends InputStream {
     public static float progress = 0;
 
     //post preload data
-    private float length = 0;
-    private int totalUncompressedBytes = 0;
-    public List<byte[]> segmentedData;
-    private float secondsPerSegment;
-    private int currentSegment = 0;
-    private int dataIndex = 0;
+    public PcmStore pcm;
+
+    private final BiFunction<Integer, Integer, Waveform> waveformSupplier;
 
 
 
@@ -96,6 +94,17 @@ public class PreloadOggStream extends InputStream {
      * @param input The input stream from which to read the OGG file
      * @param previousStream The stream instance to reuse buffers from, may be null */
     public PreloadOggStream(InputStream input, PreloadOggStream previousStream) {
+        this(input, previousStream, null);
+    }
+
+    /** Create a new stream to decode OGG data, reusing buffers from another stream.
+     *
+     * @param input The input stream from which to read the OGG file
+     * @param previousStream The stream instance to reuse buffers from, may be null
+     * @param waveformSupplier Called with the channels and sample rate once the headers are read.
+     *                         The returned waveform (if any) is filled as data is decoded. May be null. */
+    public PreloadOggStream(InputStream input, PreloadOggStream previousStream, BiFunction<Integer, Integer, Waveform> waveformSupplier) {
+        this.waveformSupplier = waveformSupplier;
         if (previousStream == null) {
             convbuffer = new byte[convsize];
             pcmBuffer = BufferUtils.createByteBuffer(4096 * 500);
@@ -108,9 +117,6 @@ public class PreloadOggStream extends InputStream {
         try {
             total = input.available();
             preload();
-            secondsPerSegment = (float) SEGMENT_SIZE / (2.0f * oggInfo.channels * oggInfo.rate);
-            //Will be used to calculate correct index based on a given position
-            length = (float) (secondsPerSegment * ((double) totalUncompressedBytes / SEGMENT_SIZE));
         } catch (IOException ex) {
             throw new GdxRuntimeException(ex);
         }
@@ -125,7 +131,7 @@ public class PreloadOggStream extends InputStream {
         return total;
     }
     //playback duration
-    public float getLength() { return length; }
+    public float getLength() { return pcm.getLength(); }
 
     public int getChannels() {
         return oggInfo.channels;
@@ -144,60 +150,50 @@ public class PreloadOggStream extends InputStream {
         try {
             readPCM(); //init (reading first 3 header packets)
 
-            //From here, each read() call returns a single byte in int form.
-            segmentedData = new ArrayList<>();
-            byte[] temp;
-            int n = 0, value;
-            totalUncompressedBytes = 0;
+            Waveform waveform = waveformSupplier == null ? null : waveformSupplier.apply(oggInfo.channels, oggInfo.rate);
 
-            while (n >= 0) {
+            pcm = new PcmStore(oggInfo.channels, oggInfo.rate, total * 10L);
+            byte[] segment = new byte[SEGMENT_SIZE];
+            int n;
+
+            do {
                 progress = 1.0f - (input.available() / (float)this.total);
-                temp = new byte[SEGMENT_SIZE];
 
-                n = SEGMENT_SIZE;
-                for (int i = 0; i < SEGMENT_SIZE; ++i) {
+                n = 0;
+                while (n < SEGMENT_SIZE) {
                     if (readIndex >= pcmBuffer.position()) {
                         pcmBuffer.clear();
                         readPCM();
                         readIndex = 0;
-                    }
-                    if (readIndex >= pcmBuffer.position()) {
-                        value = -1;
-                    }
-                    else {
-                        value = pcmBuffer.get(readIndex);
-                        if (value < 0) {
-                            value = 256 + value;
-                        }
-                        ++readIndex;
+                        if (pcmBuffer.position() == 0)
+                            break; //end of stream
                     }
 
-                    if (value >= 0) {
-                        temp[i] = (byte)value;
-                    } else {
-                        if (i == 0) {
-                            n = -1; //nothing read, end of stream
-                        } else {
-                            n = i;
-                        }
-                        break;
-                    }
+                    ByteBuffer decoded = pcmBuffer.duplicate();
+                    decoded.limit(pcmBuffer.position()).position(readIndex);
+                    int count = Math.min(SEGMENT_SIZE - n, decoded.remaining());
+                    decoded.get(segment, n, count);
+                    readIndex += count;
+                    n += count;
                 }
 
-                totalUncompressedBytes += n;
-
-                if (n == SEGMENT_SIZE) {
-                    segmentedData.add(temp);
-                }
-                else if (n > 0) {
-                    segmentedData.add(new byte[n]);
-                    System.arraycopy(temp, 0, segmentedData.get(segmentedData.size() - 1), 0, n);
+                if (n > 0) {
+                    pcm.add(segment, 0, n);
+                    if (waveform != null)
+                        waveform.add(segment, 0, n);
                 }
-            }
+            } while (n == SEGMENT_SIZE);
+
+            if (waveform != null)
+                waveform.finish();
         }
         catch (Exception e) {
             e.printStackTrace();
         }
+
+        if (pcm == null)
+            pcm = new PcmStore(Math.max(oggInfo.channels, 1), Math.max(oggInfo.rate, 1), 0);
+        pcm.finish();
     }
 
     /** @see java.io.InputStream#available() */
@@ -492,80 +488,40 @@ public class PreloadOggStream extends InputStream {
     public boolean markSupported() {
         return true;
     }
-    private int markedSegment = 0;
-    private int markedIndex = 0;
+    private int markedPosition = 0;
     @Override
     public synchronized void mark(int readlimit) {
-        markedSegment = currentSegment;
-        markedIndex = dataIndex;
+        markedPosition = pcm.getPosition();
     }
     @Override
     public synchronized void reset() throws IOException {
-        currentSegment = markedSegment;
-        dataIndex = markedIndex;
+        pcm.setPosition(markedPosition);
     }
 
     public void restart() {
-        currentSegment = 0;
-        dataIndex = 0;
+        pcm.restart();
     }
 
     public float seekTime(float pos) {
-        if (pos < 0) {
-            restart();
-            return 0;
-        }
-
-        currentSegment = (int) (pos / secondsPerSegment);
-        dataIndex = 0; //(int) ((pos - secondsPerSegment * currentSegment) * SEGMENT_SIZE) % 2;
-
-        if (currentSegment >= segmentedData.size()) {
-            currentSegment = segmentedData.size();
-            return length; //seeked past end of song, return end of song
-        }
-
-        /*if (dataIndex > segmentedData.get(currentSegment).length) {
-            dataIndex = segmentedData.get(currentSegment).length - 1;
-        }*/
-
-        return secondsPerSegment * (currentSegment + (float)dataIndex / SEGMENT_SIZE);
+        return pcm.seekTime(pos);
     }
 
+    private final byte[] single = new byte[1];
     public int read() {
-        if (currentSegment >= segmentedData.size()) {
+        if (pcm.atEnd()) {
             return -1;
         }
-        else {
-            if (dataIndex >= segmentedData.get(currentSegment).length) {
-                dataIndex = 0;
-                ++currentSegment;
-                if (currentSegment >= segmentedData.size()) {
-                    return -1;
-                }
-            }
-            return segmentedData.get(currentSegment)[dataIndex++] + 256;
-        }
+        read(single, 0, 1);
+        return single[0] & 0xFF;
     }
 
     public boolean atEnd() {
-        return currentSegment >= segmentedData.size();
+        return pcm.atEnd();
     }
 
     public int read(byte[] b, int off, int len) {
-        for (int i = 0; i < len; ++i) {
-            int value = read();
-            if (value >= 0) {
-                b[i] = (byte)value;
-            } else {
-                if (i == 0) {
-                    return -1; //nothing read, end of stream
-                } else {
-                    return i;
-                }
-            }
-        }
-
-        return len;
+        int read = pcm.read(b, off, len);
+        return read == 0 && len > 0 ? -1 : read; //nothing read, end of stream
     }
 
     public int read(byte[] b) {
@@ -0,0 +1,67 @@
+package alchyr.taikoedit.core.input;
+
+import alchyr.taikoedit.util.interfaces.functional.VoidMethod;
+import com.badlogic.gdx.InputMultiplexer;
+
+//InputMultiplexer that also runs something on every input event, before passing it on.
+public class WakingInputMultiplexer extends InputMultiplexer {
+    private final VoidMethod onInput;
+
+    public WakingInputMultiplexer(VoidMethod onInput) {
+        this.onInput = onInput;
+    }
+
+    @Override
+    public boolean keyDown(int keycode) {
+        onInput.run();
+        return super.keyDown(keycode);
+    }
+
+    @Override
+    public boolean keyUp(int keycode) {
+        onInput.run();
+        return super.keyUp(keycode);
+    }
+
+    @Override
+    public boolean keyTyped(char character) {
+        onInput.run();
+        return super.keyTyped(character);
+    }
+
+    @Override
+    public boolean touchDown(int screenX, int screenY, int pointer, int button) {
+        onInput.run();
+        return super.touchDown(screenX, screenY, pointer, button);
+    }
+
+    @Override
+    public boolean touchUp(int screenX, int screenY, int pointer, int button) {
+        onInput.run();
+        return super.touchUp(screenX, screenY, pointer, button);
+    }
+
+    @Override
+    public boolean touchCancelled(int screenX, int screenY, int pointer, int button) {
+        onInput.run();
+        return super.touchCancelled(screenX, screenY, pointer, button);
+    }
+
+    @Override
+    public boolean touchDragged(int screenX, int screenY, int pointer) {
+        onInput.run();
+        return super.touchDragged(screenX, screenY, pointer);
+    }
+
+    @Override
+    public boolean mouseMoved(int screenX, int screenY) {
+        onInput.run();
+        return super.mouseMoved(screenX, screenY);
+    }
+
+    @Override
+    public boolean scrolled(float amountX, float amountY) {
+        onInput.run();
+        return super.scrolled(amountX, amountY);
+    }
+}
@@ -16,6 +16,7 @@ import alchyr.taikoedit.core.ui.TextOverlay;
 import alchyr.taikoedit.editor.*;
 import alchyr.taikoedit.editor.changes.FinisherChange;
 import alchyr.taikoedit.editor.changes.MapChange;
+import alchyr.taikoedit.editor.maps.BeatmapSnapshot;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.MapInfo;
 import alchyr.taikoedit.editor.maps.Mapset;
@@ -31,6 +32,7 @@ import alchyr.taikoedit.management.assets.loaders.OsuBackgroundLoader;
 import alchyr.taikoedit.management.localization.LocalizedText;
 import alchyr.taikoedit.util.FileDropHandler;
 import alchyr.taikoedit.util.GeneralUtils;
+import alchyr.taikoedit.util.Profiler;
 import alchyr.taikoedit.util.interfaces.functional.VoidMethod;
 import alchyr.taikoedit.util.structures.BooleanWrapper;
 import alchyr.taikoedit.util.structures.MapObject;
@@ -55,6 +57,8 @@ import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static alchyr.taikoedit.TaikoEditor.*;
 
@@ -113,6 +117,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     //Map views
     public MapView primaryView;
     private final HashMap<EditorBeatmap, ViewSet> mapViews;
+    private final List<ViewSnapshot> viewSnapshots = new ArrayList<>(); //Rendered without the layer lock
 
     //View information
     public static float viewScale = 1.0f;
@@ -121,6 +126,37 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     //Tools
     public Tools tools;
 
+    //Saving
+    private static final ThreadPoolExecutor saveExecutor;
+    static {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        saveExecutor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r)->{
+            Thread saveThread = new Thread(r);
+            saveThread.setName("Map Saver");
+            saveThread.setDaemon(true);
+            return saveThread;
+        });
+        saveExecutor.allowCoreThreadTimeOut(true);
+    }
+    private final List<PendingSave> pendingSaves = new ArrayList<>();
+    private boolean saveOverlay = false;
+
+    //Loading
+    private static final ThreadPoolExecutor loadExecutor;
+    static {
+        int threads = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        loadExecutor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r)->{
+            Thread loadThread = new Thread(r);
+            loadThread.setName("Map Loader");
+            loadThread.setDaemon(true);
+            return loadThread;
+        });
+        loadExecutor.allowCoreThreadTimeOut(true);
+    }
+    private final AtomicInteger mapsToLoad = new AtomicInteger(0), mapsLoaded = new AtomicInteger(0);
+    private final ConcurrentLinkedQueue<List<EditorBeatmap>> openedMaps = new ConcurrentLinkedQueue<>(); //Loaded by Open All
+    private boolean openingAll = false;
+
     //Networking
     private ConnectionServer server = null;
     private ConnectionClient client = null;
@@ -311,7 +347,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
             );
             fileOptionsList.add(new Dropdown.SeparatorElement<>());
             fileOptionsList.add(new Dropdown.ItemElement<>("Open All", aller)
-                    .setCondition((e) -> mapViews.size() < set.getMaps().size())
+                    .setCondition((e) -> !openingAll && mapViews.size() < set.getMaps().size())
                     .setOnClick((e) -> {
                         openAll(true);
                         return true;
@@ -452,10 +488,6 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         timeline = new Timeline(timelineY, music.getSecondLength());
         tools = new Tools(this);
 
-        if (client != null) {
-            openAll(false);
-        }
-
         if (mapViews.isEmpty())
         {
             openDifficultyMenu();
@@ -556,6 +588,45 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
                 clientEditorMessageHandler.update(elapsed);
             }
         }
+
+        if (!pendingSaves.isEmpty()) {
+            boolean written = true;
+            for (PendingSave save : pendingSaves) {
+                if (!save.result.isDone()) {
+                    written = false;
+                    break;
+                }
+            }
+            if (written)
+                finishSaves();
+        }
+
+        List<EditorBeatmap> opened;
+        while ((opened = openedMaps.poll()) != null) {
+            openingAll = false;
+            for (EditorBeatmap newMap : opened) {
+                if (newMap == null || isOpen(newMap.getFullMapInfo().getInfo()))
+                    continue; //Failed to load, or opened some other way while loading
+
+                addMap(newMap);
+                addObjectView(newMap, true);
+            }
+        }
+
+        //Send map changes made this frame
+        if (server != null) {
+            for (ConnectionClient client : server.getClients()) {
+                MapChange.flushMapChanges(client);
+            }
+        }
+        if (client != null) {
+            MapChange.flushMapChanges(client);
+        }
+
+        for (ViewSet views : mapViews.values())
+        {
+            views.publishSnapshots();
+        }
     }
 
     @Override
@@ -572,13 +643,14 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         }
 
         //Map views
+        viewSnapshots.clear();
         Iterator<EditorBeatmap> mapIterator = activeMaps.iterator();
         EditorBeatmap map;
         while (mapIterator.hasNext()) {
             map = mapIterator.next();
             ViewSet set = mapViews.get(map);
             if (set != null)
-                set.render(sb, sr);
+                set.render(sb, sr, viewSnapshots);
             /*else {
                 editorLogger.error("MAP IN ACTIVE MAPS WITH NO VIEWS: " + map.getName());
                 editorLogger.error("Dirty: " + map.dirty);
@@ -587,6 +659,13 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
             }*/
         }
 
+        if (!viewSnapshots.isEmpty()) {
+            TaikoEditor.renderUnlocked(()->{
+                for (ViewSnapshot snapshot : viewSnapshots)
+                    snapshot.render(sb, sr);
+            });
+        }
+
         tools.renderCurrentTool(sb, sr);
 
         //For each mapview, render overlay (difficulty name), exit button, black separation lines
@@ -678,6 +757,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     private void returnToMenu()
     {
         clean();
+        finishSaves(); //Maps that failed to save will be dirty again
 
         List<EditorBeatmap> dirtyMaps = new ArrayList<>();
         for (EditorBeatmap map : activeMaps) {
@@ -787,50 +867,56 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
 
     @Override
     public LoadingLayer getLoader() {
-        if (!initial.isEmpty() && !initial.get(0).getSongFile().equals(set.getSongFile())) {
-            //Different song
-            editorLogger.info("Difficulty has different song, loading audio");
-            return new EditorLoadingLayer()
-                    .addLayers(true, this)
-                    .addTask(this::stopMusic)
-                    .newSet().addTask(()->music.loadAsync(initial.get(0).getSongFile(), null))
-                    .newSet().addTracker(music::getProgress, ()->music.noTrack() || music.hasMusic(initial.get(0).getSongFile()), true) //music loading starts in song select
-                    .addFailure(music::noTrack)
-                    .addTask(true, ()->{ music.play(); music.pause(); })
-                    .addTask(true, ()->music.seekSecond(0))
-                    .addTask(true, ()->SettingsMaster.loadMapSettings(EditorLayer.this, set))
-                    .addTask(true, this::loadBeatmap);
-        }
-        else {
-            return new EditorLoadingLayer()
-                    .addLayers(true, this)
-                    .addTask(this::stopMusic)
-                    .newSet().addTracker(music::getProgress, ()->music.noTrack() || music.hasMusic(), true) //music loading starts in song select
-                    .addFailure(music::noTrack)
-                    .addTask(true, ()->{ music.play(); music.pause(); })
-                    .addTask(true, ()->music.seekSecond(0))
-                    .addTask(true, ()->SettingsMaster.loadMapSettings(EditorLayer.this, set))
-                    .addTask(true, this::loadBeatmap);
-        }
+        String songFile = initial.isEmpty() ? set.getSongFile() : initial.get(0).getSongFile();
+        //Song select may still be loading the song, and may only load a preview or a different difficulty's song.
+        //Once it's done, the full song is loaded if that isn't what it loaded.
+        return new EditorLoadingLayer()
+                .addLayers(true, this)
+                .addTask(this::stopMusic)
+                .newSet().addTracker(music::getProgress, ()->!music.isLoading(), true)
+                .newSet().addTask(()->{
+                    if (!music.hasMusic(songFile)) {
+                        editorLogger.info("Loading full audio");
+                        music.loadAsync(songFile, null);
+                    }
+                })
+                .newSet().addTracker(music::getProgress, ()->!music.isLoading() && (music.noTrack() || music.hasMusic(songFile)), true)
+                .addFailure(music::noTrack)
+                .addTask(true, ()->{ music.play(); music.pause(); })
+                .addTask(true, ()->music.seekSecond(0))
+                .addTask(true, ()->SettingsMaster.loadMapSettings(EditorLayer.this, set))
+                .addTracker(this::getMapLoadProgress)
+                .addTask(true, this::loadBeatmap)
+                .addTracker(this::getMapLoadProgress);
     }
 
     public void loadViewsetInfo(String val) {
         if (client != null) return; //Do not open from settings if client exist
 
         String[] maps = val.split("-");
+        List<MapInfo> toOpen = new ArrayList<>();
+        List<String[]> viewInfo = new ArrayList<>();
         for (String map : maps) {
             String[] mapInfo = map.split("\\+");
             if (mapInfo.length < 2)
                 continue;
-            MapInfo toOpen = set.getMaps().stream().filter((info)->mapInfo[0].equals(safeify(info.getDifficultyName()))).findFirst().orElse(null);
-            if (toOpen == null) {
+            MapInfo info = set.getMaps().stream().filter((diff)->mapInfo[0].equals(safeify(diff.getDifficultyName()))).findFirst().orElse(null);
+            if (info == null) {
                 editorLogger.info("Failed to find previous open difficulty \"" + mapInfo[0] + "\"");
                 continue;
             }
+            toOpen.add(info);
+            viewInfo.add(mapInfo);
+        }
 
-            EditorBeatmap newMap = new EditorBeatmap(set, toOpen);
+        List<EditorBeatmap> loaded = loadMaps(toOpen);
+        for (int index = 0; index < loaded.size(); ++index) {
+            EditorBeatmap newMap = loaded.get(index);
+            if (newMap == null)
+                continue;
             addMap(newMap);
 
+            String[] mapInfo = viewInfo.get(index);
             for (int i = 1; i < mapInfo.length; ++i) {
                 MapView newView = MapView.fromTypeString(mapInfo[i], this, newMap);
                 if (newView != null)
@@ -866,14 +952,21 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     private void loadBeatmap()
     {
         editorLogger.info("Loading mapset. " + initial.size() + " difficulties initially open.");
-        if (!initial.isEmpty()) {
-            for (MapInfo toOpen : initial) {
-                prepSingleDiff(toOpen, initial.size() == 1);
-            }
-        }
-        else if (activeMaps.isEmpty() && set.getMaps().size() == 1) {
+        List<MapInfo> toOpen = new ArrayList<>(initial);
+        if (toOpen.isEmpty() && activeMaps.isEmpty() && set.getMaps().size() == 1) {
             //No saved editor info, didn't choose an initial map, only one difficulty in set
-            prepSingleDiff(set.getMaps().get(0), true);
+            toOpen.add(set.getMaps().get(0));
+        }
+
+        //Clients open every difficulty, like the host
+        List<EditorBeatmap> loaded = loadMaps(unopened(client == null ? toOpen : set.getMaps()));
+
+        for (MapInfo info : toOpen) {
+            prepSingleDiff(info, toOpen.size() == 1, loaded);
+        }
+        for (EditorBeatmap map : loaded) {
+            if (map != null && !activeMaps.contains(map))
+                addMap(map);
         }
 
         //Test code: Load all diffs automatically
@@ -895,7 +988,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         editorLogger.info("Loaded beatmap successfully.");
     }
 
-    private void prepSingleDiff(MapInfo info, boolean toTop) {
+    private void prepSingleDiff(MapInfo info, boolean toTop, List<EditorBeatmap> loaded) {
         EditorBeatmap mapToPrep = null;
         for (EditorBeatmap map : activeMaps) {
             if (map.is(info)) {
@@ -904,7 +997,14 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
             }
         }
         if (mapToPrep == null) {
-            mapToPrep = new EditorBeatmap(set, info);
+            for (EditorBeatmap map : loaded) {
+                if (map != null && map.is(info)) {
+                    mapToPrep = map;
+                    break;
+                }
+            }
+            if (mapToPrep == null)
+                return; //Failed to load
 
             if (toTop) {
                 addMap(mapToPrep, 0);
@@ -1157,19 +1257,53 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         }
         return false;
     }
-    public boolean saveAll() {
-        return saveAll(true);
+    public void saveAll() {
+        saveAll(true);
     }
-    public boolean saveAll(boolean withOverlay) {
+    /**
+     * Saves all open difficulties in the background. The results are shown once all of them are written.
+     */
+    public void saveAll(boolean withOverlay) {
+        for (EditorBeatmap m : activeMaps) {
+            BeatmapSnapshot snapshot = m.snapshot();
+            pendingSaves.add(new PendingSave(snapshot, saveExecutor.submit(snapshot::write)));
+        }
+        saveOverlay |= withOverlay;
+    }
+    /**
+     * Saves all open difficulties, waiting until they are written.
+     * @return whether all saves were successful
+     */
+    public boolean saveAllNow(boolean withOverlay) {
+        saveAll(withOverlay);
+        return finishSaves();
+    }
+    //Waits for any saves still being written.
+    private boolean finishSaves() {
+        if (pendingSaves.isEmpty())
+            return true;
+
         int failures = 0;
         StringBuilder failed = new StringBuilder();
-        for (EditorBeatmap m : activeMaps) {
-            String err = m.save();
+        for (PendingSave save : pendingSaves) {
+            String err;
+            try {
+                err = save.result.get();
+            }
+            catch (InterruptedException | ExecutionException e) {
+                editorLogger.error("Failed to save beatmap.", e);
+                err = "Failed to save: " + e.getMessage();
+            }
+            err = save.snapshot.getMap().finishSave(save.snapshot, err);
             if (err != null) {
-                failed.append(" [").append(m.getName()).append("]");
+                failed.append(" [").append(save.snapshot.getMap().getName()).append("]");
                 ++failures;
             }
         }
+        pendingSaves.clear();
+
+        boolean withOverlay = saveOverlay;
+        saveOverlay = false;
         if (withOverlay) {
             if (failures == 0) {
                 textOverlay.setText("Saved all.", 2.0f);
@@ -1184,22 +1318,78 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         return failures == 0;
     }
     private void openAll(boolean withView) {
-        List<MapInfo> toOpen = new ArrayList<>(set.getMaps());
-        toOpen.removeIf(info -> {
-            for (EditorBeatmap map : activeMaps) {
-                if (map.is(info))
-                    return true;
+        List<MapInfo> toOpen = unopened(set.getMaps());
+        if (toOpen.isEmpty())
+            return;
+
+        if (withView) {
+            //Loaded in the background, then added in update
+            openingAll = true;
+            TaikoEditor.addLayer(new EditorLoadingLayer()
+                    .addTask(()->openedMaps.add(loadMaps(toOpen)))
+                    .addTracker(this::getMapLoadProgress));
+        }
+        else {
+            for (EditorBeatmap newMap : loadMaps(toOpen)) {
+                if (newMap != null)
+                    addMap(newMap);
             }
-            return false;
-        });
+        }
+    }
+    private boolean isOpen(MapInfo info) {
+        for (EditorBeatmap map : activeMaps) {
+            if (map.is(info))
+                return true;
+        }
+        return false;
+    }
+    private List<MapInfo> unopened(List<MapInfo> maps) {
+        List<MapInfo> toOpen = new ArrayList<>(maps);
+        toOpen.removeIf(this::isOpen);
+        return toOpen;
+    }
 
-        for (MapInfo info : toOpen) {
-            EditorBeatmap newMap = new EditorBeatmap(set, info);
-            addMap(newMap);
+    /**
+     * Parses difficulties on the loader threads, all at once, and waits for them.
+     * Can be called from any thread other than a loader thread.
+     * @return The loaded maps in the same order as the given list, with null for any that failed to load.
+     */
+    private List<EditorBeatmap> loadMaps(List<MapInfo> toLoad) {
+        //Progress only covers this load
+        mapsLoaded.set(0);
+        mapsToLoad.set(toLoad.size());
+
+        List<Future<EditorBeatmap>> loading = new ArrayList<>(toLoad.size());
+        for (MapInfo info : toLoad) {
+            loading.add(loadExecutor.submit(()->{
+                try {
+                    return new EditorBeatmap(set, info); //Also keys objects
+                }
+                finally {
+                    mapsLoaded.incrementAndGet();
+                }
+            }));
+        }
 
-            if (withView)
-                addObjectView(newMap, true);
+        List<EditorBeatmap> loaded = new ArrayList<>(toLoad.size());
+        for (int i = 0; i < loading.size(); ++i) {
+            try {
+                loaded.add(loading.get(i).get());
+            }
+            catch (ExecutionException e) {
+                editorLogger.error("Failed to load difficulty " + toLoad.get(i).getDifficultyName() + ".", e.getCause());
+                loaded.add(null);
+            }
+            catch (InterruptedException e) {
+                loading.get(i).cancel(false);
+                loaded.add(null);
+            }
         }
+        return loaded;
+    }
+    private float getMapLoadProgress() {
+        int total = mapsToLoad.get();
+        return total == 0 ? 1 : Math.min(1, (float) mapsLoaded.get() / total);
     }
     private void cutPrimary() {
         if (primaryView != null && primaryView.hasSelection()) {
@@ -1703,7 +1893,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
                             client.sendFile(pass, handle);
                             break;
                         case "MAPS":
-                            if (!saveAll()) {
+                            if (!saveAllNow(true)) {
                                 editorLogger.warn("Didn't save successfully, might result in desync");
                             }
                             for (ConnectionClient otherClient : server.getClients()) {
@@ -1892,6 +2082,21 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
                 }
             });
 
+            bindings.bind("Profiler", ()->{
+                sourceLayer.textOverlay.setText(Profiler.toggle() ? "Profiler enabled." : "Profiler disabled.", 1.0f);
+            });
+            bindings.bind("ExportProfile", ()->{
+                File file = new File("profile.csv");
+                try {
+                    Profiler.export(file);
+                    sourceLayer.textOverlay.setText("Profile exported to " + file.getAbsolutePath(), 2.0f);
+                }
+                catch (IOException e) {
+                    editorLogger.error("Failed to export profile.", e);
+                    sourceLayer.textOverlay.setText("Failed to export profile.", 2.0f);
+                }
+            });
+
             bindings.bind("FinishLock", sourceLayer::toggleFinisher);
 
             bindings.bind("Redo", ()->{
@@ -2180,4 +2385,14 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
             });
         }
     }
+
+    private static final class PendingSave {
+        final BeatmapSnapshot snapshot;
+        final Future<String> result;
+
+        PendingSave(BeatmapSnapshot snapshot, Future<String> result) {
+            this.snapshot = snapshot;
+            this.result = result;
+        }
+    }
 }
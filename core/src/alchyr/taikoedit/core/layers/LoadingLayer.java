@@ -185,6 +185,9 @@ public class LoadingLayer extends ProgramLayer implements InputLayer {
 
     @Override
     public void update(float elapsed) {
+        if (!done)
+            keepUpdating(0.1f); //Progress display
+
         if (!done && updateLoading())
         {
             if (taskSetTime != 0) {
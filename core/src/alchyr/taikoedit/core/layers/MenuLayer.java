@@ -38,6 +38,8 @@ import java.awt.datatransfer.Transferable;
 import java.io.*;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.ArrayList;
@@ -234,6 +236,8 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
         }
 
         updaters.removeIf((func)->func.apply(elapsed));
+        if (!updaters.isEmpty())
+            keepUpdating(0.1f);
     }
 
     @Override
@@ -354,7 +358,7 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
                 }
 
                 if (!test.waitValidation(params[2])) {
-                    textOverlay.setText("Failed to join; was not validated.", 2.0f);
+                    textOverlay.setText(test.failure != null ? "Failed to join: " + test.failure : "Failed to join; was not validated.", 2.0f);
                     waiter.setComplete();
                     return;
                 }
@@ -471,9 +475,9 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
                         }
 
                         String filename = msg.contents[1].toString();
-                        List<byte[]> filedata = (List<byte[]>) msg.contents[2];
+                        File received = (File) msg.contents[2];
 
-                        if (filedata == null) {
+                        if (received == null) {
                             editorLogger.info("No file received");
                             textOverlay.setText(filename, 2.0f);
                             break;
@@ -504,10 +508,8 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
 
                         File audioFile = new File(setDirectory, filename);
 
-                        try (FileOutputStream fileOut = new FileOutputStream(audioFile)) {
-                            for (byte[] chunk : filedata) {
-                                fileOut.write(chunk);
-                            }
+                        try {
+                            Files.move(received.toPath(), audioFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
                         } catch (IOException e) {
                             textOverlay.setText("Failed to write audio file.", 2.0f);
                             editorLogger.error("Failed to write audio file.", e);
@@ -587,9 +589,9 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
                         }
 
                         String filename = msg.contents[1].toString();
-                        List<byte[]> filedata = (List<byte[]>) msg.contents[2];
+                        File received = (File) msg.contents[2];
 
-                        if (filedata == null) {
+                        if (received == null) {
                             editorLogger.info("No file received");
                             textOverlay.setText(filename, 2.0f);
                             break;
@@ -597,10 +599,8 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
 
                         File mapFile = new File(setDirectory, filename);
 
-                        try (FileOutputStream fileOut = new FileOutputStream(mapFile)) {
-                            for (byte[] chunk : filedata) {
-                                fileOut.write(chunk);
-                            }
+                        try {
+                            Files.move(received.toPath(), mapFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
                         } catch (IOException e) {
                             textOverlay.setText("Failed to write map file.", 2.0f);
                             editorLogger.error("Failed to write map file.", e);
@@ -808,6 +808,8 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
     @Override
     public void dispose() {
         super.dispose();
+        if (mapSelect != null)
+            mapSelect.dispose();
     }
 
     private static class MenuProcessor extends BoundInputProcessor {
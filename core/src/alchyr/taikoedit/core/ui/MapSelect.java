@@ -6,11 +6,9 @@ import alchyr.taikoedit.editor.maps.Mapset;
 import alchyr.taikoedit.management.MapMaster;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.AlphabeticComparer;
-import alchyr.taikoedit.util.GeneralUtils;
 import alchyr.taikoedit.util.Hitbox;
 import alchyr.taikoedit.util.TrackedThread;
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
@@ -91,8 +89,10 @@ public class MapSelect implements Scrollable {
     private float mapLoadingAlpha = 0, mapUpdatingAlpha = 0;
 
     //map info
+    private final ThumbnailCache thumbnails;
     private String currentThumbnail = null;
     private Texture thumbnail;
+    private boolean loadingThumbnail = false;
     private int thumbnailX, thumbnailY, thumbnailWidth, thumbnailHeight, thumbnailOffsetX, thumbnailOffsetY,
             thumbnailSrcWidth, thumbnailSrcHeight, thumbnailSrcOffsetX, thumbnailSrcOffsetY;
     private boolean updateThumbnail = false;
@@ -152,6 +152,8 @@ public class MapSelect implements Scrollable {
         difficultyTitleY = infoDivider1 - 25;
         difficultyY = difficultyTitleY - 25;
 
+        thumbnails = new ThumbnailCache((int) Math.ceil(infoWidth), (int) Math.ceil(thumbnailMaxHeight), 16);
+
         refreshMaps();
     }
 
@@ -255,7 +257,7 @@ public class MapSelect implements Scrollable {
         selected = set;
 
         if (selected != null) {
-            musicLoading = music.loadAsync(set.getSongFile(), this::musicLoaded).thread;
+            musicLoading = music.loadPreviewAsync(set.getSongFile(), ()->previewTime(set), this::musicLoaded).thread;
             loadingMusic = true;
         }
         else {
@@ -266,12 +268,24 @@ public class MapSelect implements Scrollable {
         thumbnail = null;
         updateThumbnail = true;
     }
+    //In seconds.
+    private static float previewTime(Mapset set) {
+        List<MapInfo> maps = set.getMaps();
+        int previewTime = maps.isEmpty() ? -1 : maps.get(0).readPreviewTime();
+        return Math.max(0, previewTime / 1000.0f);
+    }
     private void musicLoaded(TrackedThread thread) {
         if (thread.equals(musicLoading) && thread.success()) {
             loadingMusic = false;
             music.play();
         }
     }
+    public void dispose() {
+        thumbnail = null;
+        thumbnails.dispose();
+        loadingThumbnail = currentThumbnail != null && !currentThumbnail.isEmpty(); //Loaded again if the menu is shown again
+    }
+
     public void playMusic() {
         loadingMusic = false;
         if (music.hasMusic()) {
@@ -303,6 +317,9 @@ public class MapSelect implements Scrollable {
                 mapUpdatingAlpha = Math.max(0, mapUpdatingAlpha - elapsed * 4);
             }
         }
+        if (loadingAlpha > 0 || mapLoadingAlpha > 0 || mapUpdatingAlpha > 0) {
+            keepUpdating(0.1f); //Loading icons
+        }
 
         if (mapperSortAscending) {
             if (mapperSortRotation != 0) {
@@ -400,56 +417,65 @@ public class MapSelect implements Scrollable {
         }
     }
 
-    public void render(SpriteBatch sb, ShapeRenderer sr) {
-        if (selected != null && (updateThumbnail || (currentThumbnail != null && !currentThumbnail.equals(selected.getBackground())))) {
-            updateThumbnail = false;
-            currentThumbnail = selected.getBackground();
-            if (currentThumbnail != null && !currentThumbnail.isEmpty()) {
-                FileHandle bgFile = Gdx.files.absolute(currentThumbnail);
-                if (bgFile.exists()) {
-                    try {
-                        thumbnail = new Texture(Gdx.files.absolute(currentThumbnail), true); //these song folders have quite high odds of containing characters libgdx doesn't like. assetMaster.get(backgroundImg.toLowerCase());
-                        thumbnail.setFilter(Texture.TextureFilter.MipMapLinearNearest, Texture.TextureFilter.MipMapLinearNearest);
+    //Covers the info area with the thumbnail, cropping whichever side is too long
+    private void setThumbnail(Texture texture) {
+        thumbnail = texture;
 
-                        float bgScale = Math.max(infoWidth / thumbnail.getWidth(), thumbnailMaxHeight / thumbnail.getHeight());
+        float bgScale = Math.max(infoWidth / thumbnail.getWidth(), thumbnailMaxHeight / thumbnail.getHeight());
 
-                        thumbnailWidth = Math.round(thumbnail.getWidth() * bgScale);
-                        thumbnailHeight = Math.round(thumbnail.getHeight() * bgScale);
+        thumbnailWidth = Math.round(thumbnail.getWidth() * bgScale);
+        thumbnailHeight = Math.round(thumbnail.getHeight() * bgScale);
 
-                        if (thumbnailWidth > infoWidth) {
-                            thumbnailSrcHeight = thumbnail.getHeight();
-                            thumbnailSrcOffsetY = 0;
+        if (thumbnailWidth > infoWidth) {
+            thumbnailSrcHeight = thumbnail.getHeight();
+            thumbnailSrcOffsetY = 0;
 
-                            thumbnailSrcWidth = (int) (thumbnail.getWidth() * (infoWidth / thumbnailWidth));
-                            thumbnailSrcOffsetX = (int) ((thumbnail.getWidth() - thumbnailSrcWidth) * 0.5f);
-                            thumbnailWidth = (int) infoWidth;
-                        }
-                        else if (thumbnailHeight > thumbnailMaxHeight) {
-                            thumbnailSrcWidth = thumbnail.getWidth();
-                            thumbnailSrcOffsetX = 0;
+            thumbnailSrcWidth = (int) (thumbnail.getWidth() * (infoWidth / thumbnailWidth));
+            thumbnailSrcOffsetX = (int) ((thumbnail.getWidth() - thumbnailSrcWidth) * 0.5f);
+            thumbnailWidth = (int) infoWidth;
+        }
+        else if (thumbnailHeight > thumbnailMaxHeight) {
+            thumbnailSrcWidth = thumbnail.getWidth();
+            thumbnailSrcOffsetX = 0;
 
-                            thumbnailSrcHeight = (int) (thumbnail.getHeight() * (thumbnailMaxHeight / thumbnailHeight));
-                            thumbnailSrcOffsetY = (int) ((thumbnail.getHeight() - thumbnailSrcHeight) * 0.5f);
-                            thumbnailHeight = (int) thumbnailMaxHeight;
-                        }
-                        else {
-                            thumbnailSrcWidth = thumbnail.getWidth();
-                            thumbnailSrcHeight = thumbnail.getHeight();
-                            thumbnailSrcOffsetX = 0;
-                            thumbnailSrcOffsetY = 0;
-                        }
+            thumbnailSrcHeight = (int) (thumbnail.getHeight() * (thumbnailMaxHeight / thumbnailHeight));
+            thumbnailSrcOffsetY = (int) ((thumbnail.getHeight() - thumbnailSrcHeight) * 0.5f);
+            thumbnailHeight = (int) thumbnailMaxHeight;
+        }
+        else {
+            thumbnailSrcWidth = thumbnail.getWidth();
+            thumbnailSrcHeight = thumbnail.getHeight();
+            thumbnailSrcOffsetX = 0;
+            thumbnailSrcOffsetY = 0;
+        }
 
-                        thumbnailOffsetX = thumbnailWidth / 2;
-                        thumbnailOffsetY = thumbnailHeight / 2;
+        thumbnailOffsetX = thumbnailWidth / 2;
+        thumbnailOffsetY = thumbnailHeight / 2;
 
-                        thumbnailX = (int) (infoCenterX - thumbnailWidth / 2.0f);
-                        thumbnailY = (int) (thumbnailCenterY - thumbnailHeight / 2.0f);
-                    }
-                    catch (Exception e) {
-                        GeneralUtils.logStackTrace(editorLogger, e);
-                    }
-                }
+        thumbnailX = (int) (infoCenterX - thumbnailWidth / 2.0f);
+        thumbnailY = (int) (thumbnailCenterY - thumbnailHeight / 2.0f);
+    }
+
+    public void render(SpriteBatch sb, ShapeRenderer sr) {
+        if (selected != null && (updateThumbnail || (currentThumbnail != null && !currentThumbnail.equals(selected.getBackground())))) {
+            updateThumbnail = false;
+            currentThumbnail = selected.getBackground();
+            thumbnail = null;
+            loadingThumbnail = currentThumbnail != null && !currentThumbnail.isEmpty();
+        }
+        if (loadingThumbnail) {
+            //Decoded and scaled on another thread; shown once ready
+            Texture loaded = thumbnails.get(currentThumbnail);
+            if (loaded != null) {
+                loadingThumbnail = false;
+                setThumbnail(loaded);
             }
+            else if (thumbnails.hasFailed(currentThumbnail)) {
+                loadingThumbnail = false;
+            }
+        }
+        else if (thumbnail != null) {
+            thumbnails.get(currentThumbnail); //Keep it recently used
         }
 
         textRenderer.setFont(font);
@@ -498,7 +524,7 @@ public class MapSelect implements Scrollable {
                 sb.setColor(Color.WHITE);
                 sb.draw(thumbnail, thumbnailX, thumbnailY, thumbnailOffsetX, thumbnailOffsetY, thumbnailWidth, thumbnailHeight, 1, 1, 0, thumbnailSrcOffsetX, thumbnailSrcOffsetY, thumbnailSrcWidth, thumbnailSrcHeight, false, false);
             }
-            else {
+            else if (!loadingThumbnail) {
                 textRenderer.renderTextCentered(sb, "(No Background)", infoCenterX, thumbnailCenterY, Color.WHITE);
             }
 
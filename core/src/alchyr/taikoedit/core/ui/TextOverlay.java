@@ -38,6 +38,7 @@ public class TextOverlay {
         this.text = text;
         this.fadeDelay = fadeDelay;
         textColor.a = 1;
+        TaikoEditor.keepUpdating(fadeDelay + 1.0f); //Until faded
     }
 
     public void update(float elapsed)
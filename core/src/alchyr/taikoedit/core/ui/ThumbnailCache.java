@@ -0,0 +1,273 @@
+package alchyr.taikoedit.core.ui;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.Texture;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+/**
+ * Loads images as small textures that cover a given area, for previews.
+ * Images are decoded and scaled down on a worker thread. The scaled images are saved to disk, keyed by the image's path,
+ * modified time and the thumbnail size, so an image only has to be decoded at full size once.
+ *
+ * Textures are kept for the most recently used images, and disposed when evicted or when the cache is disposed.
+ * A disposed cache can still be used; images are loaded again as they're requested.
+ * get and dispose should only be called on the render thread.
+ */
+public class ThumbnailCache {
+    private static final String EXTENSION = ".png";
+    private static final long DISK_LIMIT = 64L * 1024 * 1024;
+
+    private static final ThreadPoolExecutor thumbnailExecutor;
+    static {
+        thumbnailExecutor = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r)->{
+            Thread thumbnailThread = new Thread(r);
+            thumbnailThread.setName("Thumbnail Loader");
+            thumbnailThread.setDaemon(true);
+            return thumbnailThread;
+        });
+        thumbnailExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final int width, height, capacity;
+
+    private final LinkedHashMap<String, Texture> textures = new LinkedHashMap<>(16, 0.75f, true); //Access order, least recent first
+    private final Set<String> pending = new HashSet<>();
+    private final Set<String> failed = new HashSet<>();
+    private final ConcurrentLinkedQueue<Loaded> loaded = new ConcurrentLinkedQueue<>();
+    private volatile String latest = null; //Older requests that haven't started yet are skipped
+    private volatile boolean disposed = false; //Loads that finish while disposed are dropped
+
+    /**
+     * @param width Width of the area thumbnails have to cover
+     * @param height Height of the area thumbnails have to cover
+     * @param capacity Number of textures to keep
+     */
+    public ThumbnailCache(int width, int height, int capacity) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @return The thumbnail of the image, or null if it isn't loaded yet or failed to load.
+     * Starts loading it if it isn't already loading.
+     */
+    public Texture get(String path) {
+        disposed = false;
+        latest = path;
+        receive();
+
+        Texture texture = textures.get(path);
+        if (texture == null && !failed.contains(path) && pending.add(path)) {
+            thumbnailExecutor.execute(()->load(path));
+        }
+        return texture;
+    }
+
+    public boolean hasFailed(String path) {
+        return failed.contains(path);
+    }
+
+    public void dispose() {
+        disposed = true;
+        for (Texture texture : textures.values())
+            texture.dispose();
+        textures.clear();
+        pending.clear();
+
+        Loaded result;
+        while ((result = loaded.poll()) != null) {
+            if (result.pixmap != null)
+                result.pixmap.dispose();
+        }
+    }
+
+    //Creates textures for finished thumbnails.
+    private void receive() {
+        Loaded result;
+        while ((result = loaded.poll()) != null) {
+            pending.remove(result.path);
+            if (result.skipped)
+                continue;
+
+            if (result.pixmap == null) {
+                failed.add(result.path);
+                continue;
+            }
+
+            try {
+                Texture texture = new Texture(result.pixmap);
+                texture.setFilter(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear);
+                Texture old = textures.put(result.path, texture); //Can be loaded twice if it was requested again while a load was dropped
+                if (old != null)
+                    old.dispose();
+            }
+            catch (Exception e) {
+                editorLogger.error("Failed to create thumbnail texture.", e);
+                failed.add(result.path);
+            }
+            finally {
+                result.pixmap.dispose();
+            }
+        }
+
+        //Remove least recently used, other than the one currently wanted
+        Iterator<Map.Entry<String, Texture>> textureIterator = textures.entrySet().iterator();
+        while (textures.size() > capacity && textureIterator.hasNext()) {
+            Map.Entry<String, Texture> entry = textureIterator.next();
+            if (!entry.getKey().equals(latest)) {
+                entry.getValue().dispose();
+                textureIterator.remove();
+            }
+        }
+    }
+
+
+    /* Worker thread */
+
+    private void load(String path) {
+        if (disposed || !path.equals(latest)) {
+            loaded.add(new Loaded(path, null, true));
+            return;
+        }
+
+        Pixmap result = null;
+        try {
+            File source = new File(path);
+            if (source.isFile()) {
+                File cached = cacheFile(source);
+                if (cached.isFile()) {
+                    try {
+                        result = new Pixmap(Gdx.files.absolute(cached.getPath()));
+                        cached.setLastModified(System.currentTimeMillis()); //Most recently used
+                    }
+                    catch (Exception e) {
+                        editorLogger.warn("Failed to read cached thumbnail; it will be recreated.");
+                        cached.delete();
+                    }
+                }
+
+                if (result == null) {
+                    result = scale(new Pixmap(Gdx.files.absolute(path)));
+                    save(cached, result);
+                }
+            }
+        }
+        catch (Exception e) {
+            editorLogger.error("Failed to load thumbnail for " + path, e);
+            if (result != null) {
+                result.dispose();
+                result = null;
+            }
+        }
+
+        if (disposed && result != null) {
+            result.dispose();
+            return;
+        }
+        loaded.add(new Loaded(path, result, false));
+    }
+
+    //Scales the image down to just cover the thumbnail area, halving first to keep large images from aliasing.
+    private Pixmap scale(Pixmap image) {
+        float scale = Math.max((float) width / image.getWidth(), (float) height / image.getHeight());
+        if (scale >= 1)
+            return image;
+
+        int targetWidth = Math.max(1, Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, Math.round(image.getHeight() * scale));
+
+        while (image.getWidth() >= targetWidth * 2 && image.getHeight() >= targetHeight * 2) {
+            image = resize(image, image.getWidth() / 2, image.getHeight() / 2);
+        }
+        return resize(image, targetWidth, targetHeight);
+    }
+
+    //Disposes the original.
+    private static Pixmap resize(Pixmap image, int width, int height) {
+        Pixmap resized = new Pixmap(width, height, Pixmap.Format.RGBA8888);
+        resized.setBlending(Pixmap.Blending.None);
+        resized.setFilter(Pixmap.Filter.BiLinear);
+        resized.drawPixmap(image, 0, 0, image.getWidth(), image.getHeight(), 0, 0, width, height);
+        image.dispose();
+        return resized;
+    }
+
+
+    /* Disk cache */
+
+    private static File directory() {
+        return Gdx.files.local("cache/thumbnails").file();
+    }
+
+    private File cacheFile(File source) throws Exception {
+        String key = source.getCanonicalPath() + "\t" + source.lastModified() + "\t" + width + "x" + height;
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        StringBuilder hash = new StringBuilder();
+        for (byte b : md.digest(key.getBytes(StandardCharsets.UTF_8)))
+            hash.append(String.format("%02x", b));
+        return new File(directory(), hash + EXTENSION);
+    }
+
+    private static void save(File file, Pixmap thumbnail) {
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs())
+                return;
+
+            File temp = new File(dir, file.getName() + ".tmp");
+            PixmapIO.writePNG(Gdx.files.absolute(temp.getPath()), thumbnail);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            evict();
+        }
+        catch (Exception e) {
+            editorLogger.error("Failed to save thumbnail.", e);
+        }
+    }
+
+    //Removes the least recently used thumbnails until the cache is within its size limit.
+    private static void evict() {
+        File[] entries = directory().listFiles((dir, name)->name.endsWith(EXTENSION));
+        if (entries == null)
+            return;
+
+        long total = 0;
+        for (File entry : entries)
+            total += entry.length();
+        if (total <= DISK_LIMIT)
+            return;
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (total <= DISK_LIMIT)
+                break;
+            long size = entry.length();
+            if (entry.delete())
+                total -= size;
+        }
+    }
+
+    private static final class Loaded {
+        final String path;
+        final Pixmap pixmap; //null if failed
+        final boolean skipped;
+
+        Loaded(String path, Pixmap pixmap, boolean skipped) {
+            this.path = path;
+            this.pixmap = pixmap;
+            this.skipped = skipped;
+        }
+    }
+}
@@ -62,8 +62,12 @@ public class ClientEditorMessageHandler extends ClientMessageHandler {
     }
 
     private void handleMapChange(Message msg) {
-        MapChange.ChangeBuilder changeBuilder = (MapChange.ChangeBuilder) msg.contents[0];
-        changeBuilder.map.receiveNetworkChange(client, changeBuilder);
+        for (Object change : msg.contents) { //Changes are sent in batches
+            MapChange.ChangeBuilder changeBuilder = (MapChange.ChangeBuilder) change;
+            changeBuilder.map.receiveNetworkChange(client, changeBuilder);
+            if (!client.isAlive())
+                break;
+        }
     }
 
     private void handleDenial(Message msg) {
@@ -26,8 +26,10 @@ public class ServerEditorMessageHandler extends ServerMessageHandler {
     }
 
     private void handleMapChange(ConnectionClient client, Message msg) {
-        MapChange.ChangeBuilder changeBuilder = (MapChange.ChangeBuilder) msg.contents[0];
-        changeBuilder.map.receiveNetworkChange(client, changeBuilder);
+        for (Object change : msg.contents) { //Changes are sent in batches
+            MapChange.ChangeBuilder changeBuilder = (MapChange.ChangeBuilder) change;
+            changeBuilder.map.receiveNetworkChange(client, changeBuilder);
+        }
     }
 
     private void handleDenial(ConnectionClient client, Message msg) {
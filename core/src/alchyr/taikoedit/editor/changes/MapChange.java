@@ -10,15 +10,19 @@ import alchyr.taikoedit.editor.maps.components.TimingPoint;
 import alchyr.taikoedit.util.interfaces.KnownAmountSupplier;
 import alchyr.taikoedit.util.structures.BranchingStateQueue;
 import alchyr.taikoedit.util.structures.MapObject;
-import alchyr.taikoedit.util.structures.MapObjectTreeMap;
+import alchyr.taikoedit.util.structures.MapObjectMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import static alchyr.taikoedit.TaikoEditor.editorLogger;
 
@@ -85,9 +89,14 @@ public abstract class MapChange extends BranchingStateQueue.StateChange {
 
 
 
+    //Changes are held and sent together once per frame (see flushMapChanges) or before any other message.
     public static void sendMapChange(ConnectionClient client, int stateKey, MapChange change) {
         logger.info("Sending map change: " + change.name);
-        client.send(MAP_CHANGE, stateKey, change);
+        client.<ChangeBatch>hold(MAP_CHANGE, (batch)->batch.add(stateKey, change));
+    }
+
+    public static void flushMapChanges(ConnectionClient client) {
+        client.flushHeld();
     }
 
     public static void sendMapStateChange(ConnectionClient client, EditorBeatmap map, int oldStateKey, int newStateKey) {
@@ -97,50 +106,46 @@ public abstract class MapChange extends BranchingStateQueue.StateChange {
 
     public static void registerEditorForChanges(EditorLayer editor) {
         ConnectionClient.
-                registerMessageType(MAP_CHANGE, (params)->new MessageSender(params) {
-                    @Override
-                    public void send(DataOutputStream out, Object[] params) throws IOException {
-                        int stateKey = (int) params[0];
-                        MapChange change = (MapChange) params[1];
-
-                        out.write(MAP_CHANGE); //message type
-
-                        out.write(mapChangeTypeIDs.get(change.getClass()));
-
-                        out.writeInt(stateKey);
-
-                        out.writeUTF(change.name);
-                        out.writeUTF(change.map.getName());
-
-                        change.send(out);
-
-                        out.flush();
-                    }
-                },
+                registerMessageType(MAP_CHANGE, ChangeBatch::new,
                 (in)->{
-                    ChangeBuilderBuilder builder = mapChangeBuilderBuilders.get(in.read());
+                    int format = in.read();
+                    if (format == BATCH_DEFLATED) {
+                        in = new DataInputStream(new InflaterInputStream(in));
+                    }
 
-                    int stateKey = in.readInt();
+                    int count = readVarInt(in);
+                    List<String> mapNames = new ArrayList<>();
+                    ChangeBuilder[] changes = new ChangeBuilder[count];
+                    int stateKey = 0;
+                    for (int i = 0; i < count; ++i) {
+                        ChangeBuilderBuilder builder = mapChangeBuilderBuilders.get(in.read());
 
-                    String nameKey = in.readUTF();
-                    String mapName = in.readUTF();
+                        stateKey += readSignedVarInt(in);
 
-                    EditorBeatmap map = null;
-                    for (EditorBeatmap maybeMap : editor.getActiveMaps()) {
-                        if (maybeMap.getName().equals(mapName)) {
-                            map = maybeMap;
-                            break;
+                        String nameKey = in.readUTF();
+                        int mapIndex = readVarInt(in);
+                        if (mapIndex == mapNames.size()) {
+                            mapNames.add(in.readUTF());
+                        }
+                        String mapName = mapNames.get(mapIndex);
+
+                        EditorBeatmap map = null;
+                        for (EditorBeatmap maybeMap : editor.getActiveMaps()) {
+                            if (maybeMap.getName().equals(mapName)) {
+                                map = maybeMap;
+                                break;
+                            }
                         }
-                    }
 
-                    if (map == null) {
-                        logger.warn("Received " + nameKey + " for unknown difficulty: " + mapName);
-                        //null change + change index and branch = failed change
-                        return new Message(Message.UTF, ConnectionServer.EVENT_SENT + "FAIL|Desync: Change made on unknown difficulty");
-                    }
+                        if (map == null) {
+                            logger.warn("Received " + nameKey + " for unknown difficulty: " + mapName);
+                            //null change + change index and branch = failed change
+                            return new Message(Message.UTF, ConnectionServer.EVENT_SENT + "FAIL|Desync: Change made on unknown difficulty");
+                        }
 
-                    ChangeBuilder changeBuilder = new ChangeBuilder(builder.buildBuilder(map, in, nameKey), map, stateKey);
-                    return new Message(MAP_CHANGE, changeBuilder);
+                        changes[i] = new ChangeBuilder(builder.buildBuilder(map, in, nameKey), map, stateKey);
+                    }
+                    return new Message(MAP_CHANGE, (Object[]) changes);
                 });
 
         ConnectionClient.
@@ -216,6 +221,87 @@ public abstract class MapChange extends BranchingStateQueue.StateChange {
                 });
     }
 
+    private static final int BATCH_RAW = 0;
+    private static final int BATCH_DEFLATED = 1;
+    private static final int MIN_DEFLATE_SIZE = 1024;
+
+    /* Map changes made in the same frame, sent as one message.
+     * byte format (raw or deflated); the rest is deflated if the format says so
+     * varint change count, then for each change:
+     * byte change type, signed varint difference from the previous change's state key (starting from 0), UTF name key,
+     * varint index of the difficulty's name in this batch, followed by the name (UTF) if it's the first change on that difficulty,
+     * then the change's own data
+     */
+    private static final class ChangeBatch extends MessageSender {
+        private final List<Integer> stateKeys = new ArrayList<>();
+        private final List<MapChange> changes = new ArrayList<>();
+
+        ChangeBatch(Object[] params) {
+            super(params);
+            if (params.length >= 2) {
+                add((int) params[0], (MapChange) params[1]);
+            }
+        }
+
+        void add(int stateKey, MapChange change) {
+            stateKeys.add(stateKey);
+            changes.add(change);
+        }
+
+        @Override
+        public void send(DataOutputStream out, Object[] params) throws IOException {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64 * changes.size());
+            DataOutputStream data = new DataOutputStream(payload);
+
+            writeVarInt(data, changes.size());
+            List<String> mapNames = new ArrayList<>();
+            int lastKey = 0;
+            for (int i = 0; i < changes.size(); ++i) {
+                MapChange change = changes.get(i);
+                int stateKey = stateKeys.get(i);
+
+                data.write(mapChangeTypeIDs.get(change.getClass()));
+                writeSignedVarInt(data, stateKey - lastKey);
+                lastKey = stateKey;
+
+                data.writeUTF(change.name);
+                String mapName = change.map.getName();
+                int mapIndex = mapNames.indexOf(mapName);
+                if (mapIndex < 0) {
+                    writeVarInt(data, mapNames.size());
+                    data.writeUTF(mapName);
+                    mapNames.add(mapName);
+                }
+                else {
+                    writeVarInt(data, mapIndex);
+                }
+
+                change.send(data);
+            }
+            data.flush();
+
+            out.write(MAP_CHANGE); //message type
+            if (payload.size() >= MIN_DEFLATE_SIZE) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.size() / 2);
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(compressed, deflater)) {
+                    payload.writeTo(deflaterOut);
+                }
+                finally {
+                    deflater.end();
+                }
+
+                if (compressed.size() < payload.size()) {
+                    out.write(BATCH_DEFLATED);
+                    compressed.writeTo(out);
+                    return;
+                }
+            }
+            out.write(BATCH_RAW);
+            payload.writeTo(out);
+        }
+    }
+
     public final EditorBeatmap map;
     public boolean invalidateSelection = false; //Should be true for changes that would cause the PositionalObjectMap for selected objects to have incorrect positions NO LONGER USED
 
@@ -305,55 +391,136 @@ public abstract class MapChange extends BranchingStateQueue.StateChange {
     }
 
 
-    protected static void writeObjects(DataOutputStream out, int count, MapObjectTreeMap<?> sourceMap, Iterable<? extends MapObject> mapObjects) throws IOException {
+    /* Object sets
+     * byte OBJ_MULTI, then the keys of the objects
+     * or byte OBJ_EXCLUDE, byte OBJ_GAME or OBJ_TIMING, varint count of objects, then the keys of every object in the map that isn't included
+     *
+     * Keys are sorted, and written as either
+     * byte KEYS_DELTAS, varint count, then signed varint difference of each key from the previous one (starting from 0)
+     * or byte KEYS_RANGES, varint count of runs of consecutive keys, then for each run the signed varint difference
+     * of its first key from the end of the previous run and the varint length of the run - 1
+     * Keys are given out in order as a map is loaded, so a set of objects next to each other is usually a single run.
+     */
+    protected static final int KEYS_DELTAS = 1;
+    protected static final int KEYS_RANGES = 2;
+
+    protected static void writeObjects(DataOutputStream out, int count, MapObjectMap<?> sourceMap, Iterable<? extends MapObject> mapObjects) throws IOException {
         writeObjects(out, count, sourceMap, mapObjects.iterator());
     }
-    protected static void writeObjects(DataOutputStream out, int count, MapObjectTreeMap<?> sourceMap, Iterator<? extends MapObject> mapObjects) throws IOException {
-        if (count <= sourceMap.count() * 2 / 3) {
+    protected static void writeObjects(DataOutputStream out, int count, MapObjectMap<?> sourceMap, Iterator<? extends MapObject> mapObjects) throws IOException {
+        int[] keys = new int[count];
+        int size = 0;
+        while (mapObjects.hasNext()) {
+            if (size == keys.length)
+                keys = Arrays.copyOf(keys, Math.max(16, size * 2));
+            keys[size++] = mapObjects.next().key;
+        }
+        Arrays.sort(keys, 0, size);
+
+        if (size <= sourceMap.count() * 2 / 3) {
             out.write(OBJ_MULTI);
-            out.writeInt(count);
-            while (mapObjects.hasNext()) {
-                MapObject obj = mapObjects.next();
-                out.writeInt(obj.key);
-            }
+            writeKeys(out, keys, size);
         }
         else {
             out.write(OBJ_EXCLUDE);
 
-            Set<Integer> toWrite = new HashSet<>();
-            sourceMap.forEachObject((obj)->toWrite.add(obj.key)); //get all objects from source map
-
-            while (mapObjects.hasNext()) { //remove all objects that should be affected
-                MapObject obj = mapObjects.next();
-                toWrite.remove(obj.key);
-            }
-
-            out.writeInt(toWrite.size()); //number of objects that are excluded
-
             if (!sourceMap.isEmpty() && sourceMap.firstEntry().getValue().get(0) instanceof TimingPoint) {
                 out.write(OBJ_TIMING);
             }
             else {
                 out.write(OBJ_GAME);
             }
+            writeVarInt(out, size);
+
+            //get all objects from source map, then remove all objects that should be affected
+            int[] all = new int[sourceMap.count()];
+            int[] allSize = { 0 };
+            sourceMap.forEachObject((obj)->{
+                if (allSize[0] < all.length)
+                    all[allSize[0]++] = obj.key;
+            });
+            Arrays.sort(all, 0, allSize[0]);
+
+            int excluded = 0;
+            for (int i = 0, j = 0; i < allSize[0]; ++i) {
+                while (j < size && keys[j] < all[i])
+                    ++j;
+                if (j >= size || keys[j] != all[i])
+                    all[excluded++] = all[i];
+            }
+            writeKeys(out, all, excluded); //objects that are excluded
+        }
+    }
+
+    private static void writeKeys(DataOutputStream out, int[] keys, int count) throws IOException {
+        int runs = 0;
+        for (int i = 0; i < count; ++i) {
+            if (i == 0 || keys[i] != keys[i - 1] + 1)
+                ++runs;
+        }
 
-            for (Integer key : toWrite) {
-                out.writeInt(key);
+        if (runs * 2 <= count) {
+            out.write(KEYS_RANGES);
+            writeVarInt(out, runs);
+            long last = 0;
+            for (int i = 0; i < count; ) {
+                int start = i;
+                while (i + 1 < count && keys[i + 1] == keys[i] + 1)
+                    ++i;
+                writeSignedVarLong(out, keys[start] - last);
+                writeVarInt(out, i - start);
+                last = keys[i];
+                ++i;
+            }
+        }
+        else {
+            out.write(KEYS_DELTAS);
+            writeVarInt(out, count);
+            long last = 0;
+            for (int i = 0; i < count; ++i) {
+                writeSignedVarLong(out, keys[i] - last);
+                last = keys[i];
             }
         }
     }
 
+    private static int[] readKeys(DataInputStream in) throws IOException {
+        int format = in.read();
+        if (format == KEYS_RANGES) {
+            int runs = readVarInt(in);
+            int[] keys = new int[Math.max(runs, 16)];
+            int count = 0;
+            long last = 0;
+            for (int run = 0; run < runs; ++run) {
+                int key = (int) (last + readSignedVarLong(in));
+                int length = readVarInt(in) + 1;
+                if (count + length > keys.length)
+                    keys = Arrays.copyOf(keys, Math.max(count + length, keys.length * 2));
+                for (int i = 0; i < length; ++i)
+                    keys[count++] = key + i;
+                last = key + length - 1;
+            }
+            return Arrays.copyOf(keys, count);
+        }
+        else if (format == KEYS_DELTAS) {
+            int[] keys = new int[readVarInt(in)];
+            long last = 0;
+            for (int i = 0; i < keys.length; ++i) {
+                last += readSignedVarLong(in);
+                keys[i] = (int) last;
+            }
+            return keys;
+        }
+        throw new IOException("Unknown object key format: " + format);
+    }
+
     protected static KnownAmountSupplier<List<MapObject>> readObjects(DataInputStream in, EditorBeatmap map) throws IOException {
         int type = in.read();
-        int amt = in.readInt();
 
         if (type == OBJ_MULTI) {
-            List<Integer> keys = new ArrayList<>();
-            for (int i = 0; i < amt; ++i) {
-                keys.add(in.readInt());
-            }
-            return new KnownAmountSupplier<>(amt, ()->{
-                List<MapObject> mapObjects = new ArrayList<>();
+            int[] keys = readKeys(in);
+            return new KnownAmountSupplier<>(keys.length, ()->{
+                List<MapObject> mapObjects = new ArrayList<>(keys.length);
                 for (int key : keys) {
                     MapObject obj = map.mapObjectMap.get(key);
                     if (obj == null) {
@@ -367,45 +534,86 @@ public abstract class MapChange extends BranchingStateQueue.StateChange {
         }
         else if (type == OBJ_EXCLUDE) {
             int objType = in.read();
-
-            List<Integer> keys = new ArrayList<>();
-            for (int i = 0; i < amt; ++i) {
-                keys.add(in.readInt());
-            }
+            int amt = readVarInt(in);
+            int[] keys = readKeys(in);
 
             return new KnownAmountSupplier<>(amt, ()->{
-                List<MapObject> mapObjects = new ArrayList<>();
-                if (objType == OBJ_GAME) {
-                    map.objects.forEachObject(mapObjects::add);
-                }
-                else {
-                    map.allPoints.forEachObject(mapObjects::add);
-                }
-
                 for (int key : keys) {
-                    MapObject obj = map.mapObjectMap.get(key);
-                    if (obj == null) {
+                    if (map.mapObjectMap.get(key) == null) {
                         editorLogger.warn("Received invalid map object key");
                         return null;
                     }
-                    if (!mapObjects.remove(obj)) {
-                        editorLogger.warn("Received invalid map object (not currently in map)");
-                        return null;
-                    }
                 }
 
+                List<MapObject> mapObjects = new ArrayList<>(amt);
+                int[] found = { 0 };
+                (objType == OBJ_GAME ? map.objects : map.allPoints).forEachObject((obj)->{
+                    if (Arrays.binarySearch(keys, obj.key) >= 0)
+                        ++found[0];
+                    else
+                        mapObjects.add(obj);
+                });
+
+                if (found[0] != keys.length) {
+                    editorLogger.warn("Received invalid map object (not currently in map)");
+                    return null;
+                }
                 return mapObjects;
             });
         }
         else {
             editorLogger.warn("Tried to read multiple objects in unknown format");
-            for (int i = 0; i < amt; ++i) {
-                in.readInt();
-            }
             return null;
         }
     }
 
+    /* Variable length integers; 7 bits per byte, low bits first, high bit set if more bytes follow.
+     * Signed values are zigzag encoded so small negative values stay short. */
+    protected static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    protected static void writeSignedVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    protected static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    protected static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    protected static int readSignedVarInt(DataInputStream in) throws IOException {
+        int value = readVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    protected static long readSignedVarLong(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
 
     private interface ChangeBuilderBuilder {
         Supplier<MapChange> buildBuilder(EditorBeatmap map, DataInputStream in, String nameKey) throws IOException;
@@ -12,11 +12,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -31,7 +31,9 @@ public class BeatmapDatabase {
 
     private Thread saveThread;
 
-    private static final String DATABASE_VER = "0";
+    private static final String DATABASE_VER = "0"; //Version of the old json format, which is converted when found
+
+    private final MapDatabaseFile databaseFile = new MapDatabaseFile(new File("mapdata.db"));
 
 
     public static float progress = 0;
@@ -54,14 +56,14 @@ public class BeatmapDatabase {
             progress = 0;
             mapCount = 0;
 
-            File database = getDatabaseFile();
+            File legacyDatabase = getLegacyDatabaseFile();
             indexedMapsets.clear();
 
-            if (database.exists())
+            if (databaseFile.exists() || legacyDatabase.exists())
             {
                 logger.info("Existing map data found. Attempting to load.");
                 try {
-                    HashMap<String, Mapset> oldData = loadDatabase(database, delayed);
+                    HashMap<String, Mapset> oldData = loadDatabase(legacyDatabase);
 
                     if (oldData != null) {
                         if (delayed) {
@@ -130,7 +132,7 @@ public class BeatmapDatabase {
         }
     }
 
-    public void save() {
+    public synchronized void save() {
         if (saveThread == null) {
             saveThread = new Thread(()->{
                 saveDatabase();
@@ -245,6 +247,8 @@ public class BeatmapDatabase {
     private Mapset readFolder(Path folder, Collection<Path> subFolders) {
         ++mapCount;
 
+        long folderModified = lastModified(folder); //Before listing, so changes made while reading are caught next time
+
         try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
             List<Path> folders = new ArrayList<>();
             List<Path> maps = new ArrayList<>();
@@ -262,6 +266,7 @@ public class BeatmapDatabase {
                 Mapset set = new Mapset(folder.toFile(), maps);
 
                 if (!set.isEmpty()) {
+                    set.folderModified = folderModified;
                     return set;
                 }
             }
@@ -293,6 +298,13 @@ public class BeatmapDatabase {
 
         ++mapCount;
 
+        long folderModified = lastModified(folder);
+        if (folderModified != 0 && folderModified == old.folderModified && mapsUnchanged(old)) {
+            //No files in the folder have been added, removed, or replaced, so it doesn't need to be listed.
+            //Files edited in place don't change the folder's modified time, so the known maps are still checked.
+            return old;
+        }
+
         try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
             boolean hasMap = false;
             List<Path> folders = new ArrayList<>();
@@ -305,22 +317,32 @@ public class BeatmapDatabase {
                     hasMap = true;
 
                     File mapFile = file.toFile();
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    long size = attributes.size(), modified = attributes.lastModifiedTime().toMillis();
 
                     for (MapInfo info : old.getMaps()) {
                         if (info.getMapFile().equals(mapFile)) {
-                            confirmed.add(info);
-                            continue outer; //This file is all good, move on to the next one.
+                            if (info.fileSize == 0) {
+                                //Converted from old data, which didn't track changes. Assume it's up to date.
+                                info.fileSize = size;
+                                info.fileModified = modified;
+                            }
+                            if (info.fileSize == size && info.fileModified == modified) {
+                                confirmed.add(info);
+                                continue outer; //This file is all good, move on to the next one.
+                            }
+                            break;
                         }
                     }
 
-                    //This file doesn't exist in the old data. Have to load it.
+                    //This file doesn't exist in the old data or has changed. Have to load it.
                     MapInfo info = new MapInfo(mapFile, old);
                     if (info.getMode() == 1)
                     {
                         confirmed.add(info);
                         if (!old.getSongFile().equals(info.getSongFile()))
                             old.sameSong = false;
-                        logger.info("Found added difficulty: " + info.getDifficultyName());
+                        logger.info("Found added or changed difficulty: " + info.getDifficultyName());
                     }
                 }
                 else {
@@ -331,6 +353,7 @@ public class BeatmapDatabase {
             old.setMaps(confirmed);
             if (!old.isEmpty())
             {
+                old.folderModified = folderModified;
                 return old;
             }
 
@@ -353,56 +376,52 @@ public class BeatmapDatabase {
         return null;
     }
 
+    //Whether every known map file still has the size and modified time it had when it was read.
+    private static boolean mapsUnchanged(Mapset set) {
+        try {
+            for (MapInfo info : set.getMaps()) {
+                BasicFileAttributes attributes = Files.readAttributes(info.getMapFile().toPath(), BasicFileAttributes.class);
+                if (info.fileSize != attributes.size() || info.fileModified != attributes.lastModifiedTime().toMillis())
+                    return false;
+            }
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
     private void saveDatabase() {
         logger.info("Saving database.");
-        File f = getDatabaseFile();
-        Writer writer = null;
-        Json json = new Json(JsonWriter.OutputType.json);
         try {
-            writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(f.toPath()), StandardCharsets.UTF_8));
-            json.setWriter(writer);
-
-            json.writeArrayStart();
-            json.writeObjectStart();
-            json.writeValue("ver", DATABASE_VER);
-            json.writeObjectEnd();
-            for (Map.Entry<String, Mapset> mapsetEntry : mapsets.entrySet()) {
-                Mapset m = mapsetEntry.getValue();
-                json.writeObjectStart();
-                json.writeValue("key", m.key);
-                json.writeValue("sameSong", m.sameSong);
-                json.writeValue("songFile", m.songFile);
-                json.writeValue("creator", m.creator);
-                json.writeValue("title", m.title);
-                json.writeValue("artist", m.artist);
-                json.writeValue("background", m.background);
-                json.writeArrayStart("maps");
-                for (MapInfo map : m.getMaps()) {
-                    json.writeObjectStart();
-                    json.writeValue("mapFile", map.getMapFile().getName());
-                    if (!m.sameSong) {
-                        json.writeValue("songFile", map.getSongFile());
-                    }
-                    json.writeValue("background", map.getBackground());
-                    //no need to write mode, it can be assumed to be 1
-                    json.writeValue("name", map.getDifficultyName());
-                    json.writeObjectEnd();
-                }
-                json.writeArrayEnd();
-                json.writeObjectEnd();
-            }
-            json.writeArrayEnd();
+            databaseFile.save(mapsets.values());
             logger.info("Database saved.");
+
+            File legacyDatabase = getLegacyDatabaseFile();
+            if (legacyDatabase.exists() && legacyDatabase.delete()) {
+                logger.info("Removed old map data file.");
+            }
         }
         catch (Exception e) {
             logger.error("Failed to save map database.");
             GeneralUtils.logStackTrace(logger, e);
         }
-        finally {
-            StreamUtils.closeQuietly(writer);
+    }
+    private HashMap<String, Mapset> loadDatabase(File legacyDatabase) throws Exception {
+        if (databaseFile.exists()) {
+            HashMap<String, Mapset> data = databaseFile.load();
+            if (data != null) {
+                for (Mapset set : data.values()) {
+                    index(set);
+                }
+            }
+            return data;
         }
+
+        logger.info("Converting old map data.");
+        return loadLegacyDatabase(legacyDatabase);
     }
-    private HashMap<String, Mapset> loadDatabase(File f, boolean immediatelyIndex) throws Exception {
+    private HashMap<String, Mapset> loadLegacyDatabase(File f) throws Exception {
         if (f.isFile() && f.canRead())
         {
             FileInputStream in = new FileInputStream(f);
@@ -485,10 +504,19 @@ public class BeatmapDatabase {
         }
         return null;
     }
-    private File getDatabaseFile() {
+    private File getLegacyDatabaseFile() {
         return new File("mapdata.json");
     }
 
+    private static long lastModified(Path folder) {
+        try {
+            return Files.getLastModifiedTime(folder).toMillis();
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
     public void index(Mapset set) {
         indexedMapsets.put(set.getCreator().toLowerCase().split(" "), set, 1.5f); //mappers get bonus weight in the search.
         indexedMapsets.put(set.getArtist().toLowerCase().split(" "), set, 1.0f);
@@ -0,0 +1,244 @@
+package alchyr.taikoedit.editor.maps;
+
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.editor.maps.components.TimingPoint;
+import alchyr.taikoedit.util.structures.MapObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+/**
+ * Copy of the contents of a map at the time it was saved.
+ * Created on the update thread, then can be written on any thread while editing continues.
+ */
+public class BeatmapSnapshot {
+    final EditorBeatmap map;
+    final int sequence; //Snapshots of the same map are numbered so an older one never replaces a newer one
+    final File mapFile, newFile;
+
+    private final String mapInfo;
+    private final List<TimingPoint> points;
+    private final List<HitObject> objects;
+    private final double[] beatLengths, svRates; //For each object, used for slider lengths
+    private final boolean hasObjectSection;
+
+    Exception failure = null;
+
+    BeatmapSnapshot(EditorBeatmap map, int sequence) {
+        this.map = map;
+        this.sequence = sequence;
+
+        FullMapInfo fullMapInfo = map.getFullMapInfo();
+        mapFile = fullMapInfo.getMapFile();
+        newFile = fullMapInfo.generateMapFile();
+        String info = "";
+        try {
+            info = fullMapInfo.toString();
+        }
+        catch (Exception e) {
+            failure = e; //Reported when written
+        }
+        mapInfo = info;
+
+        points = new ArrayList<>(map.allPoints.count());
+        for (Map.Entry<Long, ArrayList<TimingPoint>> stack : map.allPoints.entrySet()) {
+            int start = points.size();
+            for (TimingPoint t : stack.getValue()) {
+                points.add((TimingPoint) copy(t));
+            }
+            //Red lines before green lines
+            points.subList(start, points.size()).sort((a, b)->Boolean.compare(b.uninherited, a.uninherited));
+        }
+
+        hasObjectSection = !(map.timingPoints.isEmpty() && map.effectPoints.isEmpty() && map.objects.isEmpty());
+
+        int count = map.objects.count();
+        objects = new ArrayList<>(count);
+        beatLengths = new double[count];
+        svRates = new double[count];
+        if (hasObjectSection) {
+            copyObjects(fullMapInfo.sliderMultiplier);
+        }
+    }
+
+    //Copies objects along with the timing at each of them.
+    private void copyObjects(double sliderMultiplier) {
+        //Sv tracking variables
+        long currentPos;
+        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing, effect;
+        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = null, nextEffect = null;
+        double svRate = sliderMultiplier, currentBPM = 120;
+
+        timing = map.timingPoints.entrySet().iterator();
+        effect = map.effectPoints.entrySet().iterator();
+
+        if (timing.hasNext())
+        {
+            nextTiming = timing.next();
+            currentBPM = nextTiming.getValue().get(0).value;
+            if (timing.hasNext())
+                nextTiming = timing.next();
+            else
+                nextTiming = null; //Only one timing point.
+        }
+
+        if (effect.hasNext())
+            nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached.
+
+        for (Map.Entry<Long, ArrayList<HitObject>> stacked : map.objects.entrySet())
+        {
+            currentPos = stacked.getKey();
+
+            long lastTimingPos = Long.MIN_VALUE;
+            long lastEffectPos = Long.MIN_VALUE;
+
+            while (nextTiming != null && nextTiming.getKey() <= currentPos)
+            {
+                currentBPM = nextTiming.getValue().get(nextTiming.getValue().size() - 1).value;
+                lastTimingPos = nextTiming.getKey();
+                svRate = sliderMultiplier; //return to base sv
+
+                if (timing.hasNext())
+                    nextTiming = timing.next();
+                else
+                    nextTiming = null;
+            }
+            while (nextEffect != null && nextEffect.getKey() <= currentPos)
+            {
+                lastEffectPos = nextEffect.getKey();
+                svRate = sliderMultiplier * nextEffect.getValue().get(nextEffect.getValue().size() - 1).value;
+
+                if (effect.hasNext())
+                    nextEffect = effect.next();
+                else
+                    nextEffect = null;
+            }
+            if (lastEffectPos < lastTimingPos)
+            {
+                svRate = sliderMultiplier; //return to base sv
+            }
+
+            for (HitObject h : stacked.getValue()) {
+                beatLengths[objects.size()] = currentBPM;
+                svRates[objects.size()] = svRate;
+                objects.add((HitObject) copy(h));
+            }
+        }
+    }
+
+    private static MapObject copy(MapObject o) {
+        MapObject copy = o.shiftedCopy(o.getPos());
+        copy.setPos(o.getPrecisePos());
+        return copy;
+    }
+
+    public EditorBeatmap getMap() {
+        return map;
+    }
+
+    String getMapInfo() {
+        return mapInfo;
+    }
+
+    //The text of each section, if the file couldn't be written.
+    String timingPointText() throws IOException {
+        MapWriter out = new MapWriter();
+        writeTimingPoints(out);
+        return out.toString();
+    }
+
+    String hitObjectText() throws IOException {
+        MapWriter out = new MapWriter();
+        writeHitObjects(out);
+        return out.toString();
+    }
+
+    private void writeTimingPoints(MapWriter out) throws IOException {
+        if (points.isEmpty()) return;
+
+        out.write("\r\n[TimingPoints]\r\n");
+        for (TimingPoint t : points) {
+            t.write(out);
+            out.newLine();
+        }
+    }
+
+    private void writeHitObjects(MapWriter out) throws IOException {
+        if (!hasObjectSection) return;
+
+        out.write("\r\n\r\n[HitObjects]\r\n");
+        for (int i = 0; i < objects.size(); ++i) {
+            objects.get(i).write(out, beatLengths[i], svRates[i]);
+            out.newLine();
+        }
+    }
+
+    /**
+     * Writes the map to a temporary file, which then replaces the map file. The previous map file is kept as a backup.
+     * Can be called from any thread.
+     * @return null if successful, or an error message. Failures should be passed to EditorBeatmap.finishSave on the update thread.
+     */
+    public String write() {
+        try {
+            if (failure != null)
+                throw failure;
+
+            synchronized (map.saveLock) {
+                if (sequence < map.writtenSequence) {
+                    return null; //A newer save was already written
+                }
+
+                File temp = new File(newFile.getPath() + ".tmp");
+                try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                     MapWriter out = new MapWriter(channel)) {
+                    out.write(mapInfo);
+                    writeTimingPoints(out);
+                    writeHitObjects(out);
+                }
+
+                if (mapFile.exists())
+                {
+                    String backup = newFile.getPath();
+                    backup = backup.substring(0, backup.lastIndexOf('.')) + ".BACKUP";
+                    try
+                    {
+                        if (mapFile.equals(newFile))
+                            Files.copy(mapFile.toPath(), new File(backup).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        else //Renamed; the old file shouldn't remain
+                            Files.move(mapFile.toPath(), new File(backup).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        editorLogger.info("Created backup successfully.");
+                    }
+                    catch (Exception e)
+                    {
+                        //No backup :(
+                        editorLogger.error("Failed to create backup.", e);
+                    }
+                }
+
+                try {
+                    Files.move(temp.toPath(), newFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (IOException e) {
+                    Files.move(temp.toPath(), newFile.toPath(), StandardCopyOption.REPLACE_EXISTING); //File system doesn't support atomic move
+                }
+                map.writtenSequence = sequence;
+            }
+            return null;
+        }
+        catch (Exception e) {
+            editorLogger.error("Failed to save beatmap.", e);
+            failure = e;
+            return "Failed to save: " + e.getMessage();
+        }
+    }
+}
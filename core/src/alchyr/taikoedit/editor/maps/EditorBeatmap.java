@@ -20,6 +20,8 @@ import alchyr.taikoedit.management.assets.FileHelper;
 import alchyr.taikoedit.util.GeneralUtils;
 import alchyr.taikoedit.util.structures.BranchingStateQueue;
 import alchyr.taikoedit.util.structures.MapObject;
+import alchyr.taikoedit.util.structures.MapObjectArrayMap;
+import alchyr.taikoedit.util.structures.MapObjectMap;
 import alchyr.taikoedit.util.structures.MapObjectTreeMap;
 import alchyr.taikoedit.util.structures.Pair;
 import com.badlogic.gdx.utils.StreamUtils;
@@ -40,12 +42,15 @@ public class EditorBeatmap {
     private static final int BOOKMARK_REMOVE_DIST = 1000; //ms gap on either side of deletion attempt where a bookmark can be removed
 
     public boolean dirty = false; //Are there unsaved changes
+    private int saveSequence = 0;
+    final Object saveLock = new Object(); //Held while writing the map file
+    int writtenSequence = 0; //Sequence of the last snapshot written, guarded by saveLock
 
     //For hitobjects/timing points use a structure that allows for fast find/insertion at the desired position but also fast iteration?
-    public final MapObjectTreeMap<TimingPoint> timingPoints; //red lines
-    public final MapObjectTreeMap<TimingPoint> effectPoints; //green lines
-    public final MapObjectTreeMap<TimingPoint> allPoints;
-    public final MapObjectTreeMap<HitObject> objects;
+    public final MapObjectMap<TimingPoint> timingPoints; //red lines
+    public final MapObjectMap<TimingPoint> effectPoints; //green lines
+    public final MapObjectMap<TimingPoint> allPoints;
+    public final MapObjectMap<HitObject> objects;
 
     public final HashMap<Integer, MapObject> mapObjectMap;
     private int objectKey = Integer.MIN_VALUE + 1;
@@ -89,13 +94,17 @@ public class EditorBeatmap {
     private List<MapView> gameplayChangeListener = new ArrayList<>();
 
 
+    private static <T extends MapObject> MapObjectMap<T> createMap() {
+        return SettingsMaster.arrayMaps ? new MapObjectArrayMap<>() : new MapObjectTreeMap<>();
+    }
+
     //Loading map from file
     public EditorBeatmap(Mapset set, MapInfo map)
     {
-        timingPoints = new MapObjectTreeMap<>();
-        effectPoints = new MapObjectTreeMap<>();
-        allPoints = new MapObjectTreeMap<>();
-        objects = new MapObjectTreeMap<>();
+        timingPoints = createMap();
+        effectPoints = createMap();
+        allPoints = createMap();
+        objects = createMap();
         mapObjectMap = new HashMap<>();
 
         volumeMap = new TreeMap<>();
@@ -108,10 +117,10 @@ public class EditorBeatmap {
     //Creating new map
     public EditorBeatmap(EditorBeatmap base, FullMapInfo map, boolean keepObjects, boolean keepSv, boolean keepVolume)
     {
-        timingPoints = new MapObjectTreeMap<>();
-        effectPoints = new MapObjectTreeMap<>();
-        allPoints = new MapObjectTreeMap<>();
-        objects = new MapObjectTreeMap<>();
+        timingPoints = createMap();
+        effectPoints = createMap();
+        allPoints = createMap();
+        objects = createMap();
         mapObjectMap = new HashMap<>();
 
         volumeMap = new TreeMap<>();
@@ -644,7 +653,7 @@ public class EditorBeatmap {
     }
 
 
-    public MapObjectTreeMap<MapObject> getStackedObjects(MapObjectTreeMap<? extends MapObject> base, MapObjectTreeMap<? extends MapObject> source) {
+    public MapObjectTreeMap<MapObject> getStackedObjects(MapObjectMap<? extends MapObject> base, MapObjectMap<? extends MapObject> source) {
         MapObjectTreeMap<MapObject> allStacked = new MapObjectTreeMap<>();
         ArrayList<? extends MapObject> stack;
         for (Long k : base.keySet()) {
@@ -1540,11 +1549,6 @@ public class EditorBeatmap {
         if (!map.getMapFile().isFile())
             return;
 
-        List<String> lines = FileHelper.readFileLines(map.getMapFile());
-
-        if (lines == null || lines.isEmpty())
-            return;
-
         int section = -1, eventSection = -1;
 
         //Sv tracking variables
@@ -1571,306 +1575,316 @@ public class EditorBeatmap {
             //1 break
             //2 anything else
 
-        for (String line : lines)
+        try (MapReader reader = new MapReader(map.getMapFile()))
         {
-            if (line.isEmpty())
-                continue;
-
-            if (line.startsWith("["))
+            while (reader.nextLine())
             {
-                switch (line)
+                if (reader.isEmpty())
+                    continue;
+
+                if (reader.startsWith('['))
                 {
-                    case "[General]":
-                        section = 0;
-                        break;
-                    case "[Editor]":
-                        section = 1;
-                        break;
-                    case "[Metadata]":
-                        section = 2;
-                        break;
-                    case "[Difficulty]":
-                        section = 3;
-                        break;
-                    case "[Events]":
-                        section = 4;
-                        break;
-                    case "[TimingPoints]":
-                        section = 5;
-                        break;
-                    case "[HitObjects]":
-                        section = 6;
-                        //Done with points
-                        allPoints.clear();
-                        allPoints.addAll(timingPoints);
-                        allPoints.addAll(effectPoints);
-
-                        TimingPoint next;
-                        for (List<TimingPoint> pointStack : allPoints.values()) {
-                            next = pointStack.get(pointStack.size() - 1);
-                            if (next.volume != volume) {
-                                volume = next.volume;
-                                volumeMap.put(next.getPos(), volume);
+                    switch (reader.line())
+                    {
+                        case "[General]":
+                            section = 0;
+                            break;
+                        case "[Editor]":
+                            section = 1;
+                            break;
+                        case "[Metadata]":
+                            section = 2;
+                            break;
+                        case "[Difficulty]":
+                            section = 3;
+                            break;
+                        case "[Events]":
+                            section = 4;
+                            break;
+                        case "[TimingPoints]":
+                            section = 5;
+                            break;
+                        case "[HitObjects]":
+                            section = 6;
+                            //Done with points
+                            allPoints.clear();
+                            allPoints.addAll(timingPoints);
+                            allPoints.addAll(effectPoints);
+
+                            TimingPoint next;
+                            for (List<TimingPoint> pointStack : allPoints.values()) {
+                                next = pointStack.get(pointStack.size() - 1);
+                                if (next.volume != volume) {
+                                    volume = next.volume;
+                                    volumeMap.put(next.getPos(), volume);
+                                }
                             }
-                        }
 
-                        //Prepare to track sv for the purpose of calculating slider length
-                        svRate = fullMapInfo.sliderMultiplier;
-                        timing = timingPoints.entrySet().iterator();
-                        effect = effectPoints.entrySet().iterator();
-
-                        if (timing.hasNext())
-                        {
-                            nextTiming = timing.next();
-                            currentBPM = nextTiming.getValue().get(0).value;
-                            volume = nextTiming.getValue().get(0).volume;
+                            //Prepare to track sv for the purpose of calculating slider length
                             svRate = fullMapInfo.sliderMultiplier;
+                            timing = timingPoints.entrySet().iterator();
+                            effect = effectPoints.entrySet().iterator();
+
                             if (timing.hasNext())
+                            {
                                 nextTiming = timing.next();
+                                currentBPM = nextTiming.getValue().get(0).value;
+                                volume = nextTiming.getValue().get(0).volume;
+                                svRate = fullMapInfo.sliderMultiplier;
+                                if (timing.hasNext())
+                                    nextTiming = timing.next();
+                                else
+                                    nextTiming = null; //Only one timing point.
+                            }
                             else
-                                nextTiming = null; //Only one timing point.
-                        }
+                            {
+                                nextTiming = null; //what the fuck why are there no timing points >:(
+                                currentBPM = 120; //This is what osu uses as default so it's what I'm gonna use. Though really, there shouldn't be any objects if there's no timing points.
+                            }
+
+                            if (effect.hasNext())
+                                nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached.
+                            break;
+                        case "[Colours]": //I don't give a fuck about colors this is taiko you can't even see them in game OR in editor
+                            section = 7;
+                            break;
+                    }
+                }
+                else if (section == 5) //TimingPoints
+                {
+                    TimingPoint p = new TimingPoint(reader); //ordering is not guaranteed at this point
+                    if (p.uninherited)
+                        timingPoints.add(p);
+                    else
+                        effectPoints.add(p);
+                }
+                else if (section == 6) //HitObjects
+                {
+                    HitObject h = HitObject.create(reader);
+                    currentPos = h.getPos();
+
+                    long lastTimingPos = Long.MIN_VALUE;
+                    long lastEffectPos = Long.MIN_VALUE;
+
+                    while (timing != null && nextTiming != null && nextTiming.getKey() <= currentPos)
+                    {
+                        temp = GeneralUtils.listLast(nextTiming.getValue());
+                        currentBPM = temp.value;
+                        lastTimingPos = nextTiming.getKey();
+                        svRate = fullMapInfo.sliderMultiplier; //return to base sv
+
+                        if (timing.hasNext())
+                            nextTiming = timing.next();
                         else
-                        {
-                            nextTiming = null; //what the fuck why are there no timing points >:(
-                            currentBPM = 120; //This is what osu uses as default so it's what I'm gonna use. Though really, there shouldn't be any objects if there's no timing points.
-                        }
+                            nextTiming = null;
+                    }
+                    while (effect != null && nextEffect != null && nextEffect.getKey() <= currentPos)
+                    {
+                        temp = GeneralUtils.listLast(nextEffect.getValue());
+                        lastEffectPos = nextEffect.getKey();
+                        svRate = fullMapInfo.sliderMultiplier * temp.value;
 
                         if (effect.hasNext())
-                            nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached.
-                        break;
-                    case "[Colours]": //I don't give a fuck about colors this is taiko you can't even see them in game OR in editor
-                        section = 7;
-                        break;
+                            nextEffect = effect.next();
+                        else
+                            nextEffect = null;
+                    }
+                    if (lastEffectPos < lastTimingPos)
+                    {
+                        svRate = fullMapInfo.sliderMultiplier; //return to base sv and volume of the timing point
+                    }
+
+                    if (h.type == HitObject.HitObjectType.SLIDER)
+                    {
+                        ((Slider)h).calculateDuration(currentBPM, svRate);
+                    }
+                    updateVolume(h);
+                    objects.add(h);
                 }
-            }
-            else
-            {
-                switch (section) {
-                    case 0: //General
-                        if (line.contains(":"))
-                        {
-                            switch (line.substring(0, line.indexOf(":")))
+                else
+                {
+                    String line = reader.line();
+                    switch (section) {
+                        case 0: //General
+                            if (line.contains(":"))
                             {
-                                case "AudioLeadIn":
-                                    fullMapInfo.audioLeadIn = Integer.parseInt(line.substring(12).trim());
-                                    break;
-                                case "PreviewTime":
-                                    fullMapInfo.previewTime = Integer.parseInt(line.substring(12).trim());
-                                    break;
-                                case "Countdown":
-                                    fullMapInfo.countdown = line.substring(10).trim().equals("1");
-                                    break;
-                                case "SampleSet":
-                                    fullMapInfo.sampleSet = line.substring(10).trim();
-                                    break;
-                                case "StackLeniency":
-                                    fullMapInfo.stackLeniency = line.substring(14).trim();
-                                    break;
-                                case "LetterboxInBreaks":
-                                    fullMapInfo.letterboxInBreaks = line.substring(18).trim().equals("1");
-                                    break;
-                                case "SkinPreference":
-                                    fullMapInfo.skinPreference = line.substring(15);
-                                    break;
-                                case "EpilepsyWarning":
-                                    fullMapInfo.epilepsyWarning = line.substring(16).trim().equals("1");
-                                    break;
-                                case "WidescreenStoryboard":
-                                    fullMapInfo.widescreenStoryboard = line.substring(21).trim().equals("1");
-                                    break;
+                                switch (line.substring(0, line.indexOf(":")))
+                                {
+                                    case "AudioLeadIn":
+                                        fullMapInfo.audioLeadIn = Integer.parseInt(line.substring(12).trim());
+                                        break;
+                                    case "PreviewTime":
+                                        fullMapInfo.previewTime = Integer.parseInt(line.substring(12).trim());
+                                        break;
+                                    case "Countdown":
+                                        fullMapInfo.countdown = line.substring(10).trim().equals("1");
+                                        break;
+                                    case "SampleSet":
+                                        fullMapInfo.sampleSet = line.substring(10).trim();
+                                        break;
+                                    case "StackLeniency":
+                                        fullMapInfo.stackLeniency = line.substring(14).trim();
+                                        break;
+                                    case "LetterboxInBreaks":
+                                        fullMapInfo.letterboxInBreaks = line.substring(18).trim().equals("1");
+                                        break;
+                                    case "SkinPreference":
+                                        fullMapInfo.skinPreference = line.substring(15);
+                                        break;
+                                    case "EpilepsyWarning":
+                                        fullMapInfo.epilepsyWarning = line.substring(16).trim().equals("1");
+                                        break;
+                                    case "WidescreenStoryboard":
+                                        fullMapInfo.widescreenStoryboard = line.substring(21).trim().equals("1");
+                                        break;
+                                }
                             }
-                        }
-                        break;
-                    case 1: //Editor
-                        if (line.contains(":"))
-                        {
-                            switch (line.substring(0, line.indexOf(":")))
+                            break;
+                        case 1: //Editor
+                            if (line.contains(":"))
                             {
-                                case "Bookmarks":
-                                    for (String s : line.substring(10).split(","))
-                                    {
-                                        fullMapInfo.bookmarks.add(Integer.parseInt(s.trim()));
-                                    }
-                                    break;
-                                case "DistanceSpacing":
-                                    fullMapInfo.distanceSpacing = line.substring(16).trim();
-                                    break;
-                                case "BeatDivisor":
-                                    fullMapInfo.beatDivisor = Integer.parseInt(line.substring(12).trim());
-                                    break;
-                                case "GridSize":
-                                    fullMapInfo.gridSize = line.substring(9).trim();
-                                    break;
-                                case "TimelineZoom":
-                                    fullMapInfo.timelineZoom = line.substring(13).trim();
-                                    break;
+                                switch (line.substring(0, line.indexOf(":")))
+                                {
+                                    case "Bookmarks":
+                                        for (String s : line.substring(10).split(","))
+                                        {
+                                            fullMapInfo.bookmarks.add(Integer.parseInt(s.trim()));
+                                        }
+                                        break;
+                                    case "DistanceSpacing":
+                                        fullMapInfo.distanceSpacing = line.substring(16).trim();
+                                        break;
+                                    case "BeatDivisor":
+                                        fullMapInfo.beatDivisor = Integer.parseInt(line.substring(12).trim());
+                                        break;
+                                    case "GridSize":
+                                        fullMapInfo.gridSize = line.substring(9).trim();
+                                        break;
+                                    case "TimelineZoom":
+                                        fullMapInfo.timelineZoom = line.substring(13).trim();
+                                        break;
+                                }
                             }
-                        }
-                        break;
-                    case 2: //Metadata
-                        if (line.contains(":"))
-                        {
-                            switch (line.substring(0, line.indexOf(":")))
+                            break;
+                        case 2: //Metadata
+                            if (line.contains(":"))
                             {
-                                case "Title":
-                                    fullMapInfo.title = line.substring(6);
-                                    fullMapInfo.titleUnicode = line.substring(6);
-                                    break;
-                                case "TitleUnicode":
-                                    fullMapInfo.titleUnicode = line.substring(13);
-                                    break;
-                                case "Artist":
-                                    fullMapInfo.artist = line.substring(7);
-                                    fullMapInfo.artistUnicode = line.substring(7);
-                                    break;
-                                case "ArtistUnicode":
-                                    fullMapInfo.artistUnicode = line.substring(14);
-                                    break;
-                                case "Creator":
-                                    fullMapInfo.creator = line.substring(8);
-                                    break;
-                                case "Version":
-                                    fullMapInfo.setDifficultyName(line.substring(8));
-                                    break;
-                                case "Source":
-                                    fullMapInfo.source = line.substring(7);
-                                    break;
-                                case "Tags":
-                                    fullMapInfo.tags = line.substring(5).trim().split(" ");
-                                    break;
-                                case "BeatmapID":
-                                    fullMapInfo.beatmapID = Integer.parseInt(line.substring(10).trim());
-                                    break;
-                                case "BeatmapSetID":
-                                    fullMapInfo.beatmapSetID = Integer.parseInt(line.substring(13).trim());
-                                    break;
+                                switch (line.substring(0, line.indexOf(":")))
+                                {
+                                    case "Title":
+                                        fullMapInfo.title = line.substring(6);
+                                        fullMapInfo.titleUnicode = line.substring(6);
+                                        break;
+                                    case "TitleUnicode":
+                                        fullMapInfo.titleUnicode = line.substring(13);
+                                        break;
+                                    case "Artist":
+                                        fullMapInfo.artist = line.substring(7);
+                                        fullMapInfo.artistUnicode = line.substring(7);
+                                        break;
+                                    case "ArtistUnicode":
+                                        fullMapInfo.artistUnicode = line.substring(14);
+                                        break;
+                                    case "Creator":
+                                        fullMapInfo.creator = line.substring(8);
+                                        break;
+                                    case "Version":
+                                        fullMapInfo.setDifficultyName(line.substring(8));
+                                        break;
+                                    case "Source":
+                                        fullMapInfo.source = line.substring(7);
+                                        break;
+                                    case "Tags":
+                                        fullMapInfo.tags = line.substring(5).trim().split(" ");
+                                        break;
+                                    case "BeatmapID":
+                                        fullMapInfo.beatmapID = Integer.parseInt(line.substring(10).trim());
+                                        break;
+                                    case "BeatmapSetID":
+                                        fullMapInfo.beatmapSetID = Integer.parseInt(line.substring(13).trim());
+                                        break;
+                                }
                             }
-                        }
-                        break;
-                    case 3: //Difficulty
-                        if (line.contains(":"))
-                        {
-                            switch (line.substring(0, line.indexOf(":")))
+                            break;
+                        case 3: //Difficulty
+                            if (line.contains(":"))
                             {
-                                case "HPDrainRate":
-                                    fullMapInfo.hp = Float.parseFloat(line.substring(12).trim());
-                                    break;
-                                case "CircleSize":
-                                    fullMapInfo.cs = Float.parseFloat(line.substring(11).trim());
-                                    break;
-                                case "OverallDifficulty":
-                                    fullMapInfo.od = Float.parseFloat(line.substring(18).trim());
-                                    break;
-                                case "ApproachRate":
-                                    fullMapInfo.ar = Float.parseFloat(line.substring(13).trim());
-                                    break;
-                                case "SliderMultiplier":
-                                    fullMapInfo.sliderMultiplier = Float.parseFloat(line.substring(17).trim());
-                                    break;
-                                case "SliderTickRate":
-                                    fullMapInfo.sliderTickRate = Float.parseFloat(line.substring(15).trim());
-                                    break;
+                                switch (line.substring(0, line.indexOf(":")))
+                                {
+                                    case "HPDrainRate":
+                                        fullMapInfo.hp = Float.parseFloat(line.substring(12).trim());
+                                        break;
+                                    case "CircleSize":
+                                        fullMapInfo.cs = Float.parseFloat(line.substring(11).trim());
+                                        break;
+                                    case "OverallDifficulty":
+                                        fullMapInfo.od = Float.parseFloat(line.substring(18).trim());
+                                        break;
+                                    case "ApproachRate":
+                                        fullMapInfo.ar = Float.parseFloat(line.substring(13).trim());
+                                        break;
+                                    case "SliderMultiplier":
+                                        fullMapInfo.sliderMultiplier = Float.parseFloat(line.substring(17).trim());
+                                        break;
+                                    case "SliderTickRate":
+                                        fullMapInfo.sliderTickRate = Float.parseFloat(line.substring(15).trim());
+                                        break;
+                                }
                             }
-                        }
-                        break;
-                    case 4: //Events
-                        if (line.startsWith("//"))
-                        {
-                            //In events
-                            switch (line)
+                            break;
+                        case 4: //Events
+                            if (line.startsWith("//"))
                             {
-                                case "//Background and Video events":
-                                    eventSection = 0;
-                                    continue;
-                                case "//Break Periods":
-                                    eventSection = 1;
-                                    continue;
-                                case "//Storyboard Layer 0 (Background)": //This line and all event lines past it should be included in storyboard text
-                                    eventSection = 2;
-                                    break;
+                                //In events
+                                switch (line)
+                                {
+                                    case "//Background and Video events":
+                                        eventSection = 0;
+                                        continue;
+                                    case "//Break Periods":
+                                        eventSection = 1;
+                                        continue;
+                                    case "//Storyboard Layer 0 (Background)": //This line and all event lines past it should be included in storyboard text
+                                        eventSection = 2;
+                                        break;
+                                }
                             }
-                        }
-                        if (line.startsWith("2") || line.startsWith("Break")) {
-                            String[] parts = line.split(",");
-                            fullMapInfo.breakPeriods.add(new BreakInfo(Long.parseLong(parts[1].trim()), Long.parseLong(parts[2].trim())));
-                        }
-                        //The rest
-                        else if (eventSection == 0) { //Background and Video events
-                            if (!line.startsWith("//")) {
+                            if (line.startsWith("2") || line.startsWith("Break")) {
                                 String[] parts = line.split(",");
-
-                                if (parts.length == 5) {
-                                    if (parts[2].startsWith("\"") && parts[2].endsWith("\"")) {
-                                        parts[2] = parts[2].substring(1, parts[2].length() - 1);
-                                    }
-                                    if (FileHelper.isImageFilename(parts[2])) {
-                                        String bgFile = FileHelper.concat(map.getMapFile().getParent(), parts[2]);
-                                        map.setBackground(bgFile);
-                                        if (set.background == null || !set.background.equals(bgFile)) {
-                                            set.background = bgFile;
-                                            MapMaster.mapDatabase.save();
+                                fullMapInfo.breakPeriods.add(new BreakInfo(Long.parseLong(parts[1].trim()), Long.parseLong(parts[2].trim())));
+                            }
+                            //The rest
+                            else if (eventSection == 0) { //Background and Video events
+                                if (!line.startsWith("//")) {
+                                    String[] parts = line.split(",");
+
+                                    if (parts.length == 5) {
+                                        if (parts[2].startsWith("\"") && parts[2].endsWith("\"")) {
+                                            parts[2] = parts[2].substring(1, parts[2].length() - 1);
+                                        }
+                                        if (FileHelper.isImageFilename(parts[2])) {
+                                            String bgFile = FileHelper.concat(map.getMapFile().getParent(), parts[2]);
+                                            map.setBackground(bgFile);
+                                            if (set.background == null || !set.background.equals(bgFile)) {
+                                                set.background = bgFile;
+                                                MapMaster.mapDatabase.save();
+                                            }
                                         }
                                     }
                                 }
+                                fullMapInfo.backgroundEvents.add(line.split(","));
+                            } else {
+                                fullMapInfo.fullStoryboard.add(line);
                             }
-                            fullMapInfo.backgroundEvents.add(line.split(","));
-                        } else {
-                            fullMapInfo.fullStoryboard.add(line);
-                        }
-                        break;
-                    case 5: //TimingPoints
-                        TimingPoint p = new TimingPoint(line); //ordering is not guaranteed at this point
-                        if (p.uninherited)
-                            timingPoints.add(p);
-                        else
-                            effectPoints.add(p);
-                        break;
-                    case 6: //HitObjects
-                        HitObject h = HitObject.create(line);
-                        currentPos = h.getPos();
-
-                        long lastTimingPos = Long.MIN_VALUE;
-                        long lastEffectPos = Long.MIN_VALUE;
-
-                        while (timing != null && nextTiming != null && nextTiming.getKey() <= currentPos)
-                        {
-                            temp = GeneralUtils.listLast(nextTiming.getValue());
-                            currentBPM = temp.value;
-                            lastTimingPos = nextTiming.getKey();
-                            svRate = fullMapInfo.sliderMultiplier; //return to base sv
-
-                            if (timing.hasNext())
-                                nextTiming = timing.next();
-                            else
-                                nextTiming = null;
-                        }
-                        while (effect != null && nextEffect != null && nextEffect.getKey() <= currentPos)
-                        {
-                            temp = GeneralUtils.listLast(nextEffect.getValue());
-                            lastEffectPos = nextEffect.getKey();
-                            svRate = fullMapInfo.sliderMultiplier * temp.value;
-
-                            if (effect.hasNext())
-                                nextEffect = effect.next();
-                            else
-                                nextEffect = null;
-                        }
-                        if (lastEffectPos < lastTimingPos)
-                        {
-                            svRate = fullMapInfo.sliderMultiplier; //return to base sv and volume of the timing point
-                        }
-
-                        if (h.type == HitObject.HitObjectType.SLIDER)
-                        {
-                            ((Slider)h).calculateDuration(currentBPM, svRate);
-                        }
-                        updateVolume(h);
-                        objects.add(h);
-                        break;
+                            break;
+                    }
                 }
             }
         }
+        catch (IOException e)
+        {
+            editorLogger.error("Failed to read map file " + map.getMapFile().getPath(), e);
+        }
 
         if (volumeMap.isEmpty()) //wtf no points at all
             volumeMap.put(Long.MAX_VALUE, volume);
@@ -1919,281 +1933,119 @@ public class EditorBeatmap {
         return true;
     }
 
+    /**
+     * Copies the map to be written. The map is no longer dirty unless the write fails.
+     * Should be called on the update thread; the snapshot can then be written on any thread.
+     */
+    public BeatmapSnapshot snapshot()
+    {
+        BeatmapSnapshot snapshot = new BeatmapSnapshot(this, ++saveSequence);
+        dirty = false;
+        return snapshot;
+    }
+
     /**
      *
      * @return null if successful, or error message string
      */
     public String save()
     {
-        FileOutputStream out = null;
-        BufferedWriter w = null;
-        try
-        {
-            String mapInfo = fullMapInfo.toString();
-            String lines = timingPoints();
-            String objects = hitObjects();
+        BeatmapSnapshot snapshot = snapshot();
+        return finishSave(snapshot, snapshot.write());
+    }
 
-            //Successfully generated map save text without crashing.
+    /**
+     * Should be called on the update thread once a snapshot has been written.
+     * @param result The result of BeatmapSnapshot.write
+     * @return null if successful, or error message string
+     */
+    public String finishSave(BeatmapSnapshot snapshot, String result)
+    {
+        if (result == null)
+        {
+            if (snapshot.sequence == saveSequence) //Otherwise a newer save is still being written
+                fullMapInfo.setMapFile(snapshot.newFile);
+            return null;
+        }
 
-            File newFile = fullMapInfo.generateMapFile();
+        boolean editedSince = dirty;
+        dirty = true;
+        Exception e = snapshot.failure;
 
-            if (fullMapInfo.getMapFile().exists())
-            {
-                String backup = newFile.getPath();
-                backup = backup.substring(0, backup.lastIndexOf('.')) + ".BACKUP";
-                File backupFile = new File(backup);
-                if (backupFile.exists())
-                    backupFile.delete();
-                try
-                {
-                    if (fullMapInfo.getMapFile().renameTo(backupFile))
-                    {
-                        editorLogger.info("Created backup successfully.");
-                    }
-                    else
-                    {
-                        editorLogger.error("Failed to create backup.");
-                    }
-                }
-                catch (Exception e)
-                {
-                    //No backup :(
-                    editorLogger.error("Failed to create backup.", e);
-                    try {
-                        File f = new File("error.txt");
-                        PrintWriter pWriter = null;
-
-                        try {
-                            pWriter = new PrintWriter(f);
-                            pWriter.println("Version: " + TaikoEditor.VERSION);
-                            pWriter.println("Error occurred during save: " + e.getMessage());
-                            e.printStackTrace(pWriter);
-                        }
-                        catch (Exception ignored) {
-                        }
-                        finally {
-                            StreamUtils.closeQuietly(pWriter);
-                        }
-                    }
-                    catch (Exception ignored) {
+        //Log failure
+        try {
+            File f = new File("error.txt");
+            PrintWriter pWriter = null;
 
-                    }
-                }
+            try {
+                pWriter = new PrintWriter(f);
+                pWriter.println("Version: " + TaikoEditor.VERSION);
+                pWriter.println(result);
+                if (e != null)
+                    e.printStackTrace(pWriter);
             }
+            catch (Exception ignored) {
+            }
+            finally {
+                StreamUtils.closeQuietly(pWriter);
+            }
+        }
+        catch (Exception ignored) {
 
-            out = new FileOutputStream(newFile, false);
-            w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
-
-            w.write(mapInfo);
-            w.write(lines);
-            w.write(objects);
-
-            w.close();
-            out.close();
+        }
 
-            dirty = false;
+        editorLogger.info("Attempting to save to backup location.");
+        String mapInfo = snapshot.getMapInfo();
+        boolean malformed = mapInfo.isEmpty();
+        File emergency = null;
 
-            fullMapInfo.setMapFile(newFile);
-            return null;
-        }
-        catch (Exception e)
-        {
-            //Failure
-            if (w != null)
-            {
-                try
-                {
-                    w.close();
-                }
-                catch (Exception ignored) {}
+        try {
+            String lines = "";
+            String objects = "";
+            try {
+                lines = snapshot.timingPointText();
             }
-            if (out != null)
-            {
-                try
-                {
-                    out.close();
-                }
-                catch (Exception ignored) {}
+            catch (Exception ignored) {
+                malformed = true;
             }
-            editorLogger.error("Failed to save beatmap.", e);
-
-            String errorMsg = "Failed to save: " + e.getMessage();
-
-            //Log failure
             try {
-                File f = new File("error.txt");
-                PrintWriter pWriter = null;
-
-                try {
-                    pWriter = new PrintWriter(f);
-                    pWriter.println("Version: " + TaikoEditor.VERSION);
-                    pWriter.println(errorMsg);
-                    e.printStackTrace(pWriter);
-                }
-                catch (Exception ignored) {
-                }
-                finally {
-                    StreamUtils.closeQuietly(pWriter);
-                }
+                objects = snapshot.hitObjectText();
             }
             catch (Exception ignored) {
-
+                malformed = true;
             }
 
-            editorLogger.info("Attempting to save to backup location.");
-            boolean malformed = false;
-            File emergency = null;
-
             try {
+                Toolkit.getDefaultToolkit()
+                        .getSystemClipboard()
+                        .setContents(new StringSelection(mapInfo + lines + objects), null);
+            }
+            catch (Exception ignored) {
 
-                String mapInfo = "";
-                String lines = "";
-                String objects = "";
-                try {
-                    mapInfo = fullMapInfo.toString();
-                }
-                catch (Exception ignored) {
-                    malformed = true;
-                }
-                try {
-                    lines = timingPoints();
-                }
-                catch (Exception ignored) {
-                    malformed = true;
-                }
-                try {
-                    objects = hitObjects();
-                }
-                catch (Exception ignored) {
-                    malformed = true;
-                }
-
-                try {
-                    Toolkit.getDefaultToolkit()
-                            .getSystemClipboard()
-                            .setContents(new StringSelection(mapInfo + lines + objects), null);
-                }
-                catch (Exception ignored) {
-
-                }
-
-                File parent = fullMapInfo.getMapFile().getParentFile(), target;
-                do {
-                    target = parent;
-                    parent = target.getParentFile();
-                } while (parent != null);
+            }
 
-                emergency = new File(target, fullMapInfo.generateFilename());
+            File parent = snapshot.mapFile.getParentFile(), target;
+            do {
+                target = parent;
+                parent = target.getParentFile();
+            } while (parent != null);
 
-                out = new FileOutputStream(emergency, false);
-                w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            emergency = new File(target, snapshot.newFile.getName());
 
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(emergency, false), StandardCharsets.UTF_8))) {
                 w.write(mapInfo);
                 w.write(lines);
                 w.write(objects);
-
-                w.close();
-                out.close();
-
-                dirty = false;
-            }
-            catch (Exception ignored) {
-
             }
 
-            return errorMsg + " | Copied map to clipboard" +
-                    (emergency != null ? " and attempted to save " + (malformed ? "malformed " : "") + "map to " + emergency.getPath() : "");
+            dirty = editedSince;
         }
-    }
-
-    private String timingPoints()
-    {
-        if (allPoints.isEmpty()) return "";
-
-        StringBuilder sb = new StringBuilder("\r\n[TimingPoints]\r\n");
-
-        for (Map.Entry<Long, ArrayList<TimingPoint>> stack : allPoints.entrySet()) {
-            stack.getValue().sort(Comparator.comparingInt((point)->point.uninherited ? 0 : 1));
-            for (TimingPoint t : stack.getValue())
-                sb.append(t.toString()).append("\r\n");
-        }
-
-        return sb.toString();
-    }
-    private String hitObjects()
-    {
-        if (timingPoints.isEmpty() && effectPoints.isEmpty() && hitObjects().isEmpty())
-            return "";
-
-
-        //Sv tracking variables
-        long currentPos;
-        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing, effect;
-        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = null, nextEffect = null;
-        double svRate = 1.4, currentBPM = 120;
-
-        svRate = fullMapInfo.sliderMultiplier;
-        timing = timingPoints.entrySet().iterator();
-        effect = effectPoints.entrySet().iterator();
-
-        if (timing.hasNext())
-        {
-            nextTiming = timing.next();
-            currentBPM = nextTiming.getValue().get(0).value;
-            if (timing.hasNext())
-                nextTiming = timing.next();
-            else
-                nextTiming = null; //Only one timing point.
-        }
-
-        if (effect.hasNext())
-            nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached.
-
-
-
-        StringBuilder sb = new StringBuilder("\r\n\r\n[HitObjects]\r\n");
-
-
-
-        for (Map.Entry<Long, ArrayList<HitObject>> stacked : objects.entrySet())
-        {
-            currentPos = stacked.getKey();
-
-            long lastTimingPos = Long.MIN_VALUE;
-            long lastEffectPos = Long.MIN_VALUE;
-
-            while (nextTiming != null && nextTiming.getKey() <= currentPos)
-            {
-                currentBPM = nextTiming.getValue().get(nextTiming.getValue().size() - 1).value;
-                lastTimingPos = nextTiming.getKey();
-                svRate = fullMapInfo.sliderMultiplier; //return to base sv
-
-                if (timing.hasNext())
-                    nextTiming = timing.next();
-                else
-                    nextTiming = null;
-            }
-            while (nextEffect != null && nextEffect.getKey() <= currentPos)
-            {
-                lastEffectPos = nextEffect.getKey();
-                svRate = fullMapInfo.sliderMultiplier * nextEffect.getValue().get(nextEffect.getValue().size() - 1).value;
-
-                if (effect.hasNext())
-                    nextEffect = effect.next();
-                else
-                    nextEffect = null;
-            }
-            if (lastEffectPos < lastTimingPos)
-            {
-                svRate = fullMapInfo.sliderMultiplier; //return to base sv
-            }
-
+        catch (Exception ignored) {
 
-            for (HitObject h : stacked.getValue())
-                sb.append(h.toString(currentBPM, svRate)).append("\r\n");
         }
 
-        return sb.toString();
+        return result + " | Copied map to clipboard" +
+                (emergency != null ? " and attempted to save " + (malformed ? "malformed " : "") + "map to " + emergency.getPath() : "");
     }
 
     public String getName()
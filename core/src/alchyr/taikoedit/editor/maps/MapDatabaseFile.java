@@ -0,0 +1,279 @@
+package alchyr.taikoedit.editor.maps;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Binary storage of the map database, with one record per mapset folder.
+ *
+ * The file is a log of records; a later record for a folder replaces any earlier one, and a removal record drops it.
+ * Saving only appends the records of mapsets that changed since the file was last read or written.
+ * Once replaced records take up more space than the current ones, the whole file is rewritten instead.
+ */
+class MapDatabaseFile {
+    private static final Logger logger = LogManager.getLogger("BeatmapDatabase");
+
+    private static final int MAGIC = 0x5445444D; //TEDM
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+    private static final long MIN_COMPACT_SIZE = 1 << 16;
+
+    private static final byte RECORD_REMOVED = 0;
+    private static final byte RECORD_SET = 1;
+
+    private final File file;
+
+    //Checksum of the current record of each folder in the file, used to tell which mapsets have changed.
+    private final Map<String, Integer> written = new HashMap<>();
+    private long fileSize = 0;
+    private boolean appendable = false; //False if the file doesn't exist or couldn't be fully read
+
+    MapDatabaseFile(File file) {
+        this.file = file;
+    }
+
+    boolean exists() {
+        return file.isFile();
+    }
+
+    /* File format (big endian)
+     * int magic, int version
+     * Records of int payload length, int CRC32 of payload, then the payload:
+     * byte type, string folder
+     * For a mapset: long folder modified time, boolean sameSong, strings song file, creator, title, artist, background,
+     * int map count, then for each map: string file name, long modified time, long size,
+     * string song file (only if not sameSong), strings background and difficulty name
+     */
+
+    /**
+     * @return The stored mapsets, or null if the file couldn't be read.
+     */
+    synchronized HashMap<String, Mapset> load() throws IOException {
+        written.clear();
+        fileSize = 0;
+        appendable = false;
+
+        if (!file.isFile() || !file.canRead())
+            return null;
+
+        HashMap<String, Mapset> sets = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.info("Database version doesn't match. Reloading maps.");
+                return null;
+            }
+
+            long size = HEADER_SIZE;
+            byte[] payload = new byte[1024];
+            CRC32 crc = new CRC32();
+            boolean complete = true;
+
+            while (true) {
+                int length, checksum;
+                try {
+                    length = in.readInt();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+
+                try {
+                    checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        complete = false;
+                        break;
+                    }
+                    if (length > payload.length)
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    in.readFully(payload, 0, length);
+                }
+                catch (EOFException e) { //Incomplete final record
+                    complete = false;
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    complete = false;
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                byte type = record.readByte();
+                String key = record.readUTF();
+                if (type == RECORD_SET) {
+                    sets.put(key, readSet(key, record));
+                    written.put(key, checksum);
+                }
+                else {
+                    sets.remove(key);
+                    written.remove(key);
+                }
+                size += RECORD_HEADER_SIZE + length;
+            }
+
+            if (complete) {
+                fileSize = size;
+                appendable = true;
+            }
+            else {
+                logger.info("Map database is incomplete or damaged. Read " + sets.size() + " mapsets; the rest will be reloaded.");
+            }
+        }
+
+        logger.info("Database loaded.");
+        return sets;
+    }
+
+    private static Mapset readSet(String key, DataInputStream in) throws IOException {
+        File setDirectory = new File(key);
+        long folderModified = in.readLong();
+        boolean sameSong = in.readBoolean();
+        String songFile = in.readUTF(), creator = in.readUTF(), title = in.readUTF(), artist = in.readUTF(), background = in.readUTF();
+
+        int mapCount = in.readInt();
+        ArrayList<MapInfo> maps = new ArrayList<>(mapCount);
+        for (int i = 0; i < mapCount; ++i) {
+            File mapFile = new File(setDirectory, in.readUTF());
+            long modified = in.readLong(), size = in.readLong();
+            String mapSong = sameSong ? songFile : in.readUTF();
+            MapInfo info = new MapInfo(mapFile, mapSong, in.readUTF(), in.readUTF());
+            info.fileModified = modified;
+            info.fileSize = size;
+            maps.add(info);
+        }
+
+        Mapset set = new Mapset(setDirectory, maps, sameSong, songFile, creator, title, artist, background);
+        set.folderModified = folderModified;
+        return set;
+    }
+
+    /**
+     * Writes the records of mapsets that changed since the last load or save, and removal records for those that are gone.
+     */
+    synchronized void save(Collection<Mapset> sets) throws IOException {
+        RecordStream record = new RecordStream();
+        DataOutputStream recordOut = new DataOutputStream(record);
+        CRC32 crc = new CRC32();
+
+        ByteArrayOutputStream full = new ByteArrayOutputStream(sets.size() * 256 + HEADER_SIZE);
+        DataOutputStream fullOut = new DataOutputStream(full);
+        fullOut.writeInt(MAGIC);
+        fullOut.writeInt(VERSION);
+
+        ByteArrayOutputStream changes = new ByteArrayOutputStream();
+        DataOutputStream changesOut = new DataOutputStream(changes);
+
+        Map<String, Integer> current = new HashMap<>(sets.size() * 2);
+        int changed = 0;
+        for (Mapset set : sets) {
+            record.reset();
+            writeSet(set, recordOut);
+            crc.reset();
+            crc.update(record.buffer(), 0, record.size());
+            int checksum = (int) crc.getValue();
+
+            current.put(set.key, checksum);
+            record.writeRecord(fullOut, checksum);
+            if (!Integer.valueOf(checksum).equals(written.get(set.key))) {
+                record.writeRecord(changesOut, checksum);
+                ++changed;
+            }
+        }
+
+        for (String key : written.keySet()) {
+            if (!current.containsKey(key)) {
+                record.reset();
+                recordOut.writeByte(RECORD_REMOVED);
+                recordOut.writeUTF(key);
+                crc.reset();
+                crc.update(record.buffer(), 0, record.size());
+                record.writeRecord(changesOut, (int) crc.getValue());
+                ++changed;
+            }
+        }
+
+        long liveSize = full.size();
+        if (appendable && file.isFile() && file.length() == fileSize &&
+                fileSize + changes.size() <= Math.max(liveSize * 2, MIN_COMPACT_SIZE)) {
+            if (changes.size() > 0) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    ByteBuffer data = ByteBuffer.wrap(changes.toByteArray());
+                    while (data.hasRemaining())
+                        channel.write(data);
+                }
+                fileSize += changes.size();
+            }
+            logger.info("Updated " + changed + " mapset records in database.");
+        }
+        else {
+            File temp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp)) {
+                full.writeTo(out);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileSize = liveSize;
+            appendable = true;
+        }
+
+        written.clear();
+        written.putAll(current);
+    }
+
+    private static void writeSet(Mapset set, DataOutputStream out) throws IOException {
+        out.writeByte(RECORD_SET);
+        out.writeUTF(set.key);
+        out.writeLong(set.folderModified);
+        out.writeBoolean(set.sameSong);
+        writeString(out, set.songFile);
+        writeString(out, set.creator);
+        writeString(out, set.title);
+        writeString(out, set.artist);
+        writeString(out, set.background);
+
+        List<MapInfo> maps = set.getMaps();
+        out.writeInt(maps.size());
+        for (MapInfo map : maps) {
+            out.writeUTF(map.getMapFile().getName());
+            out.writeLong(map.fileModified);
+            out.writeLong(map.fileSize);
+            if (!set.sameSong)
+                writeString(out, map.getSongFile());
+            writeString(out, map.getBackground());
+            writeString(out, map.getDifficultyName());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeUTF(value == null ? "" : value);
+    }
+
+    //Holds the payload of one record, which is written with its length and checksum.
+    private static final class RecordStream extends ByteArrayOutputStream {
+        RecordStream() {
+            super(512);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeRecord(DataOutputStream out, int checksum) throws IOException {
+            out.writeInt(count);
+            out.writeInt(checksum);
+            out.write(buf, 0, count);
+        }
+    }
+}
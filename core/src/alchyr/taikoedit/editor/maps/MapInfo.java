@@ -3,7 +3,7 @@ package alchyr.taikoedit.editor.maps;
 import alchyr.taikoedit.management.assets.FileHelper;
 
 import java.io.File;
-import java.util.List;
+import java.io.IOException;
 import java.util.Objects;
 
 public class MapInfo {
@@ -14,6 +14,9 @@ public class MapInfo {
     private int mode = 0;
     private String difficultyName = "";
 
+    //Size and last modified time of the map file when it was read, to tell whether it must be read again. 0 if unknown.
+    long fileSize = 0, fileModified = 0;
+
     //For the future: When loading map info from a database of existing data?
     public MapInfo(File mapFile, String songFile, String background, String name) {
         this.mapFile = mapFile;
@@ -36,10 +39,11 @@ public class MapInfo {
     public MapInfo(File map, Mapset owner) {
         mapFile = map;
         background = "";
+        fileModified = map.lastModified();
+        fileSize = map.length();
 
-        List<String> lines = FileHelper.readFileLines(mapFile, "[TimingPoints]");
-
-        if (lines != null) {
+        //Only the header sections are needed.
+        try (MapReader reader = new MapReader(mapFile)) {
             int section = -1;
             //-1 Header
             //0 General
@@ -51,7 +55,8 @@ public class MapInfo {
             //6 HitObjects
 
             read:
-            for (String line : lines) {
+            while (reader.nextLine()) {
+                String line = reader.line();
                 if (line.contains(":")) {
                     switch (line.substring(0, line.indexOf(":"))) {
                         case "AudioFilename":
@@ -97,11 +102,7 @@ public class MapInfo {
                                 section = 4;
                                 break;
                             case "[TimingPoints]":
-                                section = 5;
-                                break;
-                            case "[HitObjects]":
-                                section = 6;
-                                break;
+                                break read;
                         }
                     } else if (section == 4 && background.isEmpty() && !line.startsWith("//")) {
                         String[] parts = line.split(",");
@@ -121,10 +122,37 @@ public class MapInfo {
                 }
             }
         }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 
-    //Track last modified date to determine if file must be re-read?
+    /**
+     * Reads the preview time from the General section of the map file, without keeping the rest of the map.
+     * @return Preview time in milliseconds, or -1 if the map doesn't have one.
+     */
+    public int readPreviewTime() {
+        try (MapReader reader = new MapReader(mapFile)) {
+            boolean general = false;
+            while (reader.nextLine()) {
+                String line = reader.line();
+                if (line.startsWith("[")) {
+                    if (general)
+                        break;
+                    general = line.equals("[General]");
+                }
+                else if (general && line.startsWith("PreviewTime:")) {
+                    return Integer.parseInt(line.substring(12).trim());
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
     public File getMapFile() {
         return mapFile;
     }
@@ -0,0 +1,352 @@
+package alchyr.taikoedit.editor.maps;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a map file line by line from a pooled buffer.
+ * Lines can be read as strings, or as comma separated fields that are parsed directly from the buffer.
+ * Fields are split the same way as String.split, so trailing empty fields are ignored.
+ *
+ * The file is read in blocks as lines are needed, so a reader that stops after the header sections only reads that far.
+ */
+public class MapReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_POOLED_SIZE = 1 << 20;
+    private static final int MAX_POOLED = 8;
+
+    private static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger(0);
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT = 1L << 53;
+
+    private final FileChannel channel;
+    private byte[] buffer;
+    private int dataEnd = 0; //End of data read into the buffer
+    private boolean endOfFile = false;
+
+    private int next = 0; //Start of the next line
+    private int lineStart = 0, lineEnd = 0;
+
+    //Fields of the current line
+    private int fieldCount = -1; //-1 until counted
+    private int fieldsEnd; //End of the line without trailing separators
+    private int cursor; //Start of the next field
+    private int fieldStart, fieldEnd;
+
+    //Parts of the current field
+    private int partsEnd, partCursor, partStart, partEnd;
+    private char partSeparator;
+
+    public MapReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buffer = acquire();
+    }
+
+    /**
+     * Moves to the next line.
+     * @return false if there are no more lines.
+     */
+    public boolean nextLine() throws IOException {
+        int end = find((byte) '\n', next);
+        while (end < 0) {
+            if (endOfFile) {
+                if (next >= dataEnd)
+                    return false;
+                end = dataEnd; //Last line without a line break
+                break;
+            }
+            int searched = dataEnd - next;
+            fill();
+            end = find((byte) '\n', next + searched);
+        }
+
+        lineStart = next;
+        lineEnd = end;
+        next = end < dataEnd ? end + 1 : end;
+        if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r')
+            --lineEnd;
+
+        fieldCount = -1;
+        cursor = lineStart;
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return lineEnd == lineStart;
+    }
+
+    public boolean startsWith(char c) {
+        return lineEnd > lineStart && buffer[lineStart] == c;
+    }
+
+    /**
+     * @return The current line as a string.
+     */
+    public String line() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The number of comma separated fields in the current line.
+     */
+    public int fieldCount() {
+        if (fieldCount < 0) {
+            fieldsEnd = splitEnd(lineStart, lineEnd, (byte) ',');
+            fieldCount = count(lineStart, lineEnd, fieldsEnd, (byte) ',');
+        }
+        return fieldCount;
+    }
+
+    /**
+     * Parses a field without moving to it.
+     */
+    public int intField(int index) {
+        fieldCount();
+        int start = lineStart;
+        for (int i = 0; i < index; ++i) {
+            start = find((byte) ',', start, fieldsEnd) + 1;
+        }
+        int end = find((byte) ',', start, fieldsEnd);
+        return parseInt(start, end < 0 ? fieldsEnd : end);
+    }
+
+    //Moves to the next field.
+    private void nextField() {
+        fieldCount();
+        fieldStart = cursor;
+        int end = find((byte) ',', cursor, fieldsEnd);
+        fieldEnd = end < 0 ? fieldsEnd : end;
+        cursor = fieldEnd + 1;
+    }
+
+    public void skipField() {
+        nextField();
+    }
+
+    public int nextInt() {
+        nextField();
+        return parseInt(fieldStart, fieldEnd);
+    }
+
+    public double nextDouble() {
+        nextField();
+        return parseDouble(fieldStart, fieldEnd);
+    }
+
+    public boolean nextEquals(String text) {
+        nextField();
+        return rangeEquals(fieldStart, fieldEnd, text);
+    }
+
+    public String nextString() {
+        nextField();
+        return new String(buffer, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Moves to the next field, to read parts of it separated by the given character.
+     * @return The number of parts, as String.split would return.
+     */
+    public int nextParts(char separator) {
+        nextField();
+        partSeparator = separator;
+        partsEnd = splitEnd(fieldStart, fieldEnd, (byte) separator);
+        partCursor = fieldStart;
+        return count(fieldStart, fieldEnd, partsEnd, (byte) separator);
+    }
+
+    private void nextPart() {
+        partStart = partCursor;
+        int end = find((byte) partSeparator, partCursor, partsEnd);
+        partEnd = end < 0 ? partsEnd : end;
+        partCursor = partEnd + 1;
+    }
+
+    public int nextPartInt() {
+        nextPart();
+        return parseInt(partStart, partEnd);
+    }
+
+    public String nextPartString() {
+        nextPart();
+        return new String(buffer, partStart, partEnd - partStart, StandardCharsets.UTF_8);
+    }
+
+    /* Splitting */
+
+    //The end of a range after removing trailing empty parts, the same as String.split.
+    private int splitEnd(int start, int end, byte separator) {
+        if (find(separator, start, end) < 0)
+            return end; //No separator, the whole range is one part even if empty
+        while (end > start && buffer[end - 1] == separator)
+            --end;
+        return end;
+    }
+
+    private int count(int start, int end, int splitEnd, byte separator) {
+        if (splitEnd == end && find(separator, start, end) < 0)
+            return 1;
+        if (splitEnd == start)
+            return 0; //Only separators
+        int parts = 1;
+        for (int i = start; i < splitEnd; ++i) {
+            if (buffer[i] == separator)
+                ++parts;
+        }
+        return parts;
+    }
+
+    /* Numbers */
+
+    //Same result as Integer.parseInt.
+    private int parseInt(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            ++i;
+        }
+        if (i == end || end - i > 9)
+            return Integer.parseInt(text(start, end));
+
+        int value = 0;
+        for (; i < end; ++i) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9)
+                return Integer.parseInt(text(start, end));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    //Same result as Double.parseDouble.
+    private double parseDouble(int start, int end) {
+        //Plain decimals with up to 15 significant digits are exact; anything else is left to Double.parseDouble.
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0, fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < end; ++i) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                if (mantissa != 0 || b != '0')
+                    ++digits;
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction)
+                    ++fractionDigits;
+                if (digits > 15)
+                    return Double.parseDouble(text(start, end));
+            }
+            else if (b == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                return Double.parseDouble(text(start, end));
+            }
+        }
+
+        int digitsStart = negative || (start < end && buffer[start] == '+') ? start + 1 : start;
+        if (end - digitsStart == (fraction ? 1 : 0) || fractionDigits >= POWERS_OF_TEN.length || mantissa >= MAX_EXACT)
+            return Double.parseDouble(text(start, end));
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /* Buffer */
+
+    private boolean rangeEquals(int start, int end, String text) {
+        if (end - start != text.length())
+            return false;
+        for (int i = 0; i < text.length(); ++i) {
+            if (buffer[start + i] != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private String text(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private int find(byte b, int from) {
+        return find(b, from, dataEnd);
+    }
+
+    private int find(byte b, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (buffer[i] == b)
+                return i;
+        }
+        return -1;
+    }
+
+    //Reads more of the file, keeping the unfinished line at the start of the buffer.
+    private void fill() throws IOException {
+        int remaining = dataEnd - next;
+        if (next > 0) {
+            System.arraycopy(buffer, next, buffer, 0, remaining);
+        }
+        else if (remaining == buffer.length) { //A line longer than the buffer
+            byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, remaining);
+            buffer = larger;
+        }
+        next = 0;
+        dataEnd = remaining;
+
+        ByteBuffer target = ByteBuffer.wrap(buffer, dataEnd, buffer.length - dataEnd);
+        int read = channel.read(target);
+        if (read < 0)
+            endOfFile = true;
+        else
+            dataEnd += read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            release(buffer);
+            buffer = null;
+        }
+        channel.close();
+    }
+
+    private static byte[] acquire() {
+        byte[] buffer = pool.poll();
+        if (buffer == null)
+            return new byte[BUFFER_SIZE];
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    private static void release(byte[] buffer) {
+        if (buffer.length > MAX_POOLED_SIZE)
+            return; //Grown for a large map; not worth keeping
+
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.add(buffer);
+        }
+        else {
+            pooled.decrementAndGet();
+        }
+    }
+}
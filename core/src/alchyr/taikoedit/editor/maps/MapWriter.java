@@ -0,0 +1,227 @@
+package alchyr.taikoedit.editor.maps;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.FieldPosition;
+
+/**
+ * Writes map text either to a channel as UTF-8, through a fixed size buffer, or to a string.
+ * Numbers are written without creating strings where possible, with the same output as DecimalFormat.
+ */
+public class MapWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 14;
+    private static final long MAX_EXACT = 1L << 53; //Largest range where every integer is a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16
+    };
+    private static final long[] LONG_POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+            100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L, 10000000000000000L,
+            100000000000000000L, 1000000000000000000L
+    };
+
+    private final WritableByteChannel channel; //null if writing to a string
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+
+    private char[] chars;
+    private CharBuffer charView;
+    private int count = 0;
+
+    //For numbers that have to be formatted by DecimalFormat
+    private final StringBuffer formatted = new StringBuffer(32);
+    private final FieldPosition fieldPosition = new FieldPosition(0);
+
+    /**
+     * Writes to a string, returned by toString.
+     */
+    public MapWriter() {
+        channel = null;
+        encoder = null;
+        bytes = null;
+        chars = new char[256];
+    }
+
+    /**
+     * Writes to a channel as UTF-8. The channel is not closed by close.
+     */
+    public MapWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        bytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+        chars = new char[BUFFER_SIZE];
+        charView = CharBuffer.wrap(chars);
+    }
+
+    public MapWriter write(char c) throws IOException {
+        require(1);
+        chars[count++] = c;
+        return this;
+    }
+
+    public MapWriter write(String s) throws IOException {
+        int start = 0, length = s.length();
+        while (start < length) {
+            require(channel == null ? length - start : 1);
+            int part = Math.min(length - start, chars.length - count);
+            s.getChars(start, start + part, chars, count);
+            count += part;
+            start += part;
+        }
+        return this;
+    }
+
+    public MapWriter write(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return write(Long.toString(value));
+        }
+        require(20);
+        if (value < 0) {
+            chars[count++] = '-';
+            value = -value;
+        }
+        writeDigits(value, digitCount(value));
+        return this;
+    }
+
+    public MapWriter newLine() throws IOException {
+        require(2);
+        chars[count++] = '\r';
+        chars[count++] = '\n';
+        return this;
+    }
+
+    /**
+     * Writes a number as the given format would.
+     * The format should be a plain decimal pattern without grouping or exponent, like "##0.###".
+     */
+    public MapWriter writeDecimal(double value, DecimalFormat format) throws IOException {
+        int maxFraction = Math.min(format.getMaximumFractionDigits(), POWERS_OF_TEN.length - 1);
+
+        //Values with no more decimal places than the format allows are written exactly as they are, without rounding.
+        //Otherwise, DecimalFormat's rounding is used.
+        if (!Double.isNaN(value) && Math.abs(value) < 1e15 && (value != 0 || 1 / value > 0)) {
+            for (int places = 0; places <= maxFraction; ++places) {
+                double scaled = Math.rint(value * POWERS_OF_TEN[places]);
+                if (Math.abs(scaled) >= MAX_EXACT)
+                    break;
+                if (scaled / POWERS_OF_TEN[places] == value) {
+                    writeFixed((long) scaled, places);
+                    return this;
+                }
+            }
+        }
+        return writeFormatted(value, format);
+    }
+
+    /**
+     * Writes a number using any format.
+     */
+    public MapWriter writeFormatted(double value, DecimalFormat format) throws IOException {
+        formatted.setLength(0);
+        format.format(value, formatted, fieldPosition);
+        int length = formatted.length();
+        require(length);
+        formatted.getChars(0, length, chars, count);
+        count += length;
+        return this;
+    }
+
+    private void writeFixed(long unscaled, int places) throws IOException {
+        require(40);
+        if (unscaled < 0) {
+            chars[count++] = '-';
+            unscaled = -unscaled;
+        }
+        long whole = unscaled / LONG_POWERS_OF_TEN[places];
+        writeDigits(whole, digitCount(whole));
+        if (places > 0) {
+            chars[count++] = '.';
+            writeDigits(unscaled % LONG_POWERS_OF_TEN[places], places);
+        }
+    }
+
+    //Writes a non-negative value as exactly the given number of digits, with leading zeroes if necessary.
+    private void writeDigits(long value, int digits) {
+        for (int i = count + digits - 1; i >= count; --i) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (digits < LONG_POWERS_OF_TEN.length && value >= LONG_POWERS_OF_TEN[digits])
+            ++digits;
+        return digits;
+    }
+
+    private void require(int space) throws IOException {
+        if (count + space <= chars.length)
+            return;
+
+        if (channel == null) {
+            char[] larger = new char[Math.max(chars.length * 2, count + space)];
+            System.arraycopy(chars, 0, larger, 0, count);
+            chars = larger;
+        }
+        else {
+            encode(false);
+        }
+    }
+
+    //Encodes buffered characters, writing the bytes to the channel.
+    private void encode(boolean end) throws IOException {
+        ((Buffer) charView).limit(count).position(0);
+        while (true) {
+            CoderResult result = encoder.encode(charView, bytes, end);
+            writeBytes();
+            if (result.isUnderflow())
+                break;
+        }
+        if (end) {
+            while (encoder.flush(bytes).isOverflow())
+                writeBytes();
+            writeBytes();
+        }
+
+        //A surrogate pair split at the end of the buffer is kept for the next write.
+        int remaining = charView.remaining();
+        System.arraycopy(chars, charView.position(), chars, 0, remaining);
+        count = remaining;
+    }
+
+    private void writeBytes() throws IOException {
+        ((Buffer) bytes).flip();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        bytes.clear();
+    }
+
+    /**
+     * Writes all buffered text to the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            encode(true);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, count);
+    }
+}
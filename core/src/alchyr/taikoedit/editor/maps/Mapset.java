@@ -26,6 +26,8 @@ public class Mapset {
     private final File directory;
     private List<MapInfo> maps;
 
+    long folderModified = 0; //Last modified time of the folder when its maps were read. 0 if unknown.
+
     public Mapset(File directory) // loading new
     {
         this.directory = directory;
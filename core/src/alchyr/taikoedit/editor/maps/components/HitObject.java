@@ -1,5 +1,7 @@
 package alchyr.taikoedit.editor.maps.components;
 
+import alchyr.taikoedit.editor.maps.MapReader;
+import alchyr.taikoedit.editor.maps.MapWriter;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Slider;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Spinner;
@@ -10,6 +12,8 @@ import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
+import java.io.IOException;
+
 import static alchyr.taikoedit.TaikoEditor.audioMaster;
 
 public abstract class HitObject extends MapObject {
@@ -82,6 +86,18 @@ public abstract class HitObject extends MapObject {
         }
     }
 
+    //Reads the current line of a map file.
+    public static HitObject create(MapReader line)
+    {
+        int objectType = line.fieldCount() > 3 ? line.intField(3) : 0;
+
+        if ((objectType & SPINNER) > 0)
+            return new Spinner(line.line().split(","));
+        else if ((objectType & SLIDER) > 0)
+            return new Slider(line.line().split(","));
+        return new Hit(line);
+    }
+
     public long getEndPos() {
         return getPos();
     }
@@ -103,21 +119,28 @@ public abstract class HitObject extends MapObject {
         body = assetMaster.get("editor:body");
     }*/
 
+    public String getSfxKey()
+    {
+        return finish ? Skins.currentSkin.sfxDonFinish : Skins.currentSkin.sfxDon;
+    }
+
     public void playSound()
     {
-        if (finish)
-        {
-            audioMaster.playSfx(Skins.currentSkin.sfxDonFinish, this.volume, true);
-        }
-        else
-        {
-            audioMaster.playSfx(Skins.currentSkin.sfxDon, this.volume, true);
-        }
+        audioMaster.playSfx(getSfxKey(), this.volume, true);
     }
 
     @Override
     public abstract String toString(); //Force override.
-    public abstract String toString(double beatLength, double sliderMultiplier);
+    public String toString(double beatLength, double sliderMultiplier) {
+        MapWriter out = new MapWriter();
+        try {
+            write(out, beatLength, sliderMultiplier);
+        }
+        catch (IOException ignored) { } //Not thrown when writing to a string
+        return out.toString();
+    }
+    //Writes the object as a line of a map file, without the line break.
+    public abstract void write(MapWriter out, double beatLength, double sliderMultiplier) throws IOException;
 
     protected int getTypeFlag()
     {
@@ -161,6 +184,16 @@ public abstract class HitObject extends MapObject {
         sb.append(sampleFile);
         return sb.toString();
     }
+    protected void writeHitSamples(MapWriter out) throws IOException
+    {
+        if (hitSample == null) {
+            out.write("0:0:0:0:");
+        }
+        else {
+            for (int j : hitSample) out.write(j).write(':');
+        }
+        out.write(sampleFile);
+    }
 
     public abstract void gameplayRender(SpriteBatch sb, ShapeRenderer sr, float sv, float baseX, float x, int y, float alpha);
     public abstract void grayRender(SpriteBatch sb, ShapeRenderer sr, float sv, float baseX, float x, int y, float alpha); //co-op render
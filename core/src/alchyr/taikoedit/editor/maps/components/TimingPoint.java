@@ -1,5 +1,7 @@
 package alchyr.taikoedit.editor.maps.components;
 
+import alchyr.taikoedit.editor.maps.MapReader;
+import alchyr.taikoedit.editor.maps.MapWriter;
 import alchyr.taikoedit.editor.views.EffectView;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.structures.MapObject;
@@ -8,6 +10,7 @@ import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
 
 import static alchyr.taikoedit.TaikoEditor.assetMaster;
@@ -101,6 +104,48 @@ public class TimingPoint extends MapObject {
         }
     }
 
+    //Reads the current line of a map file.
+    public TimingPoint(MapReader line)
+    {
+        for (int i = 0, fields = line.fieldCount(); i < fields; ++i)
+        {
+            switch (i)
+            {
+                case 0:
+                    setPos(line.nextDouble());
+                    break;
+                case 1:
+                    value = line.nextDouble();
+                    break;
+                case 2:
+                    meter = line.nextInt();
+                    break;
+                case 3:
+                    sampleSet = line.nextInt();
+                    break;
+                case 4:
+                    sampleIndex = line.nextInt();
+                    break;
+                case 5:
+                    volume = line.nextInt();
+                    break;
+                case 6:
+                    uninherited = line.nextEquals("1");
+                    if (!uninherited) //Not a Red Line
+                    {
+                        value = -100 / value;
+                    }
+                    break;
+                case 7:
+                    int effects = line.nextInt();
+
+                    kiai = (effects & KIAI) > 0;
+                    omitted = (effects & OMITTED) > 0;
+                    break;
+            }
+        }
+    }
+
     public TimingPoint(TimingPoint base)
     {
         setPos(base.getPrecisePos());
@@ -123,18 +168,32 @@ public class TimingPoint extends MapObject {
         this.value = 60000 / bpm;
     }
 
-    private static final DecimalFormat optionalDecimals = new DecimalFormat("##0.#############", osuDecimalFormat);
-    private static final DecimalFormat scientific = new DecimalFormat("0.####E0", osuDecimalFormat);
+    private static final ThreadLocal<DecimalFormat> optionalDecimals = ThreadLocal.withInitial(()->new DecimalFormat("##0.#############", osuDecimalFormat));
+    private static final ThreadLocal<DecimalFormat> scientific = ThreadLocal.withInitial(()->new DecimalFormat("0.####E0", osuDecimalFormat));
     @Override
     public String toString()
+    {
+        MapWriter out = new MapWriter();
+        try {
+            write(out);
+        }
+        catch (IOException ignored) { } //Not thrown when writing to a string
+        return out.toString();
+    }
+
+    //Writes the point as a line of a map file, without the line break.
+    public void write(MapWriter out) throws IOException
     {
         double d = uninherited ? value : -100 / value;
+        out.writeDecimal(getPrecisePos(), limitedDecimals.get()).write(',');
         if (Math.abs(d) >= 100000 || Math.abs(d) <= 0.000001) {
-            return limitedDecimals.format(getPrecisePos()) + "," + scientific.format(d) + "," + meter + "," + sampleSet + "," + sampleIndex + "," + volume + "," + (uninherited ? 1 : 0) + "," + ((kiai ? KIAI : 0) | (omitted ? OMITTED : 0));
+            out.writeFormatted(d, scientific.get());
         }
         else {
-            return limitedDecimals.format(getPrecisePos()) + "," + optionalDecimals.format(d) + "," + meter + "," + sampleSet + "," + sampleIndex + "," + volume + "," + (uninherited ? 1 : 0) + "," + ((kiai ? KIAI : 0) | (omitted ? OMITTED : 0));
+            out.writeDecimal(d, optionalDecimals.get());
         }
+        out.write(',').write(meter).write(',').write(sampleSet).write(',').write(sampleIndex).write(',').write(volume)
+                .write(',').write(uninherited ? 1 : 0).write(',').write((kiai ? KIAI : 0) | (omitted ? OMITTED : 0));
     }
 
     @Override
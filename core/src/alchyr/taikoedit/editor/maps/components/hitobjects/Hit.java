@@ -1,5 +1,7 @@
 package alchyr.taikoedit.editor.maps.components.hitobjects;
 
+import alchyr.taikoedit.editor.maps.MapReader;
+import alchyr.taikoedit.editor.maps.MapWriter;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.structures.MapObject;
@@ -7,7 +9,8 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
-import static alchyr.taikoedit.TaikoEditor.audioMaster;
+import java.io.IOException;
+
 import static alchyr.taikoedit.management.assets.skins.Skins.currentSkin;
 
 public class Hit extends HitObject {
@@ -76,6 +79,7 @@ public class Hit extends HitObject {
         {
             this.hitSample = null;
         }
+        this.sampleFile = base.sampleFile;
     }
 
     public Hit(String[] params)
@@ -128,31 +132,86 @@ public class Hit extends HitObject {
         }
     }
 
+    public Hit(MapReader line)
+    {
+        type = HitObjectType.CIRCLE;
+        for (int i = 0, fields = line.fieldCount(); i < fields; ++i)
+        {
+            switch (i)
+            {
+                case 0:
+                    x = line.nextInt();
+                    break;
+                case 1:
+                    y = line.nextInt();
+                    break;
+                case 2:
+                    setPos(line.nextDouble());
+                    break;
+                case 3:
+                    int objectType = line.nextInt();
+
+                    newCombo = (objectType & NEWCOMBO) > 0;
+                    colorSkip = (objectType & COLORSKIP) >>> 4;
+                    break;
+                case 4:
+                    int hitSound = line.nextInt();
+                    normal = (hitSound & NORMAL) > 0;
+                    whistle = (hitSound & WHISTLE) > 0;
+                    finish = (hitSound & FINISH) > 0;
+                    clap = (hitSound & CLAP) > 0;
+
+                    isRim = whistle || clap;
+                    break;
+                case 5:
+                    //Hit samples
+                    int samples = line.nextParts(':');
+                    hitSample = new int[Math.min(samples, 4)];
+                    for (int n = 0; n < hitSample.length; ++n)
+                    {
+                        hitSample[n] = line.nextPartInt();
+                    }
+                    if (samples > 4) {
+                        StringBuilder sb = new StringBuilder();
+                        for (int s = 4; s < samples; ++s) {
+                            sb.append(line.nextPartString());
+                        }
+                        sampleFile = sb.toString();
+                    }
+            }
+        }
+    }
+
     @Override
     public void render(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, float alpha) {
         if (testHidden()) return;
 
+        renderAt(sb, sr, 1 + x + (float) (this.getPos() - pos) * viewScale, y, alpha, isRim, finish, newCombo, selected);
+    }
+
+    //Draws a hit from copied state, so it can be rendered without touching a live object.
+    public static void renderAt(SpriteBatch sb, ShapeRenderer sr, float startX, float y, float alpha, boolean isRim, boolean finish, boolean newCombo, boolean selected) {
         Color c = isRim ? kat : don;
         c.a = alpha;
         sb.setColor(c);
 
         if (finish) {
-            currentSkin.finisher.renderC(sb, sr, 1 + x + (float) (this.getPos() - pos) * viewScale, y, currentSkin.largeScale, c);
+            currentSkin.finisher.renderC(sb, sr, startX, y, currentSkin.largeScale, c);
         }
         else {
-            currentSkin.hit.renderC(sb, sr, 1 + x + (float) (this.getPos() - pos) * viewScale, y, currentSkin.normalScale, c);
+            currentSkin.hit.renderC(sb, sr, startX, y, currentSkin.normalScale, c);
         }
         /*sb.draw(circle, x + (float) (this.getPos() - pos) * viewScale - CIRCLE_OFFSET, y - CIRCLE_OFFSET, CIRCLE_OFFSET, CIRCLE_OFFSET, CIRCLE_SIZE, CIRCLE_SIZE,
                 scale, scale, 0, 0, 0, CIRCLE_SIZE, CIRCLE_SIZE, false, false);*/
 
         if (showNc && newCombo) {
             sb.setColor(Color.WHITE);
-            sb.draw(circle, -10 + x + (float) (this.getPos() - pos) * viewScale, y - 10, 20, 20);
+            sb.draw(circle, -10 + startX, y - 10, 20, 20);
         }
 
         if (selected)
         {
-            renderSelection(sb, sr, pos, viewScale, x, y);
+            currentSkin.selection.renderC(sb, sr, startX, y, finish ? currentSkin.largeScale : currentSkin.normalScale);
         }
         c.a = 1;
     }
@@ -217,29 +276,15 @@ public class Hit extends HitObject {
     }
 
     @Override
-    public void playSound()
+    public String getSfxKey()
     {
         if (finish)
         {
-            if (isRim)
-            {
-                audioMaster.playSfx(currentSkin.sfxKatFinish, this.volume, true);
-            }
-            else
-            {
-                audioMaster.playSfx(currentSkin.sfxDonFinish, this.volume, true);
-            }
+            return isRim ? currentSkin.sfxKatFinish : currentSkin.sfxDonFinish;
         }
         else
         {
-            if (isRim)
-            {
-                audioMaster.playSfx(currentSkin.sfxKat, this.volume, true);
-            }
-            else
-            {
-                audioMaster.playSfx(currentSkin.sfxDon, this.volume, true);
-            }
+            return isRim ? currentSkin.sfxKat : currentSkin.sfxDon;
         }
     }
 
@@ -276,10 +321,13 @@ public class Hit extends HitObject {
 
     @Override
     public String toString() {
-        return x + "," + y + "," + limitedDecimals.format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + getHitSamples();
+        return x + "," + y + "," + limitedDecimals.get().format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + getHitSamples();
     }
-    public String toString(double beatLength, double sliderMultiplier) {
-        return x + "," + y + "," + limitedDecimals.format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + getHitSamples();
+    @Override
+    public void write(MapWriter out, double beatLength, double sliderMultiplier) throws IOException {
+        out.write(x).write(',').write(y).write(',').writeDecimal(getPrecisePos(), limitedDecimals.get()).write(',')
+                .write(getTypeFlag()).write(',').write(getHitsoundFlag()).write(',');
+        writeHitSamples(out);
     }
 
     @Override
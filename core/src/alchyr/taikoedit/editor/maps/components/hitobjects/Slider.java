@@ -1,5 +1,6 @@
 package alchyr.taikoedit.editor.maps.components.hitobjects;
 
+import alchyr.taikoedit.editor.maps.MapWriter;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.maps.components.ILongObject;
 import alchyr.taikoedit.management.SettingsMaster;
@@ -9,6 +10,7 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -123,6 +125,7 @@ public class Slider extends HitObject implements ILongObject {
         {
             this.hitSample = null;
         }
+        this.sampleFile = base.sampleFile;
 
         this.sliderProperties = base.sliderProperties.copy();
     }
@@ -239,14 +242,18 @@ public class Slider extends HitObject implements ILongObject {
     public void render(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, float alpha) {
         if (testHidden()) return;
 
+        renderAt(sb, sr, 1 + x + (float) (this.getPos() - pos) * viewScale, 1 + x + (float) (this.endPos - pos) * viewScale, y, alpha,
+                finish, newCombo, selected, (selected && duration < 0) || duration > 0);
+    }
+
+    //Draws a slider from copied state, so it can be rendered without touching a live object.
+    public static void renderAt(SpriteBatch sb, ShapeRenderer sr, float startX, float endX, float y, float alpha, boolean finish, boolean newCombo, boolean selected, boolean showBody) {
         slider.a = alpha;
-        float startX = 1 + x + (float) (this.getPos() - pos) * viewScale;
-        float endX = 1 + x + (float) (this.endPos - pos) * viewScale;
         sb.setColor(slider);
         slider.a = 1;
         float scale = finish ? currentSkin.largeScale : currentSkin.normalScale;
 
-        if ((selected && duration < 0) || duration > 0)
+        if (showBody)
         {
             float bodyStart = Math.max(0, startX), bodyEnd = Math.min(SettingsMaster.getWidth(), endX);
             currentSkin.body.renderC(sb, sr, (bodyStart + bodyEnd) / 2f, y, (bodyEnd - bodyStart) / currentSkin.body.getWidth(), scale, 0, slider);
@@ -266,7 +273,9 @@ public class Slider extends HitObject implements ILongObject {
 
         if (selected)
         {
-            renderSelection(sb, sr, pos, viewScale, x, y);
+            sb.setColor(Color.WHITE);
+            currentSkin.selection.renderC(sb, sr, endX, y, scale);
+            currentSkin.selection.renderC(sb, sr, startX, y, scale);
         }
     }
 
@@ -339,12 +348,18 @@ public class Slider extends HitObject implements ILongObject {
 
     @Override
     public String toString() {
-        return x + "," + y + "," + limitedDecimals.format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + sliderProperties.toString() + (edgeSounds == null || edgeSounds.length == 0 ? "" : (
+        return x + "," + y + "," + limitedDecimals.get().format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + sliderProperties.toString() + (edgeSounds == null || edgeSounds.length == 0 ? "" : (
                edgeSamples() + "," + getHitSamples()));
     }
-    public String toString(double beatLength, double sliderMultiplier) {
-        return x + "," + y + "," + limitedDecimals.format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + sliderProperties.toString(calculateLength(beatLength, sliderMultiplier)) + (edgeSounds == null || edgeSounds.length == 0 ? "" : (
-                edgeSamples() + "," + getHitSamples()));
+    @Override
+    public void write(MapWriter out, double beatLength, double sliderMultiplier) throws IOException {
+        out.write(x).write(',').write(y).write(',').writeDecimal(getPrecisePos(), limitedDecimals.get()).write(',')
+                .write(getTypeFlag()).write(',').write(getHitsoundFlag()).write(',');
+        sliderProperties.write(out, calculateLength(beatLength, sliderMultiplier));
+        if (edgeSounds != null && edgeSounds.length > 0) {
+            out.write(edgeSamples()).write(',');
+            writeHitSamples(out);
+        }
     }
 
     private String edgeSamples() {
@@ -418,17 +433,29 @@ public class Slider extends HitObject implements ILongObject {
         }
 
         //Cuts off like one decimal places from doubles, as due to the method of storage for sliders they are innately imprecise
-        private static final DecimalFormat limitedDecimals = new DecimalFormat("##0.############", osuDecimalFormat);
+        private static final ThreadLocal<DecimalFormat> limitedDecimals = ThreadLocal.withInitial(()->new DecimalFormat("##0.############", osuDecimalFormat));
         @Override
         public String toString()
         {
-            return curveType + "|" + curvePoints() + "," + repeatCount + "," + limitedDecimals.format(length);
+            return curveType + "|" + curvePoints() + "," + repeatCount + "," + limitedDecimals.get().format(length);
         }
 
         public String toString(double actualLength)
         {
 
-            return curveType + "|" + curvePoints() + "," + repeatCount + "," + limitedDecimals.format(actualLength);
+            return curveType + "|" + curvePoints() + "," + repeatCount + "," + limitedDecimals.get().format(actualLength);
+        }
+
+        public void write(MapWriter out, double actualLength) throws IOException
+        {
+            out.write(curveType).write('|');
+            int i = 0;
+            for (; i < sliderPoints.size() - 1; ++i)
+            {
+                out.write(sliderPoints.get(i).a).write(':').write(sliderPoints.get(i).b).write('|');
+            }
+            out.write(sliderPoints.get(i).a).write(':').write(sliderPoints.get(i).b);
+            out.write(',').write(repeatCount).write(',').writeDecimal(actualLength, limitedDecimals.get());
         }
 
         private String curvePoints()
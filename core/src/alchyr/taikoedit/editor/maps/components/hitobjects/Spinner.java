@@ -1,5 +1,6 @@
 package alchyr.taikoedit.editor.maps.components.hitobjects;
 
+import alchyr.taikoedit.editor.maps.MapWriter;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.maps.components.ILongObject;
 import alchyr.taikoedit.management.SettingsMaster;
@@ -8,6 +9,8 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
+import java.io.IOException;
+
 import static alchyr.taikoedit.management.assets.skins.Skins.currentSkin;
 
 public class Spinner extends HitObject implements ILongObject {
@@ -113,6 +116,7 @@ public class Spinner extends HitObject implements ILongObject {
         {
             this.hitSample = null;
         }
+        this.sampleFile = base.sampleFile;
     }
 
     @Override
@@ -143,12 +147,16 @@ public class Spinner extends HitObject implements ILongObject {
     public void render(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, float alpha) {
         if (testHidden()) return;
 
+        renderAt(sb, sr, 1 + x + (float) (this.getPos() - pos) * viewScale, 1 + x + (float) (this.endPos - pos) * viewScale, y, alpha,
+                selected, duration > 0);
+    }
+
+    //Draws a spinner from copied state, so it can be rendered without touching a live object.
+    public static void renderAt(SpriteBatch sb, ShapeRenderer sr, float startX, float endX, float y, float alpha, boolean selected, boolean showBody) {
         spinner.a = alpha;
-        float startX = 1 + x + (float) (this.getPos() - pos) * viewScale;
-        float endX = 1 + x + (float) (this.endPos - pos) * viewScale;
         sb.setColor(spinner);
         spinner.a = 1;
-        if (duration > 0)
+        if (showBody)
         {
             float bodyStart = Math.max(0, startX), bodyEnd = Math.min(SettingsMaster.getWidth(), endX);
             currentSkin.body.renderC(sb, sr, (bodyStart + bodyEnd) / 2f, y, (bodyEnd - bodyStart) / currentSkin.body.getWidth(), currentSkin.largeScale, 0, spinner);
@@ -165,7 +173,11 @@ public class Spinner extends HitObject implements ILongObject {
 
         if (selected)
         {
-            renderSelection(sb, sr, pos, viewScale, x, y);
+            if (showBody)
+            {
+                currentSkin.selection.renderC(sb, sr, endX, y, currentSkin.largeScale);
+            }
+            currentSkin.selection.renderC(sb, sr, startX, y, currentSkin.largeScale);
         }
     }
 
@@ -206,10 +218,13 @@ public class Spinner extends HitObject implements ILongObject {
 
     @Override
     public String toString() {
-        return x + "," + y + "," + limitedDecimals.format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + (getPos() + duration) + "," + getHitSamples();
+        return x + "," + y + "," + limitedDecimals.get().format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + (getPos() + duration) + "," + getHitSamples();
     }
-    public String toString(double beatLength, double sliderMultiplier) {
-        return x + "," + y + "," + limitedDecimals.format(getPrecisePos()) + "," + getTypeFlag() + "," + getHitsoundFlag() + "," + (getPos() + duration) + "," + getHitSamples();
+    @Override
+    public void write(MapWriter out, double beatLength, double sliderMultiplier) throws IOException {
+        out.write(x).write(',').write(y).write(',').writeDecimal(getPrecisePos(), limitedDecimals.get()).write(',')
+                .write(getTypeFlag()).write(',').write(getHitsoundFlag()).write(',').write(getPos() + duration).write(',');
+        writeHitSamples(out);
     }
 
     @Override
@@ -5,7 +5,6 @@ import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.ui.ImageButton;
 import alchyr.taikoedit.editor.changes.MapChange;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
-import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.tools.Toolset;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.structures.MapObject;
@@ -83,13 +82,7 @@ public class ChangelogView extends MapView {
         if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25
                 && parent.getViewSet(map).contains((o)->o.type == ViewType.OBJECT_VIEW))
         {
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
+            playHitsounds(lastSounded);
         }
         lastSounded = time;
     }
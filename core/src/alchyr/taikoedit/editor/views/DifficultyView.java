@@ -1,8 +1,7 @@
 package alchyr.taikoedit.editor.views;
 
-import alchyr.diffcalc.live.taiko.TaikoDifficultyCalculator;
 import alchyr.diffcalc.live.taiko.TaikoDifficultyAttributes;
-import alchyr.diffcalc.live.taiko.difficulty.preprocessing.TaikoDifficultyHitObject;
+import alchyr.diffcalc.live.taiko.TaikoDifficultyWorker;
 import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.core.input.MouseHoldObject;
 import alchyr.taikoedit.core.layers.EditorLayer;
@@ -22,7 +21,7 @@ import com.badlogic.gdx.math.MathUtils;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.NavigableMap;
 
@@ -53,8 +52,9 @@ public class DifficultyView extends MapView {
 
     private long maxPos = 1000;
 
-    private final Map<HitObject, TaikoDifficultyHitObject> difficultyInfo = new HashMap<>();
-    private TaikoDifficultyAttributes attributes;
+    private final TaikoDifficultyWorker difficultyWorker;
+    //Replaced as a whole when a calculation finishes
+    private volatile TaikoDifficultyWorker.Result difficulty = new TaikoDifficultyWorker.Result(new TaikoDifficultyAttributes(), Collections.emptyMap());
 
     private static double maxDensity = 10;
     public double localMaxDensity = 10;
@@ -83,16 +83,19 @@ public class DifficultyView extends MapView {
         int sections = SettingsMaster.getWidth() / 20;
         density = new double[sections];
 
-        calculateDifficulty();
+        difficultyWorker = new TaikoDifficultyWorker(beatmap, (result)->difficulty = result);
+        difficultyWorker.invalidateNow();
+        calculateDensity();
     }
 
     @Override
     public void onGameplayChange() {
-        TaikoEditor.onMain(this::calculateDifficulty);
+        difficultyWorker.invalidate();
+        TaikoEditor.onMain(this::calculateDensity);
     }
 
-    private void calculateDifficulty() {
-        attributes = (TaikoDifficultyAttributes) TaikoDifficultyCalculator.calculateDifficulty(map, difficultyInfo);
+    private void calculateDensity() {
+        if (map == null) return;
 
         maxPos = (long) Math.ceil(music.getSecondLength() * 1000);
         Long last = map.objects.lastKey();
@@ -180,13 +183,7 @@ public class DifficultyView extends MapView {
         {
 
             //To play ALL hitobjects passed.
-            for (ArrayList<HitObject> objects : map.objects.subMap((long) lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
+            playHitsounds((long) lastSounded);
         }
         lastSounded = preciseTime;
     }
@@ -202,6 +199,8 @@ public class DifficultyView extends MapView {
 
     @Override
     public void renderOverlay(SpriteBatch sb, ShapeRenderer sr) {
+        TaikoDifficultyAttributes attributes = difficulty.attributes;
+
         sb.setColor(Color.WHITE);
         float y = bottom + GRAPH_AREA - 5;
         textRenderer.setFont(font).renderText(sb, "Star Rating: " + df.format(attributes.StarRating), 0, y, Color.WHITE);
@@ -257,12 +256,12 @@ public class DifficultyView extends MapView {
                 sb.setColor(Color.WHITE);
                 textRenderer.setFont(font);
 
-                TaikoDifficultyHitObject difficultyObj = difficultyInfo.get(o);
+                double[] debugData = difficulty.debugData.get(o);
 
-                if (difficultyObj != null) {
+                if (debugData != null) {
                     int y = bottom + 13;
-                    for (int i = 0; i < difficultyObj.debugData.length; ++i) {
-                        textRenderer.renderText(sb, df.format(difficultyObj.debugData[i]), x, y);
+                    for (int i = 0; i < debugData.length; ++i) {
+                        textRenderer.renderText(sb, df.format(debugData[i]), x, y);
                         y += 17;
                     }
                 }
@@ -358,6 +357,7 @@ public class DifficultyView extends MapView {
 
     @Override
     public void dispose() {
+        difficultyWorker.dispose();
         super.dispose();
     }
 
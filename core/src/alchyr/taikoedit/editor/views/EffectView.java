@@ -10,15 +10,14 @@ import alchyr.taikoedit.editor.changes.MapObjectChange;
 import alchyr.taikoedit.editor.changes.ValueSetChange;
 import alchyr.taikoedit.editor.changes.VolumeSetChange;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
-import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.maps.components.TimingPoint;
 import alchyr.taikoedit.editor.tools.*;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.GeneralUtils;
 import alchyr.taikoedit.util.structures.MapObject;
+import alchyr.taikoedit.util.structures.MapObjectMap;
 import alchyr.taikoedit.util.structures.MapObjectTreeMap;
 import alchyr.taikoedit.util.structures.MultiMergeIterator;
-import alchyr.taikoedit.util.structures.Pair;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
@@ -96,6 +95,7 @@ public class EffectView extends MapView implements TextInputReceiver {
     //Waveform Graph
     private static final Color waveformColor = new Color(81f/255, 68f/255, 1f, 1f);
     private Waveform waveform = null;
+    private final float[] waveformRange = new float[2];
     private int waveformMode = -1; //-1 = none, 0 = normal, 1 = absolute value
     private static final int MAX_WAVEFORM_MODE = 1;
 
@@ -287,13 +287,7 @@ public class EffectView extends MapView implements TextInputReceiver {
         if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25
                 && parent.getViewSet(map).contains((o)->o.type == ViewType.OBJECT_VIEW))
         {
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
+            playHitsounds(lastSounded);
         }
         lastSounded = time;
     }
@@ -557,85 +551,43 @@ public class EffectView extends MapView implements TextInputReceiver {
         startTime = (startTime / stepRounding) * stepRounding;
         endTime += stepRounding;
 
-        SortedMap<Integer, Pair<Float, Float>> values = waveform.getSection(startTime, endTime);
-
-        //Process "steps", combining steps with the same min/max into "chunks"
-        //startTime: startTime of last chunk. lastMin/lastMax: min/max of last chunk.
-        //nextPos: next step position. "current" position is nextPos - stepRounding
-
-        //At the end of each "step": if min/max are the same as the previous, just increase size of chunk (increment nextPos)
-        //If min/max are different from previous, draw previous chunk and start new chunk.
-
-        int nextPos = startTime + stepRounding;
-        float max = 0, min = 0, lastMin = 0, lastMax = 0;
-        for (Map.Entry<Integer, Pair<Float, Float>> entry : values.entrySet()) {
-            if (entry.getKey() < nextPos) { //This entry is in the current "step", track it and move on
-                min = Math.min(min, entry.getValue().a);
-                max = Math.max(max, entry.getValue().b);
-            }
-            else while (entry.getKey() >= nextPos) { //This entry is outside of the current "step". Process stuff.
-                if (min != lastMin || max != lastMax) {
-                    //This completed step is not the same as the "last" step
-                    //So, show the last step, unless it had "no" data
-                    if (lastMin != 0 || lastMax != 0) {
-                        int x = getPositionFromTime(startTime + offset);
-                        int end = getPositionFromTime(nextPos - stepRounding + offset);
-                        //Render values obtained
-                        switch (waveformMode) {
-                            case 0:
-                                sr.rect(x, midY + (SV_AREA * lastMin), end - x, SV_AREA * (lastMax - lastMin));
-                                break;
-                            case 1:
-                                sr.rect(x, midY - SV_AREA, end - x, SV_AREA * (lastMax - lastMin));
-                                break;
-                        }
-                    }
-
-                    //Create new chunk
-                    startTime = nextPos - stepRounding;
-                    lastMin = min; //Store values of last step
-                    lastMax = max;
-                }
-
-                //New step, set values. Testing previous is only necessary if entry is "within" current step.
-                min = entry.getValue().a;
-                max = entry.getValue().b;
-                nextPos += stepRounding;
-            }
-        }
-        //Render last two chunks
-        if (lastMin != 0 || lastMax != 0) {
-            int x = getPositionFromTime(startTime + offset);
-            int end = getPositionFromTime(nextPos - stepRounding + offset);
-            //Render values obtained
-            switch (waveformMode) {
-                case 0:
-                    sr.rect(x, midY + (SV_AREA * lastMin), end - x, SV_AREA * (lastMax - lastMin));
-                    break;
-                case 1:
-                    sr.rect(x, midY - SV_AREA, end - x, SV_AREA * (lastMax - lastMin));
-                    break;
-            }
-        }
-        if (min != 0 || max != 0) {
-            int x = getPositionFromTime(nextPos + offset);
-            if (x < SettingsMaster.getWidth()) {
-                //Render values obtained
-                switch (waveformMode) {
-                    case 0:
-                        sr.rect(x, midY + (SV_AREA * lastMin), SettingsMaster.getWidth() - x, SV_AREA * (lastMax - lastMin));
-                        break;
-                    case 1:
-                        sr.rect(x, midY - SV_AREA, SettingsMaster.getWidth() - x, SV_AREA * (lastMax - lastMin));
-                        break;
-                }
+        //Each "step" is about a pixel wide, and uses the waveform level with buckets closest to that size.
+        //Consecutive steps with the same min/max are combined into one "chunk" that is drawn as a single rect.
+        int level = Waveform.levelFor(stepRounding);
+        int chunkStart = startTime;
+        float lastMin = 0, lastMax = 0;
+        for (int stepStart = startTime; stepStart < endTime; stepStart += stepRounding) {
+            waveform.getRange(level, stepStart, stepStart + stepRounding, waveformRange);
+            if (waveformRange[0] != lastMin || waveformRange[1] != lastMax) {
+                renderWaveformChunk(sr, chunkStart, stepStart, lastMin, lastMax, offset);
+
+                chunkStart = stepStart;
+                lastMin = waveformRange[0];
+                lastMax = waveformRange[1];
             }
         }
+        renderWaveformChunk(sr, chunkStart, endTime, lastMin, lastMax, offset);
 
         sr.end();
         sb.begin();
     }
 
+    private void renderWaveformChunk(ShapeRenderer sr, int startTime, int endTime, float min, float max, float offset) {
+        if (min == 0 && max == 0) //No data
+            return;
+
+        int x = getPositionFromTime(startTime + offset);
+        int end = getPositionFromTime(endTime + offset);
+        switch (waveformMode) {
+            case 0:
+                sr.rect(x, midY + (SV_AREA * min), end - x, SV_AREA * (max - min));
+                break;
+            case 1:
+                sr.rect(x, midY - SV_AREA, end - x, SV_AREA * (max - min));
+                break;
+        }
+    }
+
     private void renderValueLabels(SpriteBatch sb, TimingPoint focusPoint) {
         long lastRenderable = focusPoint == null ? 0 : focusPoint.getPos() + (long)(LABEL_SPACING / viewScale);
         double svLabelSpacing = 0;
@@ -1216,7 +1168,7 @@ public class EffectView extends MapView implements TextInputReceiver {
         if (startTime == endTime)
             return;
 
-        MapObjectTreeMap<TimingPoint> src;
+        MapObjectMap<TimingPoint> src;
         if (timingEnabled && effectPointsEnabled)
             src = map.allPoints;
         else if (timingEnabled)
@@ -369,13 +369,7 @@ public class GameplayView extends MapView {
     public void primaryUpdate(boolean isPlaying) {
         if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25) //might have skipped backwards, make sure didn't skip too far
         {
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
+            playHitsounds(lastSounded);
         }
         lastSounded = time;
     }
@@ -139,17 +139,14 @@ public class GimmickView extends MapView {
     public void primaryUpdate(boolean isPlaying) {
         if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25) //might have skipped backwards
         {
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    if (visible(o))
-                        o.playSound();
-                }
-            }
+            playHitsounds(lastSounded);
         }
         lastSounded = time;
     }
+    @Override
+    protected boolean soundsObject(HitObject o) {
+        return visible(o);
+    }
 
     @Override
     public void update(double exactPos, long msPos, float elapsed, boolean canHover) {
@@ -7,10 +7,14 @@ import alchyr.taikoedit.core.ui.ImageButton;
 import alchyr.taikoedit.editor.Snap;
 import alchyr.taikoedit.editor.changes.MapObjectChange;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.tools.Toolset;
 import alchyr.taikoedit.management.SettingsMaster;
+import alchyr.taikoedit.util.Profiler;
 import alchyr.taikoedit.util.structures.MapObject;
+import alchyr.taikoedit.util.structures.MapObjectMap;
 import alchyr.taikoedit.util.structures.MapObjectTreeMap;
+import alchyr.taikoedit.util.structures.MultiMergeIterator;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
@@ -108,6 +112,14 @@ public abstract class MapView {
 
     private final List<ImageButton> overlayButtons;
 
+    //Snapshots, for views that render without the layer lock
+    private final ViewSnapshot[] snapshots = new ViewSnapshot[2];
+    private int publishedSnapshot = -1, renderingSnapshot = -1;
+    private MultiMergeIterator<Long, MapObject, ArrayList<MapObject>> snapshotObjectIterator;
+
+    //Render timing
+    final Profiler.Section baseProfile, overlayProfile;
+
     public MapView(ViewType viewType, EditorLayer parent, EditorBeatmap beatmap, int height)
     {
         this.type = viewType;
@@ -124,6 +136,10 @@ public abstract class MapView {
         isPrimary = false;
 
         overlayButtons = new ArrayList<>();
+
+        String profileName = beatmap.getName() + " " + typeString();
+        baseProfile = Profiler.section(profileName + " base").setSlowTime(4);
+        overlayProfile = Profiler.section(profileName + " overlay").setSlowTime(4);
     }
 
     protected void addOverlayButton(ImageButton b)
@@ -304,6 +320,48 @@ public abstract class MapView {
     public void primaryUpdate(boolean isPlaying)
     {
     }
+
+    //Up to where hitsounds have been played or mixed into the music, and the state of the mixer they were mixed into.
+    private long soundedUntil = Long.MIN_VALUE;
+    private int soundGeneration = 0;
+    private int soundedState = 0; //State of the map when hitsounds were scheduled
+
+    /**
+     * For primaryUpdate. Plays the hitsounds of objects after the given time, up to the current time.
+     * If the music can mix in hitsounds, objects ahead of the current time are passed to it as well, so they start at their exact position.
+     */
+    protected void playHitsounds(long from) {
+        int state = map.getStateKey();
+        if (state != soundedState) { //Objects scheduled ahead may have been added, moved or removed
+            soundedState = state;
+            music.clearScheduledHitsounds();
+        }
+
+        int generation = music.getHitsoundGeneration();
+        if (generation != soundGeneration) { //Hitsounds mixed ahead of time were dropped
+            soundGeneration = generation;
+            soundedUntil = Long.MIN_VALUE;
+        }
+
+        long until = time + music.getHitsoundLead();
+        from = Math.max(from, soundedUntil);
+        if (until <= from)
+            return;
+
+        for (ArrayList<HitObject> objects : map.objects.subMap(from, false, until, true).values())
+        {
+            for (HitObject o : objects)
+            {
+                if (soundsObject(o))
+                    music.playHitsound(o.getSfxKey(), o.volume, o.getPos());
+            }
+        }
+        soundedUntil = until;
+    }
+    //Whether playHitsounds plays the hitsound of an object.
+    protected boolean soundsObject(HitObject o) {
+        return true;
+    }
     //Rendering done to show the currently active MapView.
     public void primaryRender(SpriteBatch sb, ShapeRenderer sr)
     {
@@ -344,6 +402,57 @@ public abstract class MapView {
 
     }
 
+    /**
+     * Views that create snapshots are rendered from them without the layer lock, rather than through renderBase and renderStack.
+     * @return A new snapshot to fill, or null to render while holding the layer lock.
+     */
+    protected ViewSnapshot createSnapshot() {
+        return null;
+    }
+    //Copies everything needed to render the current state into the snapshot. Called while holding the layer lock.
+    protected void fillSnapshot(ViewSnapshot snapshot) {
+
+    }
+    //Adds the objects to render to the list, in the same order ViewSet renders them.
+    protected void addRenderedObjects(List<MapObject> objects) {
+        if (snapshotObjectIterator == null)
+            snapshotObjectIterator = new MultiMergeIterator<>(ArrayList::new, reverseLongComparator);
+
+        snapshotObjectIterator.clear();
+        snapshotObjectIterator.addIterator(prep().entrySet().iterator(), Map.Entry::getKey, (list, entry)->list.addAll(entry.getValue()));
+        snapshotObjectIterator.addIterator(additionalDisplayObjects().descendingMap().entrySet().iterator(), Map.Entry::getKey, (list, entry)->list.addAll(entry.getValue()), 1);
+
+        while (snapshotObjectIterator.hasNext()) {
+            objects.addAll(snapshotObjectIterator.next());
+        }
+    }
+
+    //Fills whichever snapshot isn't being rendered. Called on the update thread at the end of each update.
+    void publishSnapshot() {
+        int index = renderingSnapshot == 0 ? 1 : 0;
+        if (snapshots[index] == null) {
+            snapshots[index] = createSnapshot();
+            if (snapshots[index] == null)
+                return;
+            snapshots[index].profile = baseProfile;
+        }
+        fillSnapshot(snapshots[index]);
+        publishedSnapshot = index;
+    }
+    /**
+     * Called on the render thread while holding the layer lock. The returned snapshot won't be modified until the next call.
+     * @return The latest snapshot, or null if this view doesn't use them.
+     */
+    ViewSnapshot takeSnapshot() {
+        if (publishedSnapshot == renderingSnapshot) //Nothing new, such as while the editor isn't being updated
+            publishSnapshot();
+        if (publishedSnapshot < 0)
+            return null;
+
+        renderingSnapshot = publishedSnapshot;
+        return snapshots[renderingSnapshot];
+    }
+
     public Snap getPreviousSnap(long pos) {
         Map.Entry<Long, Snap> previous = map.getCurrentSnaps().lowerEntry(music.isPlaying() ? pos - 250 : pos);
         if (previous == null)
@@ -470,7 +579,7 @@ public abstract class MapView {
             lastReturnedSelection = new MapObjectTreeMap<>();
             lastSelectionMapState = map.getStateKey();
 
-            MapObjectTreeMap<? extends MapObject> baseMap = null;
+            MapObjectMap<? extends MapObject> baseMap = null;
             switch (type) {
                 case OBJECT_VIEW:
                 case GAMEPLAY_VIEW:
@@ -548,7 +657,7 @@ public abstract class MapView {
 
         lastReturnedSelection = null;
     }
-    public void selectObjects(MapObjectTreeMap<? extends MapObject> toSelect) {
+    public void selectObjects(MapObjectMap<? extends MapObject> toSelect) {
         if (selectedObjects == null) {
             selectedObjects = new MapObjectTreeMap<>();
         }
@@ -641,6 +750,9 @@ public abstract class MapView {
 
     public void dispose()
     {
+        Profiler.remove(baseProfile);
+        Profiler.remove(overlayProfile);
+
         parent = null;
         map = null;
         pix = null; //no need to dispose textures, asset master handles them.
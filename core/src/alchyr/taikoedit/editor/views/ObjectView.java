@@ -11,6 +11,8 @@ import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.maps.components.ILongObject;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
+import alchyr.taikoedit.editor.maps.components.hitobjects.Slider;
+import alchyr.taikoedit.editor.maps.components.hitobjects.Spinner;
 import alchyr.taikoedit.editor.tools.*;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.EditorTime;
@@ -19,8 +21,10 @@ import alchyr.taikoedit.util.structures.MapObjectTreeMap;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.FloatArray;
 
 import java.util.*;
 
@@ -62,6 +66,7 @@ public class ObjectView extends MapView {
     private long lastSounded;
 
     private SortedMap<Long, Snap> activeSnaps = Collections.emptySortedMap();
+    private final List<MapObject> renderedObjects = new ArrayList<>();
 
     public ObjectView(EditorLayer parent, EditorBeatmap beatmap) {
         super(ViewType.OBJECT_VIEW, parent, beatmap, HEIGHT);
@@ -115,13 +120,7 @@ public class ObjectView extends MapView {
             }*/
 
             //To play ALL hitobjects passed.
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
+            playHitsounds(lastSounded);
         }
         lastSounded = time;
     }
@@ -134,79 +133,106 @@ public class ObjectView extends MapView {
 
     @Override
     public void renderBase(SpriteBatch sb, ShapeRenderer sr) {
-        sb.setColor(backColor);
-        sb.draw(pix, 0, bottom, SettingsMaster.getWidth(), height);
+        //Rendered from snapshots
+    }
+
+    @Override
+    protected ViewSnapshot createSnapshot() {
+        return new Snapshot();
+    }
 
-        //Breaks
+    @Override
+    protected void fillSnapshot(ViewSnapshot viewSnapshot) {
+        Snapshot snapshot = (Snapshot) viewSnapshot;
+        snapshot.pix = pix;
+        snapshot.time = preciseTime;
+        snapshot.viewScale = viewScale;
+        snapshot.middle = SettingsMaster.getMiddleX();
+        snapshot.width = SettingsMaster.getWidth();
+        snapshot.bottom = bottom;
+        snapshot.height = height;
+        snapshot.objectY = objectY;
+
+        snapshot.breakColors.clear();
+        snapshot.breakAreas.clear();
         if (breaks) {
-            Map.Entry<Long, ArrayList<HitObject>> stack;
-            double start, end, breakStart, breakEnd;
-            long startTime;
-            Color startColor, endColor;
-            Optional<HitObject> longest;
+            fillBreaks(snapshot);
+        }
 
-            for (BreakInfo breakSection : map.getBreaks()) {
-                startColor = endColor = faintBreakColor;
+        snapshot.snaps.clear();
+        snapshot.snaps.addAll(activeSnaps.values());
 
-                breakEnd = (breakSection.end - preciseTime) * viewScale + SettingsMaster.getMiddleX();
+        //Objects are copied, as the update thread keeps moving and editing them while the snapshot is drawn.
+        renderedObjects.clear();
+        addRenderedObjects(renderedObjects);
+        snapshot.objectCount = 0;
+        for (MapObject o : renderedObjects) {
+            if (o instanceof HitObject && !o.testHidden()) {
+                snapshot.nextObject().set((HitObject) o);
+            }
+        }
+        renderedObjects.clear();
+    }
 
-                stack = map.objects.ceilingEntry(breakSection.end);
-                if (stack != null) {
-                    //if distance is <= min distance, color is gray
-                    //Otherwise, color is blue to denote extended break delay
-                    //Do the same for start delay, except end delay is dynamic based on AR.
-                    if (stack.getKey() - breakSection.end > map.getBreakEndDelay())
-                        endColor = fakeBreakColor;
+    private void fillBreaks(Snapshot snapshot) {
+        Map.Entry<Long, ArrayList<HitObject>> stack;
+        double start, end, breakStart, breakEnd;
+        long startTime;
+        Color startColor, endColor;
+        Optional<HitObject> longest;
 
-                    end = (stack.getKey() - preciseTime) * viewScale + SettingsMaster.getMiddleX();
-                }
-                else { //this is a cheaty break with no closing object.
-                    end = SettingsMaster.getWidth();
-                }
+        for (BreakInfo breakSection : map.getBreaks()) {
+            startColor = endColor = faintBreakColor;
 
-                if (end < 0)
-                    continue;
+            breakEnd = (breakSection.end - preciseTime) * viewScale + SettingsMaster.getMiddleX();
 
-                breakStart = (breakSection.start - preciseTime) * viewScale + SettingsMaster.getMiddleX();
+            stack = map.objects.ceilingEntry(breakSection.end);
+            if (stack != null) {
+                //if distance is <= min distance, color is gray
+                //Otherwise, color is blue to denote extended break delay
+                //Do the same for start delay, except end delay is dynamic based on AR.
+                if (stack.getKey() - breakSection.end > map.getBreakEndDelay())
+                    endColor = fakeBreakColor;
 
-                stack = map.objects.floorEntry(breakSection.start);
-                if (stack != null) {
-                    longest = stack.getValue().stream().max(Comparator.comparingLong(HitObject::getEndPos));
-                    startTime = longest.map(HitObject::getEndPos).orElse(0L);
+                end = (stack.getKey() - preciseTime) * viewScale + SettingsMaster.getMiddleX();
+            }
+            else { //this is a cheaty break with no closing object.
+                end = SettingsMaster.getWidth();
+            }
 
-                    if (breakSection.start - startTime > 200)
-                        startColor = fakeBreakColor;
+            if (end < 0)
+                continue;
 
-                    start = (startTime - preciseTime) * viewScale + SettingsMaster.getMiddleX();
-                }
-                else {
-                    start = 0;
-                }
+            breakStart = (breakSection.start - preciseTime) * viewScale + SettingsMaster.getMiddleX();
 
-                if (start > SettingsMaster.getWidth())
-                    break;
+            stack = map.objects.floorEntry(breakSection.start);
+            if (stack != null) {
+                longest = stack.getValue().stream().max(Comparator.comparingLong(HitObject::getEndPos));
+                startTime = longest.map(HitObject::getEndPos).orElse(0L);
 
-                //should render if start is anywhere >0 or end anywhere <width, or if start<0 and end>width?
-                if (start <= SettingsMaster.getWidth() && end >= 0) {
-                    start = Math.max(start, 0);
-                    if (breakStart > 0) {
-                        sb.setColor(startColor);
-                        sb.draw(pix, (float)start, bottom, (float)(breakStart - start), height);
-                    }
-                    if (breakEnd <= SettingsMaster.getWidth()) {
-                        sb.setColor(endColor);
-                        sb.draw(pix, (float)breakEnd, bottom, (float)(end - breakEnd), height);
-                    }
-                    sb.setColor(breakColor);
-                    sb.draw(pix, (float)breakStart, bottom, (float)(breakEnd - breakStart), height);
-                }
+                if (breakSection.start - startTime > 200)
+                    startColor = fakeBreakColor;
+
+                start = (startTime - preciseTime) * viewScale + SettingsMaster.getMiddleX();
+            }
+            else {
+                start = 0;
             }
-        }
 
-        //Divisors.
-        for (Snap s : activeSnaps.values())
-        {
-            s.render(sb, sr, preciseTime, viewScale, SettingsMaster.getMiddleX(), bottom, HEIGHT);
+            if (start > SettingsMaster.getWidth())
+                break;
+
+            //should render if start is anywhere >0 or end anywhere <width, or if start<0 and end>width?
+            if (start <= SettingsMaster.getWidth() && end >= 0) {
+                start = Math.max(start, 0);
+                if (breakStart > 0) {
+                    snapshot.addBreakArea(startColor, (float) start, (float) (breakStart - start));
+                }
+                if (breakEnd <= SettingsMaster.getWidth()) {
+                    snapshot.addBreakArea(endColor, (float) breakEnd, (float) (end - breakEnd));
+                }
+                snapshot.addBreakArea(breakColor, (float) breakStart, (float) (breakEnd - breakStart));
+            }
         }
     }
 
@@ -864,4 +890,95 @@ public class ObjectView extends MapView {
             }
         }
     }
+
+    private static final class Snapshot extends ViewSnapshot {
+        private Texture pix;
+        private double time;
+        private float viewScale;
+        private int middle, width, bottom, height, objectY;
+
+        private final List<Color> breakColors = new ArrayList<>();
+        private final FloatArray breakAreas = new FloatArray(); //x and width of each area
+        private final List<Snap> snaps = new ArrayList<>();
+        private final List<ObjectState> objects = new ArrayList<>();
+        private int objectCount;
+
+        private void addBreakArea(Color c, float x, float width) {
+            breakColors.add(c);
+            breakAreas.add(x, width);
+        }
+
+        private ObjectState nextObject() {
+            if (objectCount == objects.size()) {
+                objects.add(new ObjectState());
+            }
+            return objects.get(objectCount++);
+        }
+
+        @Override
+        protected void draw(SpriteBatch sb, ShapeRenderer sr) {
+            sb.setColor(backColor);
+            sb.draw(pix, 0, bottom, width, height);
+
+            //Breaks
+            for (int i = 0; i < breakColors.size(); ++i) {
+                sb.setColor(breakColors.get(i));
+                sb.draw(pix, breakAreas.get(i * 2), bottom, breakAreas.get(i * 2 + 1), height);
+            }
+
+            //Divisors.
+            for (Snap s : snaps)
+            {
+                s.render(sb, sr, time, viewScale, middle, bottom, HEIGHT);
+            }
+
+            for (int i = 0; i < objectCount; ++i) {
+                objects.get(i).render(sb, sr, time, viewScale, middle, objectY);
+            }
+        }
+    }
+
+    private static final class ObjectState {
+        private HitObject.HitObjectType type;
+        private long pos, endPos;
+        private boolean rim, finish, selected, newCombo, showBody;
+
+        private void set(HitObject o) {
+            type = o.type;
+            pos = o.getPos();
+            endPos = o.getEndPos();
+            long duration = o instanceof ILongObject ? ((ILongObject) o).getDuration() : 0;
+            rim = o instanceof Hit && ((Hit) o).isRim();
+            finish = o.isFinish();
+            selected = o.selected;
+            newCombo = o.newCombo;
+            switch (type) {
+                case SLIDER:
+                    showBody = (selected && duration < 0) || duration > 0;
+                    break;
+                case SPINNER:
+                    showBody = duration > 0;
+                    break;
+                default:
+                    showBody = false;
+                    break;
+            }
+        }
+
+        private void render(SpriteBatch sb, ShapeRenderer sr, double time, float viewScale, float x, float y) {
+            float startX = 1 + x + (float) (pos - time) * viewScale;
+            float endX = 1 + x + (float) (endPos - time) * viewScale;
+            switch (type) {
+                case CIRCLE:
+                    Hit.renderAt(sb, sr, startX, y, 1.0f, rim, finish, newCombo, selected);
+                    break;
+                case SLIDER:
+                    Slider.renderAt(sb, sr, startX, endX, y, 1.0f, finish, newCombo, selected, showBody);
+                    break;
+                case SPINNER:
+                    Spinner.renderAt(sb, sr, startX, endX, y, 1.0f, selected, showBody);
+                    break;
+            }
+        }
+    }
 }
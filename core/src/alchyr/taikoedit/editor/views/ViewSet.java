@@ -10,6 +10,7 @@ import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.tools.EditorTool;
 import alchyr.taikoedit.management.SettingsMaster;
+import alchyr.taikoedit.util.Profiler;
 import alchyr.taikoedit.util.structures.MapObject;
 import alchyr.taikoedit.util.structures.MultiMergeIterator;
 import com.badlogic.gdx.Input;
@@ -34,6 +35,7 @@ public class ViewSet {
     private final HashMap<HitObject, TaikoDifficultyHitObject> difficultyInfo = new HashMap<>();
 
     private final MultiMergeIterator<Long, MapObject, ArrayList<MapObject>> viewObjectIterator;
+    private final List<MapView> lockedViews = new ArrayList<>();
 
     private final BitmapFont difficultyFont;
     private float difficultyX;
@@ -64,13 +66,36 @@ public class ViewSet {
         }
     }
 
-    public void render(SpriteBatch sb, ShapeRenderer sr)
+    //Publishes render snapshots of the state after this update, for views that use them.
+    public void publishSnapshots()
     {
+        for (MapView view : views)
+        {
+            view.publishSnapshot();
+        }
+    }
+
+    /**
+     * Renders views that need the layer lock. Snapshots of the other views are added to the list, to be rendered without it.
+     */
+    public void render(SpriteBatch sb, ShapeRenderer sr, List<ViewSnapshot> snapshots)
+    {
+        lockedViews.clear();
         for (MapView view : views) {
+            ViewSnapshot snapshot = view.takeSnapshot();
+            if (snapshot != null)
+                snapshots.add(snapshot);
+            else
+                lockedViews.add(view);
+        }
+
+        for (MapView view : lockedViews) {
+            long start = Profiler.start();
             view.renderBase(sb, sr); //render the stuff that goes under objects
+            view.baseProfile.end(start);
         }
 
-        for (MapView view : views) {
+        for (MapView view : lockedViews) {
             viewObjectIterator.clear();
 
             viewObjectIterator.addIterator(view.prep().entrySet().iterator(), Map.Entry::getKey, (list, entry)->list.addAll(entry.getValue()));
@@ -87,7 +112,9 @@ public class ViewSet {
     {
         boolean first = true;
         for (MapView view : views) {
+            long start = Profiler.start();
             view.renderOverlay(sb, sr);
+            view.overlayProfile.end(start);
             if (first)
             {
                 textRenderer.setFont(difficultyFont).renderText(sb, map.getName(), difficultyX, view.top - 10);
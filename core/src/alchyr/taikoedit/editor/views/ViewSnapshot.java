@@ -0,0 +1,22 @@
+package alchyr.taikoedit.editor.views;
+
+import alchyr.taikoedit.util.Profiler;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+
+/**
+ * Everything a view needs to render one frame, copied on the update thread.
+ * Rendered on the render thread without the layer lock, so it should not refer back to the view or to anything else the update thread changes.
+ * Each view double buffers its snapshots; one is only filled while the other is the one being rendered.
+ */
+public abstract class ViewSnapshot {
+    Profiler.Section profile; //Set by the view
+
+    public void render(SpriteBatch sb, ShapeRenderer sr) {
+        long start = Profiler.start();
+        draw(sb, sr);
+        profile.end(start);
+    }
+
+    protected abstract void draw(SpriteBatch sb, ShapeRenderer sr);
+}
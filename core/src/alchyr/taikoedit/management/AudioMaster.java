@@ -1,16 +1,21 @@
 package alchyr.taikoedit.management;
 
+import alchyr.taikoedit.audio.HitsoundMixer;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALMusic;
+import com.badlogic.gdx.backends.lwjgl3.audio.Wav;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.HashMap;
 import java.util.HashSet;
 
@@ -53,6 +58,14 @@ public class AudioMaster {
             s.dispose();
     }
 
+    /**
+     * @return The decoded audio of a sound effect, for mixing it into music. null if the sound isn't loaded or couldn't be decoded.
+     */
+    public HitsoundMixer.Sample getSample(String key) {
+        Sfx s = map.get(key);
+        return s == null ? null : s.sample;
+    }
+
     public void addMusic(OpenALMusic track) {
         queuedAddMusic.add(track);
     }
@@ -148,9 +161,12 @@ public class AudioMaster {
         private static final Logger logger = LogManager.getLogger(Sfx.class.getName());
         private String url;
         private Sound sound;
+        private HitsoundMixer.Sample sample;
 
         public Sfx(String url) {
-            this.sound = this.initSound(Gdx.files.internal(url));
+            FileHandle file = Gdx.files.internal(url);
+            this.sound = this.initSound(file);
+            this.sample = this.decode(file);
         }
 
         public long play(float volume) {
@@ -204,6 +220,43 @@ public class AudioMaster {
             }
         }
 
+        //Only 16 bit wav files are decoded; other sounds can only be played through Sound.
+        private HitsoundMixer.Sample decode(FileHandle file) {
+            if (file == null || !file.extension().equalsIgnoreCase("wav"))
+                return null;
+
+            Wav.WavInputStream in = null;
+            try {
+                in = new Wav.WavInputStream(file);
+                if (in.bitDepth != 16)
+                    return null;
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(in.dataRemaining, 0));
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = in.read(buffer)) > 0)
+                    bytes.write(buffer, 0, length);
+
+                short[] data = new short[bytes.size() / 2];
+                ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(data);
+                return data.length < in.channels ? null : new HitsoundMixer.Sample(data, in.channels, in.sampleRate);
+            }
+            catch (Exception e) {
+                logger.info("Failed to decode " + file.path() + " for mixing; it will be played as a sound.");
+                return null;
+            }
+            finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    }
+                    catch (Exception ignored) {
+
+                    }
+                }
+            }
+        }
+
         public void dispose()
         {
             if (this.sound != null)
@@ -211,6 +264,7 @@ public class AudioMaster {
                 this.sound.dispose();
                 this.sound = null;
             }
+            this.sample = null;
         }
     }
 
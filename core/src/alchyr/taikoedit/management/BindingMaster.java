@@ -67,6 +67,8 @@ public class BindingMaster {
         creating.addBinding(InputBinding.create("Save", new InputBinding.InputInfo(Input.Keys.S, true)));
         creating.addBinding(InputBinding.create("SaveAll", new InputBinding.InputInfo(Input.Keys.S, true, false, true)));
         creating.addBinding(InputBinding.create("TJASave", new InputBinding.InputInfo(Input.Keys.S, true, true, true)));
+        creating.addBinding(InputBinding.create("Profiler", new InputBinding.InputInfo(Input.Keys.F3)));
+        creating.addBinding(InputBinding.create("ExportProfile", new InputBinding.InputInfo(Input.Keys.F3, true)));
 
         creating.addBinding(InputBinding.create("TogglePlayback", new InputBinding.InputInfo(Input.Keys.SPACE)));
         creating.addBinding(InputBinding.create("SeekRight", new InputBinding.InputInfo(Input.Keys.RIGHT, Maybe.MAYBE), new InputBinding.InputInfo(Input.Keys.X, Maybe.FALSE, Maybe.FALSE, Maybe.MAYBE))
@@ -50,6 +50,15 @@ public class SettingsMaster {
 
     public static boolean lazerSnaps = false;
 
+    //Use array-backed maps for objects and timing points, which are faster to read but slower to change.
+    public static boolean arrayMaps = false;
+
+    //Decode mp3 files on multiple threads. The decoded audio is the same either way.
+    public static boolean parallelDecode = false;
+
+    //Maximum size of the decoded audio cache in MB. 0 disables the cache.
+    public static int audioCacheSize = 1024;
+
     public static long roundPos(double pos) {
         return lazerSnaps ? Math.round(pos) : (long) pos;
     }
@@ -146,6 +155,15 @@ public class SettingsMaster {
                                         case "WaveformOffset":
                                             waveformOffset = Integer.parseInt(keyVal[1]);
                                             break;
+                                        case "ArrayMaps":
+                                            arrayMaps = Boolean.parseBoolean(keyVal[1]);
+                                            break;
+                                        case "ParallelDecode":
+                                            parallelDecode = Boolean.parseBoolean(keyVal[1]);
+                                            break;
+                                        case "AudioCacheSize":
+                                            audioCacheSize = Integer.parseInt(keyVal[1]);
+                                            break;
                                         case "Name":
                                             NAME = keyVal[1];
                                         default:
@@ -252,6 +270,9 @@ public class SettingsMaster {
                 "KY:" + bigKatY + '\n' +
                 "LazerSnaps:" + lazerSnaps + '\n' +
                 "WaveformOffset:" + waveformOffset + '\n' +
+                "ArrayMaps:" + arrayMaps + '\n' +
+                "ParallelDecode:" + parallelDecode + '\n' +
+                "AudioCacheSize:" + audioCacheSize + '\n' +
                 "Skin:" + Skins.currentSkin.toString() + '\n' +
                 "Name:" + NAME;
         //.replace(":", "](}").replace("|", "})]");
@@ -0,0 +1,192 @@
+package alchyr.taikoedit.util;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static alchyr.taikoedit.TaikoEditor.assetMaster;
+import static alchyr.taikoedit.TaikoEditor.textRenderer;
+
+/**
+ * Keeps the most recent timings of sections of the update and render threads.
+ * Timing does nothing while disabled; when enabled, the timings are shown as an overlay and can be exported.
+ *
+ * Usage:
+ * long start = Profiler.start();
+ * ...
+ * section.end(start);
+ */
+public class Profiler {
+    private static final int SAMPLES = 256; //Power of 2
+    private static final int MASK = SAMPLES - 1;
+    private static final double NANOS_PER_MS = 1000000.0;
+
+    private static final Color backColor = new Color(0.0f, 0.0f, 0.0f, 0.7f);
+    private static final Color slowColor = new Color(0.8f, 0.3f, 0.2f, 0.5f);
+    private static final int LINE_HEIGHT = 16;
+    private static final DecimalFormat msFormat = new DecimalFormat("0.00");
+
+    private static final List<Section> sections = new CopyOnWriteArrayList<>();
+    private static volatile boolean enabled = false;
+
+    //Sections that always exist
+    public static final Section frame = section("Frame");
+    public static final Section update = section("Update").setSlowTime(1000.0 / 480); //One update tick
+    public static final Section render = section("Render");
+    public static final Section assets = section("Assets");
+    public static final Section mainQueue = section("Main Queue");
+    public static final Section audio = section("Audio");
+
+    private static BitmapFont font;
+    private static Texture pix;
+
+    public static Section section(String name) {
+        Section section = new Section(name);
+        sections.add(section);
+        return section;
+    }
+    public static void remove(Section section) {
+        sections.remove(section);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    public static boolean toggle() {
+        enabled = !enabled;
+        if (enabled) {
+            for (Section section : sections)
+                section.clear();
+        }
+        return enabled;
+    }
+
+    /**
+     * @return The start time to pass to Section.end, or 0 if the profiler is disabled.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void render(SpriteBatch sb) {
+        if (!enabled)
+            return;
+
+        if (font == null) {
+            font = assetMaster.getFont("base:aller small");
+            pix = assetMaster.get("ui:pixel");
+        }
+
+        float y = LINE_HEIGHT * (sections.size() + 1) + 4;
+        sb.setColor(backColor);
+        sb.draw(pix, 0, 0, 360, y + 4);
+
+        textRenderer.setFont(font);
+        textRenderer.renderText(sb, "Section", 4, y);
+        textRenderer.renderText(sb, "Last", 180, y);
+        textRenderer.renderText(sb, "Avg", 240, y);
+        textRenderer.renderText(sb, "Max", 300, y);
+
+        for (Section section : sections) {
+            y -= LINE_HEIGHT;
+            int count = section.sampleCount();
+            if (count == 0) {
+                textRenderer.renderText(sb, section.name, 4, y);
+                continue;
+            }
+
+            long last = section.samples[(section.count - 1) & MASK], total = 0, max = 0;
+            for (int i = 0; i < count; ++i) {
+                long sample = section.samples[i];
+                total += sample;
+                max = Math.max(max, sample);
+            }
+
+            if (max > section.slowNanos) {
+                sb.setColor(slowColor);
+                sb.draw(pix, 0, y - LINE_HEIGHT + 2, 360, LINE_HEIGHT);
+            }
+            textRenderer.renderText(sb, section.name, 4, y);
+            textRenderer.renderText(sb, msFormat.format(last / NANOS_PER_MS), 180, y);
+            textRenderer.renderText(sb, msFormat.format(total / (count * NANOS_PER_MS)), 240, y);
+            textRenderer.renderText(sb, msFormat.format(max / NANOS_PER_MS), 300, y);
+        }
+    }
+
+    /**
+     * Writes the recorded timings of each section in milliseconds, oldest first, as comma separated values.
+     */
+    public static void export(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println("Section,Samples,Average (ms),Max (ms),Timings (ms)");
+            for (Section section : sections) {
+                int count = section.sampleCount();
+                int first = section.count - count;
+                long total = 0, max = 0;
+
+                StringBuilder timings = new StringBuilder();
+                for (int i = 0; i < count; ++i) {
+                    long sample = section.samples[(first + i) & MASK];
+                    total += sample;
+                    max = Math.max(max, sample);
+                    timings.append(',').append(sample / NANOS_PER_MS);
+                }
+
+                writer.print('"');
+                writer.print(section.name.replace("\"", "\"\""));
+                writer.print("\",");
+                writer.print(count);
+                writer.print(',');
+                writer.print(count == 0 ? 0 : total / (count * NANOS_PER_MS));
+                writer.print(',');
+                writer.print(max / NANOS_PER_MS);
+                writer.println(timings);
+            }
+        }
+    }
+
+    /**
+     * A ring buffer of the timings of one part of a thread.
+     * Each section should only be timed by one thread.
+     */
+    public static class Section {
+        public final String name;
+        private final long[] samples = new long[SAMPLES];
+        private volatile int count = 0;
+        private long slowNanos = 1000000000L / 60; //Highlighted if it takes longer than this
+
+        private Section(String name) {
+            this.name = name;
+        }
+
+        public Section setSlowTime(double ms) {
+            slowNanos = (long) (ms * NANOS_PER_MS);
+            return this;
+        }
+
+        public void end(long start) {
+            if (start == 0)
+                return;
+
+            int index = count;
+            samples[index & MASK] = System.nanoTime() - start;
+            count = index + 1;
+        }
+
+        private int sampleCount() {
+            return Math.min(count, SAMPLES);
+        }
+
+        private void clear() {
+            count = 0;
+        }
+    }
+}
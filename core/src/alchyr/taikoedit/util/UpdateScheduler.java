@@ -0,0 +1,55 @@
+package alchyr.taikoedit.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether the update thread has to run at its full rate.
+ * While nothing is active, the update thread waits until it is woken instead of spinning.
+ *
+ * wake and keepActive can be called from any thread.
+ */
+public class UpdateScheduler {
+    private final Object lock = new Object();
+    private boolean woken = false;
+    private final AtomicLong activeUntil = new AtomicLong(System.nanoTime()); //nanoTime
+
+    /**
+     * Wakes the update thread if it is idle, and keeps it active for the given time.
+     */
+    public void wake(float activeTime) {
+        keepActive(activeTime);
+        synchronized (lock) {
+            woken = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Keeps the update thread running at its full rate for at least the given time, for animations.
+     * Doesn't wake it; an idle update thread will notice on its next update.
+     */
+    public void keepActive(float seconds) {
+        long until = System.nanoTime() + (long) (seconds * Sync.NANOS_IN_SECOND);
+        activeUntil.accumulateAndGet(until, (current, next)->next - current > 0 ? next : current);
+    }
+
+    public boolean isActive() {
+        return activeUntil.get() - System.nanoTime() > 0;
+    }
+
+    /**
+     * Waits until woken, or until the maximum wait has passed.
+     */
+    public void idle(long maxWaitMillis) {
+        synchronized (lock) {
+            try {
+                if (!woken)
+                    lock.wait(maxWaitMillis);
+            }
+            catch (InterruptedException ignored) {
+
+            }
+            woken = false;
+        }
+    }
+}
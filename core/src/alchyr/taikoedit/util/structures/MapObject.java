@@ -11,7 +11,8 @@ import java.util.function.Supplier;
 import static alchyr.taikoedit.TaikoEditor.osuDecimalFormat;
 
 public abstract class MapObject implements Comparable<MapObject> {
-    protected static final DecimalFormat limitedDecimals = new DecimalFormat("##0.###########", osuDecimalFormat);
+    //DecimalFormat isn't thread safe, and maps may be saved on other threads
+    protected static final ThreadLocal<DecimalFormat> limitedDecimals = ThreadLocal.withInitial(()->new DecimalFormat("##0.###########", osuDecimalFormat));
 
     private final List<Supplier<Boolean>> hideTests = new ArrayList<>();
 
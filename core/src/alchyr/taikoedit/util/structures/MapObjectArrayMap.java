@@ -0,0 +1,1192 @@
+package alchyr.taikoedit.util.structures;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Array-backed alternative to MapObjectTreeMap with the same behavior.
+ * Keys are kept in a sorted long[] with the stack for each key at the same index of a parallel array.
+ * Lookups are binary searches over contiguous memory and iteration walks the arrays, instead of following tree nodes and unboxing keys.
+ * Adding or removing a key shifts the following entries, so this suits maps that are read far more often than they are changed.
+ *
+ * Only the natural ordering of keys is supported. Views (subMap, descendingMap, entrySet...) are live, like those of a TreeMap.
+ * For allocation-free range queries, use floorIndex/ceilingIndex with keyAt/stackAt.
+ */
+public class MapObjectArrayMap<V extends MapObject> extends AbstractMap<Long, ArrayList<V>> implements MapObjectMap<V>, Cloneable {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private transient long[] keys;
+    private transient ArrayList<V>[] stacks;
+    private transient int size = 0;
+    private transient int count = 0;
+    private transient int modCount = 0;
+
+    private transient View all = null;
+
+    public MapObjectArrayMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    public MapObjectArrayMap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys = new long[capacity];
+        stacks = (ArrayList<V>[]) new ArrayList[capacity];
+    }
+
+    public MapObjectArrayMap(Map<? extends Long, ? extends ArrayList<V>> m) {
+        this(m.size());
+        putAll(m);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public MapObjectArrayMap<V> copy()
+    {
+        MapObjectArrayMap<V> c = new MapObjectArrayMap<>(size);
+        for (int i = 0; i < size; ++i) {
+            for (V obj : stacks[i]) {
+                c.addKey(keys[i], (V) obj.shiftedCopy(keys[i]));
+            }
+        }
+        return c;
+    }
+
+
+    // Index based access
+
+    //Index of the key, or (-(insertion point) - 1) if it is not present.
+    private int search(long key) {
+        //Most additions are at the end of the map while loading.
+        if (size == 0 || key > keys[size - 1])
+            return -(size + 1);
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * @return The index of the greatest key less than or equal to the given key, or -1 if there is none.
+     */
+    public int floorIndex(long key) {
+        int i = search(key);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * @return The index of the least key greater than or equal to the given key, or size() if there is none.
+     */
+    public int ceilingIndex(long key) {
+        int i = search(key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * @return The index of the greatest key strictly less than the given key, or -1 if there is none.
+     */
+    public int lowerIndex(long key) {
+        int i = search(key);
+        return i >= 0 ? i - 1 : -i - 2;
+    }
+
+    /**
+     * @return The index of the least key strictly greater than the given key, or size() if there is none.
+     */
+    public int higherIndex(long key) {
+        int i = search(key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    public long keyAt(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return keys[index];
+    }
+
+    public ArrayList<V> stackAt(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return stacks[index];
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, keys.length + (keys.length >> 1) + 1);
+        keys = Arrays.copyOf(keys, capacity);
+        stacks = Arrays.copyOf(stacks, capacity);
+    }
+
+    private void insert(int index, long key, ArrayList<V> stack) {
+        if (size == keys.length)
+            grow(size + 1);
+        if (index < size) {
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(stacks, index, stacks, index + 1, size - index);
+        }
+        keys[index] = key;
+        stacks[index] = stack;
+        ++size;
+        count += stack.size();
+        ++modCount;
+    }
+
+    private void delete(int index) {
+        count -= stacks[index].size();
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(stacks, index + 1, stacks, index, moved);
+        }
+        stacks[--size] = null;
+        ++modCount;
+    }
+
+    private Map.Entry<Long, ArrayList<V>> exportEntry(int index) {
+        return index < 0 || index >= size ? null : new AbstractMap.SimpleImmutableEntry<>(keys[index], stacks[index]);
+    }
+
+    private Long keyOrNull(int index) {
+        return index < 0 || index >= size ? null : keys[index];
+    }
+
+
+    // Query Operations
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return search((Long) key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < size; ++i)
+            if (Objects.equals(value, stacks[i]))
+                return true;
+        return false;
+    }
+
+    @Override
+    public ArrayList<V> get(Object key) {
+        int i = search((Long) key);
+        return i >= 0 ? stacks[i] : null;
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return null;
+    }
+
+    @Override
+    public Long firstKey() {
+        return keyOrNull(0);
+    }
+
+    @Override
+    public Long lastKey() {
+        return keyOrNull(size - 1);
+    }
+
+    //Same as MapObjectTreeMap: stacks are shared when filling an empty map from a sorted one, and copied otherwise.
+    @Override
+    public void putAll(Map<? extends Long, ? extends ArrayList<V>> map) {
+        if (size == 0 && !map.isEmpty() && map instanceof SortedMap && ((SortedMap<?, ?>) map).comparator() == null) {
+            if (keys.length < map.size())
+                grow(map.size());
+            for (Map.Entry<? extends Long, ? extends ArrayList<V>> e : map.entrySet()) {
+                keys[size] = e.getKey();
+                stacks[size] = e.getValue();
+                count += e.getValue().size();
+                ++size;
+            }
+            ++modCount;
+            return;
+        }
+        for (Map.Entry<? extends Long, ? extends ArrayList<V>> e : map.entrySet()) {
+            put(e.getKey(), new ArrayList<>(e.getValue()));
+        }
+    }
+
+    @Override
+    public ArrayList<V> put(Long key, ArrayList<V> value) {
+        int i = search(key);
+        if (i >= 0) {
+            ArrayList<V> old = stacks[i];
+            count += value.size() - old.size();
+            stacks[i] = value;
+            return old;
+        }
+        insert(-i - 1, key, value);
+        return null;
+    }
+
+    @Override
+    public void addKey(long key, V value) {
+        int i = search(key);
+        if (i >= 0) {
+            stacks[i].add(value);
+            ++count;
+            return;
+        }
+        ArrayList<V> stack = new ArrayList<>(1);
+        stack.add(value);
+        insert(-i - 1, key, stack);
+    }
+
+    @Override
+    public void addFirst(V value) {
+        long key = value.getPos();
+        int i = search(key);
+        if (i >= 0) {
+            stacks[i].add(0, value);
+            ++count;
+            return;
+        }
+        ArrayList<V> stack = new ArrayList<>(1);
+        stack.add(value);
+        insert(-i - 1, key, stack);
+    }
+
+    @Override
+    public boolean addIfAbsent(V value) {
+        long key = value.getPos();
+        int i = search(key);
+        if (i >= 0) {
+            if (stacks[i].contains(value))
+                return false;
+            stacks[i].add(value);
+            ++count;
+            ++modCount;
+            return true;
+        }
+        ArrayList<V> stack = new ArrayList<>(1);
+        stack.add(value);
+        insert(-i - 1, key, stack);
+        return true;
+    }
+
+    @Override
+    public ArrayList<V> remove(Object key) {
+        int i = search((Long) key);
+        if (i < 0)
+            return null;
+
+        ArrayList<V> old = stacks[i];
+        delete(i);
+        return old;
+    }
+
+    @Override
+    public boolean removeStack(Object key, List<? extends MapObject> stack) {
+        modCount++;
+
+        int i = search((Long) key);
+        if (i < 0)
+            return false;
+
+        ArrayList<V> values = stacks[i];
+        int oldSize = values.size();
+        if (values.removeAll(stack)) {
+            count -= oldSize - values.size();
+            if (values.isEmpty())
+                delete(i);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public MapObject removeObject(MapObject p) {
+        int i = search(p.getPos());
+        if (i < 0)
+            return null;
+
+        if (stacks[i].remove(p))
+            --count;
+        else
+            return null;
+
+        if (stacks[i].isEmpty())
+            delete(i);
+        return p;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<V> condition) {
+        boolean changed = false;
+        int kept = 0;
+        for (int i = 0; i < size; ++i) {
+            ArrayList<V> stack = stacks[i];
+            int amt = stack.size();
+            if (stack.removeIf(condition)) {
+                changed = true;
+                count -= amt - stack.size();
+            }
+
+            if (!stack.isEmpty()) {
+                keys[kept] = keys[i];
+                stacks[kept++] = stack;
+            }
+        }
+        if (kept != size) {
+            Arrays.fill(stacks, kept, size, null);
+            size = kept;
+            ++modCount;
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeAll(Map<? extends Long, ? extends ArrayList<? extends MapObject>> map) {
+        boolean changed = false;
+        for (Map.Entry<? extends Long, ? extends ArrayList<? extends MapObject>> deleting : map.entrySet())
+        {
+            int i = search(deleting.getKey());
+            if (i < 0) //There is nothing to delete at this position.
+                continue;
+
+            ArrayList<V> stack = stacks[i];
+            for (MapObject val : deleting.getValue())
+            {
+                if (stack.remove(val))
+                {
+                    --count;
+                    changed = true;
+                }
+            }
+
+            if (stack.isEmpty())
+                delete(i);
+        }
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        Arrays.fill(stacks, 0, size, null);
+        size = 0;
+        count = 0;
+    }
+
+    //Shallow copy; stacks are shared, as with MapObjectTreeMap.
+    @Override
+    public Object clone() {
+        MapObjectArrayMap<V> clone = new MapObjectArrayMap<>(size);
+        System.arraycopy(keys, 0, clone.keys, 0, size);
+        System.arraycopy(stacks, 0, clone.stacks, 0, size);
+        clone.size = size;
+        clone.count = count;
+        return clone;
+    }
+
+
+    // NavigableMap API methods
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> firstEntry() {
+        return exportEntry(0);
+    }
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> lastEntry() {
+        return exportEntry(size - 1);
+    }
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> pollFirstEntry() {
+        Map.Entry<Long, ArrayList<V>> result = exportEntry(0);
+        if (result != null)
+            delete(0);
+        return result;
+    }
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> pollLastEntry() {
+        Map.Entry<Long, ArrayList<V>> result = exportEntry(size - 1);
+        if (result != null)
+            delete(size - 1);
+        return result;
+    }
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> lowerEntry(Long key) {
+        return exportEntry(lowerIndex(key));
+    }
+
+    @Override
+    public Long lowerKey(Long key) {
+        return keyOrNull(lowerIndex(key));
+    }
+
+    @Override
+    public Long safeLowerKey(Long key) { //Returns given value if there is no lower key
+        int i = lowerIndex(key);
+        return i < 0 ? key : keys[i];
+    }
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> floorEntry(Long key) {
+        return exportEntry(floorIndex(key));
+    }
+
+    @Override
+    public Long floorKey(Long key) {
+        return keyOrNull(floorIndex(key));
+    }
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> ceilingEntry(Long key) {
+        return exportEntry(ceilingIndex(key));
+    }
+
+    @Override
+    public Long ceilingKey(Long key) {
+        return keyOrNull(ceilingIndex(key));
+    }
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> higherEntry(Long key) {
+        return exportEntry(higherIndex(key));
+    }
+
+    @Override
+    public Long higherKey(Long key) {
+        return keyOrNull(higherIndex(key));
+    }
+
+    @Override
+    public Long safeHigherKey(Long key) {
+        int i = higherIndex(key);
+        return i >= size ? key : keys[i];
+    }
+
+
+    // Views
+
+    private View all() {
+        return all == null ? all = new View(false, true, 0, true, true, 0, true, false) : all;
+    }
+
+    @Override
+    public Set<Long> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<Long> navigableKeySet() {
+        return all().navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<Long> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Collection<ArrayList<V>> values() {
+        return all().values();
+    }
+
+    @Override
+    public Iterator<V> singleValuesIterator() {
+        return new ObjectIterator();
+    }
+
+    @Override
+    public Set<Map.Entry<Long, ArrayList<V>>> entrySet() {
+        return all().entrySet();
+    }
+
+    @Override
+    public NavigableMap<Long, ArrayList<V>> descendingMap() {
+        return all().descendingMap();
+    }
+
+    @Override
+    public NavigableMap<Long, ArrayList<V>> descendingSubMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+        return new View(true, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<Long, ArrayList<V>> descendingSubMap(Long toKey, boolean toInclusive) {
+        return new View(true, true, 0, true, false, toKey, toInclusive, false);
+    }
+
+    /**
+     * Same range as MapObjectTreeMap.extendedDescendingSubMap: from the last key before fromKey to the first key at or after toKey.
+     */
+    @Override
+    public NavigableMap<Long, ArrayList<V>> extendedDescendingSubMap(Long fromKey, Long toKey) {
+        return new View(true, false, fromKey, true, false, toKey, true, true);
+    }
+
+    @Override
+    public NavigableMap<Long,ArrayList<V>> subMap(Long fromKey, boolean fromInclusive,
+                                                  Long toKey,   boolean toInclusive) {
+        return new View(false, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<Long,ArrayList<V>> headMap(Long toKey, boolean inclusive) {
+        return new View(false, true, 0, true, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<Long,ArrayList<V>> tailMap(Long fromKey, boolean inclusive) {
+        return new View(false, false, fromKey, inclusive, true, 0, true, false);
+    }
+
+    @Override
+    public SortedMap<Long,ArrayList<V>> subMap(Long fromKey, Long toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<Long,ArrayList<V>> headMap(Long toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<Long,ArrayList<V>> tailMap(Long fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public boolean replace(Long key, ArrayList<V> oldValue, ArrayList<V> newValue) {
+        int i = search(key);
+        if (i >= 0 && Objects.equals(oldValue, stacks[i])) {
+            count += newValue.size() - stacks[i].size();
+            stacks[i] = newValue;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public ArrayList<V> replace(Long key, ArrayList<V> value) {
+        int i = search(key);
+        if (i >= 0) {
+            ArrayList<V> oldValue = stacks[i];
+            count += value.size() - oldValue.size();
+            stacks[i] = value;
+            return oldValue;
+        }
+        return null;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Long, ? super ArrayList<V>> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (int i = 0; i < size; ++i) {
+            action.accept(keys[i], stacks[i]);
+
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    @Override
+    public void forEachObject(Consumer<V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (int i = 0; i < size; ++i) {
+            for (V val : stacks[i])
+                action.accept(val);
+
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Long, ? super ArrayList<V>, ? extends ArrayList<V>> function) {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+
+        for (int i = 0; i < size; ++i) {
+            ArrayList<V> replaced = function.apply(keys[i], stacks[i]);
+            count += replaced.size() - stacks[i].size();
+            stacks[i] = replaced;
+
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+
+    // View class support
+
+    //Entry returned while iterating. setValue writes through to the map.
+    final class Node extends AbstractMap.SimpleEntry<Long, ArrayList<V>> {
+        Node(int index) {
+            super(keys[index], stacks[index]);
+        }
+
+        @Override
+        public ArrayList<V> setValue(ArrayList<V> value) {
+            replace(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    //Iterates over indices from low to high (inclusive), in either direction.
+    abstract class IndexIterator<T> implements Iterator<T> {
+        private final boolean descending;
+        private int next, fence;
+        private int lastReturned = -1;
+        private int expectedModCount = modCount;
+
+        IndexIterator(int low, int high, boolean descending) {
+            this.descending = descending;
+            if (descending) {
+                next = high;
+                fence = low - 1;
+            }
+            else {
+                next = low;
+                fence = high + 1;
+            }
+        }
+
+        abstract T element(int index);
+
+        public final boolean hasNext() {
+            return descending ? next > fence : next < fence;
+        }
+
+        public final T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            lastReturned = next;
+            next += descending ? -1 : 1;
+            return element(lastReturned);
+        }
+
+        public void remove() {
+            if (lastReturned < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            delete(lastReturned);
+            if (!descending) {
+                --next;
+                --fence;
+            }
+            expectedModCount = modCount;
+            lastReturned = -1;
+        }
+    }
+
+    final class EntryIterator extends IndexIterator<Map.Entry<Long, ArrayList<V>>> {
+        EntryIterator(int low, int high, boolean descending) {
+            super(low, high, descending);
+        }
+
+        @Override
+        Map.Entry<Long, ArrayList<V>> element(int index) {
+            return new Node(index);
+        }
+    }
+
+    final class StackIterator extends IndexIterator<ArrayList<V>> {
+        StackIterator(int low, int high, boolean descending) {
+            super(low, high, descending);
+        }
+
+        @Override
+        ArrayList<V> element(int index) {
+            return stacks[index];
+        }
+    }
+
+    final class KeyIterator extends IndexIterator<Long> {
+        KeyIterator(int low, int high, boolean descending) {
+            super(low, high, descending);
+        }
+
+        @Override
+        Long element(int index) {
+            return keys[index];
+        }
+    }
+
+    //Iterates over every object in the map, in order.
+    final class ObjectIterator implements Iterator<V> {
+        private int stack = 0, index = 0; //Position of the next object
+        private int lastStack = -1, lastIndex = -1;
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (stack < size && index >= stacks[stack].size()) {
+                ++stack;
+                index = 0;
+            }
+            return stack < size;
+        }
+
+        public V next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastStack = stack;
+            lastIndex = index;
+            return stacks[stack].get(index++);
+        }
+
+        public void remove() {
+            if (lastStack < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+
+            stacks[lastStack].remove(lastIndex);
+            --count;
+            stack = lastStack;
+            if (stacks[lastStack].isEmpty()) {
+                delete(lastStack);
+                index = 0;
+            }
+            else {
+                index = lastIndex;
+            }
+            expectedModCount = modCount;
+            lastStack = -1;
+        }
+    }
+
+    /**
+     * A range of the map, in ascending or descending order.
+     * Bounds are absolute (lo <= hi) regardless of direction, and are resolved to indices whenever the view is accessed.
+     */
+    final class View extends AbstractMap<Long, ArrayList<V>> implements NavigableMap<Long, ArrayList<V>> {
+        final boolean descending;
+        final boolean fromStart, toEnd;
+        final long lo, hi;
+        final boolean loInclusive, hiInclusive;
+        final boolean extended;
+
+        private transient Set<Map.Entry<Long, ArrayList<V>>> entrySetView = null;
+        private transient Collection<ArrayList<V>> valuesView = null;
+
+        View(boolean descending,
+             boolean fromStart, long lo, boolean loInclusive,
+             boolean toEnd, long hi, boolean hiInclusive, boolean extended) {
+            if (!fromStart && !toEnd && lo > hi)
+                throw new IllegalArgumentException("fromKey > toKey");
+
+            this.descending = descending;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.extended = extended;
+        }
+
+        // Absolute index bounds (inclusive). Empty if low > high.
+
+        int low() {
+            if (fromStart)
+                return 0;
+            if (extended)
+                return Math.max(0, ceilingIndex(lo) - 1);
+            return loInclusive ? ceilingIndex(lo) : higherIndex(lo);
+        }
+
+        int high() {
+            if (toEnd)
+                return size - 1;
+            if (extended)
+                return Math.min(size - 1, ceilingIndex(hi));
+            return hiInclusive ? floorIndex(hi) : lowerIndex(hi);
+        }
+
+        boolean inRange(long key) {
+            if (!fromStart) {
+                long bound = extended ? safeLowerKey(lo) : lo;
+                if (key < bound || (key == bound && !loInclusive))
+                    return false;
+            }
+            if (!toEnd) {
+                long bound = extended ? safeHigherKey(hi) : hi;
+                return key < bound || (key == bound && hiInclusive);
+            }
+            return true;
+        }
+
+        private int indexOf(Object key) {
+            int i = search((Long) key);
+            return i >= low() && i <= high() ? i : -1;
+        }
+
+        private int absCeiling(long key) {
+            int i = Math.max(ceilingIndex(key), low());
+            return i <= high() ? i : -1;
+        }
+
+        private int absHigher(long key) {
+            int i = Math.max(higherIndex(key), low());
+            return i <= high() ? i : -1;
+        }
+
+        private int absFloor(long key) {
+            int i = Math.min(floorIndex(key), high());
+            return i >= low() ? i : -1;
+        }
+
+        private int absLower(long key) {
+            int i = Math.min(lowerIndex(key), high());
+            return i >= low() ? i : -1;
+        }
+
+        private int firstIndex() {
+            int low = low(), high = high();
+            return low > high ? -1 : (descending ? high : low);
+        }
+
+        private int lastIndex() {
+            int low = low(), high = high();
+            return low > high ? -1 : (descending ? low : high);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(0, high() - low() + 1);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return high() < low();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public ArrayList<V> get(Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : stacks[i];
+        }
+
+        @Override
+        public ArrayList<V> put(Long key, ArrayList<V> value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return MapObjectArrayMap.this.put(key, value);
+        }
+
+        @Override
+        public ArrayList<V> remove(Object key) {
+            int i = indexOf(key);
+            if (i < 0)
+                return null;
+            ArrayList<V> old = stacks[i];
+            delete(i);
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            int low = low(), high = high();
+            while (high >= low)
+                delete(high--);
+        }
+
+        @Override
+        public Comparator<? super Long> comparator() {
+            return descending ? Collections.reverseOrder() : null;
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> ceilingEntry(Long key) {
+            return exportEntry(descending ? absFloor(key) : absCeiling(key));
+        }
+
+        @Override
+        public Long ceilingKey(Long key) {
+            return keyOrNull(descending ? absFloor(key) : absCeiling(key));
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> higherEntry(Long key) {
+            return exportEntry(descending ? absLower(key) : absHigher(key));
+        }
+
+        @Override
+        public Long higherKey(Long key) {
+            return keyOrNull(descending ? absLower(key) : absHigher(key));
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> floorEntry(Long key) {
+            return exportEntry(descending ? absCeiling(key) : absFloor(key));
+        }
+
+        @Override
+        public Long floorKey(Long key) {
+            return keyOrNull(descending ? absCeiling(key) : absFloor(key));
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> lowerEntry(Long key) {
+            return exportEntry(descending ? absHigher(key) : absLower(key));
+        }
+
+        @Override
+        public Long lowerKey(Long key) {
+            return keyOrNull(descending ? absHigher(key) : absLower(key));
+        }
+
+        @Override
+        public Long firstKey() {
+            return keyOrNull(firstIndex());
+        }
+
+        @Override
+        public Long lastKey() {
+            return keyOrNull(lastIndex());
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> firstEntry() {
+            return exportEntry(firstIndex());
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> lastEntry() {
+            return exportEntry(lastIndex());
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> pollFirstEntry() {
+            int i = firstIndex();
+            Map.Entry<Long, ArrayList<V>> result = exportEntry(i);
+            if (result != null)
+                delete(i);
+            return result;
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> pollLastEntry() {
+            int i = lastIndex();
+            Map.Entry<Long, ArrayList<V>> result = exportEntry(i);
+            if (result != null)
+                delete(i);
+            return result;
+        }
+
+        @Override
+        public NavigableMap<Long, ArrayList<V>> descendingMap() {
+            return new View(!descending, fromStart, lo, loInclusive, toEnd, hi, hiInclusive, extended);
+        }
+
+        @Override
+        public NavigableSet<Long> navigableKeySet() {
+            return new ViewKeySet(this);
+        }
+
+        @Override
+        public Set<Long> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Long> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<Long, ArrayList<V>> subMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+            if (!inRange(fromKey))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(toKey))
+                throw new IllegalArgumentException("toKey out of range");
+            if (descending)
+                return new View(true, false, toKey, toInclusive, false, fromKey, fromInclusive, false);
+            return new View(false, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<Long, ArrayList<V>> headMap(Long toKey, boolean inclusive) {
+            if (!inRange(toKey))
+                throw new IllegalArgumentException("toKey out of range");
+            if (descending)
+                return new View(true, false, toKey, inclusive, toEnd, hi, hiInclusive, false);
+            return new View(false, fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<Long, ArrayList<V>> tailMap(Long fromKey, boolean inclusive) {
+            if (!inRange(fromKey))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (descending)
+                return new View(true, fromStart, lo, loInclusive, false, fromKey, inclusive, false);
+            return new View(false, false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        @Override
+        public SortedMap<Long, ArrayList<V>> subMap(Long fromKey, Long toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<Long, ArrayList<V>> headMap(Long toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<Long, ArrayList<V>> tailMap(Long fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        @Override
+        public Collection<ArrayList<V>> values() {
+            return valuesView == null ? valuesView = new AbstractCollection<ArrayList<V>>() {
+                @Override
+                public Iterator<ArrayList<V>> iterator() {
+                    return new StackIterator(low(), high(), descending);
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return View.this.isEmpty();
+                }
+
+                @Override
+                public void clear() {
+                    View.this.clear();
+                }
+            } : valuesView;
+        }
+
+        @Override
+        public Set<Map.Entry<Long, ArrayList<V>>> entrySet() {
+            return entrySetView == null ? entrySetView = new AbstractSet<Map.Entry<Long, ArrayList<V>>>() {
+                @Override
+                public Iterator<Map.Entry<Long, ArrayList<V>>> iterator() {
+                    return new EntryIterator(low(), high(), descending);
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return View.this.isEmpty();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    if (!(entry.getKey() instanceof Long))
+                        return false;
+                    int i = indexOf(entry.getKey());
+                    return i >= 0 && Objects.equals(stacks[i], entry.getValue());
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if (!contains(o))
+                        return false;
+                    delete(indexOf(((Map.Entry<?, ?>) o).getKey()));
+                    return true;
+                }
+
+                @Override
+                public void clear() {
+                    View.this.clear();
+                }
+            } : entrySetView;
+        }
+
+        Iterator<Long> keyIterator(boolean reverse) {
+            return new KeyIterator(low(), high(), descending != reverse);
+        }
+    }
+
+    static final class ViewKeySet extends AbstractSet<Long> implements NavigableSet<Long> {
+        private final MapObjectArrayMap<?>.View m;
+        ViewKeySet(MapObjectArrayMap<?>.View map) { m = map; }
+
+        public Iterator<Long> iterator() { return m.keyIterator(false); }
+        public Iterator<Long> descendingIterator() { return m.keyIterator(true); }
+        public int size() { return m.size(); }
+        public boolean isEmpty() { return m.isEmpty(); }
+        public boolean contains(Object o) { return m.containsKey(o); }
+        public void clear() { m.clear(); }
+        public Long lower(Long e) { return m.lowerKey(e); }
+        public Long floor(Long e) { return m.floorKey(e); }
+        public Long ceiling(Long e) { return m.ceilingKey(e); }
+        public Long higher(Long e) { return m.higherKey(e); }
+        public Long first() { return m.firstKey(); }
+        public Long last() { return m.lastKey(); }
+        public Comparator<? super Long> comparator() { return m.comparator(); }
+        public Long pollFirst() {
+            Map.Entry<Long,?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public Long pollLast() {
+            Map.Entry<Long,?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public boolean remove(Object o) {
+            return m.remove(o) != null;
+        }
+        public NavigableSet<Long> subSet(Long fromElement, boolean fromInclusive,
+                                         Long toElement,   boolean toInclusive) {
+            return m.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+        public NavigableSet<Long> headSet(Long toElement, boolean inclusive) {
+            return m.headMap(toElement, inclusive).navigableKeySet();
+        }
+        public NavigableSet<Long> tailSet(Long fromElement, boolean inclusive) {
+            return m.tailMap(fromElement, inclusive).navigableKeySet();
+        }
+        public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+        public SortedSet<Long> headSet(Long toElement) {
+            return headSet(toElement, false);
+        }
+        public SortedSet<Long> tailSet(Long fromElement) {
+            return tailSet(fromElement, true);
+        }
+        public NavigableSet<Long> descendingSet() {
+            return m.descendingMap().navigableKeySet();
+        }
+    }
+}
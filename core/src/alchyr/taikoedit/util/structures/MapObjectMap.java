@@ -0,0 +1,79 @@
+package alchyr.taikoedit.util.structures;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A map of positions to the stack of objects at each position, in order of position.
+ * Implemented by MapObjectTreeMap, and by MapObjectArrayMap for maps that are read far more often than they are changed.
+ */
+public interface MapObjectMap<V extends MapObject> extends NavigableMap<Long, ArrayList<V>> {
+    /**
+     * @return A copy of the map with a copy of each object.
+     */
+    MapObjectMap<V> copy();
+
+    /**
+     * @return The number of objects, rather than the number of positions.
+     */
+    int count();
+
+    default boolean containsKeyedValue(long key, Object value) {
+        ArrayList<V> values = get(key);
+        return values != null && values.contains(value);
+    }
+
+    default void add(V value) {
+        addKey(value.getPos(), value);
+    }
+    void addKey(long key, V value);
+    //Adds the object at the start of its stack rather than the end.
+    void addFirst(V value);
+    //Adds the object if it isn't already in its stack.
+    boolean addIfAbsent(V value);
+
+    @SuppressWarnings("unchecked")
+    default void addAll(Map<? extends Long, ? extends ArrayList<? extends MapObject>> map) {
+        for (Map.Entry<Long, ArrayList<V>> e : ((Map<Long, ArrayList<V>>) map).entrySet())
+        {
+            for (V val : e.getValue())
+            {
+                add(val);
+            }
+        }
+    }
+    @SuppressWarnings("unchecked")
+    default void addAll(Collection<? extends MapObject> collection) {
+        for (MapObject val : collection)
+        {
+            add((V) val);
+        }
+    }
+    //Add all contents that are not already in this container
+    @SuppressWarnings("unchecked")
+    default void addAllUnique(Map<? extends Long, ? extends ArrayList<? extends MapObject>> map) {
+        for (Map.Entry<Long, ArrayList<V>> e : ((Map<Long, ArrayList<V>>) map).entrySet())
+        {
+            for (V val : e.getValue())
+            {
+                addIfAbsent(val);
+            }
+        }
+    }
+
+    boolean removeStack(Object key, List<? extends MapObject> stack);
+    MapObject removeObject(MapObject p);
+    boolean removeIf(Predicate<V> condition);
+    boolean removeAll(Map<? extends Long, ? extends ArrayList<? extends MapObject>> map);
+
+    Long safeLowerKey(Long key); //Returns given value if there is no lower key
+    Long safeHigherKey(Long key); //Returns given value if there is no higher key
+
+    Iterator<V> singleValuesIterator();
+    void forEachObject(Consumer<V> action);
+
+    NavigableMap<Long, ArrayList<V>> descendingSubMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive);
+    NavigableMap<Long, ArrayList<V>> descendingSubMap(Long toKey, boolean toInclusive);
+    NavigableMap<Long, ArrayList<V>> extendedDescendingSubMap(Long fromKey, Long toKey);
+}
@@ -36,7 +36,7 @@ import java.util.function.Predicate;
 //Modified version of java.util.TreeMap. See header.
 public class MapObjectTreeMap<V extends MapObject>
         extends AbstractMap<Long, ArrayList<V>>
-        implements NavigableMap<Long, ArrayList<V>>, Cloneable, java.io.Serializable
+        implements MapObjectMap<V>, Cloneable, java.io.Serializable
 {
     transient Values values; //Cannot reference values within AbstractMap
 